@@ -52,7 +52,7 @@ abstract public class BlockElement extends ParsedHTML implements HTMLSegment,
 		} else if (!_node.hasChildNodes()) {
 			return "";
 		} else {
-			return NodeUtils.asText(_node.getChildNodes()).trim();
+			return NodeUtils.asText(_node.getChildNodes(), getResponse().getOptions()).trim();
 		}
 	}
 
@@ -108,7 +108,7 @@ abstract public class BlockElement extends ParsedHTML implements HTMLSegment,
 	 */
 	public ScriptingHandler getScriptingHandler() {
 		if (_scriptable == null) {
-			_scriptable = HttpUnitOptions.getScriptingEngine().createHandler(this);
+			_scriptable = getResponse().getOptions().getScriptingEngine().createHandler(this);
 		}
 		return _scriptable;
 	}
@@ -208,6 +208,12 @@ public class Button extends FormControl {
     }
 
 
+    protected WebClientOptions getOptions() {
+        if (getForm() != null || _baseResponse == null) return super.getOptions();
+        return _baseResponse.getOptions();
+    }
+
+
     class Scriptable extends FormControl.Scriptable {
 
         public void click() throws IOException, SAXException {
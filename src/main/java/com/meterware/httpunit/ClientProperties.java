@@ -225,6 +225,50 @@ public class ClientProperties {
         _iframeSupported = iframeSupported;
     }
 
+
+    /**
+     * Returns true if responses which are not HTML will be streamed rather than read into memory when received.
+     * @see #setStreamingResponses
+     */
+    public boolean isStreamingResponses() {
+        return _streamingResponses;
+    }
+
+
+    /**
+     * Specifies whether responses which are not HTML should be streamed. If true, the body of such a response
+     * is not read when the response is received, and {@link WebResponse#getInputStream} returns a stream which
+     * reads directly from the server. The stream should be read to its end or closed. By default, this is false.
+     * Streaming may also be selected for individual requests with {@link WebRequest#setStreamingResponse}.
+     * @since 1.7.3
+     */
+    public void setStreamingResponses( boolean streamingResponses ) {
+        _streamingResponses = streamingResponses;
+    }
+
+
+    /**
+     * Returns the maximum number of frames which will be loaded at the same time.
+     * @see #setMaxFrameLoadingThreads
+     */
+    public int getMaxFrameLoadingThreads() {
+        return _maxFrameLoadingThreads;
+    }
+
+
+    /**
+     * Specifies the maximum number of frames and iframes in a page which may be loaded at the same time. By default,
+     * this is 1, and frames are loaded one after another. With a larger value, the frames of a page are requested
+     * concurrently, but are still added to the window, and their scripts run, in the order in which they appear.
+     * Since the requests are sent together, cookies set by one frame will not be sent with the requests for its siblings.
+     * Client listeners are still called on the thread which requested the page. The loading threads are shared by
+     * all pages of the client, and end when they have been idle for a while.
+     * @since 1.7.3
+     */
+    public void setMaxFrameLoadingThreads( int maxFrameLoadingThreads ) {
+        _maxFrameLoadingThreads = maxFrameLoadingThreads;
+    }
+
     /**
      * @deprecated since 1.8 see BR 2595566 - name of getter is a typo
      * @see getOverrideContentType
@@ -317,6 +361,8 @@ public class ClientProperties {
     private boolean _acceptGzip    = true;
     private boolean _autoRedirect  = true;
     private boolean _autoRefresh   = false;
+    private boolean _streamingResponses;
+    private int     _maxFrameLoadingThreads = 1;
 
     private DNSListener _dnsListener;
     private boolean _sendReferer;
@@ -351,6 +397,8 @@ public class ClientProperties {
         _autoRefresh         = source._autoRefresh;
         _sendReferer         = source._sendReferer;
         _maxRedirects		 = source._maxRedirects;
+        _streamingResponses  = source._streamingResponses;
+        _maxFrameLoadingThreads = source._maxFrameLoadingThreads;
     }
 
 
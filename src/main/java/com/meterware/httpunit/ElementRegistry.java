@@ -51,6 +51,15 @@ class ElementRegistry {
     }
 
 
+    /**
+     * Removes the HttpUnit element registered for the specified node, if any.
+     * @return the element which was registered
+     */
+    Object removeElement( Node node ) {
+        return _map.remove( node );
+    }
+
+
     Iterator iterator() {
         return _map.values().iterator();
     }
@@ -100,7 +100,7 @@ public abstract class FormControl extends HTMLElementBase {
         supportAttribute( "tabindex" );
         supportAttribute( "disabled" );
         //      Add all custom attributes
-        Set customAttributes = HttpUnitOptions.getCustomAttributes();
+        Set customAttributes = getOptions().getCustomAttributes();
         if(customAttributes != null) {
             for(Iterator iter = customAttributes.iterator(); iter.hasNext(); ) {
                 supportAttribute((String)iter.next());
@@ -135,6 +135,11 @@ public abstract class FormControl extends HTMLElementBase {
     }
 
 
+    protected WebClientOptions getOptions() {
+        return getForm() == null ? super.getOptions() : getForm().getOptions();
+    }
+
+
     /**
      * Returns the values permitted in this control. Does not apply to text or file controls.
      **/
@@ -22,6 +22,7 @@ package com.meterware.httpunit;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.Future;
 
 import org.xml.sax.SAXException;
 
@@ -50,7 +51,7 @@ class FrameHolder {
         _topFrame = FrameSelector.newTopFrame( window );
         DefaultWebResponse blankResponse = new DefaultWebResponse( window.getClient(), null, WebResponse.BLANK_HTML );
         _contents.put( _topFrame, blankResponse );
-        HttpUnitOptions.getScriptingEngine().associate( blankResponse );
+        window.getClient().getOptions().getScriptingEngine().associate( blankResponse );
     }
 
 
@@ -174,15 +175,21 @@ class FrameHolder {
         _contents.put( frame, response );
 
         if (response.isHTML()) {
-            HttpUnitOptions.getScriptingEngine().associate( response );
+            response.getOptions().getScriptingEngine().associate( response );
             requestContext.addNewResponse( response );
             WebRequest[] requests = response.getFrameRequests();
             if (requests.length > 0) {
                 createSubFrames( frame, response.getFrameSelectors() );
-                for (int i = 0; i < requests.length; i++) {
-                    if (requests[i].getURLString().length() != 0) {
-                        response.getWindow().getSubframeResponse( requests[i], requestContext );
+                Future[] loading = _window.startLoadingFrames( requests );
+                int next = 0;
+                try {
+                    for (; next < requests.length; next++) {
+                        if (requests[next].getURLString().length() != 0) {
+                            response.getWindow().getSubframeResponse( requests[next], loading[next], requestContext );
+                        }
                     }
+                } finally {
+                    _window.abandonLoadingFrames( loading, next+1 );
                 }
             }
         }
@@ -61,11 +61,20 @@ abstract class HTMLElementBase implements HTMLElement {
 	 */
 	public ScriptingHandler getScriptingHandler() {
 		if (_scriptable == null) {
-			_scriptable = HttpUnitOptions.getScriptingEngine().createHandler(this);
+			_scriptable = getOptions().getScriptingEngine().createHandler(this);
 		}
 		return _scriptable;
 	}
 
+	/**
+	 * Returns the options which control how this element is scripted. Elements
+	 * which know the response containing them return its options; others follow
+	 * the current defaults.
+	 */
+	protected WebClientOptions getOptions() {
+		return WebClientOptions.getDefaults();
+	}
+
 	/**
 	 * handle the event that has the given script attached by compiling the
 	 * eventScript as a function and executing it
@@ -100,7 +109,7 @@ abstract class HTMLElementBase implements HTMLElement {
 		} else if (!_node.hasChildNodes()) {
 			return "";
 		} else {
-			return NodeUtils.asText(_node.getChildNodes()).trim();
+			return NodeUtils.asText(_node.getChildNodes(), getOptions()).trim();
 		}
 	}
 
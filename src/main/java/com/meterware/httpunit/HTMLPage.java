@@ -22,7 +22,6 @@ package com.meterware.httpunit;
 import com.meterware.httpunit.scripting.NamedDelegate;
 import com.meterware.httpunit.scripting.ScriptableDelegate;
 import com.meterware.httpunit.scripting.ScriptingHandler;
-import com.meterware.httpunit.parsing.HTMLParserFactory;
 import com.meterware.httpunit.parsing.DocumentAdapter;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -268,7 +267,7 @@ public class HTMLPage extends ParsedHTML {
      * @throws IOException
      */
     public void parse( String text, URL pageURL ) throws SAXException, IOException {
-        HTMLParserFactory.getHTMLParser().parse( pageURL, text, new DocumentAdapter() {
+        getResponse().getOptions().getHTMLParser().parse( pageURL, text, new DocumentAdapter() {
             public void setDocument(HTMLDocument document ) { HTMLPage.this.setRootNode( document ); }
             public String getIncludedScript( String srcAttribute ) throws IOException { return HTMLPage.this.getIncludedScript( srcAttribute ); }
             public ScriptingHandler getScriptingHandler() { return getResponse().getScriptingHandler(); }
@@ -20,6 +20,7 @@ package com.meterware.httpunit;
 *
 *******************************************************************************************************************/
 
+import com.meterware.httpunit.scripting.ScriptErrorLog;
 import com.meterware.httpunit.scripting.ScriptableDelegate;
 import com.meterware.httpunit.scripting.ScriptingEngineFactory;
 import com.meterware.httpunit.scripting.ScriptingHandler;
@@ -29,6 +30,7 @@ import com.meterware.httpunit.parsing.HTMLParserFactory;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A collection of global options to control HttpUnit's behavior.
@@ -74,8 +76,10 @@ public abstract class HttpUnitOptions {
         _customAttributes = null;
         _javaScriptOptimizationLevel = -1;
         _checkHtmlContentType = false;
+        _compiledScriptCacheSize = DEFAULT_COMPILED_SCRIPT_CACHE_SIZE;
         setScriptEngineClassName( DEFAULT_SCRIPT_ENGINE_FACTORY );
         setScriptingEnabled( true );
+        optionsChanged();
     }
 
 
@@ -120,6 +124,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void resetDefaultCharacterSet() {
         _characterSet = HttpUnitUtils.DEFAULT_CHARACTER_SET;
+        optionsChanged();
     }
 
 
@@ -128,6 +133,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void resetDefaultContentType() {
         _contentType = DEFAULT_CONTENT_TYPE;
+        optionsChanged();
     }
 
 
@@ -137,6 +143,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setDefaultCharacterSet( String characterSet ) {
         _characterSet = characterSet;
+        optionsChanged();
     }
 
 
@@ -163,6 +170,7 @@ public abstract class HttpUnitOptions {
      */
     public static void setCheckContentLength( boolean checkContentLength ) {
         _checkContentLength = checkContentLength;
+        optionsChanged();
     }
 
 
@@ -174,6 +182,7 @@ public abstract class HttpUnitOptions {
     public static void setPostIncludesCharset( boolean postIncludesCharset )
     {
         _postIncludesCharset = postIncludesCharset;
+        optionsChanged();
     }
 
 
@@ -191,6 +200,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setDefaultContentType( String contentType ) {
         _contentType = contentType;
+        optionsChanged();
     }
 
 
@@ -258,6 +268,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setParameterValuesValidated( boolean validated ) {
         _parameterValuesValidated = validated;
+        optionsChanged();
     }
 
 
@@ -275,6 +286,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setImagesTreatedAsAltText( boolean asText ) {
         _imagesTreatedAsAltText = asText;
+        optionsChanged();
     }
 
 
@@ -293,6 +305,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setMatchesIgnoreCase( boolean ignoreCase ) {
         _matchesIgnoreCase = ignoreCase;
+        optionsChanged();
     }
 
 
@@ -309,6 +322,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setLoggingHttpHeaders( boolean enabled ) {
         _loggingHttpHeaders = enabled;
+        optionsChanged();
     }
 
 
@@ -326,6 +340,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setCheckHtmlContentType(boolean checkHtmlContentType) {
         _checkHtmlContentType = checkHtmlContentType;
+        optionsChanged();
     }
 
     /**
@@ -364,6 +379,7 @@ public abstract class HttpUnitOptions {
      **/
     public static void setRedirectDelay( int delayInMilliseconds ) {
         _redirectDelay = delayInMilliseconds;
+        optionsChanged();
     }
 
 
@@ -420,7 +436,7 @@ public abstract class HttpUnitOptions {
     }
 
 
-    public static void setScriptEngineClassName( String scriptEngineClassName ) {
+    public static synchronized void setScriptEngineClassName( String scriptEngineClassName ) {
         if (_scriptEngineClassName == null || !_scriptEngineClassName.equals( scriptEngineClassName )) {
             _scriptingEngine = null;
         }
@@ -429,6 +445,15 @@ public abstract class HttpUnitOptions {
 
 
     public static ScriptingEngineFactory getScriptingEngine() {
+        return getScriptingEngine( _scriptingEnabled );
+    }
+
+
+    /**
+     * Returns the configured scripting engine factory if enabled is true, or a factory which runs no scripts otherwise.
+     */
+    static synchronized ScriptingEngineFactory getScriptingEngine( boolean enabled ) {
+        if (!enabled) return NULL_SCRIPTING_ENGINE_FACTORY;
         if (_scriptingEngine == null) {
             try {
                 Class factoryClass = Class.forName( _scriptEngineClassName );
@@ -451,11 +476,10 @@ public abstract class HttpUnitOptions {
      * change the scriptingEnabled flag
      * @param scriptingEnabled
      */
-    public static void setScriptingEnabled( boolean scriptingEnabled ) {
-        if (scriptingEnabled != _scriptingEnabled) {
-            _scriptingEngine = scriptingEnabled ? null : NULL_SCRIPTING_ENGINE_FACTORY;
-        }
+    public static synchronized void setScriptingEnabled( boolean scriptingEnabled ) {
+        if (scriptingEnabled && !_scriptingEnabled) _scriptingEngine = null;
         _scriptingEnabled = scriptingEnabled;
+        optionsChanged();
     }
 
 
@@ -469,10 +493,11 @@ public abstract class HttpUnitOptions {
      * Determines whether script errors result in exceptions or warning messages.
      * @return the current state
      */
-    public static boolean setExceptionsThrownOnScriptError( boolean throwExceptions ) {
+    public static synchronized boolean setExceptionsThrownOnScriptError( boolean throwExceptions ) {
     	boolean current=_exceptionsThrownOnScriptError;
         _exceptionsThrownOnScriptError = throwExceptions;
-        getScriptingEngine().setThrowExceptionsOnError( throwExceptions );
+        if (_scriptingEngine != null) _scriptingEngine.setThrowExceptionsOnError( throwExceptions );
+        optionsChanged();
         return current;
     }
 
@@ -485,6 +510,28 @@ public abstract class HttpUnitOptions {
     }
 
 
+    /**
+     * Returns a count which changes whenever one of the options captured by {@link WebClientOptions} is changed.
+     */
+    static int getOptionsChangeCount() {
+        return _optionsChangeCount.get();
+    }
+
+
+    private static void optionsChanged() {
+        _optionsChangeCount.incrementAndGet();
+    }
+
+
+    /**
+     * Returns the log of script errors recorded for clients which have not been given their own options.
+     * A client with its own options keeps a separate log, returned by {@link WebClient#getScriptErrorLog}.
+     */
+    public static ScriptErrorLog getScriptErrorLog() {
+        return _scriptErrorLog;
+    }
+
+
     /**
      * Returns the accumulated script error messages encountered. Error messages are accumulated only
      * if 'throwExceptionsOnError' is disabled.
@@ -515,6 +562,8 @@ public abstract class HttpUnitOptions {
 
     private static final String DEFAULT_CONTENT_TYPE   = "text/html";
 
+    private static final int DEFAULT_COMPILED_SCRIPT_CACHE_SIZE = 256;
+
     private static final ScriptingEngineFactory NULL_SCRIPTING_ENGINE_FACTORY = new ScriptingEngineFactory() {
         public boolean isEnabled() { return false; }
         public void associate( WebResponse response ) {}
@@ -535,10 +584,11 @@ public abstract class HttpUnitOptions {
      * Add the name of a custom attribute that should be supported for form controls.
      * @deprecated for new Scripting engine
      */
-    public static void addCustomAttribute(String attributeName) {
-        if(_customAttributes == null)
-            _customAttributes = new HashSet();
-        _customAttributes.add(attributeName);
+    public static synchronized void addCustomAttribute(String attributeName) {
+        Set customAttributes = _customAttributes == null ? new HashSet() : new HashSet( _customAttributes );
+        customAttributes.add(attributeName);
+        _customAttributes = customAttributes;
+        optionsChanged();
     }
 
     /**
@@ -550,7 +600,8 @@ public abstract class HttpUnitOptions {
     }
 
 
-    private static Set _customAttributes = null;
+    /** Replaced rather than changed, so that a set returned by {@link #getCustomAttributes} never changes. **/
+    private static volatile Set _customAttributes = null;
 
     private static boolean _exceptionsOnErrorStatus = true;
 
@@ -579,11 +630,17 @@ public abstract class HttpUnitOptions {
     private static boolean _scriptingEnabled = true;
 
     private static boolean _exceptionsThrownOnScriptError = true;
+
+    private static final ScriptErrorLog _scriptErrorLog = new ScriptErrorLog();
     
     private static int _javaScriptOptimizationLevel = -1;
 
     private static boolean _checkHtmlContentType = false;
 
+    private static volatile int _compiledScriptCacheSize = DEFAULT_COMPILED_SCRIPT_CACHE_SIZE;
+
+    private static final AtomicInteger _optionsChangeCount = new AtomicInteger();
+
 
     static {
         reset();
@@ -613,5 +670,26 @@ public abstract class HttpUnitOptions {
 		public static void setJavaScriptOptimizationLevel(
 				int scriptOptimizationLevel) {
 			_javaScriptOptimizationLevel = scriptOptimizationLevel;
+			optionsChanged();
+		}
+
+
+		/**
+		 * Returns the maximum number of compiled scripts kept for reuse.
+		 * @since 1.7.3
+		 */
+		public static int getCompiledScriptCacheSize() {
+			return _compiledScriptCacheSize;
+		}
+
+
+		/**
+		 * Specifies the maximum number of compiled scripts kept for reuse. Scripts and event handlers
+		 * which appear on many pages, such as those in included libraries, are compiled once
+		 * and then shared by all conversations. A value of zero disables the cache. The default is 256.
+		 * @since 1.7.3
+		 */
+		public static void setCompiledScriptCacheSize( int compiledScriptCacheSize ) {
+			_compiledScriptCacheSize = compiledScriptCacheSize;
 		}
 }
@@ -309,10 +309,10 @@ public class HttpUnitUtils {
 
     /**
      * Return true if the first string contains the second.
-     * Case sensitivity is according to the setting of HttpUnitOptions.matchesIgnoreCase
+     * Case sensitivity is according to the matchesIgnoreCase setting of the specified options.
      */
-    static boolean contains( String string, String substring ) {
-        if (HttpUnitOptions.getMatchesIgnoreCase()) {
+    static boolean contains( WebClientOptions options, String string, String substring ) {
+        if (options.isMatchesIgnoreCase()) {
             return string.toUpperCase().indexOf( substring.toUpperCase() ) >= 0;
         } else {
             return string.indexOf( substring ) >= 0;
@@ -322,10 +322,10 @@ public class HttpUnitUtils {
 
     /**
      * Return true if the first string starts with the second.
-     * Case sensitivity is according to the setting of HttpUnitOptions.matchesIgnoreCase
+     * Case sensitivity is according to the matchesIgnoreCase setting of the specified options.
      */
-    static boolean hasPrefix( String string, String prefix ) {
-        if (HttpUnitOptions.getMatchesIgnoreCase()) {
+    static boolean hasPrefix( WebClientOptions options, String string, String prefix ) {
+        if (options.isMatchesIgnoreCase()) {
             return string.toUpperCase().startsWith( prefix.toUpperCase() );
         } else {
             return string.startsWith( prefix );
@@ -335,10 +335,10 @@ public class HttpUnitUtils {
 
     /**
      * Return true if the first string equals the second.
-     * Case sensitivity is according to the setting of HttpUnitOptions.matchesIgnoreCase
+     * Case sensitivity is according to the matchesIgnoreCase setting of the specified options.
      */
-    static boolean matches( String string1, String string2 ) {
-        if (HttpUnitOptions.getMatchesIgnoreCase()) {
+    static boolean matches( WebClientOptions options, String string1, String string2 ) {
+        if (options.isMatchesIgnoreCase()) {
             return string1.equalsIgnoreCase( string2 );
         } else {
             return string1.equals( string2 );
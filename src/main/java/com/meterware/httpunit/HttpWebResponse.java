@@ -52,8 +52,25 @@ class HttpWebResponse extends WebResponse {
      * @param connection the URL connection from which the response can be read
      **/
     HttpWebResponse( WebConversation client, FrameSelector frame, URL url, URLConnection connection, boolean throwExceptionOnError ) throws IOException {
+        this( client, frame, url, connection, throwExceptionOnError, false );
+    }
+
+
+    HttpWebResponse( WebConversation client, FrameSelector frame, WebRequest request, URLConnection connection, boolean throwExceptionOnError ) throws IOException {
+        this( client, frame, request.getURL(), connection, throwExceptionOnError, isStreamingRequested( client, request ) );
+        super.setWithParse(!request.getMethod().equals("HEAD"));
+        _referer = request.getReferer();
+    }
+
+
+    /**
+     * Constructs a response object from an input stream.
+     * @param streaming if true, the body of a response which is not HTML is left unread,
+     *                  to be read by the caller from {@link #getInputStream}
+     **/
+    private HttpWebResponse( WebConversation client, FrameSelector frame, URL url, URLConnection connection, boolean throwExceptionOnError, boolean streaming ) throws IOException {
         super( client, frame, url );
-        if (HttpUnitOptions.isLoggingHttpHeaders()) System.out.println( "\nReceived from " + url );
+        if (getOptions().isLoggingHttpHeaders()) System.out.println( "\nReceived from " + url );
         readHeaders( connection );
 
         /** make sure that any IO exception for HTML received page happens here, not later. **/
@@ -61,20 +78,39 @@ class HttpWebResponse extends WebResponse {
         	InputStream inputStream = getInputStream( connection );
             defineRawInputStream( new BufferedInputStream( inputStream ) );
             String contentType = getContentType();
-            if (contentType.startsWith( "text" ))	{
+            if (contentType.startsWith( "text" ) && !(streaming && !isHTML()))	{
             	loadResponseText();
             }
+        } else {
+            discardBody( connection );
         }
     }
 
 
-    HttpWebResponse( WebConversation client, FrameSelector frame, WebRequest request, URLConnection connection, boolean throwExceptionOnError ) throws IOException {
-        this( client, frame, request.getURL(), connection, throwExceptionOnError );
-        super.setWithParse(!request.getMethod().equals("HEAD"));
-        _referer = request.getReferer();
+    /**
+     * Reads and discards the body of a response which will not be examined, so that its connection may be reused.
+     * If the body cannot be read, closing the stream closes the connection instead.
+     */
+    private void discardBody( URLConnection connection ) {
+        try {
+            InputStream inputStream = getInputStream( connection );
+            if (inputStream == null) return;
+            try {
+                byte[] buffer = new byte[ 4096 ];
+                while (inputStream.read( buffer ) != -1);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            // the connection cannot be reused; nothing more to do
+        }
     }
 
 
+    private static boolean isStreamingRequested( WebConversation client, WebRequest request ) {
+        return request.isStreamingResponse() || (client != null && client.getClientProperties().isStreamingResponses());
+    }
+
 
     /**
      * get the input stream for the given connection 
@@ -262,14 +298,15 @@ class HttpWebResponse extends WebResponse {
 
 
     private void loadHeaders( URLConnection connection ) {
-        if (HttpUnitOptions.isLoggingHttpHeaders()) {
+        boolean loggingHttpHeaders = getOptions().isLoggingHttpHeaders();
+        if (loggingHttpHeaders) {
             System.out.println( "Header:: " + connection.getHeaderField(0) );
         }
         for (int i = 1; true; i++) {
             String headerFieldKey = connection.getHeaderFieldKey( i );
             String headerField = connection.getHeaderField(i);
             if (headerFieldKey == null || headerField == null) break;
-            if (HttpUnitOptions.isLoggingHttpHeaders()) {
+            if (loggingHttpHeaders) {
                 System.out.println( "Header:: " + headerFieldKey + ": " + headerField );
             }
             addHeader( headerFieldKey.toUpperCase(), headerField );
@@ -28,7 +28,7 @@ import java.util.Stack;
 import java.util.Iterator;
 import java.util.ListIterator;
 
-import com.meterware.httpunit.parsing.HTMLParserFactory;
+import com.meterware.httpunit.parsing.HTMLParser;
 
 
 /**
@@ -133,6 +133,17 @@ public class NodeUtils {
      * any HTML tags.
      **/
     public static String asText( NodeList rootNodes ) {
+        return asText( rootNodes, WebClientOptions.getDefaults() );
+    }
+
+
+    /**
+     * Converts the DOM trees rooted at the specified nodes to text, ignoring
+     * any HTML tags, as directed by the specified options.
+     **/
+    static String asText( NodeList rootNodes, WebClientOptions options ) {
+        final boolean imagesTreatedAsAltText = options.isImagesTreatedAsAltText();
+        final HTMLParser parser = options.getHTMLParser();
         final StringBuffer sb = new StringBuffer(HttpUnitUtils.DEFAULT_TEXT_BUFFER_SIZE);
         NodeAction action = new NodeAction() {
             public boolean processElement( PreOrderTraversal traversal, Element node ) {
@@ -141,13 +152,13 @@ public class NodeUtils {
                     sb.append( "\n" );
                 } else if (nodeName.equals( "td" ) || nodeName.equalsIgnoreCase( "th" )) {
                     sb.append( " | " );
-                } else if (nodeName.equals( "img" ) && HttpUnitOptions.getImagesTreatedAsAltText()) {
+                } else if (nodeName.equals( "img" ) && imagesTreatedAsAltText) {
                     sb.append( getNodeAttribute( node, "alt" ) );
                 }
                 return true;
             }
             public void processTextNode( PreOrderTraversal traversal, Node textNode ) {
-                sb.append( HTMLParserFactory.getHTMLParser().getCleanedText( textNode.getNodeValue() ) );
+                sb.append( parser.getCleanedText( textNode.getNodeValue() ) );
             }
         };
         new PreOrderTraversal( rootNodes ).perform( action );
@@ -172,6 +183,16 @@ public class NodeUtils {
         }
 
 
+        /**
+         * Returns a traversal which visits the specified node as well as its descendants.
+         */
+        static PreOrderTraversal forSubtree( Node subtreeRoot ) {
+            PreOrderTraversal traversal = new PreOrderTraversal( (NodeList) null );
+            traversal._pendingNodes.push( subtreeRoot );
+            return traversal;
+        }
+
+
         public void pushBaseContext( Object context ) {
             _traversalContext.push( context );
         }
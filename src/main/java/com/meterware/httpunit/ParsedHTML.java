@@ -30,9 +30,15 @@ import java.net.URL;
 import java.util.*;
 import java.io.IOException;
 
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
 import javax.management.RuntimeErrorException;
 
+import com.meterware.httpunit.scripting.ScriptErrorLog;
 import com.meterware.httpunit.scripting.ScriptableDelegate;
+import com.meterware.httpunit.dom.DomMutationListener;
 import com.meterware.httpunit.dom.HTMLContainerElement;
 import com.meterware.httpunit.dom.HTMLDocumentImpl;
 import com.meterware.httpunit.dom.HTMLControl;
@@ -84,6 +90,11 @@ public class ParsedHTML {
     private ArrayList    _frameList = new ArrayList();
     private WebFrame[]   _frames;
 
+    /** true if the maps and lists are kept current by listening to changes in the document. **/
+    private boolean      _trackingMutations;
+
+    /** nodes attached to the document whose elements have not yet been recorded, in the order attached. **/
+    private LinkedHashSet _attachedNodes = new LinkedHashSet();
 
 
     ParsedHTML( WebResponse response, FrameSelector frame, URL baseURL, String baseTarget, Node rootNode, String characterSet ) {
@@ -297,20 +308,42 @@ public class ParsedHTML {
     }
 
 
+    /**
+     * Returns the HTML elements matching the specified XPath, in document order. The path is evaluated relative
+     * to the root of this segment.
+     * @param xpath the XPath expression to evaluate
+     * @throws XPathExpressionException if the expression is invalid
+     */
+    public HTMLElement[] getElementsMatchingXPath( String xpath ) throws XPathExpressionException {
+        loadElements();
+        NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate( xpath, _rootNode, XPathConstants.NODESET );
+        ArrayList elements = new ArrayList();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item( i ) instanceof Element) elements.add( getRegisteredElement( nodes.item( i ) ) );
+        }
+        return (HTMLElement[]) elements.toArray( new HTMLElement[ elements.size() ] );
+    }
+
+
     private HTMLElement[] getElementsFromList( NodeList nl ) {
         HTMLElement[] elements = new HTMLElement[ nl.getLength() ];
         for (int i = 0; i < elements.length; i++) {
-            Node node = nl.item(i);
-            elements[i] = (HTMLElement) _registry.getRegisteredElement( node );
-            if (elements[i] == null) {
-                elements[i] = toDefaultElement( (Element) node );
-                _registry.registerElement( node, elements[i] );
-            }
+            elements[i] = getRegisteredElement( nl.item(i) );
         }
         return elements;
     }
 
 
+    private HTMLElement getRegisteredElement( Node node ) {
+        HTMLElement element = (HTMLElement) _registry.getRegisteredElement( node );
+        if (element == null) {
+            element = toDefaultElement( (Element) node );
+            _registry.registerElement( node, element );
+        }
+        return element;
+    }
+
+
     /**
      * Returns the form found in the page with the specified ID.
      **/
@@ -377,7 +410,7 @@ public class ParsedHTML {
      * @param element
      */
     void interpretScriptElement( Element element ) {
-        if (!HttpUnitOptions.isScriptingEnabled()) {
+        if (!_response.getOptions().isScriptingEnabled()) {
             _enableNoScriptNodes = true;
             return;
         }
@@ -405,7 +438,7 @@ public class ParsedHTML {
     private String getScript( Node scriptNode ) {
         String scriptLocation = NodeUtils.getNodeAttribute( scriptNode, "src", null );
         if (scriptLocation == null) {
-            return NodeUtils.asText( scriptNode.getChildNodes() );
+            return NodeUtils.asText( scriptNode.getChildNodes(), _response.getOptions() );
         } else {
             try {
                 return getIncludedScript( scriptLocation );
@@ -439,9 +472,11 @@ public class ParsedHTML {
         	// in this case the text would be an error message
         	// we do not return it but set the 
         	ScriptException se=new ScriptException("reponseCode "+code+" on getIncludedScript for src='"+srcAttribute+"'");
-        	String badScript=null;
-        	// let scripting engine decide what to do with this exception (throw it or remember it ...)
-        	HttpUnitOptions.getScriptingEngine().handleScriptException(se, badScript);
+        	// throw it or remember it, as the client's options ask
+        	if (_response.getOptions().isExceptionsThrownOnScriptError()) throw se;
+        	WebClient client = _response.getClient();
+        	ScriptErrorLog log = client == null ? HttpUnitOptions.getScriptErrorLog() : client.getScriptErrorLog();
+        	log.addErrorMessage( se.getMessage() );
         	return "";
         }
     }
@@ -527,6 +562,7 @@ public class ParsedHTML {
         return new HTMLElementBase( element ) {
             public ScriptableDelegate newScriptable() { return new HTMLElementScriptable( this ); }
             public ScriptableDelegate getParentDelegate() { return getResponse().getDocumentScriptable(); }
+            protected WebClientOptions getOptions() { return getResponse().getOptions(); }
         };
     }
 
@@ -778,33 +814,196 @@ public class ParsedHTML {
 
 
     private void loadElements() {
-        if (!_updateElements) return;
+        if (_updateElements) {
+            _attachedNodes.clear();
+            NodeUtils.PreOrderTraversal nt = new NodeUtils.PreOrderTraversal( getRootNode() );
+            nt.pushBaseContext( this );
+            nt.perform( new ElementLoader() );
+            _updateElements = false;
+        }
+        loadAttachedNodes();
+    }
+
+
+    /**
+     * Records the elements in those subtrees which have been attached to the document since the last load.
+     * Each is traversed with the contexts which its ancestors would have established during a traversal of the whole
+     * document, so that the result is the same as if the document had been traversed again.
+     */
+    private void loadAttachedNodes() {
+        while (!_attachedNodes.isEmpty()) {
+            Set attachedNodes = _attachedNodes;
+            _attachedNodes = new LinkedHashSet();
+            for (Iterator i = attachedNodes.iterator(); i.hasNext();) {
+                Node node = (Node) i.next();
+                if (!isAttachedSubtreeRoot( node, attachedNodes )) continue;
+
+                NodeUtils.PreOrderTraversal pot = NodeUtils.PreOrderTraversal.forSubtree( node );
+                pot.pushBaseContext( this );
+                pushAncestorContexts( pot, node.getParentNode() );
+                pot.perform( new ElementLoader() );
+            }
+        }
+    }
+
+
+    /**
+     * Returns true if the specified node is still in the document and is not inside another of the attached nodes,
+     * whose traversal will include it.
+     */
+    private boolean isAttachedSubtreeRoot( Node node, Set attachedNodes ) {
+        for (Node parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+            if (parent == _rootNode) return true;
+            if (attachedNodes.contains( parent )) return false;
+        }
+        return false;
+    }
+
+
+    private void pushAncestorContexts( NodeUtils.PreOrderTraversal pot, Node node ) {
+        if (node == null || node == _rootNode) return;
+        pushAncestorContexts( pot, node.getParentNode() );
+        if (node.getNodeType() != Node.ELEMENT_NODE) return;
+
+        HTMLElementFactory factory = getHTMLElementFactory( node.getNodeName().toLowerCase() );
+        if (!factory.isRecognized( getClientProperties() )) return;
+        if (pot.getClosestContext( ContentConcealer.class ) != null) return;
+        if (factory.addToContext()) pot.pushBaseContext( _registry.getRegisteredElement( node ) );
+    }
+
+
+    /**
+     * Removes the elements in a subtree which is being detached from the document from this page, as well as from
+     * any enclosing block elements which recorded them.
+     */
+    private void removeElements( Node subtreeRoot ) {
+        removeElements( getContainers( subtreeRoot ), subtreeRoot );
+    }
+
+
+    /**
+     * Returns this page and the enclosing block elements of the specified node; these are the containers
+     * which recorded the element for the node, if any.
+     */
+    private List getContainers( Node node ) {
+        ArrayList containers = new ArrayList();
+        containers.add( this );
+        for (Node ancestor = node.getParentNode(); ancestor != null && ancestor != _rootNode; ancestor = ancestor.getParentNode()) {
+            Object element = _registry.getRegisteredElement( ancestor );
+            if (element instanceof ParsedHTML) containers.add( element );
+        }
+        return containers;
+    }
+
+
+    private void removeElements( List containers, Node node ) {
+        HTMLElement htmlElement = (HTMLElement) _registry.getRegisteredElement( node );
+        if (htmlElement != null) {
+            for (Iterator i = containers.iterator(); i.hasNext();) {
+                ((ParsedHTML) i.next()).removeFromMaps( node, htmlElement );
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            removeElements( containers, child );
+        }
+    }
+
+
+    class ElementLoader implements NodeUtils.NodeAction {
+
+        public boolean processElement( NodeUtils.PreOrderTraversal pot, Element element ) {
+            HTMLElementFactory factory = getHTMLElementFactory( element.getNodeName().toLowerCase() );
+            if (factory == null || !factory.isRecognized( getClientProperties() )) return true;
+            if (pot.getClosestContext( ContentConcealer.class ) != null) return true;
+
+            if (!_registry.hasNode( element )) factory.recordElement( pot, element, ParsedHTML.this );
+            if (factory.addToContext()) pot.pushContext( _registry.getRegisteredElement( element ) );
+
+            return true;
+        }
+
+
+        public void processTextNode( NodeUtils.PreOrderTraversal pot, Node textNode ) {
+            if (textNode.getNodeValue().trim().length() == 0) return;
+
+            Node parent = textNode.getParentNode();
+            if (!parent.getNodeName().equalsIgnoreCase( "body" )) return;
+            if (pot.getClosestContext( ContentConcealer.class ) != null) return;
+            new HtmlElementRecorder().recordHtmlElement( pot, textNode, newTextBlock( textNode ) );
+        }
+    }
+
+
+    /**
+     * Keeps the elements of this page current as the document changes, so that it need not be traversed again.
+     */
+    class MutationTracker implements DomMutationListener {
+
+        public void nodeAttached( Node node ) {
+            if (!_updateElements) _attachedNodes.add( node );
+            clearCaches();
+        }
+
+
+        public void nodeDetached( Node node ) {
+            removeElements( node );
+            clearCaches();
+        }
 
-        NodeUtils.NodeAction action = new NodeUtils.NodeAction() {
-            public boolean processElement( NodeUtils.PreOrderTraversal pot, Element element ) {
-                HTMLElementFactory factory = getHTMLElementFactory( element.getNodeName().toLowerCase() );
-                if (factory == null || !factory.isRecognized( getClientProperties() )) return true;
-                if (pot.getClosestContext( ContentConcealer.class ) != null) return true;
 
-                if (!_registry.hasNode( element )) factory.recordElement( pot, element, ParsedHTML.this );
-                if (factory.addToContext()) pot.pushContext( _registry.getRegisteredElement( element ) );
+        public void attributeChanging( Element element, String attributeName ) {
+            if (!isKeyAttribute( attributeName )) return;
+            HTMLElement htmlElement = (HTMLElement) _registry.getRegisteredElement( element );
+            if (htmlElement == null) return;
 
-                return true;
+            for (Iterator i = getContainers( element ).iterator(); i.hasNext();) {
+                ((ParsedHTML) i.next()).removeKey( htmlElement, attributeName );
             }
-            public void processTextNode( NodeUtils.PreOrderTraversal pot, Node textNode ) {
-                if (textNode.getNodeValue().trim().length() == 0) return;
+        }
+
 
-                Node parent = textNode.getParentNode();
-                if (!parent.getNodeName().equalsIgnoreCase( "body" )) return;
-                if (pot.getClosestContext( ContentConcealer.class ) != null) return;
-                new HtmlElementRecorder().recordHtmlElement( pot, textNode, newTextBlock( textNode ) );
+        public void attributeChanged( Element element, String attributeName ) {
+            if (!isKeyAttribute( attributeName )) return;
+            HTMLElement htmlElement = (HTMLElement) _registry.getRegisteredElement( element );
+            if (htmlElement == null) return;
+
+            for (Iterator i = getContainers( element ).iterator(); i.hasNext();) {
+                ((ParsedHTML) i.next()).addKey( htmlElement, attributeName );
             }
-        };
-        NodeUtils.PreOrderTraversal nt = new NodeUtils.PreOrderTraversal( getRootNode() );
-        nt.pushBaseContext( this );
-        nt.perform( action );
+        }
+
+
+        private boolean isKeyAttribute( String attributeName ) {
+            return attributeName.equals( "id" ) || attributeName.equals( "name" ) || attributeName.equals( "class" );
+        }
+    }
+
+
+    /**
+     * Removes an element from this container's map for one of its attributes, under the key it has before the attribute changes.
+     */
+    private void removeKey( HTMLElement htmlElement, String attributeName ) {
+        if (attributeName.equals( "id" )) {
+            if (htmlElement.getID() != null && _elementsByID.get( htmlElement.getID() ) == htmlElement) _elementsByID.remove( htmlElement.getID() );
+        } else if (attributeName.equals( "name" )) {
+            if (htmlElement.getName() != null) removeFromList( _elementsByName, htmlElement.getName(), htmlElement );
+        } else if (attributeName.equals( "class" )) {
+            if (htmlElement.getClassName() != null) removeClassifiedElement( htmlElement.getClassName(), htmlElement );
+        }
+    }
 
-        _updateElements = false;
+
+    /**
+     * Adds an element to this container's map for one of its attributes, under the key it has after the attribute has changed.
+     */
+    private void addKey( HTMLElement htmlElement, String attributeName ) {
+        if (attributeName.equals( "id" )) {
+            if (htmlElement.getID() != null) _elementsByID.put( htmlElement.getID(), htmlElement );
+        } else if (attributeName.equals( "name" )) {
+            if (htmlElement.getName() != null) addNamedElement( htmlElement.getName(), htmlElement );
+        } else if (attributeName.equals( "class" )) {
+            if (htmlElement.getClassName() != null) addClassifiedElement( htmlElement.getClassName(), htmlElement );
+        }
     }
 
 
@@ -903,20 +1102,23 @@ public class ParsedHTML {
         _registry.registerElement( node, htmlElement );
         if (htmlElement.getID() != null) _elementsByID.put( htmlElement.getID(), htmlElement );
         if (htmlElement.getName() != null) addNamedElement( htmlElement.getName(), htmlElement );
-        if (htmlElement.getClassName() != null) {
-            StringTokenizer tokenizer = new StringTokenizer(htmlElement.getClassName());
-            String token;
-            
-            while(tokenizer.hasMoreElements()) {
-            	token = tokenizer.nextToken();
-       		
-            	if ( _elementsByClass.containsKey( token )) {
-                	((ArrayList) _elementsByClass.get( token )).add( htmlElement );
-            	} else {
-                	ArrayList arrayList = new ArrayList();
-                	arrayList.add(htmlElement);
-                    _elementsByClass.put( token, arrayList );
-            	}
+        if (htmlElement.getClassName() != null) addClassifiedElement( htmlElement.getClassName(), htmlElement );
+    }
+
+
+    private void addClassifiedElement( String className, HTMLElement htmlElement ) {
+        StringTokenizer tokenizer = new StringTokenizer( className );
+        String token;
+
+        while(tokenizer.hasMoreElements()) {
+            token = tokenizer.nextToken();
+
+            if ( _elementsByClass.containsKey( token )) {
+                addInDocumentOrder( (ArrayList) _elementsByClass.get( token ), htmlElement );
+            } else {
+                ArrayList arrayList = new ArrayList();
+                arrayList.add(htmlElement);
+                _elementsByClass.put( token, arrayList );
             }
         }
     }
@@ -925,13 +1127,101 @@ public class ParsedHTML {
     private void addNamedElement( String name, HTMLElement htmlElement ) {
         List list = (List) _elementsByName.get( name );
         if (list == null) _elementsByName.put( name, list = new ArrayList() );
-        list.add( htmlElement );
+        addInDocumentOrder( list, htmlElement );
+    }
+
+
+    private void removeFromMaps( Node node, HTMLElement htmlElement ) {
+        _registry.removeElement( node );
+        if (htmlElement.getID() != null && _elementsByID.get( htmlElement.getID() ) == htmlElement) _elementsByID.remove( htmlElement.getID() );
+        if (htmlElement.getName() != null) removeFromList( _elementsByName, htmlElement.getName(), htmlElement );
+        if (htmlElement.getClassName() != null) removeClassifiedElement( htmlElement.getClassName(), htmlElement );
+
+        ArrayList list = getListForElement( htmlElement );
+        if (list != null) list.remove( htmlElement );
+    }
+
+
+    private void removeFromList( HashMap map, String key, HTMLElement htmlElement ) {
+        List list = (List) map.get( key );
+        if (list == null) return;
+        list.remove( htmlElement );
+        if (list.isEmpty()) map.remove( key );
+    }
+
+
+    private void removeClassifiedElement( String className, HTMLElement htmlElement ) {
+        StringTokenizer tokenizer = new StringTokenizer( className );
+        while (tokenizer.hasMoreTokens()) removeFromList( _elementsByClass, tokenizer.nextToken(), htmlElement );
     }
 
 
     private void addToList( HTMLElement htmlElement ) {
         ArrayList list = getListForElement( htmlElement );
-        if (list != null) list.add( htmlElement );
+        if (list != null) addInDocumentOrder( list, htmlElement );
+    }
+
+
+    /**
+     * Adds an element to a list of elements kept in document order. Elements are normally found in document order,
+     * so the element is appended unless it precedes the last one, as when a subtree has been inserted before elements
+     * already recorded; it is then placed by binary search.
+     */
+    private static void addInDocumentOrder( List list, HTMLElement htmlElement ) {
+        Node node = htmlElement.getNode();
+        int low = 0;
+        int high = list.size() - 1;
+        if (high < 0 || node == null || !precedes( node, ((HTMLElement) list.get( high )).getNode() )) {
+            list.add( htmlElement );
+            return;
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (precedes( node, ((HTMLElement) list.get( mid )).getNode() )) {
+                high = mid;
+            } else {
+                low = mid+1;
+            }
+        }
+        list.add( low, htmlElement );
+    }
+
+
+    /**
+     * Returns true if the first node comes before the second in document order. A node comes before its descendants.
+     * The siblings around the point where their ancestries diverge are searched in both directions at once, so the
+     * cost depends on how far apart the nodes are rather than on how many siblings there are.
+     */
+    private static boolean precedes( Node node, Node other ) {
+        if (node == null || other == null || node == other) return false;
+        List path = getPathFromRoot( node );
+        List otherPath = getPathFromRoot( other );
+
+        int depth = 0;
+        while (depth < path.size() && depth < otherPath.size() && path.get( depth ) == otherPath.get( depth )) depth++;
+        if (depth == 0) return false;
+        if (depth == path.size()) return true;
+        if (depth == otherPath.size()) return false;
+
+        Node branch = (Node) path.get( depth );
+        Node otherBranch = (Node) otherPath.get( depth );
+        Node next = branch.getNextSibling();
+        Node previous = branch.getPreviousSibling();
+        while (next != null || previous != null) {
+            if (next == otherBranch) return true;
+            if (previous == otherBranch) return false;
+            if (next != null) next = next.getNextSibling();
+            if (previous != null) previous = previous.getPreviousSibling();
+        }
+        return false;
+    }
+
+
+    private static List getPathFromRoot( Node node ) {
+        ArrayList path = new ArrayList();
+        for (; node != null; node = node.getParentNode()) path.add( node );
+        Collections.reverse( path );
+        return path;
     }
 
 
@@ -999,7 +1289,7 @@ public class ParsedHTML {
     public WebImage getImageWithName( String name ) {
         WebImage[] images = getImages();
         for (int i = 0; i < images.length; i++) {
-            if (HttpUnitUtils.matches( name, images[i].getName() )) return images[i];
+            if (HttpUnitUtils.matches( _response.getOptions(), name, images[i].getName() )) return images[i];
         }
         return null;
     }
@@ -1011,7 +1301,7 @@ public class ParsedHTML {
     public WebImage getImageWithSource( String source ) {
         WebImage[] images = getImages();
         for (int i = 0; i < images.length; i++) {
-            if (HttpUnitUtils.matches( source, images[i].getSource() )) return images[i];
+            if (HttpUnitUtils.matches( _response.getOptions(), source, images[i].getSource() )) return images[i];
         }
         return null;
     }
@@ -1023,7 +1313,7 @@ public class ParsedHTML {
     public WebImage getImageWithAltText( String altText ) {
         WebImage[] images = getImages();
         for (int i = 0; i < images.length; i++) {
-            if (HttpUnitUtils.matches( altText, images[i].getAltText() )) return images[i];
+            if (HttpUnitUtils.matches( _response.getOptions(), altText, images[i].getAltText() )) return images[i];
         }
         return null;
     }
@@ -1115,16 +1405,23 @@ public class ParsedHTML {
         if (_rootNode != null && rootNode != _rootNode )
             throw new IllegalStateException( "The root node has already been defined as " + _rootNode + " and cannot be redefined as " + rootNode );
         _rootNode = rootNode;
-        if (rootNode instanceof HTMLDocumentImpl) ((HTMLDocumentImpl) rootNode).setIFramesEnabled( getClientProperties().isIframeSupported());
+        if (rootNode instanceof HTMLDocumentImpl) {
+            ((HTMLDocumentImpl) rootNode).setIFramesEnabled( getClientProperties().isIframeSupported());
+            if (!_trackingMutations) ((HTMLDocumentImpl) rootNode).addMutationListener( new MutationTracker() );
+            _trackingMutations = true;
+        }
         clearCaches();
     }
 
 
+    /**
+     * Discards the cached element arrays. Unless the document is being tracked, the elements must be loaded again as well.
+     */
     private void clearCaches() {
         _tables = null;
         _frames = null;
         _blocks = null;
-        _updateElements = true;
+        if (!_trackingMutations) _updateElements = true;
     }
 
 
@@ -1261,6 +1558,11 @@ public class ParsedHTML {
         public ScriptableDelegate getParentDelegate() {
             return null;
         }
+
+
+        protected WebClientOptions getOptions() {
+            return getResponse().getOptions();
+        }
     }
 
 }
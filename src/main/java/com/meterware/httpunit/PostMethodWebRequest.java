@@ -110,7 +110,8 @@ public class PostMethodWebRequest extends MessageBodyWebRequest {
 
     protected MessageBody getMessageBody() {
         if (_body == null) {
-            _body = MessageBody.createPostMethodMessageBody( isMimeEncoded(), getCharacterSet() );
+            _body = MessageBody.createPostMethodMessageBody( isMimeEncoded(), getCharacterSet(),
+                                                             getOptions().isPostIncludesCharset() );
         }
         return _body;
     }
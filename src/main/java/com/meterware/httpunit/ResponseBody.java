@@ -0,0 +1,140 @@
+package com.meterware.httpunit;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+
+/**
+ * The body of a response, held as a single byte buffer. Streams over the body share the buffer rather than copying it,
+ * and the text is decoded only when first requested.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class ResponseBody {
+
+    private final static int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    /** The largest buffer allocated before any data arrives, whatever length the server declares. **/
+    private final static int MAX_INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private byte[] _buffer;
+    private int    _length;
+
+
+    /**
+     * Reads a body from the specified stream, stopping at the end of the stream or after maxBytes have been read.
+     * When the length is not known, the buffer is sized from the bytes the stream reports as available, so that
+     * a body which is already in memory is copied only once. The declared length is not trusted beyond
+     * a modest initial size; larger bodies grow the buffer as their data arrives.
+     * @param expectedLength the number of bytes expected, or -1 if not known
+     */
+    static ResponseBody read( InputStream inputStream, int expectedLength, int maxBytes ) throws IOException {
+        int initialSize = expectedLength < 0 ? Math.max( DEFAULT_BUFFER_SIZE, inputStream.available() )
+                                             : Math.min( expectedLength, MAX_INITIAL_BUFFER_SIZE );
+        ResponseBody body = new ResponseBody( Math.min( initialSize, maxBytes ) );
+        body.readFrom( inputStream, maxBytes );
+        return body;
+    }
+
+
+    /**
+     * Returns the buffer holding the body. Only the first {@link #getLength} bytes are valid.
+     */
+    byte[] getBuffer() {
+        return _buffer;
+    }
+
+
+    int getLength() {
+        return _length;
+    }
+
+
+    /**
+     * Returns the body as an exactly sized array. The buffer is trimmed the first time this is called,
+     * so that later calls do not copy it again.
+     */
+    byte[] getBytes() {
+        if (_buffer.length != _length) {
+            byte[] trimmed = new byte[ _length ];
+            System.arraycopy( _buffer, 0, trimmed, 0, _length );
+            _buffer = trimmed;
+        }
+        return _buffer;
+    }
+
+
+    /**
+     * Returns a new stream over the body, which shares its buffer.
+     */
+    InputStream newInputStream() {
+        return new ByteArrayInputStream( _buffer, 0, _length );
+    }
+
+
+    /**
+     * Decodes the body using the specified character set.
+     */
+    String getText( String characterSet ) throws UnsupportedEncodingException {
+        return new String( _buffer, 0, _length, characterSet );
+    }
+
+
+    private ResponseBody( int initialSize ) {
+        _buffer = new byte[ Math.max( initialSize, 0 ) ];
+    }
+
+
+    private void readFrom( InputStream inputStream, int maxBytes ) throws IOException {
+        while (_length < maxBytes) {
+            if (_length == _buffer.length && !growIfMoreData( inputStream, maxBytes )) break;
+            int count = inputStream.read( _buffer, _length, Math.min( _buffer.length, maxBytes ) - _length );
+            if (count == -1) break;
+            _length += count;
+        }
+    }
+
+
+    /**
+     * Called when the buffer is full. Grows it only if the stream has more data, so that a buffer which was sized
+     * exactly is never reallocated.
+     */
+    private boolean growIfMoreData( InputStream inputStream, int maxBytes ) throws IOException {
+        int nextByte = inputStream.read();
+        if (nextByte == -1) return false;
+        grow( maxBytes );
+        _buffer[ _length++ ] = (byte) nextByte;
+        return _length < maxBytes;
+    }
+
+
+    private void grow( int maxBytes ) {
+        int newSize = Math.max( _buffer.length * 2, DEFAULT_BUFFER_SIZE );
+        if (newSize < 0 || newSize > maxBytes) newSize = maxBytes;
+        byte[] newBuffer = new byte[ newSize ];
+        System.arraycopy( _buffer, 0, newBuffer, 0, _length );
+        _buffer = newBuffer;
+    }
+
+}
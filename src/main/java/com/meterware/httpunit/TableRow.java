@@ -68,4 +68,9 @@ public class TableRow extends HTMLElementBase {
     public ScriptableDelegate getParentDelegate() {
         return _webTable.getParentDelegate();
     }
+
+
+    protected WebClientOptions getOptions() {
+        return _webTable.getOptions();
+    }
 }
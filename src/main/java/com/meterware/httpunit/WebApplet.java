@@ -214,4 +214,9 @@ public class WebApplet extends HTMLElementBase {
         return _response.getDocumentScriptable();
     }
 
+
+    protected WebClientOptions getOptions() {
+        return _response.getOptions();
+    }
+
 }
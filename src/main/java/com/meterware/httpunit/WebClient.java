@@ -27,11 +27,17 @@ import java.net.URL;
 import java.net.PasswordAuthentication;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.xml.sax.SAXException;
 
 import com.meterware.httpunit.cookies.Cookie;
 import com.meterware.httpunit.cookies.CookieJar;
+import com.meterware.httpunit.scripting.ScriptErrorLog;
 
 
 /**
@@ -55,8 +61,11 @@ public class WebClient {
     /** An authorization string to be sent with every request, whether challenged or not. May be null. **/
     private String _fixedAuthorizationString;
 
-    /** An authorization string to be sent with the next request only. May be null. **/
-    private String _authorizationString;
+    /**
+     * An authorization string to be sent with the next request from the current thread only. Kept per thread,
+     * since the frames of a page may be loaded concurrently, each answering its own challenge.
+     **/
+    private final ThreadLocal _authorizationString = new ThreadLocal();
 
     private String _proxyAuthorizationString;
     private Hashtable _credentials = new Hashtable();
@@ -222,6 +231,37 @@ public class WebClient {
     }
 
 
+    /**
+     * Returns the options which control how this client reads, parses and scripts responses. Unless options have been
+     * specified for this client, these reflect the current values in {@link HttpUnitOptions}.
+     * @since 1.7.3
+     */
+    public WebClientOptions getOptions() {
+        WebClientOptions options = _options;
+        return options != null ? options : WebClientOptions.getDefaults();
+    }
+
+
+    /**
+     * Specifies the options to be used by this client in place of the static defaults.
+     * @param options the options to use, or null to follow the defaults in {@link HttpUnitOptions} again
+     * @since 1.7.3
+     */
+    public void setOptions( WebClientOptions options ) {
+        _options = options;
+    }
+
+
+    /**
+     * Returns the log of script errors recorded, rather than thrown, while running scripts for this client.
+     * A client which has not been given its own options shares the log in {@link HttpUnitOptions} with other such clients.
+     * @since 1.7.3
+     */
+    public ScriptErrorLog getScriptErrorLog() {
+        return _options != null ? _scriptErrorLog : HttpUnitOptions.getScriptErrorLog();
+    }
+
+
     /**
      * Specifies the user agent identification. Used to trigger browser-specific server behavior.
      * @deprecated as of 1.4.6. Use ClientProperties#setUserAgent instead.
@@ -455,10 +495,11 @@ public class WebClient {
         result.put( "User-Agent", getClientProperties().getUserAgent() );
         if (getClientProperties().isAcceptGzip()) result.put( "Accept-Encoding", "gzip" );
         AddHeaderIfNotNull( result, "Cookie", _cookieJar.getCookieHeaderField( targetURL ) );
-        if (_authorizationString == null) _authorizationString = _fixedAuthorizationString;
-        AddHeaderIfNotNull( result, "Authorization", _authorizationString );
+        String authorizationString = (String) _authorizationString.get();
+        if (authorizationString == null) authorizationString = _fixedAuthorizationString;
+        AddHeaderIfNotNull( result, "Authorization", authorizationString );
         AddHeaderIfNotNull( result, "Proxy-Authorization", _proxyAuthorizationString );
-        _authorizationString = null;
+        _authorizationString.set( null );
         return result;
     }
 
@@ -523,6 +564,23 @@ public class WebClient {
     }
 
 
+    /**
+     * Returns the executor used to load the frames of a page concurrently, or null if they are to be loaded one
+     * at a time. Its threads are started as needed, up to the limit set in the client properties, and end when idle.
+     */
+    synchronized ExecutorService getFrameLoader() {
+        int maxThreads = getClientProperties().getMaxFrameLoadingThreads();
+        if (maxThreads <= 1) return null;
+        if (_frameLoader == null) {
+            _frameLoader = new ThreadPoolExecutor( 0, maxThreads, FRAME_LOADER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                                   new SynchronousQueue(), FRAME_LOADING_THREADS );
+        } else if (_frameLoader.getMaximumPoolSize() != maxThreads) {
+            _frameLoader.setMaximumPoolSize( maxThreads );
+        }
+        return _frameLoader;
+    }
+
+
     void updateFrameContents( WebWindow requestWindow, String requestTarget, WebResponse response, RequestContext requestContext ) throws IOException, SAXException {
         if (response.getFrame() == FrameSelector.NEW_FRAME) {
             WebWindow window = new WebWindow( this, requestWindow.getCurrentPage() );
@@ -609,6 +667,12 @@ public class WebClient {
 
     private boolean _exceptionsThrownOnErrorStatus = HttpUnitOptions.getExceptionsThrownOnErrorStatus();
 
+    /** The options specified for this client, or null if it follows the static defaults. **/
+    private volatile WebClientOptions _options;
+
+    /** The script errors recorded while options are specified for this client. **/
+    private final ScriptErrorLog _scriptErrorLog = new ScriptErrorLog();
+
     private final List _clientListeners = new ArrayList();
 
     private final List _windowListeners = new ArrayList();
@@ -617,6 +681,20 @@ public class WebClient {
 
     private ClientProperties _clientProperties;
 
+    /** The threads used to load frames concurrently, or null if none have been needed. **/
+    private ThreadPoolExecutor _frameLoader;
+
+    private final static long FRAME_LOADER_KEEP_ALIVE_SECONDS = 30;
+
+    /** Creates daemon threads, so that frames still loading do not keep the VM alive. **/
+    private final static ThreadFactory FRAME_LOADING_THREADS = new ThreadFactory() {
+        public Thread newThread( Runnable runnable ) {
+            Thread thread = new Thread( runnable, "httpunit-frame-loader" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    };
+
 
     /**
      * Examines the headers in the response and throws an exception if appropriate.
@@ -680,7 +758,7 @@ public class WebClient {
 
 
     private void setOnetimeAuthenticationHeader( String authorizationHeader ) {
-        _authorizationString = authorizationHeader;
+        _authorizationString.set( authorizationHeader );
     }
 
 //==================================================================================================
@@ -0,0 +1,382 @@
+package com.meterware.httpunit;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import com.meterware.httpunit.parsing.HTMLParser;
+import com.meterware.httpunit.parsing.HTMLParserFactory;
+import com.meterware.httpunit.scripting.ScriptingEngineFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * An immutable set of the options which control how a {@link WebClient} sends requests, reads responses and parses
+ * and scripts pages. A client which has been given its own options is unaffected by later changes to
+ * {@link HttpUnitOptions} and {@link HTMLParserFactory}, so that clients with different settings may be used
+ * at the same time on different threads:
+ * <pre>
+ *   WebConversation wc = new WebConversation();
+ *   wc.setOptions( WebClientOptions.fromDefaults().withScriptingEnabled( false ) );
+ * </pre>
+ * A client which has not been given options follows the static defaults.
+ * <p>
+ * A few settings remain global. The {@link HTMLParserFactory} parser settings (listeners, warnings and tag case)
+ * configure the parser itself, which is not told which client it parses for; a client which needs different
+ * parsing may be given its own parser with {@link #withHTMLParser}. A {@link WebRequest} created directly, rather
+ * than from a page, belongs to no client when it is built, and so takes its character set from the defaults.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ * @since 1.7.3
+ **/
+public final class WebClientOptions implements Cloneable {
+
+    /** The cached snapshot of the defaults, replaced whenever they change. **/
+    private static volatile WebClientOptions _defaults;
+
+    // Each field is set only while a new instance is being built, before it is returned.
+    private int        _defaultsChangeCount;
+    private boolean    _loggingHttpHeaders;
+    private boolean    _checkContentLength;
+    private boolean    _checkHtmlContentType;
+    private boolean    _scriptingEnabled;
+    private String     _defaultCharacterSet;
+    private String     _defaultContentType;
+    private int        _redirectDelay;
+    private HTMLParser _htmlParser;
+    private boolean    _exceptionsThrownOnScriptError;
+    private boolean    _postIncludesCharset;
+    private boolean    _parameterValuesValidated;
+    private boolean    _imagesTreatedAsAltText;
+    private boolean    _matchesIgnoreCase;
+    private int        _javaScriptOptimizationLevel;
+    private Set        _customAttributes;
+
+
+    /**
+     * Returns a snapshot of the current values set in {@link HttpUnitOptions} and {@link HTMLParserFactory}.
+     */
+    public static WebClientOptions fromDefaults() {
+        return new WebClientOptions();
+    }
+
+
+    /**
+     * Returns a snapshot of the current defaults, sharing it with other callers until the defaults change.
+     */
+    static WebClientOptions getDefaults() {
+        WebClientOptions defaults = _defaults;
+        if (defaults == null || defaults._defaultsChangeCount != HttpUnitOptions.getOptionsChangeCount()
+                             || defaults._htmlParser != HTMLParserFactory.getHTMLParser()) {
+            _defaults = defaults = new WebClientOptions();
+        }
+        return defaults;
+    }
+
+
+    public boolean isLoggingHttpHeaders() {
+        return _loggingHttpHeaders;
+    }
+
+
+    /**
+     * Returns a copy of these options with HTTP header logging enabled or disabled.
+     * @see HttpUnitOptions#setLoggingHttpHeaders
+     */
+    public WebClientOptions withLoggingHttpHeaders( boolean loggingHttpHeaders ) {
+        WebClientOptions copy = copy();
+        copy._loggingHttpHeaders = loggingHttpHeaders;
+        return copy;
+    }
+
+
+    public boolean isCheckContentLength() {
+        return _checkContentLength;
+    }
+
+
+    /**
+     * Returns a copy of these options which does or does not check that each body matches its content length.
+     * @see HttpUnitOptions#setCheckContentLength
+     */
+    public WebClientOptions withCheckContentLength( boolean checkContentLength ) {
+        WebClientOptions copy = copy();
+        copy._checkContentLength = checkContentLength;
+        return copy;
+    }
+
+
+    public boolean isCheckHtmlContentType() {
+        return _checkHtmlContentType;
+    }
+
+
+    /**
+     * Returns a copy of these options which does or does not refuse to parse responses not marked as HTML.
+     * @see HttpUnitOptions#setCheckHtmlContentType
+     */
+    public WebClientOptions withCheckHtmlContentType( boolean checkHtmlContentType ) {
+        WebClientOptions copy = copy();
+        copy._checkHtmlContentType = checkHtmlContentType;
+        return copy;
+    }
+
+
+    public boolean isScriptingEnabled() {
+        return _scriptingEnabled;
+    }
+
+
+    /**
+     * Returns a copy of these options with scripting enabled or disabled.
+     * @see HttpUnitOptions#setScriptingEnabled
+     */
+    public WebClientOptions withScriptingEnabled( boolean scriptingEnabled ) {
+        WebClientOptions copy = copy();
+        copy._scriptingEnabled = scriptingEnabled;
+        return copy;
+    }
+
+
+    /**
+     * Returns the scripting engine to be used with these options. If scripting is disabled, this engine runs no scripts.
+     */
+    public ScriptingEngineFactory getScriptingEngine() {
+        return HttpUnitOptions.getScriptingEngine( _scriptingEnabled );
+    }
+
+
+    public String getDefaultCharacterSet() {
+        return _defaultCharacterSet;
+    }
+
+
+    /**
+     * Returns a copy of these options with the character set assumed for responses which do not specify one.
+     * @see HttpUnitOptions#setDefaultCharacterSet
+     */
+    public WebClientOptions withDefaultCharacterSet( String defaultCharacterSet ) {
+        WebClientOptions copy = copy();
+        copy._defaultCharacterSet = defaultCharacterSet;
+        return copy;
+    }
+
+
+    public String getDefaultContentType() {
+        return _defaultContentType;
+    }
+
+
+    /**
+     * Returns a copy of these options with the content type assumed for responses which do not specify one.
+     * @see HttpUnitOptions#setDefaultContentType
+     */
+    public WebClientOptions withDefaultContentType( String defaultContentType ) {
+        WebClientOptions copy = copy();
+        copy._defaultContentType = defaultContentType;
+        return copy;
+    }
+
+
+    public int getRedirectDelay() {
+        return _redirectDelay;
+    }
+
+
+    /**
+     * Returns a copy of these options with the delay, in milliseconds, before a redirect or refresh is followed.
+     * @see HttpUnitOptions#setRedirectDelay
+     */
+    public WebClientOptions withRedirectDelay( int redirectDelay ) {
+        WebClientOptions copy = copy();
+        copy._redirectDelay = redirectDelay;
+        return copy;
+    }
+
+
+    public HTMLParser getHTMLParser() {
+        return _htmlParser;
+    }
+
+
+    /**
+     * Returns a copy of these options which parses pages with the specified parser.
+     * @see HTMLParserFactory#setHTMLParser
+     */
+    public WebClientOptions withHTMLParser( HTMLParser htmlParser ) {
+        if (htmlParser == null) throw new IllegalArgumentException( "May not specify a null HTML parser" );
+        WebClientOptions copy = copy();
+        copy._htmlParser = htmlParser;
+        return copy;
+    }
+
+
+    public boolean isExceptionsThrownOnScriptError() {
+        return _exceptionsThrownOnScriptError;
+    }
+
+
+    /**
+     * Returns a copy of these options which does or does not throw an exception when a script included in a page
+     * cannot be loaded or run.
+     * @see HttpUnitOptions#setExceptionsThrownOnScriptError
+     */
+    public WebClientOptions withExceptionsThrownOnScriptError( boolean exceptionsThrownOnScriptError ) {
+        WebClientOptions copy = copy();
+        copy._exceptionsThrownOnScriptError = exceptionsThrownOnScriptError;
+        return copy;
+    }
+
+
+    public boolean isPostIncludesCharset() {
+        return _postIncludesCharset;
+    }
+
+
+    /**
+     * Returns a copy of these options which does or does not name the character set in the content type
+     * of a form submitted by POST.
+     * @see HttpUnitOptions#setPostIncludesCharset
+     */
+    public WebClientOptions withPostIncludesCharset( boolean postIncludesCharset ) {
+        WebClientOptions copy = copy();
+        copy._postIncludesCharset = postIncludesCharset;
+        return copy;
+    }
+
+
+    public boolean isParameterValuesValidated() {
+        return _parameterValuesValidated;
+    }
+
+
+    /**
+     * Returns a copy of these options which does or does not check form parameter settings.
+     * @see HttpUnitOptions#setParameterValuesValidated
+     */
+    public WebClientOptions withParameterValuesValidated( boolean parameterValuesValidated ) {
+        WebClientOptions copy = copy();
+        copy._parameterValuesValidated = parameterValuesValidated;
+        return copy;
+    }
+
+
+    public boolean isImagesTreatedAsAltText() {
+        return _imagesTreatedAsAltText;
+    }
+
+
+    /**
+     * Returns a copy of these options which does or does not treat images as the text of their alt attributes.
+     * @see HttpUnitOptions#setImagesTreatedAsAltText
+     */
+    public WebClientOptions withImagesTreatedAsAltText( boolean imagesTreatedAsAltText ) {
+        WebClientOptions copy = copy();
+        copy._imagesTreatedAsAltText = imagesTreatedAsAltText;
+        return copy;
+    }
+
+
+    public boolean isMatchesIgnoreCase() {
+        return _matchesIgnoreCase;
+    }
+
+
+    /**
+     * Returns a copy of these options whose text matches do or do not ignore case.
+     * @see HttpUnitOptions#setMatchesIgnoreCase
+     */
+    public WebClientOptions withMatchesIgnoreCase( boolean matchesIgnoreCase ) {
+        WebClientOptions copy = copy();
+        copy._matchesIgnoreCase = matchesIgnoreCase;
+        return copy;
+    }
+
+
+    public int getJavaScriptOptimizationLevel() {
+        return _javaScriptOptimizationLevel;
+    }
+
+
+    /**
+     * Returns a copy of these options which runs scripts at the specified Rhino optimization level.
+     * @see HttpUnitOptions#setJavaScriptOptimizationLevel
+     */
+    public WebClientOptions withJavaScriptOptimizationLevel( int javaScriptOptimizationLevel ) {
+        WebClientOptions copy = copy();
+        copy._javaScriptOptimizationLevel = javaScriptOptimizationLevel;
+        return copy;
+    }
+
+
+    /**
+     * Returns the names of the custom attributes supported by form controls. The set may not be changed.
+     */
+    public Set getCustomAttributes() {
+        return _customAttributes;
+    }
+
+
+    /**
+     * Returns a copy of these options which supports the specified custom attributes on form controls.
+     * @see HttpUnitOptions#addCustomAttribute
+     */
+    public WebClientOptions withCustomAttributes( Set customAttributes ) {
+        WebClientOptions copy = copy();
+        copy._customAttributes = toUnmodifiableSet( customAttributes );
+        return copy;
+    }
+
+
+    private WebClientOptions() {
+        _defaultsChangeCount           = HttpUnitOptions.getOptionsChangeCount();
+        _loggingHttpHeaders            = HttpUnitOptions.isLoggingHttpHeaders();
+        _checkContentLength            = HttpUnitOptions.isCheckContentLength();
+        _checkHtmlContentType          = HttpUnitOptions.isCheckHtmlContentType();
+        _scriptingEnabled              = HttpUnitOptions.isScriptingEnabled();
+        _defaultCharacterSet           = HttpUnitOptions.getDefaultCharacterSet();
+        _defaultContentType            = HttpUnitOptions.getDefaultContentType();
+        _redirectDelay                 = HttpUnitOptions.getRedirectDelay();
+        _htmlParser                    = HTMLParserFactory.getHTMLParser();
+        _exceptionsThrownOnScriptError = HttpUnitOptions.getExceptionsThrownOnScriptError();
+        _postIncludesCharset           = HttpUnitOptions.isPostIncludesCharset();
+        _parameterValuesValidated      = HttpUnitOptions.getParameterValuesValidated();
+        _imagesTreatedAsAltText        = HttpUnitOptions.getImagesTreatedAsAltText();
+        _matchesIgnoreCase             = HttpUnitOptions.getMatchesIgnoreCase();
+        _javaScriptOptimizationLevel   = HttpUnitOptions.getJavaScriptOptimizationLevel();
+        _customAttributes              = toUnmodifiableSet( HttpUnitOptions.getCustomAttributes() );
+    }
+
+
+    private WebClientOptions copy() {
+        try {
+            return (WebClientOptions) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException( "Unable to copy options: " + e );
+        }
+    }
+
+
+    private static Set toUnmodifiableSet( Set set ) {
+        return set == null ? null : Collections.unmodifiableSet( new HashSet( set ) );
+    }
+
+}
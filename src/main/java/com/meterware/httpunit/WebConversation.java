@@ -21,14 +21,17 @@ package com.meterware.httpunit;
 *******************************************************************************************************************/
 import java.io.IOException;
 
-import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
 
 import java.util.Dictionary;
 import java.util.Enumeration;
-import java.util.Properties;
+
+import com.meterware.httpunit.transport.HttpTransport;
+import com.meterware.httpunit.transport.URLConnectionTransport;
 
 
 /**
@@ -44,6 +47,10 @@ public class WebConversation extends WebClient {
     private int _proxyPort;
     private int _connectTimeout = -1;
     private int _readTimeout = -1;    
+    private HttpTransport _transport = new URLConnectionTransport();
+
+    /** The proxy through which this conversation sends its requests, or null to use the system defaults. **/
+    private Proxy _proxy;
 
 
     /**
@@ -60,45 +67,83 @@ public class WebConversation extends WebClient {
      * Creates a web response object which represents the response to the specified web request.
      **/
     protected WebResponse newResponse( WebRequest request, FrameSelector targetFrame ) throws MalformedURLException, IOException {
-        Properties savedProperties = (Properties) System.getProperties().clone();
-        try {
-            if (_proxyHost != null) {
-                System.setProperty( "proxyHost", _proxyHost );
-                System.setProperty( "proxyPort", Integer.toString( _proxyPort ) );
-            }
-            URLConnection connection = openConnection( getRequestURL( request ) );
-            // [ 1518901 ] enable http connect and read timeouts (needs JDK 1.5)
-            // comment the next two line if you do not need this and have JDK <1.5
-            if (_connectTimeout>=0) connection.setConnectTimeout( _connectTimeout );
-            if (_readTimeout>=0)    connection.setReadTimeout( _readTimeout );            
-            if (HttpUnitOptions.isLoggingHttpHeaders()) {
-                String urlString = request.getURLString();
-                System.out.println( "\nConnecting to " + request.getURL().getHost() );
-                System.out.println( "Sending:: " + request.getMethod() + " " + urlString );
-            }
-            sendHeaders( connection, getHeaderFields( request.getURL() ) );
-            sendHeaders( connection, request.getHeaderDictionary() );
-            request.completeRequest( connection );
-            return new HttpWebResponse( this, targetFrame, request, connection, getExceptionsThrownOnErrorStatus() );
-        } finally {
-            System.setProperties( savedProperties );
+        URL requestURL;
+        Dictionary headers;
+        synchronized (this) {
+            // frames may be loaded on several threads: keep each request's Host header with the rest of its headers
+            requestURL = getRequestURL( request );
+            headers = getHeaderFields( request.getURL() );
         }
+        URLConnection connection = _transport.openConnection( requestURL, _proxy );
+        // [ 1518901 ] enable http connect and read timeouts (needs JDK 1.5)
+        // comment the next two line if you do not need this and have JDK <1.5
+        if (_connectTimeout>=0) connection.setConnectTimeout( _connectTimeout );
+        if (_readTimeout>=0)    connection.setReadTimeout( _readTimeout );            
+        if (getOptions().isLoggingHttpHeaders()) {
+            String urlString = request.getURLString();
+            System.out.println( "\nConnecting to " + request.getURL().getHost() );
+            System.out.println( "Sending:: " + request.getMethod() + " " + urlString );
+        }
+        sendHeaders( connection, headers );
+        sendHeaders( connection, request.getHeaderDictionary() );
+        request.completeRequest( connection );
+        return new HttpWebResponse( this, targetFrame, request, connection, getExceptionsThrownOnErrorStatus() );
+    }
+
+
+    /**
+     * Returns the transport used to obtain connections for this conversation.
+     */
+    public HttpTransport getTransport() {
+        return _transport;
+    }
+
+
+    /**
+     * Specifies the transport used to obtain connections for this conversation. The default uses the connections
+     * provided by the JDK; a {@link com.meterware.httpunit.transport.PooledHttpTransport} may be specified to keep
+     * connections open between requests. A single transport may be shared among conversations.
+     * @param transport the transport to use
+     */
+    public void setTransport( HttpTransport transport ) {
+        _transport = transport;
     }
 
 
     public void clearProxyServer() {
         _proxyHost = null;
+        _proxy = null;
     }
 
 
     /**
-     * set the proxy server to the given proxyHost with the given proxy Port
+     * set the proxy server to the given proxyHost with the given proxy Port. The proxy applies only to this
+     * conversation; the system proxy properties are not changed.
      * @param proxyHost - the hostname of the proxy e.g. proxy.somedomain.org
      * @param proxyPort - the number of the port to use e.g. 8080
      */
     public void setProxyServer( String proxyHost, int proxyPort ) {
         _proxyHost = proxyHost;
         _proxyPort = proxyPort;
+        _proxy = new Proxy( Proxy.Type.HTTP, InetSocketAddress.createUnresolved( proxyHost, proxyPort ) );
+    }
+
+
+    /**
+     * Returns the name of the proxy server used by this conversation. If none has been specified,
+     * returns the one defined by the system properties, if any.
+     */
+    public String getProxyHost() {
+        return _proxyHost != null ? _proxyHost : super.getProxyHost();
+    }
+
+
+    /**
+     * Returns the number of the proxy port used by this conversation. If no proxy has been specified,
+     * returns the one defined by the system properties, or 0 if none.
+     */
+    public int getProxyPort() {
+        return _proxyHost != null ? _proxyPort : super.getProxyPort();
     }
 
 
@@ -149,7 +194,7 @@ public class WebConversation extends WebClient {
         String portPortion = request.getURL().getPort() == -1 ? "" : (":" + request.getURL().getPort());
         setHeaderField( "Host", hostName + portPortion );
         String actualHost = dnsListener.getIpAddress( hostName );
-        if (HttpUnitOptions.isLoggingHttpHeaders()) System.out.println( "Rerouting request to :: " + actualHost );
+        if (getOptions().isLoggingHttpHeaders()) System.out.println( "Rerouting request to :: " + actualHost );
         return new URL( request.getURL().getProtocol(), actualHost, request.getURL().getPort(), request.getURL().getFile() );
     }
 
@@ -157,18 +202,6 @@ public class WebConversation extends WebClient {
 //---------------------------------- private members --------------------------------
 
 
-    /**
-     * open a connection for the given uniform resource locator
-     * @param url - the url to use
-     */
-    private URLConnection openConnection( URL url ) throws MalformedURLException, IOException {
-        URLConnection connection = url.openConnection();
-        if (connection instanceof HttpURLConnection) ((HttpURLConnection) connection).setInstanceFollowRedirects( false );
-        connection.setUseCaches( false );
-        return connection;
-    }
-
-
     /**
      * send the headers for the given connection based on the given Dictionary of headers
      * @param connection
@@ -180,14 +213,14 @@ public class WebConversation extends WebClient {
             String key = (String) e.nextElement();
             if ( sendReferer || !"referer".equalsIgnoreCase( key ) ) {
 	            connection.setRequestProperty( key, (String) headers.get( key ) );
-	            if (HttpUnitOptions.isLoggingHttpHeaders()) {
+	            if (getOptions().isLoggingHttpHeaders()) {
 	                if (key.equalsIgnoreCase( "authorization" ) || key.equalsIgnoreCase( "proxy-authorization") ) {
 	                    System.out.println( "Sending:: " + key + ": " + headers.get( key ) );
 	                } else {
 	                    System.out.println( "Sending:: " + key + ": " + connection.getRequestProperty( key ) );
 	                }
 	            }
-        		} else if (HttpUnitOptions.isLoggingHttpHeaders()) {
+        		} else if (getOptions().isLoggingHttpHeaders()) {
         				System.out.println( "Blocked sending referer:: "+ connection.getRequestProperty( key ) );
         		}		
         } // for
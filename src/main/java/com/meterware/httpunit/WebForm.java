@@ -320,7 +320,7 @@ public class WebForm extends WebRequestSource {
 		if (button == null)
 			button = getDefaultButton();
 
-		if (HttpUnitOptions.getParameterValuesValidated()) {
+		if (getOptions().isParameterValuesValidated()) {
 			if (button == null) {
 				throw new IllegalUnnamedSubmitButtonException();
 			} else if (button.isFake()) {
@@ -1017,7 +1017,8 @@ public class WebForm extends WebRequestSource {
 	static {
 		MATCH_NAME = new HTMLElementPredicate() {
 			public boolean matchesCriteria(Object htmlElement, Object criteria) {
-				return HttpUnitUtils.matches(((WebForm) htmlElement).getName(),
+				WebForm form = (WebForm) htmlElement;
+				return HttpUnitUtils.matches(form.getOptions(), form.getName(),
 						(String) criteria);
 			}
 		};
@@ -43,6 +43,11 @@ class WebFrame extends HTMLElementBase {
     }
 
 
+    protected WebClientOptions getOptions() {
+        return _response.getOptions();
+    }
+
+
 //---------------------------------------- package methods -----------------------------------------
 
 
@@ -170,35 +170,40 @@ public class WebLink extends FixedURLWebRequestSource {
     static {
         MATCH_URL_STRING = new HTMLElementPredicate() {
             public boolean matchesCriteria( Object htmlElement, Object criteria ) {
-                return HttpUnitUtils.contains( ((WebLink) htmlElement).getURLString(), (String) criteria );
+                WebLink link = (WebLink) htmlElement;
+                return HttpUnitUtils.contains( link.getOptions(), link.getURLString(), (String) criteria );
             }
         };
 
 
         MATCH_TEXT = new HTMLElementPredicate() {
             public boolean matchesCriteria( Object htmlElement, Object criteria ) {
-                return HttpUnitUtils.matches( ((WebLink) htmlElement).getText(), (String) criteria );
+                WebLink link = (WebLink) htmlElement;
+                return HttpUnitUtils.matches( link.getOptions(), link.getText(), (String) criteria );
             }
         };
 
 
         MATCH_CONTAINED_TEXT = new HTMLElementPredicate() {
             public boolean matchesCriteria( Object htmlElement, Object criteria ) {
-                return HttpUnitUtils.contains( ((WebLink) htmlElement).getText(), (String) criteria );
+                WebLink link = (WebLink) htmlElement;
+                return HttpUnitUtils.contains( link.getOptions(), link.getText(), (String) criteria );
             }
         };
 
 
         MATCH_ID = new HTMLElementPredicate() {
             public boolean matchesCriteria( Object htmlElement, Object criteria ) {
-                return HttpUnitUtils.matches( ((WebLink) htmlElement).getID(), (String) criteria );
+                WebLink link = (WebLink) htmlElement;
+                return HttpUnitUtils.matches( link.getOptions(), link.getID(), (String) criteria );
             }
         };
 
 
         MATCH_NAME = new HTMLElementPredicate() {
             public boolean matchesCriteria( Object htmlElement, Object criteria ) {
-                return HttpUnitUtils.matches( ((WebLink) htmlElement).getName(), (String) criteria );
+                WebLink link = (WebLink) htmlElement;
+                return HttpUnitUtils.matches( link.getOptions(), link.getName(), (String) criteria );
             }
         };
 
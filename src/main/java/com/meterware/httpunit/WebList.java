@@ -86,6 +86,11 @@ public class WebList extends HTMLElementBase {
     }
 
 
+    protected WebClientOptions getOptions() {
+        return _response.getOptions();
+    }
+
+
     TextBlock addNewItem( Element element ) {
         TextBlock listItem = new TextBlock( _response, _frame, _baseURL, _baseTarget, element, _characterSet );
         _items.add( listItem );
@@ -59,6 +59,7 @@ public class WebRequest {
     private SubmitButton _button;
     private Element _sourceElement;
     private String _characterSet;
+    private boolean _streamingResponse;
 
 
     /**
@@ -331,6 +332,28 @@ public class WebRequest {
     }
 
 
+    /**
+     * Returns true if the response to this request should be streamed rather than read into memory.
+     * @see #setStreamingResponse
+     */
+    public boolean isStreamingResponse() {
+        return _streamingResponse;
+    }
+
+
+    /**
+     * Specifies whether the response to this request should be streamed. If true, and the response is not HTML,
+     * its body is not read when the response is received; {@link WebResponse#getInputStream} then returns
+     * a stream which reads directly from the server. This allows very large downloads to be verified without
+     * holding them in memory. Streaming may also be enabled for all requests from a client with
+     * {@link ClientProperties#setStreamingResponses}.
+     * @since 1.7.3
+     */
+    public void setStreamingResponse( boolean streamingResponse ) {
+        _streamingResponse = streamingResponse;
+    }
+
+
 //------------------------------------- Object methods ------------------------------------
 
 
@@ -420,7 +443,7 @@ public class WebRequest {
 
 
     static ParameterHolder newParameterHolder( WebRequestSource requestSource ) {
-        if (HttpUnitOptions.getParameterValuesValidated()) {
+        if (requestSource.getOptions().isParameterValuesValidated()) {
             return requestSource;
         } else {
             return new UncheckedParameterHolder( requestSource );
@@ -558,6 +581,17 @@ public class WebRequest {
     }
 
 
+    /**
+     * Returns the options of the client whose page created this request, or the current defaults for a request
+     * created directly.
+     */
+    WebClientOptions getOptions() {
+        if (_webRequestSource != null) return _webRequestSource.getOptions();
+        if (_referringPage != null) return _referringPage.getOptions();
+        return WebClientOptions.getDefaults();
+    }
+
+
     String getReferer() {
         return _headers == null ? null : (String) _headers.get( REFERER_HEADER_NAME );
     }
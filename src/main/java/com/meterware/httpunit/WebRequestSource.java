@@ -309,6 +309,13 @@ abstract public class WebRequestSource extends ParameterHolder implements
 		return _baseResponse;
 	}
 
+	/**
+	 * Returns the options of the response containing this request source.
+	 */
+	protected WebClientOptions getOptions() {
+		return _baseResponse.getOptions();
+	}
+
 	/**
 	 * Records a parameter defined by including it in the destination URL. The
 	 * value can be null, if the parameter name was not specified with an equals
@@ -368,7 +375,7 @@ abstract public class WebRequestSource extends ParameterHolder implements
 		} else if (!_node.hasChildNodes()) {
 			return "";
 		} else {
-			return NodeUtils.asText(_node.getChildNodes()).trim();
+			return NodeUtils.asText(_node.getChildNodes(), getOptions()).trim();
 		}
 	}
 
@@ -455,7 +462,7 @@ abstract public class WebRequestSource extends ParameterHolder implements
 	 */
 	public ScriptingHandler getScriptingHandler() {
 		if (_scriptable == null) {
-			_scriptable = HttpUnitOptions.getScriptingEngine().createHandler(this);
+			_scriptable = getOptions().getScriptingEngine().createHandler(this);
 		}
 		return _scriptable;
 	}
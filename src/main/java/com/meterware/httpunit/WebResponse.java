@@ -39,6 +39,8 @@ import java.util.Hashtable;
 import java.util.Vector;
 import java.util.zip.GZIPInputStream;
 
+import javax.xml.xpath.XPathExpressionException;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
@@ -70,8 +72,6 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
     
     
     private static final int UNINITIALIZED_INT = -2;
-    private static final int UNKNOWN_LENGTH_TIMEOUT = 500;
-    private static final int UNKNOWN_LENGTH_RETRY_INTERVAL = 10;
 
     private FrameSelector _frame;
     // allow to switch off parsing e.g. for method="HEAD"
@@ -257,7 +257,7 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
         if (_characterSet == null) {
             readContentTypeHeader();
             if (_characterSet == null) setCharacterSet( getHeaderField( "Charset" ) );
-            if (_characterSet == null) setCharacterSet( HttpUnitOptions.getDefaultCharacterSet() );
+            if (_characterSet == null) setCharacterSet( getOptions().getDefaultCharacterSet() );
         }
         return _characterSet;
     }
@@ -299,9 +299,9 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
      * @throws IOException
      */
     public byte[] getBytes() throws IOException {
-        if (_responseText == null) 
+        if (_body == null && _responseText == null) 
         	loadResponseText();
-        return _bytes;
+        return _body != null ? _body.getBytes() : _responseText.getBytes( getCharacterSet() );
     } 
     
     /**
@@ -310,17 +310,33 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
      * @return the response text
      **/
     public String getText() throws IOException {
-        if (_responseText == null) 
-        	loadResponseText();
+        if (_responseText == null) {
+            if (_body == null) loadResponseText();
+            _responseText = _body.getText( getCharacterSet() );
+        }
         return _responseText;
     }
 
     /**
-     * Returns a buffered input stream for reading the contents of this reply.
+     * Returns the time, in milliseconds, spent reading the body of this response from the server.
+     * @return the read time, or -1 if the body has not been read.
+     * @since 1.7.3
+     */
+    public long getReadTime() {
+        return _readTime;
+    }
+
+
+    /**
+     * Returns a buffered input stream for reading the contents of this reply. If the response is being streamed,
+     * this stream reads directly from the server, and should be read to its end or closed.
+     * @see ClientProperties#setStreamingResponses
      **/
     public InputStream getInputStream() throws IOException {
-        if (_inputStream == null) 
-        	_inputStream = new ByteArrayInputStream( getText().getBytes() );
+        if (_inputStream == null) {
+            if (_body == null && _responseText == null) loadResponseText();
+            _inputStream = _body != null ? _body.newInputStream() : new ByteArrayInputStream( _responseText.getBytes() );
+        }
         return _inputStream;
     }
 
@@ -389,6 +405,18 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
     }
 
 
+    /**
+     * Returns the HTMLElements which match the specified XPath, in document order.
+     * @param xpath an XPath expression, such as "//table[@id='results']//td"
+     * @return the matching elements
+     * @throws XPathExpressionException if the expression is invalid
+     * @since 1.7.3
+     */
+    public HTMLElement[] getElementsMatchingXPath( String xpath ) throws SAXException, XPathExpressionException {
+        return getReceivedPage().getElementsMatchingXPath( xpath );
+    }
+
+
     /**
      * Returns a list of HTML element names contained in this HTML section.
      */
@@ -606,7 +634,7 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
             return (Document) getReceivedPage().getDOM();
         } else {
             try {
-                return HttpUnitUtils.parse( new InputSource( new StringReader( getText() ) ) );
+                return HttpUnitUtils.parse( getXMLInputSource() );
             } catch (IOException e) {
                 throw new SAXException( e );
             }
@@ -614,6 +642,20 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
     }
 
 
+    /**
+     * Returns a source from which the response may be parsed as XML. If the text has not yet been decoded,
+     * the parser reads the body directly rather than from a decoded copy.
+     */
+    private InputSource getXMLInputSource() throws IOException {
+        if (_body == null && _responseText == null) loadResponseText();
+        if (_responseText != null) return new InputSource( new StringReader( _responseText ) );
+
+        InputSource source = new InputSource( _body.newInputStream() );
+        source.setEncoding( getCharacterSet() );
+        return source;
+    }
+
+
     /**
      * Returns the top-level tables found in this page in the order in which
      * they appear.
@@ -712,7 +754,7 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
 
 
     public ScriptingHandler getScriptingHandler() {
-        if (_scriptingHandler == null) _scriptingHandler = HttpUnitOptions.getScriptingEngine().createHandler( this );
+        if (_scriptingHandler == null) _scriptingHandler = getOptions().getScriptingEngine().createHandler( this );
         return _scriptingHandler;
     }
 
@@ -828,6 +870,14 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
         }
 
 
+        /**
+         * Returns the client which received this response, or null if it was not received through a client.
+         */
+        public WebClient getClient() {
+            return _client;
+        }
+
+
         public HTMLPage.Scriptable getDocument() {
             try {
                 if (!isHTML()) replaceText( BLANK_HTML, HTML_CONTENT );
@@ -972,7 +1022,7 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
 
     final
     protected void defineRawInputStream( InputStream inputStream ) throws IOException {
-        if (_inputStream != null || _responseText != null) {
+        if (_inputStream != null || _responseText != null || _body != null) {
             throw new IllegalStateException( "Must be called before response text is defined." );
         }
 
@@ -1039,6 +1089,7 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
     public boolean replaceText( String text, String contentType ) {
         if (_parsingPage) return false;
         _responseText = text;
+        _body = null;
         _inputStream = null;
         _page = null;
         _contentType = contentType;
@@ -1047,7 +1098,8 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
         _refreshHeader = null;
 
         try {
-            readTags( text.getBytes() );
+            byte[] bytes = text.getBytes();
+            readTags( bytes, bytes.length );
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException( "Failure while attempting to reparse text: " + e );
         } catch (MalformedURLException e) {
@@ -1095,17 +1147,20 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
     private int _refreshDelay = -1;  // initialized to invalid value
 
     /**
-     * the response as a String
+     * the response as a String, decoded from the body when first requested
      */
     private String _responseText;
     
     /**
-     * the response as a byte array
+     * the bytes of the response as read from the server
      */
-    private byte[] _bytes;
+    private ResponseBody _body;
 
 	private InputStream _inputStream;
 
+    /** the time in msec spent reading the response body **/
+    private long _readTime = -1;
+
     private final URL    _pageURL;
 
     private final WebClient _client;
@@ -1118,26 +1173,38 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
     	return _client;
     }
 
+
+    /**
+     * Returns the options which control how this response is read and parsed: those of its client if it has one,
+     * and the current defaults otherwise.
+     */
+    WebClientOptions getOptions() {
+        return _client == null ? WebClientOptions.getDefaults() : _client.getOptions();
+    }
+
     private ScriptingHandler _scriptingHandler;
 
 
+    /**
+     * Reads the body of the response from the raw input stream. The text is not decoded until it is requested.
+     */
     protected void loadResponseText() throws IOException {
-        if (_responseText != null) throw new IllegalStateException( "May only invoke loadResponseText once" );
-        _responseText = "";
+        if (_body != null || _responseText != null) throw new IllegalStateException( "May only invoke loadResponseText once" );
 
-        InputStream inputStream = getInputStream();
+        InputStream inputStream = _inputStream != null ? _inputStream : new ByteArrayInputStream( new byte[0] );
         try {
             final int contentLength = this.encodedUsingGZIP() ? -1 : getContentLength();
             int bytesRemaining = contentLength < 0 ? Integer.MAX_VALUE : contentLength;
-            _bytes = readFromStream( inputStream, bytesRemaining );
+            long startTime = System.currentTimeMillis();
+            _body = ResponseBody.read( inputStream, contentLength, bytesRemaining );
+            _readTime = System.currentTimeMillis() - startTime;
 
-            readTags( _bytes );
-            _responseText = new String( _bytes, getCharacterSet() );
-            _inputStream  = new ByteArrayInputStream( _bytes );
+            readTags( _body.getBuffer(), _body.getLength() );
+            _inputStream = _body.newInputStream();
 
-            if (HttpUnitOptions.isCheckContentLength() && contentLength >= 0 && _bytes.length != contentLength) {
+            if (getOptions().isCheckContentLength() && contentLength >= 0 && _body.getLength() != contentLength) {
                 throw new IOException("Truncated message. Expected length: " + contentLength +
-                                                       ", Actual length: " + _bytes.length);
+                                                       ", Actual length: " + _body.getLength());
             }
         } finally {
             inputStream.close();
@@ -1145,39 +1212,11 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
     }
 
 
-    private byte[] readFromStream( InputStream inputStream, int maxBytes ) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8 * 1024];
-        int count = 0;
-        if (maxBytes > 0) {
-            do {
-                outputStream.write( buffer, 0, count );
-                maxBytes -= count;
-                if (maxBytes <= 0) break;
-                count = inputStream.read( buffer, 0, Math.min( maxBytes, buffer.length ) );
-            } while (count != -1);
-        } else {
-            do {
-                outputStream.write( buffer, 0, count );
-                int available = getAvailableBytes( inputStream );
-                count = (available == 0) ? -1 : inputStream.read( buffer, 0, buffer.length );
-            } while (count != -1);
-        }
-
-        return outputStream.toByteArray();
-    }
+    /** The tags which must be found before the page is parsed, since they determine how it is to be read. **/
+    private final static String[] PRESCANNED_TAGS = { "meta", "base", "noscript" };
 
+    private final static String[] NOSCRIPT_END = { "/noscript" };
 
-    private int getAvailableBytes( InputStream inputStream ) throws IOException {
-        int timeLeft = UNKNOWN_LENGTH_TIMEOUT;
-        int available;
-        do {
-            timeLeft -= UNKNOWN_LENGTH_RETRY_INTERVAL;
-            try { Thread.sleep( UNKNOWN_LENGTH_RETRY_INTERVAL ); } catch (InterruptedException e) { /* do nothing */ }
-            available = inputStream.available();
-        } while (available == 0 && timeLeft > 0);
-        return available;
-    }
 
     /**
      * read the tags from the given message
@@ -1185,20 +1224,17 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
      * @throws UnsupportedEncodingException
      * @throws MalformedURLException
      */
-    private void readTags( byte[] rawMessage ) throws UnsupportedEncodingException, MalformedURLException {
-        ByteTagParser parser = new ByteTagParser( rawMessage );
-        ByteTag tag = parser.getNextTag();
+    private void readTags( byte[] rawMessage, int length ) throws UnsupportedEncodingException, MalformedURLException {
+        ByteTagParser parser = new ByteTagParser( rawMessage, length );
+        ByteTag tag = parser.getNextTag( PRESCANNED_TAGS );
         while (tag != null ) {
             if (tag.getName().equalsIgnoreCase( "meta" )) processMetaTag( tag );
             if (tag.getName().equalsIgnoreCase( "base" )) processBaseTag( tag );
-            // loop over a noscript region
-            if (tag.getName().equalsIgnoreCase( "noscript") && HttpUnitOptions.isScriptingEnabled()) {
-                do { 
-                	tag = parser.getNextTag(); 
-                } 
-                while (!tag.getName().equalsIgnoreCase( "/noscript") );
+            // skip over a noscript region
+            if (tag.getName().equalsIgnoreCase( "noscript") && getOptions().isScriptingEnabled()) {
+                if (parser.getNextTag( NOSCRIPT_END ) == null) break;
             }
-            tag = parser.getNextTag();
+            tag = parser.getNextTag( PRESCANNED_TAGS );
         }
     }
 
@@ -1320,8 +1356,9 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
         String contentHeader = (_contentHeader != null) ? _contentHeader
                                                         : getHeaderField( "Content-type" );
         if (contentHeader == null) {
-            _contentType = HttpUnitOptions.getDefaultContentType();
-            setCharacterSet( HttpUnitOptions.getDefaultCharacterSet() );
+            WebClientOptions options = getOptions();
+            _contentType = options.getDefaultContentType();
+            setCharacterSet( options.getDefaultCharacterSet() );
             _contentHeader = _contentType + ";charset=" + _characterSet;
         } else {
             String[] parts = HttpUnitUtils.parseContentTypeHeader( contentHeader );
@@ -1352,7 +1389,7 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
         if (_page == null) {
             try {
                 _parsingPage = true;
-                if (HttpUnitOptions.isCheckHtmlContentType() && !isHTML()) throw new NotHTMLException( getContentType() );
+                if (getOptions().isCheckHtmlContentType() && !isHTML()) throw new NotHTMLException( getContentType() );
                 _page = new HTMLPage( this, _frame, _baseURL, _baseTarget, getCharacterSet() );
                 if (_withParse) {
                 	_page.parse( getText(), _pageURL );
@@ -1495,15 +1532,43 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
 
     static class ByteTagParser {
         ByteTagParser( byte[] buffer ) {
+            this( buffer, buffer.length );
+        }
+
+
+        ByteTagParser( byte[] buffer, int length ) {
             _buffer = buffer;
+            _length = length;
         }
 
 
         ByteTag getNextTag() throws UnsupportedEncodingException {
-            ByteTag byteTag=null;
+            return findNextTag() ? new ByteTag( _buffer, _start +1, _end-_start -1 ) : null;
+        }
+
+
+        /**
+         * Returns the next tag with one of the specified lower-case names, skipping all others. Tag names are compared
+         * in place, so that no objects are created for the tags which are skipped.
+         */
+        ByteTag getNextTag( String[] names ) throws UnsupportedEncodingException {
+            while (findNextTag()) {
+                for (int i = 0; i < names.length; i++) {
+                    if (isTagNamed( names[i] )) return new ByteTag( _buffer, _start +1, _end-_start -1 );
+                }
+            }
+            return null;
+        }
+
+
+        /**
+         * Advances to the next tag, leaving its angle brackets at _start and _end. The contents of scripts are skipped.
+         * @return false if there are no more tags
+         */
+        private boolean findNextTag() {
             do {
-                int _start = _end + 1;
-                while (_start < _buffer.length && _buffer[ _start ] != '<') _start++;
+                _start = _end + 1;
+                while (_start < _length && _buffer[ _start ] != '<') _start++;
                 // proposed patch for bug report 
                 // [ 1376739 ] iframe tag not recognized if Javascript code contains '<'
                 // by Nathan Jakubiak
@@ -1513,23 +1578,43 @@ public class WebResponse implements HTMLSegment, CookieSource, DomWindowProxy {
                 //		_end = _start+1;
                 //		continue;
                 //}
-                for (_end =_start +1; _end < _buffer.length && _buffer[ _end ] != '>'; _end++);
-                if (_end >= _buffer.length || _end < _start) return null;
-                byteTag = new ByteTag( _buffer, _start +1, _end-_start -1 );
-                if (byteTag.getName().equalsIgnoreCase("script")) {
+                for (_end =_start +1; _end < _length && _buffer[ _end ] != '>'; _end++);
+                if (_end >= _length || _end < _start) return false;
+                if (isTagNamed( "script" )) {
                     _scriptDepth++;
-                    return byteTag;
+                    return true;
                 }
-                if (byteTag.getName().equalsIgnoreCase("/script")) _scriptDepth--;
+                if (isTagNamed( "/script" )) _scriptDepth--;
             } while (_scriptDepth > 0);
-            return byteTag;
+            return true;
+        }
+
+
+        /**
+         * Returns true if the tag between _start and _end has the specified lower-case name.
+         */
+        private boolean isTagNamed( String name ) {
+            int i = _start + 1;
+            while (i < _end && isWhitespace( _buffer[ i ] )) i++;
+            if (_end - i < name.length()) return false;
+            for (int j = 0; j < name.length(); j++, i++) {
+                if (Character.toLowerCase( (char) (_buffer[ i ] & 0xff) ) != name.charAt( j )) return false;
+            }
+            return i == _end || _buffer[ i ] == '=' || isWhitespace( _buffer[ i ] );
+        }
+
+
+        private static boolean isWhitespace( byte b ) {
+            return b >= 0 && Character.isWhitespace( (char) b );
         }
 
 
         private int _scriptDepth = 0;
+        private int _start = -1;
         private int _end   = -1;
 
         private byte[] _buffer;
+        private int    _length;
     }
 
 
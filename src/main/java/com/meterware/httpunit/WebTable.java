@@ -243,6 +243,11 @@ public class WebTable extends HTMLElementBase {
     }
 
 
+    protected WebClientOptions getOptions() {
+        return _response.getOptions();
+    }
+
+
 //----------------------------------- private members -----------------------------------
 
     private Element     _dom;
@@ -341,7 +346,7 @@ public class WebTable extends HTMLElementBase {
                 WebTable table = ((WebTable) htmlElement);
                 for (int row = 0; row < table.getRowCount(); row++) {
                     for (int col = 0; col < table.getColumnCount(); col++) {
-                        if (HttpUnitUtils.matches( table.getCellAsText( row, col ).trim(), (String) criteria)) return true;
+                        if (HttpUnitUtils.matches( table.getOptions(), table.getCellAsText( row, col ).trim(), (String) criteria)) return true;
                     }
                 }
                 return false;
@@ -354,7 +359,7 @@ public class WebTable extends HTMLElementBase {
                 WebTable table = ((WebTable) htmlElement);
                 for (int row = 0; row < table.getRowCount(); row++) {
                     for (int col = 0; col < table.getColumnCount(); col++) {
-                        if (HttpUnitUtils.hasPrefix( table.getCellAsText( row, col ).trim(), (String) criteria)) return true;
+                        if (HttpUnitUtils.hasPrefix( table.getOptions(), table.getCellAsText( row, col ).trim(), (String) criteria)) return true;
                     }
                 }
                 return false;
@@ -364,14 +369,16 @@ public class WebTable extends HTMLElementBase {
 
         MATCH_ID = new HTMLElementPredicate() {
             public boolean matchesCriteria( Object htmlElement, Object criteria ) {
-                return HttpUnitUtils.matches( ((WebTable) htmlElement).getID(), (String) criteria );
+                WebTable table = (WebTable) htmlElement;
+                return HttpUnitUtils.matches( table.getOptions(), table.getID(), (String) criteria );
             };
         };
 
 
         MATCH_SUMMARY = new HTMLElementPredicate() {
             public boolean matchesCriteria( Object htmlElement, Object criteria ) {
-                return HttpUnitUtils.matches( ((WebTable) htmlElement).getSummary(), (String) criteria );
+                WebTable table = (WebTable) htmlElement;
+                return HttpUnitUtils.matches( table.getOptions(), table.getSummary(), (String) criteria );
             };
         };
 
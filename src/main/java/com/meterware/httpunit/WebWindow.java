@@ -21,12 +21,19 @@ package com.meterware.httpunit;
  *
  *******************************************************************************************************************/
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.xml.sax.SAXException;
 import com.meterware.httpunit.scripting.ScriptingHandler;
@@ -201,6 +208,175 @@ public class WebWindow {
 				response, requestContext);
 	}
 
+	/**
+	 * get a Response from a SubFrame whose resource may already be loading
+	 * 
+	 * @param request
+	 * @param loading
+	 *            - the resource being loaded for the request, as returned by
+	 *            {@link #startLoadingFrames}, or null if it should be fetched now
+	 * @param requestContext
+	 * @return the WebResponse or null
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	WebResponse getSubframeResponse(WebRequest request, Future loading,
+			RequestContext requestContext) throws IOException, SAXException {
+		if (loading == null)
+			return getSubframeResponse(request, requestContext);
+
+		WebResponse response = getLoadedResource(loading);
+		_client.tellListeners(response);
+		return updateWindow(request.getTarget(), response, requestContext);
+	}
+
+	/**
+	 * Starts fetching the resources for the specified frame requests on
+	 * separate threads, if the client allows more than one frame to be loaded
+	 * at a time. The responses are not added to the window; that is left to
+	 * {@link #getSubframeResponse(WebRequest, Future, RequestContext)}, so
+	 * that it happens in document order. Listeners are told of each request
+	 * here, and of each response when it is added, so that they are always
+	 * called on the thread which is loading the page. A request which no
+	 * loading thread has started is fetched by the caller when it waits for
+	 * the response.
+	 * 
+	 * @param requests
+	 *            - the requests for the frames of a page
+	 * @return an array parallel to the requests, holding the resource being
+	 *         loaded for each, or null for those to be fetched in the usual way
+	 */
+	Future[] startLoadingFrames(WebRequest[] requests) {
+		Future[] result = new Future[requests.length];
+		int numLoadable = 0;
+		for (int i = 0; i < requests.length; i++) {
+			if (isConcurrentlyLoadable(requests[i]))
+				numLoadable++;
+		}
+		if (numLoadable <= 1)
+			return result;
+
+		ExecutorService executor = _client.getFrameLoader();
+		if (executor == null)
+			return result;
+
+		for (int i = 0; i < requests.length; i++) {
+			if (!isConcurrentlyLoadable(requests[i]))
+				continue;
+			FrameSelector targetFrame = _frameContents
+					.getTargetFrame(requests[i]);
+			_client.tellListeners(requests[i]);
+			FutureTask task = new FrameLoadingTask(requests[i], targetFrame);
+			result[i] = task;
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// every loading thread is busy; the task will be run by the caller
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gives up on frames whose responses will not be added to the window,
+	 * because an earlier frame could not be loaded. Frames not yet started
+	 * are not requested; the bodies of those already loaded, or still
+	 * loading, are discarded so that their connections are released.
+	 * 
+	 * @param loading
+	 *            - the array returned by {@link #startLoadingFrames}
+	 * @param start
+	 *            - the index of the first frame to give up on
+	 */
+	void abandonLoadingFrames(Future[] loading, int start) {
+		for (int i = start; i < loading.length; i++) {
+			if (loading[i] instanceof FrameLoadingTask)
+				((FrameLoadingTask) loading[i]).abandon();
+		}
+	}
+
+	/**
+	 * Returns true if the request may be sent from a thread other than the
+	 * one which will display its response. JavaScript URLs are evaluated by
+	 * the page, and so must be handled on the calling thread.
+	 */
+	private boolean isConcurrentlyLoadable(WebRequest request) {
+		String urlString = request.getURLString().trim();
+		return urlString.length() != 0 && !urlString.startsWith("about:")
+				&& !HttpUnitUtils.isJavaScriptURL(urlString);
+	}
+
+	/**
+	 * Waits for a resource being loaded on another thread, and rethrows any
+	 * exception with which its loading failed. If no thread has started
+	 * loading it, the resource is loaded on this one.
+	 */
+	private WebResponse getLoadedResource(Future loading) throws IOException {
+		if (loading instanceof FutureTask)
+			((FutureTask) loading).run();
+		try {
+			return (WebResponse) loading.get();
+		} catch (InterruptedException e) {
+			loading.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading frame");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause.toString());
+		}
+	}
+
+	/**
+	 * The loading of a frame's resource on a frame loading thread. A task
+	 * which is abandoned is not started, and discards its response if it
+	 * completes.
+	 */
+	private class FrameLoadingTask extends FutureTask {
+
+		private volatile boolean _abandoned;
+
+		FrameLoadingTask(final WebRequest request,
+				final FrameSelector targetFrame) {
+			super(new Callable() {
+				public Object call() throws IOException {
+					return _client.createResponse(request, targetFrame);
+				}
+			});
+		}
+
+		public void run() {
+			if (!_abandoned)
+				super.run();
+		}
+
+		void abandon() {
+			_abandoned = true;
+			if (isDone())
+				discardResponse();
+		}
+
+		protected void done() {
+			if (_abandoned)
+				discardResponse();
+		}
+
+		private void discardResponse() {
+			try {
+				WebResponse response = (WebResponse) get();
+				if (response != null)
+					response.getInputStream().close();
+			} catch (Exception e) {
+				// the response failed or was never loaded; nothing to release
+			}
+		}
+	}
+
 	/**
 	 * Updates this web client based on a received response. This includes
 	 * updating cookies and frames.
@@ -214,7 +390,7 @@ public class WebWindow {
 			WebResponse result = getResponse(request);
 			return result;
 		} else if (shouldFollowRedirect(response)) {
-			delay(HttpUnitOptions.getRedirectDelay());
+			delay(_client.getOptions().getRedirectDelay());
 			return getResponse(new RedirectWebRequest(response));
 		} else {
 			_client.updateFrameContents(this, requestTarget, response,
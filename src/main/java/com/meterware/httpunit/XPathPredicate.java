@@ -20,9 +20,14 @@
  *******************************************************************************************************************/
 package com.meterware.httpunit;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import javax.xml.xpath.*;
 import org.w3c.dom.*;
 
+import com.meterware.httpunit.dom.DocumentImpl;
+
 /**
  * Provides an HTMLElement Predicate that is capable of matching based on an
  * XPath node specification. This allows for very advanced matching techniques.
@@ -30,7 +35,9 @@ import org.w3c.dom.*;
  * THREAD: Instances are not thread safe, each thread should create its own
  * instance with a specific xpath. (The same instance can be used for multiple
  * documents, each change in document will result in its internal caches being
- * flushed).
+ * flushed). The xpath is evaluated once for a document and the matching nodes
+ * remembered, so long as the document is one built by HttpUnit, which records
+ * its changes; other documents are searched afresh for each element.
  * 
  * @author <a href="mailto:edA-qa@disemia.com">edA-qa mort-ora-y</a>
  * @author <a href="mailto:stephane@mikaty.net">Stephane Mikaty</a>
@@ -40,6 +47,13 @@ public class XPathPredicate implements HTMLElementPredicate {
 	/** XPath which dictates matching nodes, from root */
 	private XPathExpression	xpath;
 	private String path;
+
+	/** the document whose matching nodes were last found, and its mutation count at the time */
+	private Document matchedDocument;
+	private int matchedMutationCount;
+	private Map matchingNodes;
+
+	private static final int UNKNOWN_MUTATION_COUNT = -1;
 	// set to true for debugging
 	public static final boolean DEBUG=false;
 
@@ -90,19 +104,47 @@ public class XPathPredicate implements HTMLElementPredicate {
 			debugOut(doc,"");
 		}	
 		
-		NodeList nodes;
+		return getMatchingNodes(doc).containsKey(htmlNode);
+	}
+
+	/**
+	 * get the nodes of the given document which match the xpath. The xpath is
+	 * evaluated only when the document differs from the one last seen, or has
+	 * been changed since.
+	 * @param doc - the document to search
+	 * @return an identity map whose keys are the matching nodes
+	 */
+	private Map getMatchingNodes(Document doc) {
+		int mutationCount = getMutationCount(doc);
+		if (doc != matchedDocument || mutationCount == UNKNOWN_MUTATION_COUNT || mutationCount != matchedMutationCount) {
+			matchingNodes = evaluate(doc);
+			matchedDocument = doc;
+			matchedMutationCount = mutationCount;
+		}
+		return matchingNodes;
+	}
+
+	private Map evaluate(Document doc) {
 		try {
-			nodes = (NodeList) xpath.evaluate(doc, XPathConstants.NODESET);
+			NodeList nodes = (NodeList) xpath.evaluate(doc, XPathConstants.NODESET);
 			final int nodeCount=nodes.getLength();
+			Map result = new IdentityHashMap(nodeCount);
 			for (int i = 0; i < nodeCount; i++) {
-				if (nodes.item(i).equals(htmlNode)) {
-					return true;
-				}
+				result.put(nodes.item(i), Boolean.TRUE);
 			}
+			return result;
 		} catch (XPathExpressionException e) {
 			throw new RuntimeException("unable to evaluate xpath '"+path+"'", e);
 		}
-		return false;
+	}
+
+	/**
+	 * get the mutation count of a document, if its implementation keeps one
+	 * @param doc - the document
+	 * @return the mutation count, or UNKNOWN_MUTATION_COUNT if changes to the document cannot be detected
+	 */
+	private static int getMutationCount(Document doc) {
+		return doc instanceof DocumentImpl ? ((DocumentImpl) doc).getMutationCount() : UNKNOWN_MUTATION_COUNT;
 	}
 
 }
\ No newline at end of file
@@ -89,8 +89,11 @@ public class AttrImpl extends NodeImpl implements Attr {
 
 
     public void setValue( String value ) throws DOMException {
+        if (_ownerElement instanceof ElementImpl) ((ElementImpl) _ownerElement).attributeChanging( _name );
         _value = value;
         _specified = true;
+        if (_ownerElement instanceof ElementImpl) ((ElementImpl) _ownerElement).attributeChanged( _name );
+        recordMutation();
     }
 
 
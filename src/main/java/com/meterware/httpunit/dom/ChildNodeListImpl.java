@@ -0,0 +1,106 @@
+package com.meterware.httpunit.dom;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The live list of the children of a node. The children are not copied: each request follows the sibling links from
+ * the first child. The position of the last item returned and the length are remembered until the document next
+ * changes, so that a loop over the list in order takes one step per item.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class ChildNodeListImpl extends NodeListImpl {
+
+    private final static int UNKNOWN = -1;
+
+    private final NodeImpl _parentNode;
+
+    /** The last item returned, its index, and the document mutation count when it was found. **/
+    private Node _lastNode;
+    private int  _lastIndex;
+    private int  _lastMutationCount;
+
+    /** The number of children, and the document mutation count when they were counted. **/
+    private int  _length = UNKNOWN;
+    private int  _lengthMutationCount;
+
+
+    ChildNodeListImpl( NodeImpl parentNode ) {
+        super( null );
+        _parentNode = parentNode;
+    }
+
+
+    public Node item( int index ) {
+        if (index < 0) return null;
+
+        Node node = _parentNode.getFirstChild();
+        int i = 0;
+        int mutationCount = getMutationCount();
+        if (_lastNode != null && _lastIndex <= index && mutationCount != UNKNOWN && _lastMutationCount == mutationCount) {
+            node = _lastNode;
+            i = _lastIndex;
+        }
+        for (; node != null && i < index; i++) node = node.getNextSibling();
+        if (node == null) recordLength( i, mutationCount );
+
+        _lastNode = node;
+        _lastIndex = i;
+        _lastMutationCount = mutationCount;
+        return node;
+    }
+
+
+    public int getLength() {
+        int mutationCount = getMutationCount();
+        if (_length != UNKNOWN && mutationCount != UNKNOWN && _lengthMutationCount == mutationCount) return _length;
+
+        int length = 0;
+        for (Node node = _parentNode.getFirstChild(); node != null; node = node.getNextSibling()) length++;
+        recordLength( length, mutationCount );
+        return length;
+    }
+
+
+    private void recordLength( int length, int mutationCount ) {
+        _length = length;
+        _lengthMutationCount = mutationCount;
+    }
+
+
+    protected List getList() {
+        ArrayList nodes = new ArrayList();
+        for (Node node = _parentNode.getFirstChild(); node != null; node = node.getNextSibling()) nodes.add( node );
+        return nodes;
+    }
+
+
+    private int getMutationCount() {
+        DocumentImpl document = _parentNode instanceof DocumentImpl ? (DocumentImpl) _parentNode : (DocumentImpl) _parentNode.getOwnerDocument();
+        return document == null ? UNKNOWN : document.getMutationCount();
+    }
+
+}
@@ -20,9 +20,10 @@ package com.meterware.httpunit.dom;
  *
  *******************************************************************************************************************/
 import org.w3c.dom.*;
-import org.w3c.dom.html.HTMLElement;
 
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -32,6 +33,24 @@ public class DocumentImpl extends NodeImpl implements Document {
 
     protected Element _documentElement;
 
+    private int _mutationCount;
+
+    /** The HTML elements in this document by id, created when first needed. **/
+    private ElementIndex _idIndex;
+
+    /** The HTML elements in this document by name, created along with the id index. **/
+    private ElementIndex _nameIndex;
+
+    private final static DomMutationListener[] NO_MUTATION_LISTENERS = new DomMutationListener[0];
+
+    private DomMutationListener[] _mutationListeners = NO_MUTATION_LISTENERS;
+
+    /** The most live views of this document's nodes which are kept for reuse. **/
+    private final static int MAX_LIVE_VIEWS = 64;
+
+    /** The live views of this document's nodes, by root node and query, least recently used first. Created when first needed. **/
+    private Map _liveViews;
+
 
     static DocumentImpl createDocument() {
         DocumentImpl document = new DocumentImpl();
@@ -43,6 +62,69 @@ public class DocumentImpl extends NodeImpl implements Document {
     protected void initialize() {}
 
 
+    /**
+     * Returns a count which changes whenever a node is added to or removed from this document, or the value
+     * of an attribute or text node within it is changed. Callers may compare it with an earlier value
+     * to decide whether information derived from the document is still current.
+     */
+    public int getMutationCount() {
+        return _mutationCount;
+    }
+
+
+    void incrementMutationCount() {
+        _mutationCount++;
+    }
+
+
+    /**
+     * Returns the live view saved for the specified root node and query, or null if there is none.
+     */
+    Object getLiveView( NodeImpl rootNode, String query ) {
+        return _liveViews == null ? null : _liveViews.get( new LiveViewKey( rootNode, query ) );
+    }
+
+
+    /**
+     * Saves a live view of the nodes below the specified root. Only the most recently used views are kept;
+     * a view which has been dropped is simply created again when next requested.
+     */
+    void setLiveView( NodeImpl rootNode, String query, Object view ) {
+        if (_liveViews == null) {
+            _liveViews = new LinkedHashMap( 16, 0.75f, /* accessOrder */ true ) {
+                protected boolean removeEldestEntry( Map.Entry eldest ) {
+                    return size() > MAX_LIVE_VIEWS;
+                }
+            };
+        }
+        _liveViews.put( new LiveViewKey( rootNode, query ), view );
+    }
+
+
+    /**
+     * The key for a live view: the identity of its root node and its query.
+     */
+    private static class LiveViewKey {
+        private final NodeImpl _rootNode;
+        private final String   _query;
+
+        LiveViewKey( NodeImpl rootNode, String query ) {
+            _rootNode = rootNode;
+            _query = query;
+        }
+
+        public boolean equals( Object o ) {
+            if (!(o instanceof LiveViewKey)) return false;
+            LiveViewKey other = (LiveViewKey) o;
+            return _rootNode == other._rootNode && _query.equals( other._query );
+        }
+
+        public int hashCode() {
+            return 31 * System.identityHashCode( _rootNode ) + _query.hashCode();
+        }
+    }
+
+
     public String getNodeName() {
         return "#document";
     }
@@ -124,6 +206,14 @@ public class DocumentImpl extends NodeImpl implements Document {
     }
 
 
+    /**
+     * Returns the form in which the elements of this document store the specified attribute name.
+     */
+    String toAttributeCase( String name ) {
+        return name;
+    }
+
+
     public EntityReference createEntityReference( String name ) throws DOMException {
         throw new UnsupportedOperationException( "EntityReference creation not supported ");
     }
@@ -150,13 +240,115 @@ public class DocumentImpl extends NodeImpl implements Document {
 
 
     public Element getElementById( String elementId ) {
-        for (Iterator each = preOrderIterator(); each.hasNext();) {
-            Node node = (Node) each.next();
-            if (!(node instanceof HTMLElement)) continue;
-            HTMLElement element = (HTMLElement) node;
-            if (elementId.equals( element.getId() )) return element;
+        if (_idIndex == null) createElementIndexes();
+        return _idIndex.getFirstElement( elementId );
+    }
+
+
+    /**
+     * Returns the HTML elements in this document with the specified name, in document order.
+     */
+    List getElementsWithName( String elementName ) {
+        if (_nameIndex == null) createElementIndexes();
+        return _nameIndex.getElements( elementName );
+    }
+
+
+    /**
+     * Registers an object to be told of changes to this document's tree.
+     */
+    public synchronized void addMutationListener( DomMutationListener listener ) {
+        DomMutationListener[] listeners = new DomMutationListener[ _mutationListeners.length + 1 ];
+        System.arraycopy( _mutationListeners, 0, listeners, 0, _mutationListeners.length );
+        listeners[ _mutationListeners.length ] = listener;
+        _mutationListeners = listeners;
+    }
+
+
+    /**
+     * Returns true if this document indexes its elements or has mutation listeners, and so must be told when they change.
+     */
+    boolean isTreeObserved() {
+        return _idIndex != null || _mutationListeners.length != 0;
+    }
+
+
+    /**
+     * Records that the specified node and its descendants have been attached to this document's tree,
+     * or are about to be detached from it.
+     */
+    void subtreeChanged( Node subtreeRoot, boolean attached ) {
+        if (_idIndex != null) updateElementIndexes( subtreeRoot, attached );
+
+        DomMutationListener[] listeners = _mutationListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (attached) {
+                listeners[i].nodeAttached( subtreeRoot );
+            } else {
+                listeners[i].nodeDetached( subtreeRoot );
+            }
         }
-        return null;
+    }
+
+
+    /**
+     * Adds the specified node and its descendants to the element indexes, or removes them.
+     */
+    private void updateElementIndexes( Node subtreeRoot, boolean attached ) {
+        if (subtreeRoot instanceof HTMLElementImpl) {
+            HTMLElementImpl element = (HTMLElementImpl) subtreeRoot;
+            if (attached) {
+                _idIndex.add( element );
+                _nameIndex.add( element );
+            } else {
+                _idIndex.remove( element );
+                _nameIndex.remove( element );
+            }
+        }
+        for (Node child = subtreeRoot.getFirstChild(); child != null; child = child.getNextSibling()) {
+            updateElementIndexes( child, attached );
+        }
+    }
+
+
+    /**
+     * Tells any mutation listeners that an attribute of an element in this document is about to change.
+     */
+    void attributeChanging( ElementImpl element, String attributeName ) {
+        DomMutationListener[] listeners = _mutationListeners;
+        if (listeners.length == 0 || !element.isInDocumentTree()) return;
+
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].attributeChanging( element, attributeName );
+        }
+    }
+
+
+    /**
+     * Re-indexes an element in this document after one of its attributes has changed, and tells any mutation listeners.
+     */
+    void attributeChanged( ElementImpl element, String attributeName ) {
+        if (!isTreeObserved() || !element.isInDocumentTree()) return;
+
+        if (_idIndex != null && element instanceof HTMLElementImpl) {
+            if (attributeName.equals( "id" )) {
+                _idIndex.update( (HTMLElementImpl) element );
+            } else if (attributeName.equals( "name" )) {
+                _nameIndex.update( (HTMLElementImpl) element );
+            }
+        }
+
+        DomMutationListener[] listeners = _mutationListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].attributeChanged( element, attributeName );
+        }
+    }
+
+
+    private void createElementIndexes() {
+        _idIndex = new ElementIndex( "id" );
+        _nameIndex = new ElementIndex( "name" );
+        updateElementIndexes( this, true );
     }
 
 
@@ -182,9 +374,8 @@ public class DocumentImpl extends NodeImpl implements Document {
      * @param copy
      */
     void importChildren( Node original, Node copy ) {
-        NodeList children = original.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node childCopy = importNode( children.item(i), /* deep */ true );
+        for (Node child = original.getFirstChild(); child != null; child = child.getNextSibling()) {
+            Node childCopy = importNode( child, /* deep */ true );
             copy.appendChild( childCopy );
         }
     }
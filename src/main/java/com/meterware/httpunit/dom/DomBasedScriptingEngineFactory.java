@@ -19,12 +19,12 @@ package com.meterware.httpunit.dom;
 * DEALINGS IN THE SOFTWARE.
 *
 *******************************************************************************************************************/
-import com.meterware.httpunit.javascript.JavaScript;
 import com.meterware.httpunit.javascript.ScriptingEngineImpl;
 import com.meterware.httpunit.javascript.JavaScript.Window;
 import com.meterware.httpunit.scripting.ScriptingEngineFactory;
 import com.meterware.httpunit.scripting.ScriptingHandler;
 import com.meterware.httpunit.scripting.ScriptingEngine;
+import com.meterware.httpunit.HttpUnitOptions;
 import com.meterware.httpunit.HttpUnitUtils;
 import com.meterware.httpunit.ScriptException;
 import com.meterware.httpunit.WebResponse;
@@ -49,6 +49,8 @@ import org.mozilla.javascript.Scriptable;
  */
 public class DomBasedScriptingEngineFactory implements ScriptingEngineFactory {
 
+    private volatile boolean _throwExceptionsOnError = true;
+
 	
 		/**
 		 * check whether this ScriptingEngineFactory is enabled
@@ -99,11 +101,11 @@ public class DomBasedScriptingEngineFactory implements ScriptingEngineFactory {
             if (onLoadEvent == null) return;
             onLoadEvent.call( context, body, body, new Object[0] );
         } catch (JavaScriptException e) {
-        	ScriptingEngineImpl.handleScriptException(e, onLoadEvent.toString());
+        	ScriptingEngineImpl.handleScriptException(e, onLoadEvent.toString(), response.getClient());
         	// HttpUnitUtils.handleException(e);
         } catch (EcmaError ee) {
         	//throw ee;
-        	ScriptingEngineImpl.handleScriptException(ee, onLoadEvent.toString());        	
+        	ScriptingEngineImpl.handleScriptException(ee, onLoadEvent.toString(), response.getClient());        	
         } finally {
             Context.exit();
         }
@@ -114,7 +116,7 @@ public class DomBasedScriptingEngineFactory implements ScriptingEngineFactory {
      * @param throwExceptions - true if Exceptions should be thrown
      */
     public void setThrowExceptionsOnError( boolean throwExceptions ) {
-      JavaScript.setThrowExceptionsOnError( throwExceptions );
+      _throwExceptionsOnError = throwExceptions;
     }
 
 
@@ -123,17 +125,17 @@ public class DomBasedScriptingEngineFactory implements ScriptingEngineFactory {
      * @return - true if Exceptions should be thrown
      */
     public boolean isThrowExceptionsOnError() {
-    	return JavaScript.isThrowExceptionsOnError();
+    	return _throwExceptionsOnError;
     }
 
 
     public String[] getErrorMessages() {
-      return ScriptingEngineImpl.getErrorMessages();
+      return HttpUnitOptions.getScriptErrorLog().getErrorMessages();
     }
 
 
     public void clearErrorMessages() {
-      ScriptingEngineImpl.clearErrorMessages();
+      HttpUnitOptions.getScriptErrorLog().clearErrorMessages();
     }
 
 
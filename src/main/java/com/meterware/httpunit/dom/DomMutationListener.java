@@ -0,0 +1,54 @@
+package com.meterware.httpunit.dom;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An object to be told of changes to the structure of a document, or to the attributes of its elements.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ */
+public interface DomMutationListener {
+
+    /**
+     * Invoked after the specified node, along with its descendants, has been added to the document tree.
+     */
+    void nodeAttached( Node node );
+
+
+    /**
+     * Invoked before the specified node, along with its descendants, is removed from the document tree.
+     */
+    void nodeDetached( Node node );
+
+
+    /**
+     * Invoked before an attribute of an element in the document tree is set or removed.
+     */
+    void attributeChanging( Element element, String attributeName );
+
+
+    /**
+     * Invoked after an attribute of an element in the document tree has been set or removed.
+     */
+    void attributeChanged( Element element, String attributeName );
+}
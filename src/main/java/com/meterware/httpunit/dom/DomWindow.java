@@ -26,6 +26,8 @@ import org.xml.sax.SAXException;
 import org.mozilla.javascript.Scriptable;
 import org.w3c.dom.html.HTMLDocument;
 
+import com.meterware.httpunit.WebClient;
+import com.meterware.httpunit.WebResponse;
 import com.meterware.httpunit.scripting.ScriptingHandler;
 
 /**
@@ -55,6 +57,14 @@ public class DomWindow extends AbstractDomComponent implements Scriptable {
     }
 
 
+    /**
+     * Returns the client which received the response shown in this window, if any.
+     */
+    protected WebClient getClient() {
+        return (_proxy instanceof WebResponse) ? ((WebResponse) _proxy).getClient() : null;
+    }
+
+
     public DomWindow getWindow() {
         return this;
     }
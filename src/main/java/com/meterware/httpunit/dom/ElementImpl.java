@@ -21,9 +21,6 @@ package com.meterware.httpunit.dom;
  *******************************************************************************************************************/
 import org.w3c.dom.*;
 
-import java.util.Hashtable;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeEvent;
 
@@ -33,8 +30,14 @@ import java.beans.PropertyChangeEvent;
  **/
 public class ElementImpl extends NamespaceAwareNodeImpl implements Element {
 
-    private Hashtable _attributes = new Hashtable();
-    private ArrayList _listeners = new ArrayList( );
+    private final static AttrImpl[] NO_ATTRIBUTES = new AttrImpl[0];
+    private final static DomListener[] NO_LISTENERS = new DomListener[0];
+
+    /** The attributes of this element, in the order in which they were first set. **/
+    private AttrImpl[] _attributes = NO_ATTRIBUTES;
+
+    /** The listeners to changes in this element. Replaced rather than modified, so that reporting needs no lock. **/
+    private DomListener[] _listeners = NO_LISTENERS;
 
     static ElementImpl createElement( DocumentImpl owner, String tagName ) {
         ElementImpl element = new ElementImpl();
@@ -50,21 +53,18 @@ public class ElementImpl extends NamespaceAwareNodeImpl implements Element {
     }
 
 
-    public void addDomListener( DomListener listener ) {
-        synchronized (_listeners) {
-            _listeners.add( listener );
-        }
+    public synchronized void addDomListener( DomListener listener ) {
+        DomListener[] listeners = new DomListener[ _listeners.length + 1 ];
+        System.arraycopy( _listeners, 0, listeners, 0, _listeners.length );
+        listeners[ _listeners.length ] = listener;
+        _listeners = listeners;
     }
 
 
     protected void reportPropertyChanged( String propertyName ) {
-        ArrayList listeners;
-        synchronized( _listeners ) {
-            listeners = (ArrayList) _listeners.clone();
-        }
-
-        for (Iterator each = listeners.iterator(); each.hasNext();) {
-            ((DomListener) each.next()).propertyChanged( this, propertyName );
+        DomListener[] listeners = _listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].propertyChanged( this, propertyName );
         }
     }
 
@@ -85,12 +85,22 @@ public class ElementImpl extends NamespaceAwareNodeImpl implements Element {
 
 
     public boolean hasAttributes() {
-        return !_attributes.isEmpty();
+        return _attributes.length != 0;
     }
 
 
     public NamedNodeMap getAttributes() {
-        return new NamedNodeMapImpl( _attributes );
+        return new NamedNodeMapImpl( this );
+    }
+
+
+    int getAttributeCount() {
+        return _attributes.length;
+    }
+
+
+    Attr getAttributeAt( int index ) {
+        return index < 0 || index >= _attributes.length ? null : _attributes[ index ];
     }
 
 
@@ -140,46 +150,98 @@ public class ElementImpl extends NamespaceAwareNodeImpl implements Element {
 
 
     public void removeAttribute( String name ) throws DOMException {
-        _attributes.remove( name );
+        int index = indexOfAttribute( name );
+        if (index >= 0) removeAttributeAt( index );
     }
 
 
     public Attr getAttributeNode( String name ) {
-        return (Attr) _attributes.get( name );
+        int index = indexOfAttribute( name );
+        return index < 0 ? null : _attributes[ index ];
     }
 
 
     public Attr setAttributeNode( Attr newAttr ) throws DOMException {
         if (newAttr.getOwnerDocument() != getOwnerDocument()) throw new DOMException( DOMException.WRONG_DOCUMENT_ERR, "attribute must be from the same document as the element" );
 
+        attributeChanging( newAttr.getName() );
         ((AttrImpl) newAttr).setOwnerElement( this );
-        AttrImpl oldAttr = (AttrImpl) _attributes.put( newAttr.getName(), newAttr );
-        if (oldAttr != null) oldAttr.setOwnerElement( null );
+        AttrImpl oldAttr = null;
+        int index = indexOfAttribute( newAttr.getName() );
+        if (index >= 0) {
+            oldAttr = _attributes[ index ];
+            _attributes[ index ] = (AttrImpl) newAttr;
+            if (oldAttr != newAttr) oldAttr.setOwnerElement( null );
+        } else {
+            AttrImpl[] attributes = new AttrImpl[ _attributes.length + 1 ];
+            System.arraycopy( _attributes, 0, attributes, 0, _attributes.length );
+            attributes[ _attributes.length ] = (AttrImpl) newAttr;
+            _attributes = attributes;
+        }
+        attributeChanged( newAttr.getName() );
+        recordMutation();
         return oldAttr;
     }
 
 
     public Attr setAttributeNodeNS( Attr newAttr ) throws DOMException {
-        if (newAttr.getOwnerDocument() != getOwnerDocument()) throw new DOMException( DOMException.WRONG_DOCUMENT_ERR, "attribute must be from the same document as the element" );
-
-        ((AttrImpl) newAttr).setOwnerElement( this );
-        AttrImpl oldAttr = (AttrImpl) _attributes.put( newAttr.getName(), newAttr );
-        if (oldAttr != null) oldAttr.setOwnerElement( null );
-        return oldAttr;
+        return setAttributeNode( newAttr );
     }
 
 
     public Attr removeAttributeNode( Attr oldAttr ) throws DOMException {
-        if (!_attributes.containsValue( oldAttr)) throw new DOMException( DOMException.NOT_FOUND_ERR, "Specified attribute is not defined for this element" );
+        for (int i = 0; i < _attributes.length; i++) {
+            if (_attributes[i] == oldAttr) return removeAttributeAt( i );
+        }
+        throw new DOMException( DOMException.NOT_FOUND_ERR, "Specified attribute is not defined for this element" );
+    }
+
+
+    private int indexOfAttribute( String name ) {
+        String attributeName = ((DocumentImpl) getOwnerDocument()).toAttributeCase( name );
+        for (int i = 0; i < _attributes.length; i++) {
+            if (attributeName.equals( _attributes[i].getName() )) return i;
+        }
+        return -1;
+    }
 
-        AttrImpl removedAttr = (AttrImpl) _attributes.remove( oldAttr.getName() );
-        if (removedAttr != null) removedAttr.setOwnerElement( null );
+
+    private AttrImpl removeAttributeAt( int index ) {
+        AttrImpl removedAttr = _attributes[ index ];
+        attributeChanging( removedAttr.getName() );
+        if (_attributes.length == 1) {
+            _attributes = NO_ATTRIBUTES;
+        } else {
+            AttrImpl[] attributes = new AttrImpl[ _attributes.length - 1 ];
+            System.arraycopy( _attributes, 0, attributes, 0, index );
+            System.arraycopy( _attributes, index + 1, attributes, index, attributes.length - index );
+            _attributes = attributes;
+        }
+        removedAttr.setOwnerElement( null );
+        attributeChanged( removedAttr.getName() );
+        recordMutation();
         return removedAttr;
     }
 
 
+    /**
+     * Lets the owner document tell its listeners that an attribute of this element is about to change.
+     */
+    void attributeChanging( String name ) {
+        ((DocumentImpl) getOwnerDocument()).attributeChanging( this, name );
+    }
+
+
+    /**
+     * Lets the owner document re-index this element if the changed attribute is one by which it looks up elements.
+     */
+    void attributeChanged( String name ) {
+        ((DocumentImpl) getOwnerDocument()).attributeChanged( this, name );
+    }
+
+
     public boolean hasAttribute( String name ) {
-        return _attributes.containsKey( name );
+        return indexOfAttribute( name ) >= 0;
     }
 
 
@@ -0,0 +1,150 @@
+package com.meterware.httpunit.dom;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An index of the HTML elements in a document by the value of one of their attributes. The document keeps it current
+ * as elements are attached, detached, or have the attribute changed, so that lookups need not walk the tree.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class ElementIndex {
+
+    private final static List NO_ELEMENTS = Collections.EMPTY_LIST;
+
+    private final static Comparator DOCUMENT_ORDER = new Comparator() {
+        public int compare( Object o1, Object o2 ) {
+            return compareDocumentOrder( (Node) o1, (Node) o2 );
+        }
+    };
+
+    private final String _attributeName;
+
+    /** The elements with each attribute value. **/
+    private final Map _elements = new HashMap();
+
+    /** The attribute value under which each element is indexed. **/
+    private final Map _values = new IdentityHashMap();
+
+    /** The attribute values whose element lists may not be in document order. **/
+    private final Set _unsortedValues = new HashSet();
+
+
+    ElementIndex( String attributeName ) {
+        _attributeName = attributeName;
+    }
+
+
+    /**
+     * Returns the elements whose attribute has the specified value, in document order.
+     */
+    List getElements( String value ) {
+        List elements = (List) _elements.get( value );
+        if (elements == null) return NO_ELEMENTS;
+        if (_unsortedValues.remove( value )) Collections.sort( elements, DOCUMENT_ORDER );
+        return elements;
+    }
+
+
+    /**
+     * Returns the first element in document order whose attribute has the specified value, or null if there is none.
+     */
+    HTMLElementImpl getFirstElement( String value ) {
+        List elements = getElements( value );
+        return elements.isEmpty() ? null : (HTMLElementImpl) elements.get( 0 );
+    }
+
+
+    void add( HTMLElementImpl element ) {
+        String value = element.getAttributeWithNoDefault( _attributeName );
+        if (value == null) return;
+
+        List elements = (List) _elements.get( value );
+        if (elements == null) {
+            elements = new ArrayList( 1 );
+            _elements.put( value, elements );
+        } else {
+            _unsortedValues.add( value );
+        }
+        elements.add( element );
+        _values.put( element, value );
+    }
+
+
+    void remove( HTMLElementImpl element ) {
+        String value = (String) _values.remove( element );
+        if (value == null) return;
+
+        List elements = (List) _elements.get( value );
+        elements.remove( element );
+        if (elements.isEmpty()) {
+            _elements.remove( value );
+            _unsortedValues.remove( value );
+        }
+    }
+
+
+    /**
+     * Re-indexes an element after its attribute may have changed.
+     */
+    void update( HTMLElementImpl element ) {
+        remove( element );
+        add( element );
+    }
+
+
+    private static int compareDocumentOrder( Node first, Node second ) {
+        if (first == second) return 0;
+        List firstPath = getPathFromRoot( first );
+        List secondPath = getPathFromRoot( second );
+        int depth = 0;
+        while (depth < firstPath.size() && depth < secondPath.size() && firstPath.get( depth ) == secondPath.get( depth )) depth++;
+        if (depth == firstPath.size()) return -1;
+        if (depth == secondPath.size()) return +1;
+
+        Node secondBranch = (Node) secondPath.get( depth );
+        for (Node sibling = (Node) firstPath.get( depth ); sibling != null; sibling = sibling.getNextSibling()) {
+            if (sibling == secondBranch) return -1;
+        }
+        return +1;
+    }
+
+
+    private static List getPathFromRoot( Node node ) {
+        ArrayList path = new ArrayList();
+        for (Node each = node; each != null; each = each.getParentNode()) path.add( each );
+        Collections.reverse( path );
+        return path;
+    }
+
+}
@@ -42,22 +42,40 @@ class HTMLContainerDelegate {
     }
 
 
+    NodeImpl.IteratorMask getIteratorMask() {
+        return _iteratorMask;
+    }
+
+
+    /**
+     * Changes the subtrees skipped when searching. Callers must record a mutation so that live collections are rebuilt.
+     */
+    void setIteratorMask( NodeImpl.IteratorMask iteratorMask ) {
+        _iteratorMask = iteratorMask;
+    }
+
+
     /**
      * get Links for a given Node
      * @param rootNode - an array of forms
      * @return
      */
     HTMLCollection getLinks( NodeImpl rootNode ) {
-        ArrayList elements = new ArrayList();
-        for (Iterator each = rootNode.preOrderIteratorWithinNode( _iteratorMask ); each.hasNext();) {
-            Node node = (Node) each.next();
-            if (node.getNodeType() != Node.ELEMENT_NODE) continue;
-
-            if (ParsedHTML.isWebLink(node)) {
-                elements.add( node );
+        HTMLCollection links = (HTMLCollection) rootNode.getLiveView( "#links" );
+        if (links != null) return links;
+
+        return cacheCollection( rootNode, "#links", new LiveNodeListImpl( rootNode ) {
+            void collectNodes( NodeImpl rootNode, ArrayList nodes ) {
+                for (Iterator each = rootNode.preOrderIteratorWithinNode( _iteratorMask ); each.hasNext();) {
+                    Node node = (Node) each.next();
+                    if (node.getNodeType() != Node.ELEMENT_NODE) continue;
+
+                    if (ParsedHTML.isWebLink(node)) {
+                        nodes.add( node );
+                    }
+                }
             }
-        }
-        return HTMLCollectionImpl.createHTMLCollectionImpl( new NodeListImpl( elements ) );
+        } );
     }
 
 
@@ -67,42 +85,66 @@ class HTMLContainerDelegate {
      * @return - an array of forms
      */
     HTMLCollection getForms( NodeImpl rootNode ) {
-        ArrayList elements = new ArrayList();
-        for (Iterator each = rootNode.preOrderIteratorWithinNode( _iteratorMask ); each.hasNext();) {
-            Node node = (Node) each.next();
-            if (node.getNodeType() != Node.ELEMENT_NODE) continue;
-
-            if ("form".equalsIgnoreCase( ((Element) node).getTagName() )) {
-                elements.add( node );
+        HTMLCollection forms = (HTMLCollection) rootNode.getLiveView( "#forms" );
+        if (forms != null) return forms;
+
+        return cacheCollection( rootNode, "#forms", new LiveNodeListImpl( rootNode ) {
+            void collectNodes( NodeImpl rootNode, ArrayList nodes ) {
+                for (Iterator each = rootNode.preOrderIteratorWithinNode( _iteratorMask ); each.hasNext();) {
+                    Node node = (Node) each.next();
+                    if (node.getNodeType() != Node.ELEMENT_NODE) continue;
+
+                    if ("form".equalsIgnoreCase( ((Element) node).getTagName() )) {
+                        nodes.add( node );
+                    }
+                }
             }
-        }
-        return HTMLCollectionImpl.createHTMLCollectionImpl( new NodeListImpl( elements ) );
+        } );
     }
 
 
     HTMLCollection getAnchors( NodeImpl rootNode ) {
-        NodeList nodeList = rootNode.getElementsByTagName( "A" );
-        ArrayList elements = new ArrayList();
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item( i );
-            if (node.getAttributes().getNamedItem( "name" ) != null) {
-                elements.add( node );
+        HTMLCollection anchors = (HTMLCollection) rootNode.getLiveView( "#anchors" );
+        if (anchors != null) return anchors;
+
+        return cacheCollection( rootNode, "#anchors", new LiveNodeListImpl( rootNode ) {
+            void collectNodes( NodeImpl rootNode, ArrayList nodes ) {
+                NodeList nodeList = rootNode.getElementsByTagName( "A" );
+                for (int i = 0; i < nodeList.getLength(); i++) {
+                    Node node = nodeList.item( i );
+                    if (node.getAttributes().getNamedItem( "name" ) != null) {
+                        nodes.add( node );
+                    }
+                }
             }
-        }
-        return HTMLCollectionImpl.createHTMLCollectionImpl( new NodeListImpl( elements ) );
+        } );
     }
 
 
     HTMLCollection getImages( NodeImpl rootNode ) {
-        ArrayList elements = new ArrayList();
-        rootNode.appendElementsWithTags( new String[] {"img"}, elements );
-        return HTMLCollectionImpl.createHTMLCollectionImpl( new NodeListImpl( elements ) );
+        return getElementsWithTag( rootNode, "img" );
     }
 
 
     HTMLCollection getApplets( NodeImpl rootNode ) {
-        ArrayList elements = new ArrayList();
-        rootNode.appendElementsWithTags( new String[] {"applet"}, elements );
-        return HTMLCollectionImpl.createHTMLCollectionImpl( new NodeListImpl( elements ) );
+        return getElementsWithTag( rootNode, "applet" );
+    }
+
+
+    private HTMLCollection getElementsWithTag( NodeImpl rootNode, final String tagName ) {
+        String query = "#collection " + tagName;
+        HTMLCollection elements = (HTMLCollection) rootNode.getLiveView( query );
+        if (elements != null) return elements;
+
+        return cacheCollection( rootNode, query, new LiveNodeListImpl( rootNode ) {
+            void collectNodes( NodeImpl rootNode, ArrayList nodes ) {
+                rootNode.appendElementsWithTags( new String[] {tagName}, nodes );
+            }
+        } );
+    }
+
+
+    private HTMLCollection cacheCollection( NodeImpl rootNode, String query, NodeList nodes ) {
+        return (HTMLCollection) rootNode.setLiveView( query, HTMLCollectionImpl.createHTMLCollectionImpl( nodes ) );
     }
 }
@@ -19,13 +19,14 @@ package com.meterware.httpunit.dom;
  * DEALINGS IN THE SOFTWARE.
  *
  *******************************************************************************************************************/
+import com.meterware.httpunit.WebClient;
+
 import org.w3c.dom.html.*;
 import org.w3c.dom.*;
 import org.w3c.dom.Node;
 import org.mozilla.javascript.*;
 
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.ArrayList;
 import java.net.URL;
 import java.net.MalformedURLException;
@@ -39,11 +40,18 @@ public class HTMLDocumentImpl extends DocumentImpl implements HTMLDocument, HTML
     private static Hashtable _exemplars = new Hashtable();
     private DomWindow _window;
     private StringBuffer _writeBuffer;
+
+    /** True if open() has been called since the document was last replaced or its written text discarded. **/
+    private boolean _opened;
     private HTMLContainerDelegate _containerDelegate = new HTMLContainerDelegate( SKIP_IFRAMES );
 
 
     public void setIFramesEnabled( boolean enabled ) {
-        _containerDelegate = new HTMLContainerDelegate( enabled ? SKIP_IFRAMES : null );
+        IteratorMask iteratorMask = enabled ? SKIP_IFRAMES : null;
+        if (_containerDelegate.getIteratorMask() == iteratorMask) return;
+
+        _containerDelegate.setIteratorMask( iteratorMask );
+        incrementMutationCount();
     }
 
 
@@ -202,10 +210,16 @@ public class HTMLDocumentImpl extends DocumentImpl implements HTMLDocument, HTML
 
 
     public void open() {
+        _opened = true;
     }
 
 
+    /**
+     * Replaces the page with the text written since it was opened. Does nothing if the document was neither opened
+     * nor written, so that a stray close does not force the page to be parsed again.
+     */
     public void close() {
+        if (_writeBuffer == null && !_opened) return;
         if (getWindow().replaceText( getWriteBuffer().toString(), getMimeType()) ) clearWriteBuffer();
     }
 
@@ -226,31 +240,34 @@ public class HTMLDocumentImpl extends DocumentImpl implements HTMLDocument, HTML
 
 
     public NodeList getElementsByName( String elementName ) {
-        ArrayList elements = new ArrayList();
-        for (Iterator each = preOrderIterator(); each.hasNext();) {
-            Node node = (Node) each.next();
-            if (!(node instanceof HTMLElementImpl)) continue;
-            HTMLElementImpl element = (HTMLElementImpl) node;
-            if (elementName.equals( element.getAttributeWithNoDefault( "name" ) )) elements.add( element );
-        }
-        return new NodeListImpl( elements );
+        return new NodeListImpl( new ArrayList( getElementsWithName( elementName ) ) );
     }
 
 
     public Element createElement( String tagName ) throws DOMException {
         ElementImpl element = getExemplar( tagName ).create();
-        element.initialize( this, toNodeCase( tagName ) );
+        element.initialize( this, toNodeCase( tagName ).intern() );
         return element;
     }
 
 
     public Element createElementNS( String namespaceURI, String qualifiedName ) throws DOMException {
         ElementImpl element = getExemplar( qualifiedName ).create();
-        element.initialize( this, namespaceURI, toNodeCase( qualifiedName ) );
+        element.initialize( this, namespaceURI, toNodeCase( qualifiedName ).intern() );
         return element;
     }
 
 
+    public Attr createAttribute( String name ) throws DOMException {
+        return super.createAttribute( toAttributeCase( name ).intern() );
+    }
+
+
+    public Attr createAttributeNS( String namespaceURI, String qualifiedName ) throws DOMException {
+        return super.createAttributeNS( namespaceURI, toAttributeCase( qualifiedName ).intern() );
+    }
+
+
     public NodeList getElementsByTagName( String name ) {
         return super.getElementsByTagName( toNodeCase( name ) );
     }
@@ -279,6 +296,11 @@ public class HTMLDocumentImpl extends DocumentImpl implements HTMLDocument, HTML
     }
 
 
+    String toAttributeCase( String name ) {
+        return name.toLowerCase();
+    }
+
+
     HTMLContainerDelegate getContainerDelegate() {
         return _containerDelegate;
     }
@@ -312,6 +334,14 @@ public class HTMLDocumentImpl extends DocumentImpl implements HTMLDocument, HTML
     }
 
     
+    /**
+     * Returns the client which received this document, if it has been displayed in a window.
+     */
+    protected WebClient getClient() {
+        return _window == null ? null : _window.getClient();
+    }
+
+
     /**
      * get the Window
      * @return the window
@@ -335,6 +365,7 @@ public class HTMLDocumentImpl extends DocumentImpl implements HTMLDocument, HTML
 
     public void clearWriteBuffer() {
         _writeBuffer = null;
+        _opened = false;
     }
 
 
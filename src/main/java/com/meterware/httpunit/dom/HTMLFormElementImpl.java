@@ -140,19 +140,24 @@ public class HTMLFormElementImpl extends HTMLElementImpl implements HTMLFormElem
 
 
     public HTMLCollection getElements() {
-        ArrayList elements = new ArrayList();
-        String[] names = new String[]{"INPUT", "TEXTAREA", "BUTTON", "SELECT"};
-        for (Iterator each = preOrderIteratorAfterNode(); each.hasNext();) {
-            Node node = (Node) each.next();
-            if (node instanceof HTMLFormElement) break;
-
-            if (node.getNodeType() != ELEMENT_NODE) continue;
-            String tagName = ((Element) node).getTagName();
-            for (int i = 0; i < names.length; i++) {
-                if (tagName.equalsIgnoreCase( names[i] )) elements.add( node );
+        HTMLCollection elements = (HTMLCollection) getLiveView( "#elements" );
+        if (elements != null) return elements;
+
+        return (HTMLCollection) setLiveView( "#elements", HTMLCollectionImpl.createHTMLCollectionImpl( new LiveNodeListImpl( this ) {
+            void collectNodes( NodeImpl rootNode, ArrayList nodes ) {
+                String[] names = new String[]{"INPUT", "TEXTAREA", "BUTTON", "SELECT"};
+                for (Iterator each = rootNode.preOrderIteratorAfterNode(); each.hasNext();) {
+                    Node node = (Node) each.next();
+                    if (node instanceof HTMLFormElement) break;
+
+                    if (node.getNodeType() != ELEMENT_NODE) continue;
+                    String tagName = ((Element) node).getTagName();
+                    for (int i = 0; i < names.length; i++) {
+                        if (tagName.equalsIgnoreCase( names[i] )) nodes.add( node );
+                    }
+                }
             }
-        }
-        return HTMLCollectionImpl.createHTMLCollectionImpl( new NodeListImpl( elements ) );
+        } ) );
     }
 
 
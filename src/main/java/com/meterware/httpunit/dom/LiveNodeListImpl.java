@@ -0,0 +1,73 @@
+package com.meterware.httpunit.dom;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A node list whose contents are selected from the tree at a root node. The list is live: it is rebuilt when next used
+ * after any change to the document, and otherwise answers item and length requests without walking the tree.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+abstract class LiveNodeListImpl extends NodeListImpl {
+
+    private final static int NOT_COLLECTED = -1;
+
+    private final NodeImpl  _rootNode;
+    private final ArrayList _nodes;
+
+    /** The document mutation count when the nodes were last collected. **/
+    private int _mutationCount = NOT_COLLECTED;
+
+
+    LiveNodeListImpl( NodeImpl rootNode ) {
+        this( rootNode, new ArrayList() );
+    }
+
+
+    private LiveNodeListImpl( NodeImpl rootNode, ArrayList nodes ) {
+        super( nodes );
+        _rootNode = rootNode;
+        _nodes = nodes;
+    }
+
+
+    protected List getList() {
+        DocumentImpl document = _rootNode instanceof DocumentImpl ? (DocumentImpl) _rootNode : (DocumentImpl) _rootNode.getOwnerDocument();
+        int mutationCount = document.getMutationCount();
+        if (mutationCount != _mutationCount) {
+            _nodes.clear();
+            collectNodes( _rootNode, _nodes );
+            _nodes.trimToSize();
+            _mutationCount = mutationCount;
+        }
+        return _nodes;
+    }
+
+
+    /**
+     * Adds the nodes selected from the tree at the specified root to the list, in document order.
+     */
+    abstract void collectNodes( NodeImpl rootNode, ArrayList nodes );
+
+}
@@ -23,27 +23,24 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.DOMException;
 
-import java.util.Hashtable;
-
 /**
+ * The attributes of an element. This is a live view, so reflects later changes to the element.
  *
  * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
  **/
 public class NamedNodeMapImpl implements NamedNodeMap {
 
 
-    private Hashtable _items;
-    private Node[]    _itemArray;
+    private ElementImpl _element;
 
 
-    NamedNodeMapImpl( Hashtable items ) {
-        _items     = (Hashtable) items.clone();
-        _itemArray = (Node[]) _items.values().toArray( new Node[ _items.size() ] );
+    NamedNodeMapImpl( ElementImpl element ) {
+        _element = element;
     }
 
 
     public Node getNamedItem( String name ) {
-        return (Node) _items.get( name );
+        return _element.getAttributeNode( name );
     }
 
 
@@ -58,12 +55,12 @@ public class NamedNodeMapImpl implements NamedNodeMap {
 
 
     public Node item( int index ) {
-        return _itemArray[ index ];
+        return _element.getAttributeAt( index );
     }
 
 
     public int getLength() {
-        return _items.size();
+        return _element.getAttributeCount();
     }
 
 
@@ -19,11 +19,13 @@ package com.meterware.httpunit.dom;
  * DEALINGS IN THE SOFTWARE.
  *
  *******************************************************************************************************************/
+import com.meterware.httpunit.WebClient;
+
 import org.w3c.dom.*;
 import org.w3c.dom.html.HTMLIFrameElement;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.Iterator;
 
 /**
@@ -37,7 +39,7 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
     private NodeImpl     _firstChild;
     private NodeImpl     _nextSibling;
     private NodeImpl     _previousSibling;
-    private Hashtable    _userData = new Hashtable( );
+    private HashMap      _userData;
 
     static IteratorMask SKIP_IFRAMES = new IteratorMask() {
         public boolean skipSubtree( Node subtreeRoot ) {
@@ -57,6 +59,13 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
 
 //------------------------------------------ ScriptingEngine methods --------------------------------------------------
 
+    /**
+     * Returns the client which received the document containing this node, if any.
+     */
+    protected WebClient getClient() {
+        return _ownerDocument == null ? null : _ownerDocument.getClient();
+    }
+
 //----------------------------------------------- Node methods ---------------------------------------------------------
 
 
@@ -66,11 +75,7 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
 
 
     public NodeList getChildNodes() {
-        ArrayList list = new ArrayList();
-        for (NodeImpl child = _firstChild; child != null; child = child._nextSibling) {
-            list.add( child );
-        }
-        return new NodeListImpl( list );
+        return new ChildNodeListImpl( this );
     }
 
 
@@ -120,12 +125,15 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
             refChildNode._previousSibling.setNextSibling( newChildNode );
         }
         newChildNode.setNextSibling( refChildNode );
+        newChildNode.reportSubtreeChange( true );
+        recordMutation();
         return newChildNode;
     }
 
 
     private void removeFromTree( NodeImpl childNode ) {
         if (childNode._parentNode != null) {
+            childNode.reportSubtreeChange( false );
             if (childNode._previousSibling != null) {
                 childNode._previousSibling.setNextSibling( childNode._nextSibling );
             } else {
@@ -146,6 +154,7 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
     public Node removeChild( Node oldChild ) throws DOMException {
         if (oldChild.getParentNode() != this) throw new DOMException( DOMException.NOT_FOUND_ERR, "May only remove a node from its own parent" );
         removeFromTree( (NodeImpl) oldChild );
+        recordMutation();
         return oldChild;
     }
 
@@ -161,10 +170,41 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
         } else {
             ((NodeImpl) getLastChild()).setNextSibling( childNode );
         }
+        childNode.reportSubtreeChange( true );
+        recordMutation();
         return newChild;
     }
 
 
+    /**
+     * Tells the owner document that this node and its descendants have been attached to or are about to be detached from its tree.
+     */
+    private void reportSubtreeChange( boolean attached ) {
+        if (_ownerDocument != null && _ownerDocument.isTreeObserved() && isInDocumentTree()) {
+            _ownerDocument.subtreeChanged( this, attached );
+        }
+    }
+
+
+    /**
+     * Returns true if this node is reachable from its owner document.
+     */
+    boolean isInDocumentTree() {
+        NodeImpl node = this;
+        while (node._parentNode != null) node = node._parentNode;
+        return node == _ownerDocument;
+    }
+
+
+    /**
+     * Records that the document containing this node has changed.
+     */
+    protected void recordMutation() {
+        DocumentImpl document = (this instanceof DocumentImpl) ? (DocumentImpl) this : _ownerDocument;
+        if (document != null) document.incrementMutationCount();
+    }
+
+
     protected NodeImpl getChildIfPermitted( Node proposedChild ) {
         if (!(proposedChild instanceof NodeImpl)) throw new DOMException( DOMException.WRONG_DOCUMENT_ERR, "Specified node is from a different DOM implementation" );
         NodeImpl childNode = (NodeImpl) proposedChild;
@@ -228,12 +268,14 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
 //------------------------------------ DOM level 3 methods -------------------------------------------------------------
 
     public Object setUserData( String key, Object data, UserDataHandler handler ) {
+        if (data == null) return _userData == null ? null : _userData.remove( key );
+        if (_userData == null) _userData = new HashMap( 4 );
         return _userData.put( key, data );
     }
 
 
     public Object getUserData( String key ) {
-        return _userData.get( key );
+        return _userData == null ? null : _userData.get( key );
     }
 
 
@@ -288,10 +330,15 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
 
 //----------------------------------------- implementation internals ---------------------------------------------------
 
-    public NodeList getElementsByTagName( String name ) {
-        ArrayList matchingElements = new ArrayList();
-        appendElementsWithTag( name, matchingElements );
-        return new NodeListImpl( matchingElements );
+    public NodeList getElementsByTagName( final String name ) {
+        NodeList elements = (NodeList) getLiveView( name );
+        if (elements != null) return elements;
+
+        return (NodeList) setLiveView( name, new LiveNodeListImpl( this ) {
+            void collectNodes( NodeImpl rootNode, ArrayList nodes ) {
+                rootNode.appendElementsWithTag( name, nodes );
+            }
+        } );
     }
 
 
@@ -304,10 +351,43 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
     }
 
 
-    protected NodeList getElementsByTagNames( String[] names ) {
-        ArrayList matchingElements = new ArrayList();
-        appendElementsWithTags( names, matchingElements );
-        return new NodeListImpl( matchingElements );
+    protected NodeList getElementsByTagNames( final String[] names ) {
+        StringBuffer query = new StringBuffer( "#tags" );
+        for (int i = 0; i < names.length; i++) query.append( ' ' ).append( names[i] );
+        NodeList elements = (NodeList) getLiveView( query.toString() );
+        if (elements != null) return elements;
+
+        return (NodeList) setLiveView( query.toString(), new LiveNodeListImpl( this ) {
+            void collectNodes( NodeImpl rootNode, ArrayList nodes ) {
+                rootNode.appendElementsWithTags( names, nodes );
+            }
+        } );
+    }
+
+
+    /**
+     * Returns the live view of the nodes below this one which was saved for the specified query, or null if there is none.
+     * Tag names are used as the queries for elements by tag; other queries start with '#'.
+     */
+    Object getLiveView( String query ) {
+        DocumentImpl document = getViewDocument();
+        return document == null ? null : document.getLiveView( this, query );
+    }
+
+
+    /**
+     * Saves a live view of the nodes below this one, so that later requests for the same query may share it.
+     * The views are kept by the owner document, which holds only a limited number of them.
+     */
+    Object setLiveView( String query, Object view ) {
+        DocumentImpl document = getViewDocument();
+        if (document != null) document.setLiveView( this, query, view );
+        return view;
+    }
+
+
+    private DocumentImpl getViewDocument() {
+        return (this instanceof DocumentImpl) ? (DocumentImpl) this : _ownerDocument;
     }
 
 
@@ -331,9 +411,8 @@ abstract public class NodeImpl extends AbstractDomComponent implements Node {
 
 
     void appendContents( StringBuffer sb ) {
-        NodeList nl = getChildNodes();
-        for (int i = 0; i < nl.getLength(); i++) {
-            ((NodeImpl) nl.item(i)).appendContents( sb );
+        for (NodeImpl child = _firstChild; child != null; child = child._nextSibling) {
+            child.appendContents( sb );
         }
     }
 
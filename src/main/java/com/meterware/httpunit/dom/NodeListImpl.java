@@ -41,12 +41,20 @@ public class NodeListImpl extends ScriptableObject implements NodeList {
 
 
     public Node item( int index ) {
-        return (Node) _list.get( index );
+        return (Node) getList().get( index );
     }
 
 
     public int getLength() {
-        return _list.size();
+        return getList().size();
+    }
+
+
+    /**
+     * Returns the nodes in this list. Live lists override this to bring the nodes up to date.
+     */
+    protected List getList() {
+        return _list;
     }
 
 
@@ -0,0 +1,126 @@
+package com.meterware.httpunit.javascript;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import com.meterware.httpunit.HttpUnitOptions;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A cache of compiled scripts, shared by all conversations. Since a compiled script holds no state of its own,
+ * the same script may be run against any number of pages, on any number of threads. The least recently used scripts
+ * are discarded once the cache holds {@link HttpUnitOptions#getCompiledScriptCacheSize} of them.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class CompiledScriptCache {
+
+    private static final Map _scripts = new LinkedHashMap( 16, 0.75f, true ) {
+        protected boolean removeEldestEntry( Map.Entry eldest ) {
+            return size() > HttpUnitOptions.getCompiledScriptCacheSize();
+        }
+    };
+
+    private static long _hits;
+    private static long _misses;
+
+
+    /**
+     * Returns the specified source compiled at the optimization level of the specified context,
+     * compiling it only if it is not already in the cache.
+     */
+    static Script getScript( Context context, String source ) {
+        Key key = new Key( source, context.getOptimizationLevel() );
+        synchronized (_scripts) {
+            Script script = (Script) _scripts.get( key );
+            if (script != null) {
+                _hits++;
+                return script;
+            }
+            _misses++;
+        }
+
+        Script script = context.compileString( source, "httpunit", 0, null );
+        if (HttpUnitOptions.getCompiledScriptCacheSize() > 0) {
+            synchronized (_scripts) {
+                _scripts.put( key, script );
+            }
+        }
+        return script;
+    }
+
+
+    /**
+     * Discards all cached scripts.
+     */
+    static void clear() {
+        synchronized (_scripts) {
+            _scripts.clear();
+        }
+    }
+
+
+    static int size() {
+        synchronized (_scripts) {
+            return _scripts.size();
+        }
+    }
+
+
+    static long getHitCount() {
+        synchronized (_scripts) {
+            return _hits;
+        }
+    }
+
+
+    static long getMissCount() {
+        synchronized (_scripts) {
+            return _misses;
+        }
+    }
+
+
+    private static class Key {
+        private final String _source;
+        private final int    _optimizationLevel;
+
+        Key( String source, int optimizationLevel ) {
+            _source = source;
+            _optimizationLevel = optimizationLevel;
+        }
+
+        public int hashCode() {
+            return _source.hashCode() * 31 + _optimizationLevel;
+        }
+
+        public boolean equals( Object obj ) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return _optimizationLevel == other._optimizationLevel && _source.equals( other._source );
+        }
+    }
+
+}
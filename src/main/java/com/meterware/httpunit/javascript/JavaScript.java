@@ -44,19 +44,25 @@ import org.xml.sax.SAXException;
  **/
 public class JavaScript {
 
-    private static boolean _throwExceptionsOnError = true;
-
-
+    /**
+     * Returns true if script errors cause exceptions to be thrown for clients which follow the static defaults.
+     * @deprecated as of 1.7.3, use {@link HttpUnitOptions#getExceptionsThrownOnScriptError} or
+     *             {@link WebClientOptions#isExceptionsThrownOnScriptError}
+     */
     public static boolean isThrowExceptionsOnError() {
-        return _throwExceptionsOnError;
+        return HttpUnitOptions.getExceptionsThrownOnScriptError();
     }
 
 
+    /**
+     * Determines whether script errors cause exceptions to be thrown for clients which follow the static defaults.
+     * @deprecated as of 1.7.3, use {@link HttpUnitOptions#setExceptionsThrownOnScriptError} or
+     *             {@link WebClientOptions#withExceptionsThrownOnScriptError}
+     */
     public static void setThrowExceptionsOnError( boolean throwExceptionsOnError ) {
-        _throwExceptionsOnError = throwExceptionsOnError;
+        HttpUnitOptions.setExceptionsThrownOnScriptError( throwExceptionsOnError );
     }
 
-
     /**
      * Initiates JavaScript execution for the specified web response.
      */
@@ -69,7 +75,9 @@ public class JavaScript {
         // by Grzegorz Lukasik
         // and
         
-        context.setOptimizationLevel(HttpUnitOptions.getJavaScriptOptimizationLevel());
+        WebClient client = response.getClient();
+        context.setOptimizationLevel( client == null ? HttpUnitOptions.getJavaScriptOptimizationLevel()
+                                                     : client.getOptions().getJavaScriptOptimizationLevel() );
         Scriptable scope = context.initStandardObjects( null );
         initHTMLObjects( scope );
 
@@ -131,6 +139,15 @@ public class JavaScript {
        }
 
 
+        /**
+         * Returns the client which received the response whose window contains this object.
+         */
+        protected WebClient getClient() {
+            if (_scriptable instanceof WebResponse.Scriptable) return ((WebResponse.Scriptable) _scriptable).getClient();
+            return _parent == null ? null : _parent.getClient();
+        }
+
+
         String getName() {
             return _scriptable instanceof NamedDelegate ? ((NamedDelegate) _scriptable).getName() : "";
         }
@@ -517,6 +534,7 @@ public class JavaScript {
         private ElementArray _images;
         private StringBuffer _writeBuffer;
         private String _mimeType;
+        private boolean _opened;
 
 
         public String getClassName() {
@@ -601,12 +619,14 @@ public class JavaScript {
 
         public void jsFunction_open( Object mimeType ) {
             _mimeType = toStringIfNotUndefined( mimeType );
+            _opened = true;
         }
 
 
         public void jsFunction_close() {
+            if (_writeBuffer == null && !_opened) return;
             if (getDelegate().replaceText( getWriteBuffer().toString(), _mimeType == null ? "text/html" : _mimeType )) {
-                getWriteBuffer().setLength(0);
+                clearWriteBuffer();
             }
         }
 
@@ -629,6 +649,7 @@ public class JavaScript {
 
         protected void clearWriteBuffer() {
             _writeBuffer = null;
+            _opened = false;
         }
 
 
@@ -19,6 +19,7 @@ package com.meterware.httpunit.javascript;
  * DEALINGS IN THE SOFTWARE.
  *
  *******************************************************************************************************************/
+import com.meterware.httpunit.HttpUnitOptions;
 import com.meterware.httpunit.HttpUnitUtils;
 import com.meterware.httpunit.WebResponse;
 import com.meterware.httpunit.HTMLElement;
@@ -34,6 +35,9 @@ import com.meterware.httpunit.scripting.ScriptingHandler;
  **/
 public class JavaScriptEngineFactory implements ScriptingEngineFactory {
 
+    private volatile boolean _throwExceptionsOnError = true;
+
+
     public boolean isEnabled() {
         try {
             Class.forName( "org.mozilla.javascript.Context" );
@@ -70,17 +74,17 @@ public class JavaScriptEngineFactory implements ScriptingEngineFactory {
 
 
     public void setThrowExceptionsOnError( boolean throwExceptions ) {
-        JavaScript.setThrowExceptionsOnError( throwExceptions );
+        _throwExceptionsOnError = throwExceptions;
     }
 
 
     public boolean isThrowExceptionsOnError() {
-        return JavaScript.isThrowExceptionsOnError();
+        return _throwExceptionsOnError;
     }
 
 
     public String[] getErrorMessages() {
-        return ScriptingEngineImpl.getErrorMessages();
+        return HttpUnitOptions.getScriptErrorLog().getErrorMessages();
     }
     
     /**
@@ -92,7 +96,7 @@ public class JavaScriptEngineFactory implements ScriptingEngineFactory {
 
 
     public void clearErrorMessages() {
-        ScriptingEngineImpl.clearErrorMessages();
+        HttpUnitOptions.getScriptErrorLog().clearErrorMessages();
     }
 
 
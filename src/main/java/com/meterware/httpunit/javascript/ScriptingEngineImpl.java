@@ -22,10 +22,11 @@ package com.meterware.httpunit.javascript;
 
 import org.mozilla.javascript.*;
 import com.meterware.httpunit.scripting.ScriptingEngine;
+import com.meterware.httpunit.scripting.ScriptErrorLog;
+import com.meterware.httpunit.HttpUnitOptions;
 import com.meterware.httpunit.HttpUnitUtils;
 import com.meterware.httpunit.ScriptException;
-
-import java.util.ArrayList;
+import com.meterware.httpunit.WebClient;
 
 
 /**
@@ -36,45 +37,58 @@ public abstract class ScriptingEngineImpl extends ScriptableObject implements Sc
 
     private final static Object[] NO_ARGS = new Object[0];
 
-    private static ArrayList _errorMessages = new ArrayList();
-
 
     /**
-     * clear the list of error Messages
+     * clear the list of error Messages recorded for clients which follow the static defaults
+     * @deprecated as of 1.7.3, use {@link HttpUnitOptions#clearScriptErrorMessages} or
+     *             {@link WebClient#getScriptErrorLog}
      */
     static public void clearErrorMessages() {
-        _errorMessages.clear();
+        HttpUnitOptions.getScriptErrorLog().clearErrorMessages();
     }
 
 
     /**
-     * access to the list of error Messages that were collected 
+     * access to the list of error Messages that were collected for clients which follow the static defaults
      * @return the array with error Messages
+     * @deprecated as of 1.7.3, use {@link HttpUnitOptions#getScriptErrorMessages} or
+     *             {@link WebClient#getScriptErrorLog}
      */
     static public String[] getErrorMessages() {
-        return (String[]) _errorMessages.toArray( new String[ _errorMessages.size() ] );
+        return HttpUnitOptions.getScriptErrorLog().getErrorMessages();
     }
 
 
     /**
-     * handle Exceptions 
+     * handle Exceptions according to the static defaults in {@link HttpUnitOptions}
      * @param e - the exception to handle
      * @param badScript - the script that caused the problem
      */
     static public void handleScriptException( Exception e, String badScript ) {
+        handleScriptException( e, badScript, null );
+    }
+
+
+    /**
+     * handle Exceptions according to the options of the specified client
+     * @param e - the exception to handle
+     * @param badScript - the script that caused the problem
+     * @param client - the client which ran the script, or null to use the static defaults
+     */
+    static public void handleScriptException( Exception e, String badScript, WebClient client ) {
     	String errorMessage=badScript==null? e.getMessage():badScript + " failed: " + e; 
     	if (e instanceof EcmaError ||
     			e instanceof EvaluatorException ||
     			e instanceof ScriptException ||
     			e instanceof JavaScriptException)	{
-   			if (JavaScript.isThrowExceptionsOnError())	{
+   			if (isThrowExceptionsOnError( client ))	{
    				HttpUnitUtils.handleException(e);
    				if (e instanceof ScriptException)
    					throw (ScriptException)e;
    				else
    					throw new ScriptException( errorMessage );
    			} else	{
-    				_errorMessages.add( errorMessage );
+    				getScriptErrorLog( client ).addErrorMessage( errorMessage );
     		}
    		} else	{
     		HttpUnitUtils.handleException(e);
@@ -82,6 +96,16 @@ public abstract class ScriptingEngineImpl extends ScriptableObject implements Sc
     	}
     }
 
+
+    private static boolean isThrowExceptionsOnError( WebClient client ) {
+        return client == null ? HttpUnitOptions.getExceptionsThrownOnScriptError() : client.getOptions().isExceptionsThrownOnScriptError();
+    }
+
+
+    private static ScriptErrorLog getScriptErrorLog( WebClient client ) {
+        return client == null ? HttpUnitOptions.getScriptErrorLog() : client.getScriptErrorLog();
+    }
+
 //--------------------------------------- ScriptingEngine methods ------------------------------------------------------
 
     public boolean supportsScriptLanguage( String language ) {
@@ -104,10 +128,10 @@ public abstract class ScriptingEngineImpl extends ScriptableObject implements Sc
             }
             Context context = Context.enter();
             context.initStandardObjects( null );
-            context.evaluateString( this, script, "httpunit", 0, null );
+            CompiledScriptCache.getScript( context, script ).exec( context, this );
             return getDocumentWriteBuffer();
         } catch (Exception e) {
-            handleScriptException( e, "Script '" + script + "'" );
+            handleScriptException( e, "Script '" + script + "'", getClient() );
             return "";
         } finally {
             discardDocumentWriteBuffer();
@@ -141,13 +165,14 @@ public abstract class ScriptingEngineImpl extends ScriptableObject implements Sc
             context.initStandardObjects( null );
             context.setOptimizationLevel( -1 );
             // wrap the eventScript into a function
-            Function f = context.compileFunction( this, "function x() { " + eventScript + "}", "httpunit", 0, null );
+            Script functionScript = CompiledScriptCache.getScript( context, "(function x() { " + eventScript + "})" );
+            Function f = (Function) functionScript.exec( context, this );
             // call the function with no arguments
             Object result = f.call( context, this, this, NO_ARGS );
             // return the result of the function or false if it is not boolean
             return (!(result instanceof Boolean)) || ((Boolean) result).booleanValue();
         } catch (Exception e) {
-            handleScriptException( e, "Event '" + eventScript + "'" );
+            handleScriptException( e, "Event '" + eventScript + "'", getClient() );
             return false;
         } finally {
             Context.exit();
@@ -173,10 +198,10 @@ public abstract class ScriptingEngineImpl extends ScriptableObject implements Sc
         try {
             Context context = Context.enter();
             context.initStandardObjects( null );
-            Object result = context.evaluateString( this, expression, "httpunit", 0, null );
+            Object result = CompiledScriptCache.getScript( context, expression ).exec( context, this );
             return (result == null || result instanceof Undefined) ? null : result;
         } catch (Exception e) {
-            handleScriptException( e, "URL '" + expression + "'" );
+            handleScriptException( e, "URL '" + expression + "'", getClient() );
             return null;
         } finally {
             Context.exit();
@@ -185,6 +210,15 @@ public abstract class ScriptingEngineImpl extends ScriptableObject implements Sc
 
 //------------------------------------------ protected methods ---------------------------------------------------------
 
+    /**
+     * Returns the client on whose behalf this engine runs scripts, or null if it is not known. Script errors are
+     * thrown or recorded according to the options of that client.
+     */
+    protected WebClient getClient() {
+        return null;
+    }
+
+
     protected String getDocumentWriteBuffer() {
         throw new IllegalStateException( "may not run runScript() from " + getClass() );
     }
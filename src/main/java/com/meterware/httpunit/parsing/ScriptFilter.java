@@ -20,7 +20,6 @@ package com.meterware.httpunit.parsing;
  *
  *******************************************************************************************************************/
 
-import com.meterware.httpunit.HttpUnitOptions;
 import org.apache.xerces.xni.*;
 import org.apache.xerces.xni.parser.XMLInputSource;
 import org.cyberneko.html.HTMLConfiguration;
@@ -90,10 +89,14 @@ class ScriptFilter extends DefaultFilter {
     }
 
 
+    /**
+     * Returns true if the element is a script which the handler can run. The handler belongs to the response
+     * being parsed, and supports no language if scripting is disabled in that response's options.
+     */
     private boolean isSupportedScript( QName element, XMLAttributes attrs ) {
         if (!element.rawname.equalsIgnoreCase( "script" ) || attrs == null) return false;
         String value = getScriptLanguage( attrs );
-        return HttpUnitOptions.isScriptingEnabled() && _scriptHandler.supportsScriptLanguage( value );
+        return _scriptHandler.supportsScriptLanguage( value );
     }
 
 
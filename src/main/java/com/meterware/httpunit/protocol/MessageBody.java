@@ -19,6 +19,8 @@ package com.meterware.httpunit.protocol;
 * DEALINGS IN THE SOFTWARE.
 *
 *******************************************************************************************************************/
+import com.meterware.httpunit.HttpUnitOptions;
+
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -38,8 +40,20 @@ public class MessageBody {
      * @return an appropriate message body.
      */
     public static MessageBody createPostMethodMessageBody( boolean mimeEncoded, String characterSet ) {
+        return createPostMethodMessageBody( mimeEncoded, characterSet, HttpUnitOptions.isPostIncludesCharset() );
+    }
+
+
+    /**
+     * Creates a message body for a POST request, selecting an appropriate encoding.
+     * @param mimeEncoded if true, indicates that the request is using mime encoding.
+     * @param characterSet the character set of the request.
+     * @param includesCharset if true, a URL-encoded body names its character set in its content type.
+     * @return an appropriate message body.
+     */
+    public static MessageBody createPostMethodMessageBody( boolean mimeEncoded, String characterSet, boolean includesCharset ) {
         return mimeEncoded ? (MessageBody) new MimeEncodedMessageBody( characterSet )
-                           : (MessageBody) new URLEncodedMessageBody( characterSet );
+                           : (MessageBody) new URLEncodedMessageBody( characterSet, includesCharset );
     }
 
 
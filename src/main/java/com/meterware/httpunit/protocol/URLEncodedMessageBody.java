@@ -19,7 +19,6 @@ package com.meterware.httpunit.protocol;
  * DEALINGS IN THE SOFTWARE.
  *
  *******************************************************************************************************************/
-import com.meterware.httpunit.HttpUnitOptions;
 
 import java.io.OutputStream;
 import java.io.IOException;
@@ -29,9 +28,12 @@ import java.io.IOException;
  **/
 class URLEncodedMessageBody extends MessageBody {
 
+    private final boolean _includesCharset;
 
-    URLEncodedMessageBody( String characterSet ) {
+
+    URLEncodedMessageBody( String characterSet, boolean includesCharset ) {
         super( characterSet );
+        _includesCharset = includesCharset;
     }
 
 
@@ -40,8 +42,7 @@ class URLEncodedMessageBody extends MessageBody {
      **/
     public String getContentType() {
         return "application/x-www-form-urlencoded" +
-                  (!HttpUnitOptions.isPostIncludesCharset() ? ""
-                                                            : "; charset=" + getCharacterSet());
+                  (!_includesCharset ? "" : "; charset=" + getCharacterSet());
     }
 
 
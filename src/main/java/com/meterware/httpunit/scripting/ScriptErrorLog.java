@@ -0,0 +1,53 @@
+package com.meterware.httpunit.scripting;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The messages of script errors which were recorded rather than thrown. Each client which has been given its own
+ * {@link com.meterware.httpunit.WebClientOptions options} keeps its own log; other clients share the default log
+ * read by {@link com.meterware.httpunit.HttpUnitOptions#getScriptErrorMessages}.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ * @since 1.7.3
+ **/
+public class ScriptErrorLog {
+
+    private final List _errorMessages = new ArrayList();
+
+
+    public synchronized void addErrorMessage( String errorMessage ) {
+        _errorMessages.add( errorMessage );
+    }
+
+
+    public synchronized String[] getErrorMessages() {
+        return (String[]) _errorMessages.toArray( new String[ _errorMessages.size() ] );
+    }
+
+
+    public synchronized void clearErrorMessages() {
+        _errorMessages.clear();
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.meterware.httpunit.transport;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+
+
+/**
+ * The means by which a {@link com.meterware.httpunit.WebConversation} obtains connections to a server.
+ * The connection returned is used exactly as one returned by <code>URL.openConnection()</code> would be:
+ * request headers and the message body are written to it, and the response headers and body are then read from it.
+ * Implementations must be safe for use by several conversations at once.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+public interface HttpTransport {
+
+
+    /**
+     * Returns a new, unconnected connection to the specified URL. The connection must not follow redirects
+     * on its own, nor return cached content.
+     * @param url the url to which the request will be sent
+     * @param proxy the proxy through which the connection should be made. If null, the JDK's default proxy
+     *              selection applies.
+     * @return a connection ready to have its request properties set
+     * @throws IOException if no connection may be created for the url
+     */
+    public URLConnection openConnection( URL url, Proxy proxy ) throws IOException;
+
+
+    /**
+     * Releases any resources held by this transport, such as idle connections.
+     */
+    public void close();
+
+}
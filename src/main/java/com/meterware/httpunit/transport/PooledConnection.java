@@ -0,0 +1,141 @@
+package com.meterware.httpunit.transport;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketException;
+
+
+/**
+ * An open socket to an HTTP server, which may be kept idle in a {@link PooledHttpTransport} between requests.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class PooledConnection {
+
+    private final String _key;
+    private final Socket _socket;
+    private final InputStream  _inputStream;
+    private final OutputStream _outputStream;
+
+    /** True if this connection has already been used for at least one request. **/
+    private boolean _reused;
+    private long    _idleSince;
+
+
+    /**
+     * Returns the key under which idle connections to the specified host and port are pooled. All requests through
+     * an HTTP proxy may share the same connections, since they name the target host in the request line.
+     */
+    static String getKey( String host, int port, Proxy proxy ) {
+        String target = host.toLowerCase() + ':' + port;
+        if (proxy.type() == Proxy.Type.HTTP) {
+            return "http " + getAddress( proxy );
+        } else if (proxy.type() == Proxy.Type.SOCKS) {
+            return "socks " + getAddress( proxy ) + ' ' + target;
+        } else {
+            return target;
+        }
+    }
+
+
+    static PooledConnection open( String host, int port, Proxy proxy, int connectTimeout ) throws IOException {
+        Socket socket = (proxy.type() == Proxy.Type.SOCKS) ? new Socket( proxy ) : new Socket();
+        InetSocketAddress address = (proxy.type() == Proxy.Type.HTTP) ? getAddress( proxy ) : new InetSocketAddress( host, port );
+        if (address.isUnresolved() && proxy.type() != Proxy.Type.SOCKS) address = new InetSocketAddress( address.getHostName(), address.getPort() );
+        try {
+            socket.setTcpNoDelay( true );
+            socket.connect( address, Math.max( connectTimeout, 0 ) );
+            return new PooledConnection( getKey( host, port, proxy ), socket );
+        } catch (IOException e) {
+            try { socket.close(); } catch (IOException e2) { /* ignore */ }
+            throw e;
+        }
+    }
+
+
+    private static InetSocketAddress getAddress( Proxy proxy ) {
+        return (InetSocketAddress) proxy.address();
+    }
+
+
+    private PooledConnection( String key, Socket socket ) throws IOException {
+        _key = key;
+        _socket = socket;
+        _inputStream = new BufferedInputStream( socket.getInputStream() );
+        _outputStream = new BufferedOutputStream( socket.getOutputStream() );
+    }
+
+
+    String getKey() {
+        return _key;
+    }
+
+
+    InputStream getInputStream() {
+        return _inputStream;
+    }
+
+
+    OutputStream getOutputStream() {
+        return _outputStream;
+    }
+
+
+    /**
+     * Returns true if this connection was taken from the pool rather than newly opened.
+     */
+    boolean isReused() {
+        return _reused;
+    }
+
+
+    void setReadTimeout( int readTimeout ) throws SocketException {
+        _socket.setSoTimeout( Math.max( readTimeout, 0 ) );
+    }
+
+
+    void markIdle() {
+        _reused = true;
+        _idleSince = System.currentTimeMillis();
+    }
+
+
+    boolean isExpired( long now, long maxIdleTime ) {
+        return _socket.isClosed() || now - _idleSince > maxIdleTime;
+    }
+
+
+    void close() {
+        try {
+            _socket.close();
+        } catch (IOException e) {
+            // nothing useful to do
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+package com.meterware.httpunit.transport;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A transport which keeps HTTP connections open between requests and reuses them for later requests to the
+ * same host and port. At most {@link #getMaxIdleConnectionsPerHost} idle connections are kept for each host;
+ * a connection which has been idle for longer than {@link #getMaxIdleTime} milliseconds is closed rather than reused.
+ * Connections made through an HTTP proxy are pooled per proxy, rather than per host.
+ * Requests for protocols other than http are handed to the default transport.
+ * <p>
+ * A single instance may be shared by any number of conversations, including conversations running on different threads:
+ * <pre>
+ *   PooledHttpTransport transport = new PooledHttpTransport();
+ *   WebConversation wc = new WebConversation();
+ *   wc.setTransport( transport );
+ * </pre>
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+public class PooledHttpTransport implements HttpTransport {
+
+    /** The default maximum number of idle connections kept for each host. **/
+    public final static int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 8;
+
+    /** The default time, in milliseconds, that an idle connection may be kept before it is closed. **/
+    public final static long DEFAULT_MAX_IDLE_TIME = 15000;
+
+    private HttpTransport _defaultTransport = new URLConnectionTransport();
+
+    /** A map of host keys to lists of idle connections, the most recently used last. **/
+    private Map _idleConnections = new HashMap();
+
+    private int  _maxIdleConnectionsPerHost = DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST;
+    private long _maxIdleTime               = DEFAULT_MAX_IDLE_TIME;
+
+    /** True once this transport has been closed, after which connections are no longer pooled. **/
+    private boolean _closed;
+
+    private long _requestCount;
+    private long _connectionsOpened;
+    private long _connectionsReused;
+    private long _connectionsEvicted;
+
+
+    public URLConnection openConnection( URL url, Proxy proxy ) throws IOException {
+        if (!url.getProtocol().equalsIgnoreCase( "http" )) return _defaultTransport.openConnection( url, proxy );
+        return new PooledHttpURLConnection( this, url, proxy != null ? proxy : selectProxy( url ) );
+    }
+
+
+    /**
+     * Closes all idle connections. Connections currently in use will be closed when their responses have been read.
+     * Requests may still be sent after the transport is closed, but each opens a new connection which is closed
+     * once its response has been read.
+     */
+    public synchronized void close() {
+        _closed = true;
+        for (Iterator i = _idleConnections.values().iterator(); i.hasNext();) {
+            LinkedList connections = (LinkedList) i.next();
+            while (!connections.isEmpty()) ((PooledConnection) connections.removeFirst()).close();
+        }
+        _idleConnections.clear();
+    }
+
+
+    /**
+     * Returns the maximum number of idle connections which will be kept open for each host.
+     */
+    public synchronized int getMaxIdleConnectionsPerHost() {
+        return _maxIdleConnectionsPerHost;
+    }
+
+
+    /**
+     * Specifies the maximum number of idle connections which will be kept open for each host. A value of zero
+     * disables connection reuse.
+     */
+    public synchronized void setMaxIdleConnectionsPerHost( int maxIdleConnectionsPerHost ) {
+        _maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+    }
+
+
+    /**
+     * Returns the time, in milliseconds, after which an idle connection is closed rather than reused.
+     */
+    public synchronized long getMaxIdleTime() {
+        return _maxIdleTime;
+    }
+
+
+    /**
+     * Specifies the time, in milliseconds, after which an idle connection is closed rather than reused.
+     */
+    public synchronized void setMaxIdleTime( long maxIdleTime ) {
+        _maxIdleTime = maxIdleTime;
+    }
+
+
+    /**
+     * Closes any connections which have been idle for longer than the maximum idle time. This is done automatically
+     * whenever a connection is requested or returned, but may be called explicitly to release sockets early.
+     */
+    public synchronized void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (Iterator i = _idleConnections.values().iterator(); i.hasNext();) {
+            LinkedList connections = (LinkedList) i.next();
+            for (Iterator j = connections.iterator(); j.hasNext();) {
+                PooledConnection connection = (PooledConnection) j.next();
+                if (connection.isExpired( now, _maxIdleTime )) {
+                    j.remove();
+                    connection.close();
+                    _connectionsEvicted++;
+                }
+            }
+            if (connections.isEmpty()) i.remove();
+        }
+    }
+
+
+    /**
+     * Returns the number of requests sent through this transport.
+     */
+    public synchronized long getRequestCount() {
+        return _requestCount;
+    }
+
+
+    /**
+     * Returns the number of new connections opened by this transport.
+     */
+    public synchronized long getConnectionsOpened() {
+        return _connectionsOpened;
+    }
+
+
+    /**
+     * Returns the number of requests which were sent over a previously opened connection.
+     */
+    public synchronized long getConnectionsReused() {
+        return _connectionsReused;
+    }
+
+
+    /**
+     * Returns the number of idle connections closed because they had expired or the per-host limit had been reached.
+     */
+    public synchronized long getConnectionsEvicted() {
+        return _connectionsEvicted;
+    }
+
+
+    /**
+     * Returns the number of connections currently idle and available for reuse.
+     */
+    public synchronized int getIdleConnectionCount() {
+        int count = 0;
+        for (Iterator i = _idleConnections.values().iterator(); i.hasNext();) {
+            count += ((LinkedList) i.next()).size();
+        }
+        return count;
+    }
+
+
+//------------------------------------------ package members ------------------------------------------------
+
+
+    /**
+     * Records that a request is being sent through this transport. Called once per request, however many
+     * connections are needed to send it.
+     */
+    synchronized void countRequest() {
+        _requestCount++;
+    }
+
+
+    /**
+     * Returns a connection to the specified host and port through the specified proxy, reusing an idle one if possible.
+     * @param allowReuse if false, a new connection will always be opened
+     */
+    PooledConnection acquire( String host, int port, Proxy proxy, int connectTimeout, boolean allowReuse ) throws IOException {
+        PooledConnection connection = allowReuse ? takeIdleConnection( PooledConnection.getKey( host, port, proxy ) ) : null;
+        if (connection != null) return connection;
+
+        connection = PooledConnection.open( host, port, proxy, connectTimeout );
+        synchronized (this) {
+            _connectionsOpened++;
+        }
+        return connection;
+    }
+
+
+    /**
+     * Returns a connection whose response has been completely read so that it may be used for another request.
+     * If this transport has been closed, the connection is closed instead.
+     */
+    void release( PooledConnection connection ) {
+        PooledConnection evicted = null;
+        synchronized (this) {
+            if (_closed) {
+                evicted = connection;
+            } else {
+                evictIdleConnections();
+                LinkedList connections = (LinkedList) _idleConnections.get( connection.getKey() );
+                if (connections == null) _idleConnections.put( connection.getKey(), connections = new LinkedList() );
+                connection.markIdle();
+                connections.addLast( connection );
+                if (connections.size() > _maxIdleConnectionsPerHost) {
+                    evicted = (PooledConnection) connections.removeFirst();
+                    _connectionsEvicted++;
+                }
+            }
+        }
+        if (evicted != null) evicted.close();
+    }
+
+
+    /**
+     * Returns the proxy chosen by the default proxy selector for the specified url.
+     */
+    private Proxy selectProxy( URL url ) {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) return Proxy.NO_PROXY;
+        try {
+            List proxies = selector.select( url.toURI() );
+            return proxies.isEmpty() ? Proxy.NO_PROXY : (Proxy) proxies.get( 0 );
+        } catch (URISyntaxException e) {
+            return Proxy.NO_PROXY;
+        } catch (IllegalArgumentException e) {
+            return Proxy.NO_PROXY;
+        }
+    }
+
+
+    private synchronized PooledConnection takeIdleConnection( String key ) {
+        evictIdleConnections();
+        LinkedList connections = (LinkedList) _idleConnections.get( key );
+        if (connections == null || connections.isEmpty()) return null;
+
+        _connectionsReused++;
+        return (PooledConnection) connections.removeLast();
+    }
+
+}
@@ -0,0 +1,389 @@
+package com.meterware.httpunit.transport;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An HTTP/1.1 connection which sends its request over a socket obtained from a {@link PooledHttpTransport}.
+ * The message body, if any, is buffered until the response is requested so that its length can be sent.
+ * An idempotent request which fails on a reused connection before any of the response arrives is sent again
+ * on a new connection, since the server has most likely closed the idle connection. Redirects are never followed.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class PooledHttpURLConnection extends HttpURLConnection {
+
+    private final static String HEADER_ENCODING = "ISO-8859-1";
+
+    private final static int HTTP_CONTINUE = 100;
+
+    private final static String[] IDEMPOTENT_METHODS = { "GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE" };
+
+    private PooledHttpTransport   _transport;
+    private Proxy                 _proxy;
+    private ByteArrayOutputStream _requestBody;
+
+    private String    _statusLine;
+    private ArrayList _headerKeys   = new ArrayList();
+    private ArrayList _headerValues = new ArrayList();
+    private InputStream _responseBody;
+
+    /** True once a byte of the response has been received, after which the request may not be sent again. **/
+    private boolean _responseStarted;
+
+
+    PooledHttpURLConnection( PooledHttpTransport transport, URL url, Proxy proxy ) {
+        super( url );
+        _transport = transport;
+        _proxy = proxy;
+        setInstanceFollowRedirects( false );
+        setUseCaches( false );
+    }
+
+
+    public void connect() throws IOException {
+        if (connected) return;
+
+        byte[] requestHead = getRequestHead();
+        byte[] requestBody = _requestBody == null ? null : _requestBody.toByteArray();
+
+        _transport.countRequest();
+        PooledConnection connection = acquireConnection( true );
+        try {
+            sendRequest( connection, requestHead, requestBody );
+        } catch (IOException e) {
+            connection.close();
+            if (!isRetryable( connection, e )) throw e;
+
+            // the server has closed an idle connection; try again with a new one
+            connection = acquireConnection( false );
+            try {
+                sendRequest( connection, requestHead, requestBody );
+            } catch (IOException e2) {
+                connection.close();
+                throw e2;
+            }
+        }
+        connected = true;
+    }
+
+
+    public void disconnect() {
+        if (_responseBody == null) return;
+        try {
+            _responseBody.close();
+        } catch (IOException e) {
+            // nothing useful to do
+        }
+    }
+
+
+    public boolean usingProxy() {
+        return _proxy.type() == Proxy.Type.HTTP;
+    }
+
+
+    public OutputStream getOutputStream() throws IOException {
+        if (connected) throw new ProtocolException( "Cannot write output after reading input." );
+        if (!getDoOutput()) throw new ProtocolException( "Cannot write output without setDoOutput(true)." );
+        if (_requestBody == null) _requestBody = new ByteArrayOutputStream();
+        return _requestBody;
+    }
+
+
+    public InputStream getInputStream() throws IOException {
+        connect();
+        return _responseBody;
+    }
+
+
+    public InputStream getErrorStream() {
+        return (connected && responseCode >= HTTP_BAD_REQUEST) ? _responseBody : null;
+    }
+
+
+    public int getResponseCode() throws IOException {
+        connect();
+        return responseCode;
+    }
+
+
+    public String getResponseMessage() throws IOException {
+        connect();
+        return responseMessage;
+    }
+
+
+    public String getHeaderFieldKey( int n ) {
+        if (!ensureConnected() || n < 1 || n > _headerKeys.size()) return null;
+        return (String) _headerKeys.get( n-1 );
+    }
+
+
+    public String getHeaderField( int n ) {
+        if (!ensureConnected()) return null;
+        if (n == 0) return _statusLine;
+        return (n < 1 || n > _headerValues.size()) ? null : (String) _headerValues.get( n-1 );
+    }
+
+
+    /**
+     * Returns the last value received for the specified header, ignoring case.
+     */
+    public String getHeaderField( String name ) {
+        return ensureConnected() ? findHeaderField( name ) : null;
+    }
+
+
+//------------------------------------------ package members ------------------------------------------------
+
+
+    /**
+     * Reads a single line terminated by CRLF or LF, returning it without the terminator, or null at end of stream.
+     */
+    static String readLine( InputStream inputStream ) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        int b;
+        while ((b = inputStream.read()) != -1) {
+            if (b == '\n') {
+                int length = sb.length();
+                if (length > 0 && sb.charAt( length-1 ) == '\r') sb.setLength( length-1 );
+                return sb.toString();
+            }
+            sb.append( (char) b );
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+
+//------------------------------------------ private members ------------------------------------------------
+
+
+    private PooledConnection acquireConnection( boolean allowReuse ) throws IOException {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        PooledConnection connection = _transport.acquire( url.getHost(), port, _proxy, getConnectTimeout(), allowReuse );
+        connection.setReadTimeout( getReadTimeout() );
+        return connection;
+    }
+
+
+    /**
+     * Returns true if a request which failed on the specified connection may be sent again on a new one. That is
+     * only safe if the connection was an idle one which the server had closed, so that the request cannot have
+     * been processed, and if the request is idempotent.
+     */
+    private boolean isRetryable( PooledConnection connection, IOException e ) {
+        return connection.isReused() && !_responseStarted && !(e instanceof SocketTimeoutException) && isIdempotent();
+    }
+
+
+    private boolean isIdempotent() {
+        String method = getRequestMethod();
+        for (int i = 0; i < IDEMPOTENT_METHODS.length; i++) {
+            if (IDEMPOTENT_METHODS[i].equals( method )) return true;
+        }
+        return false;
+    }
+
+
+    private boolean ensureConnected() {
+        try {
+            connect();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    private byte[] getRequestHead() throws IOException {
+        StringBuffer sb = new StringBuffer();
+        sb.append( getRequestMethod() ).append( ' ' ).append( getRequestTarget() ).append( " HTTP/1.1\r\n" );
+
+        Map properties = getRequestProperties();
+        if (!containsIgnoreCase( properties, "Host" )) {
+            sb.append( "Host: " ).append( url.getHost() );
+            if (url.getPort() != -1) sb.append( ':' ).append( url.getPort() );
+            sb.append( "\r\n" );
+        }
+        for (Iterator i = properties.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            if (entry.getKey() == null) continue;
+            for (Iterator j = ((List) entry.getValue()).iterator(); j.hasNext();) {
+                sb.append( entry.getKey() ).append( ": " ).append( j.next() ).append( "\r\n" );
+            }
+        }
+        if (_requestBody != null && !containsIgnoreCase( properties, "Content-Length" )) {
+            sb.append( "Content-Length: " ).append( _requestBody.size() ).append( "\r\n" );
+        }
+        sb.append( "\r\n" );
+        return sb.toString().getBytes( HEADER_ENCODING );
+    }
+
+
+    private String findHeaderField( String name ) {
+        for (int i = _headerKeys.size()-1; i >= 0; i--) {
+            if (name.equalsIgnoreCase( (String) _headerKeys.get( i ) )) return (String) _headerValues.get( i );
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns the target to send in the request line: the absolute URL if sent through a proxy, the path otherwise.
+     */
+    private String getRequestTarget() {
+        String file = url.getFile();
+        if (file.length() == 0) file = "/";
+        if (!usingProxy()) return file;
+
+        StringBuffer sb = new StringBuffer( url.getProtocol() ).append( "://" ).append( url.getHost() );
+        if (url.getPort() != -1) sb.append( ':' ).append( url.getPort() );
+        return sb.append( file ).toString();
+    }
+
+
+    private boolean containsIgnoreCase( Map properties, String name ) {
+        for (Iterator i = properties.keySet().iterator(); i.hasNext();) {
+            if (name.equalsIgnoreCase( (String) i.next() )) return true;
+        }
+        return false;
+    }
+
+
+    private void sendRequest( PooledConnection connection, byte[] requestHead, byte[] requestBody ) throws IOException {
+        _responseStarted = false;
+        OutputStream outputStream = connection.getOutputStream();
+        outputStream.write( requestHead );
+        if (requestBody != null) outputStream.write( requestBody );
+        outputStream.flush();
+
+        readResponseHead( connection.getInputStream() );
+        _responseBody = createResponseBody( connection );
+    }
+
+
+    private void readResponseHead( InputStream inputStream ) throws IOException {
+        int firstByte = inputStream.read();
+        if (firstByte == -1) throw new IOException( "Connection closed before a response was received" );
+        _responseStarted = true;
+
+        String rest = readLine( inputStream );
+        _statusLine = (char) firstByte + (rest == null ? "" : rest);
+        while (true) {
+            parseStatusLine();
+            readHeaders( inputStream );
+            if (responseCode != HTTP_CONTINUE) return;
+
+            _statusLine = readLine( inputStream );
+            if (_statusLine == null) throw new IOException( "Connection closed before a response was received" );
+        }
+    }
+
+
+    private void parseStatusLine() throws IOException {
+        if (!_statusLine.startsWith( "HTTP/" )) throw new IOException( "Invalid status line: " + _statusLine );
+        int codeStart = _statusLine.indexOf( ' ' );
+        int codeEnd = _statusLine.indexOf( ' ', codeStart+1 );
+        if (codeEnd < 0) codeEnd = _statusLine.length();
+        try {
+            responseCode = Integer.parseInt( _statusLine.substring( codeStart+1, codeEnd ).trim() );
+        } catch (RuntimeException e) {
+            throw new IOException( "Invalid status line: " + _statusLine );
+        }
+        responseMessage = codeEnd < _statusLine.length() ? _statusLine.substring( codeEnd+1 ) : "";
+    }
+
+
+    private void readHeaders( InputStream inputStream ) throws IOException {
+        _headerKeys.clear();
+        _headerValues.clear();
+        String line;
+        while ((line = readLine( inputStream )) != null && line.length() > 0) {
+            if (Character.isWhitespace( line.charAt( 0 ) ) && !_headerValues.isEmpty()) {
+                int last = _headerValues.size()-1;
+                _headerValues.set( last, _headerValues.get( last ) + " " + line.trim() );
+                continue;
+            }
+            int colon = line.indexOf( ':' );
+            if (colon <= 0) continue;
+            _headerKeys.add( line.substring( 0, colon ).trim() );
+            _headerValues.add( line.substring( colon+1 ).trim() );
+        }
+    }
+
+
+    private InputStream createResponseBody( PooledConnection connection ) throws IOException {
+        boolean reusable = isKeepAlive();
+        if (!hasResponseBody()) {
+            if (reusable) {
+                _transport.release( connection );
+            } else {
+                connection.close();
+            }
+            return new ByteArrayInputStream( new byte[0] );
+        }
+
+        String transferEncoding = findHeaderField( "Transfer-Encoding" );
+        if (transferEncoding != null && transferEncoding.toLowerCase().indexOf( "chunked" ) >= 0) {
+            return new ResponseBodyInputStream( _transport, connection, 0, true, reusable );
+        }
+
+        long length = ResponseBodyInputStream.UNTIL_CLOSED;
+        String contentLength = findHeaderField( "Content-Length" );
+        if (contentLength != null) {
+            try {
+                length = Long.parseLong( contentLength.trim() );
+            } catch (NumberFormatException e) {
+                length = ResponseBodyInputStream.UNTIL_CLOSED;
+            }
+        }
+        return new ResponseBodyInputStream( _transport, connection, length, false, reusable );
+    }
+
+
+    private boolean hasResponseBody() {
+        return !getRequestMethod().equals( "HEAD" )
+            && responseCode >= HTTP_OK && responseCode != HTTP_NO_CONTENT && responseCode != HTTP_NOT_MODIFIED;
+    }
+
+
+    private boolean isKeepAlive() {
+        String connectionHeader = findHeaderField( "Connection" );
+        if (connectionHeader != null && connectionHeader.equalsIgnoreCase( "close" )) return false;
+        return _statusLine.startsWith( "HTTP/1.1" ) || "keep-alive".equalsIgnoreCase( connectionHeader );
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.meterware.httpunit.transport;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * The body of a response read from a pooled connection. The end of the body is determined by the Content-Length
+ * header, by chunked transfer encoding, or by the server closing the connection; a connection closed before the
+ * announced length or the final chunk has been read is reported as an IOException. Once the body has been completely
+ * read, or the stream is closed with little of it left unread, a reusable connection is returned to its pool;
+ * if the stream is closed early, the connection is discarded.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class ResponseBodyInputStream extends InputStream {
+
+    /** The length to specify for a body which ends when the server closes the connection. **/
+    final static long UNTIL_CLOSED = -1;
+
+    /** The most unread body bytes which are discarded on close in order to keep the connection. **/
+    private final static long MAX_DRAINED_ON_CLOSE = 64 * 1024;
+
+    private final static int DRAIN_BUFFER_SIZE = 4096;
+
+    private PooledHttpTransport _transport;
+    private PooledConnection    _connection;
+    private InputStream         _in;
+
+    private boolean _chunked;
+    private boolean _reusable;
+    private boolean _eof;
+
+    /** The bytes left in the body, or in the current chunk. **/
+    private long _remaining;
+
+    private boolean _firstChunk = true;
+
+
+    /**
+     * Creates a stream to read the body.
+     * @param length the content length, or UNTIL_CLOSED if not known. Ignored for chunked bodies.
+     * @param reusable true if the connection may be reused once the body has been read
+     */
+    ResponseBodyInputStream( PooledHttpTransport transport, PooledConnection connection, long length, boolean chunked, boolean reusable ) {
+        _transport = transport;
+        _connection = connection;
+        _in = connection.getInputStream();
+        _chunked = chunked;
+        _reusable = reusable && (chunked || length != UNTIL_CLOSED);
+        _remaining = chunked ? 0 : length;
+        if (!chunked && length == 0) finish( true );
+    }
+
+
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        int count = read( buffer, 0, 1 );
+        return count == -1 ? -1 : (buffer[0] & 0xff);
+    }
+
+
+    public int read( byte[] buffer, int offset, int length ) throws IOException {
+        if (_eof) return -1;
+        if (length == 0) return 0;
+        if (_chunked && _remaining == 0 && !startNextChunk()) return -1;
+
+        int toRead = (_remaining < 0) ? length : (int) Math.min( length, _remaining );
+        int count = _in.read( buffer, offset, toRead );
+        if (count == -1) {
+            if (_remaining > 0) {
+                finish( false );
+                throw new IOException( "Premature end of body: connection closed with " + _remaining + " bytes unread" );
+            }
+            finish( true );
+            return -1;
+        }
+
+        if (_remaining > 0) _remaining -= count;
+        if (_remaining == 0 && !_chunked) finish( true );
+        return count;
+    }
+
+
+    public int available() throws IOException {
+        if (_eof) return 0;
+        int available = _in.available();
+        return _remaining < 0 ? available : (int) Math.min( available, _remaining );
+    }
+
+
+    /**
+     * Closes the stream. If little of the body remains unread, it is read and discarded so that the connection
+     * may be returned to its pool; otherwise the underlying connection is closed as well.
+     */
+    public void close() throws IOException {
+        if (_eof) return;
+        if (_reusable && (_chunked || _remaining <= MAX_DRAINED_ON_CLOSE)) {
+            try {
+                byte[] buffer = new byte[ DRAIN_BUFFER_SIZE ];
+                long drained = 0;
+                int count;
+                while (drained <= MAX_DRAINED_ON_CLOSE && (count = read( buffer, 0, buffer.length )) != -1) drained += count;
+            } catch (IOException e) {
+                // the connection cannot be reused; it is closed below
+            }
+        }
+        if (!_eof) finish( false );
+    }
+
+
+//-------------------------------------------- private members ------------------------------------------------
+
+
+    /**
+     * Reads the header of the next chunk. Returns false if the final chunk has been reached.
+     */
+    private boolean startNextChunk() throws IOException {
+        if (!_firstChunk) readLine();  // the CRLF which ends the previous chunk
+        _firstChunk = false;
+
+        String sizeLine = readLine();
+        if (sizeLine == null) {
+            finish( false );
+            throw new IOException( "Premature end of body: connection closed before the final chunk" );
+        }
+        int extension = sizeLine.indexOf( ';' );
+        if (extension >= 0) sizeLine = sizeLine.substring( 0, extension );
+        try {
+            _remaining = Long.parseLong( sizeLine.trim(), 16 );
+        } catch (NumberFormatException e) {
+            finish( false );
+            throw new IOException( "Bad chunk size: " + sizeLine );
+        }
+
+        if (_remaining > 0) return true;
+
+        String trailer;
+        do { trailer = readLine(); } while (trailer != null && trailer.length() > 0);
+        finish( trailer != null );
+        return false;
+    }
+
+
+    private String readLine() throws IOException {
+        return PooledHttpURLConnection.readLine( _in );
+    }
+
+
+    private void finish( boolean complete ) {
+        _eof = true;
+        if (complete && _reusable) {
+            _transport.release( _connection );
+        } else {
+            _connection.close();
+        }
+    }
+
+}
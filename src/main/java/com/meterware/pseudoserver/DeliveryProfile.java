@@ -0,0 +1,197 @@
+package com.meterware.pseudoserver;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Describes how slowly a simulated server delivers its responses. A profile may delay the first byte of a response,
+ * by a fixed time plus a random jitter; cap the rate at which bytes are sent; send the response in chunks separated
+ * by a delay; and drop the connection after a given number of bytes. The jitter of each response is derived from
+ * the seed and the response's sequence number within the profile, so that a sequence of responses is repeatable
+ * even when they are sent from several threads.
+ * <p>
+ * A profile may be set for a single resource with {@link WebResource#setDeliveryProfile}, or as the default for
+ * all resources of a server with {@link PseudoServer#setDeliveryProfile(DeliveryProfile)}:
+ * <pre>
+ *   DeliveryProfile slow = new DeliveryProfile();
+ *   slow.setFirstByteDelay( 200 );
+ *   slow.setBytesPerSecond( 10 * 1024 );
+ *   server.setDeliveryProfile( "/slow.html", slow );
+ * </pre>
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+public class DeliveryProfile {
+
+    /** The default seed for the jitter generator. **/
+    public final static long DEFAULT_JITTER_SEED = 0;
+
+    /** The chunk size used when a rate cap is set but no chunk size. **/
+    private final static int DEFAULT_PACED_CHUNK_SIZE = 1024;
+
+    // These are set by the test thread and read by connection threads.
+    private volatile int _firstByteDelay;
+    private volatile int _firstByteJitter;
+    private volatile int _bytesPerSecond;
+    private volatile int _chunkSize;
+    private volatile int _chunkDelay;
+    private volatile int _dropAfter = -1;
+
+    private volatile long _jitterSeed = DEFAULT_JITTER_SEED;
+
+    /** The number of responses which this profile has delivered since its seed was set. **/
+    private final AtomicLong _responseSequence = new AtomicLong();
+
+
+    /**
+     * Specifies the time, in msec, to wait before sending the first byte of a response.
+     */
+    public void setFirstByteDelay( int firstByteDelay ) {
+        _firstByteDelay = firstByteDelay;
+    }
+
+
+    /**
+     * Specifies the maximum random time, in msec, to add to the first byte delay of each response.
+     */
+    public void setFirstByteJitter( int firstByteJitter ) {
+        _firstByteJitter = firstByteJitter;
+    }
+
+
+    /**
+     * Restarts the jitter sequence with the specified seed.
+     */
+    public void setJitterSeed( long seed ) {
+        _jitterSeed = seed;
+        _responseSequence.set( 0 );
+    }
+
+
+    /**
+     * Specifies the maximum rate at which bytes are sent. A value of zero means no limit.
+     */
+    public void setBytesPerSecond( int bytesPerSecond ) {
+        _bytesPerSecond = bytesPerSecond;
+    }
+
+
+    /**
+     * Specifies the number of bytes to send at a time. A value of zero sends the response in one piece,
+     * unless a rate cap is set.
+     */
+    public void setChunkSize( int chunkSize ) {
+        _chunkSize = chunkSize;
+    }
+
+
+    /**
+     * Specifies the time, in msec, to wait between chunks.
+     */
+    public void setChunkDelay( int chunkDelay ) {
+        _chunkDelay = chunkDelay;
+    }
+
+
+    /**
+     * Specifies the number of bytes of each response, counting the headers, after which the connection is closed.
+     * A negative value means the connection is never dropped.
+     */
+    public void setDropAfter( int dropAfter ) {
+        _dropAfter = dropAfter;
+    }
+
+
+    /**
+     * Sends the specified message according to this profile. The pacing is done on the calling connection thread,
+     * against deadlines measured from the start of the response, so that time spent writing does not add to the delays
+     * and a slow reader on one connection cannot delay any other.
+     * @return false if the connection should be dropped, because only part of the message was sent
+     */
+    boolean deliver( byte[] message, OutputStream outputStream ) throws IOException {
+        long start = System.currentTimeMillis();
+        long firstByteTime = start + _firstByteDelay + getFirstByteJitter( _responseSequence.getAndIncrement() );
+        int dropAfter = _dropAfter;
+        int chunkDelay = _chunkDelay;
+        int bytesPerSecond = _bytesPerSecond;
+        int length = (dropAfter < 0) ? message.length : Math.min( dropAfter, message.length );
+        int chunkSize = getEffectiveChunkSize( _chunkSize, bytesPerSecond, length );
+
+        long nextChunkTime = firstByteTime;
+        for (int sent = 0; sent < length; ) {
+            waitUntil( nextChunkTime );
+            int count = Math.min( chunkSize, length - sent );
+            outputStream.write( message, sent, count );
+            outputStream.flush();
+            sent += count;
+            nextChunkTime += chunkDelay;
+            if (bytesPerSecond > 0) nextChunkTime = Math.max( nextChunkTime, firstByteTime + (sent * 1000L) / bytesPerSecond );
+        }
+        if (length == 0) waitUntil( firstByteTime );
+        return length == message.length;
+    }
+
+
+    /**
+     * Returns the jitter, in msec, for the response with the specified sequence number. The value depends only
+     * on the seed and the sequence number.
+     */
+    int getFirstByteJitter( long sequence ) {
+        int firstByteJitter = _firstByteJitter;
+        if (firstByteJitter <= 0) return 0;
+        long mixed = mix( _jitterSeed + (sequence + 1) * 0x9E3779B97F4A7C15L );
+        return (int) ((mixed >>> 1) % (firstByteJitter + 1));
+    }
+
+
+    /**
+     * Scrambles the bits of a value, so that neighbouring sequence numbers give unrelated jitters.
+     */
+    private static long mix( long value ) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+
+    private static int getEffectiveChunkSize( int chunkSize, int bytesPerSecond, int length ) {
+        if (chunkSize > 0) return chunkSize;
+        if (bytesPerSecond > 0) return Math.min( DEFAULT_PACED_CHUNK_SIZE, Math.max( 1, bytesPerSecond / 10 ) );
+        return Math.max( 1, length );
+    }
+
+
+    private static void waitUntil( long time ) throws IOException {
+        long delay;
+        while ((delay = time - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep( delay );
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException( "Interrupted while delivering response" );
+            }
+        }
+    }
+
+}
@@ -24,8 +24,12 @@ import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.meterware.httpunit.HttpUnitUtils;
 
@@ -42,8 +46,6 @@ public class PseudoServer {
 	
     static final int DEFAULT_SOCKET_TIMEOUT = 1000;
 
-    private static final int INPUT_POLL_INTERVAL = 10;
-
     /** Time in msec to wait for an outstanding server socket to be released before creating a new one. **/
     private static int _socketReleaseWaitTime = 50;
 
@@ -56,9 +58,34 @@ public class PseudoServer {
 
     private int _connectionNum = 0;
 
+    /** The threads which serve accepted connections. Idle threads are reused for later connections. **/
+    private final ExecutorService _connectionThreads = Executors.newCachedThreadPool( new ThreadFactory() {
+        public Thread newThread( Runnable runnable ) {
+            Thread thread = new Thread( runnable, "PseudoServer " + _serverNum + " connection " + (++_connectionNum) );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
 
     private ArrayList _classpathDirs = new ArrayList();
 
+    /** The entries of the java class path, tokenised when a directory is first mapped to the classpath. **/
+    private volatile String[] _classpathEntries;
+
+    /** The most classpath resources held at once. **/
+    private final static int MAX_CACHED_RESOURCES = 64;
+
+    /** The largest classpath resource, in bytes, which is held once loaded. Larger ones are read again on each request. **/
+    private final static int MAX_CACHED_RESOURCE_SIZE = 1024 * 1024;
+
+    /** Resources recently loaded from the classpath, keyed by request uri, least recently used first. **/
+    private final Map _classpathResources = new LinkedHashMap( 16, 0.75f, true ) {
+        protected boolean removeEldestEntry( Map.Entry eldest ) {
+            return size() > MAX_CACHED_RESOURCES;
+        }
+    };
+
     private String _maxProtocolLevel = "1.1";
 
 
@@ -126,16 +153,14 @@ public class PseudoServer {
                 while (_active) {
                     try {
                         handleNewConnection( _serverSocket.accept() );
-                        Thread.sleep( 20 );
                     } catch (InterruptedIOException e) {
                     } catch (IOException e) {
+                        if (!_active) break;
                         System.out.println( "Error in pseudo server: " + e );
                         HttpUnitUtils.handleException(e);
-                    } catch (InterruptedException e) {
-                        System.out.println( "Interrupted. Shutting down" );
-                        _active = false;
                     }
                 }
+                _connectionThreads.shutdown();
         		try {
                     _serverSocket.close();
                 } catch (IOException e) {
@@ -149,9 +174,17 @@ public class PseudoServer {
     }
 
 
+    /**
+     * Stops accepting connections. Connections already open are closed once they have no request in progress.
+     */
     public void shutDown() {
         debug( "Requested shutdown of pseudoserver" );
         _active = false;
+        try {
+            _serverSocket.close();
+        } catch (IOException e) {
+            System.out.println("Error while closing socket: " + e);
+        }
     }
 
 
@@ -264,7 +297,36 @@ public class PseudoServer {
     }
 
 
+    /**
+     * Specifies how slowly the named resource is to be delivered. The resource may be served by a
+     * {@link PseudoServlet}. The profile applies to any resource later defined with the same name.
+     * If null, the resource is delivered according to the server's default profile.
+     **/
+    public void setDeliveryProfile( String name, DeliveryProfile profile ) {
+        if (!_resources.containsKey( asResourceName( name ) )) throw new IllegalArgumentException( "No defined resource " + name );
+        if (profile == null) {
+            _deliveryProfiles.remove( asResourceName( name ) );
+        } else {
+            _deliveryProfiles.put( asResourceName( name ), profile );
+        }
+    }
+
+
+    /**
+     * Specifies how slowly resources are to be delivered, unless they have a profile of their own.
+     * If null, responses are sent as fast as possible.
+     **/
+    public void setDeliveryProfile( DeliveryProfile profile ) {
+        _deliveryProfile = profile;
+    }
+
+
+    /**
+     * Serves class, jar and zip files requested under the specified directory from the classpath. Each file is read
+     * once, on its first request, and its contents reused for later requests.
+     */
     public void mapToClasspath( String directory ) {
+        if (_classpathEntries == null) _classpathEntries = getClasspathEntries();
         _classpathDirs.add( directory );
     }
 
@@ -278,7 +340,12 @@ public class PseudoServer {
 
     private Hashtable _resources = new Hashtable();
 
-    private boolean _active = true;
+    private volatile boolean _active = true;
+
+    private volatile DeliveryProfile _deliveryProfile;
+
+    /** Delivery profiles for named resources, keyed by resource name. **/
+    private Hashtable _deliveryProfiles = new Hashtable();
 
     private boolean _debug=false;
 
@@ -312,7 +379,7 @@ public class PseudoServer {
 
 
     private void handleNewConnection( final Socket socket ) {
-        Thread t = new Thread( "PseudoServer " + _serverNum + " connection " + (++_connectionNum) ) {
+        _connectionThreads.execute( new Runnable() {
             public void run() {
                 try {
                     serveRequests( socket );
@@ -320,8 +387,7 @@ public class PseudoServer {
                     e.printStackTrace();  //To change body of catch statement use Options | File Templates.
                 }
             }
-        };
-        t.start();
+        } );
     }
 
 
@@ -334,15 +400,10 @@ public class PseudoServer {
         final HttpResponseStream outputStream = new HttpResponseStream( socket.getOutputStream() );
 
         try {
-            while (_active) {
+            while (awaitRequest( inputStream )) {
                 HttpRequest request = new HttpRequest( inputStream );
                 boolean keepAlive = respondToRequest( request, outputStream );
                 if (!keepAlive) break;
-                while (_active && 0 == inputStream.available()) {
-                    try { 
-                    	Thread.sleep( INPUT_POLL_INTERVAL ); 
-                    } catch (InterruptedException e) {}
-                }
             }
         } catch (IOException e) {
             outputStream.restart();
@@ -356,6 +417,26 @@ public class PseudoServer {
     }
 
 
+    /**
+     * Blocks until the next request starts to arrive on the connection, rather than polling for it.
+     * The read times out after the socket timeout so that a shutdown is noticed on idle connections.
+     * @return false if the client has closed the connection or the server is shutting down
+     */
+    private boolean awaitRequest( BufferedInputStream inputStream ) throws IOException {
+        while (_active) {
+            inputStream.mark( 1 );
+            try {
+                if (inputStream.read() == -1) return false;
+                inputStream.reset();
+                return _active;
+            } catch (SocketTimeoutException e) {
+                // no request yet; check whether we are still active
+            }
+        }
+        return false;
+    }
+
+
     /**
      * respond to the given request
      * @param request - the request
@@ -400,7 +481,7 @@ public class PseudoServer {
             response.setResponse( HttpURLConnection.HTTP_INTERNAL_ERROR, t.toString() );
         }
         try { 
-        	response.write( resource ); 
+        	if (!response.write( resource, getDeliveryProfile( request, resource ) )) keepAlive = false;
         } catch (IOException e) { 
         	System.out.println( "*** Failed to send reply: " + e ); 
         }
@@ -408,6 +489,18 @@ public class PseudoServer {
     }
 
 
+    /**
+     * Returns the profile for delivering a response: that of the resource itself, if any, then that specified
+     * for its name, then the server default.
+     */
+    private DeliveryProfile getDeliveryProfile( HttpRequest request, WebResource resource ) {
+        DeliveryProfile profile = (resource == null) ? null : resource.getDeliveryProfile();
+        if (profile == null) profile = (DeliveryProfile) _deliveryProfiles.get( request.getURI() );
+        if (profile == null) profile = (DeliveryProfile) _deliveryProfiles.get( withoutParameters( request.getURI() ) );
+        return profile != null ? profile : _deliveryProfile;
+    }
+
+
     private boolean isKeepAlive( HttpRequest request ) {
         return request.wantsKeepAlive() && _maxProtocolLevel.equals( "1.1" );
     }
@@ -436,34 +529,78 @@ public class PseudoServer {
             return (WebResource) resource;
         } else if (resource instanceof PseudoServlet) {
             return getResource( (PseudoServlet) resource, request );
-        } else if (request.getURI().endsWith( ".class" )) {
-            for (Iterator iterator = _classpathDirs.iterator(); iterator.hasNext();) {
-                String directory = (String) iterator.next();
-                if (request.getURI().startsWith( directory )) {
-                    String resourceName = request.getURI().substring( directory.length()+1 );
-                    return new WebResource( getClass().getClassLoader().getResourceAsStream( resourceName ), "application/class", 200 );
-                }
-            }
+        } else if (request.getURI().endsWith( ".class" ) || request.getURI().endsWith( ".zip" ) || request.getURI().endsWith( ".jar" )) {
+            return getClasspathResource( request.getURI() );
+        } else {
             return null;
-        } else if (request.getURI().endsWith( ".zip" ) || request.getURI().endsWith( ".jar" )) {
-            for (Iterator iterator = _classpathDirs.iterator(); iterator.hasNext();) {
-                String directory = (String) iterator.next();
-                if (request.getURI().startsWith( directory )) {
-                    String resourceName = request.getURI().substring( directory.length()+1 );
-                    String classPath = System.getProperty( "java.class.path" );
-                    StringTokenizer st = new StringTokenizer( classPath, ":;," );
-                    while (st.hasMoreTokens()) {
-                        String file = st.nextToken();
-                        if (file.endsWith( resourceName )) {
-                            File f = new File( file );
-                            return new WebResource( new FileInputStream( f ), "application/zip", 200 );
-                        }
+        }
+    }
+
+
+    /**
+     * Returns the classpath resource for the specified uri, loading it on its first request.
+     * @return the resource, or null if the uri is not mapped to the classpath or names no file on it
+     */
+    private WebResource getClasspathResource( String uri ) throws IOException {
+        synchronized (_classpathResources) {
+            WebResource resource = (WebResource) _classpathResources.get( uri );
+            if (resource != null) return resource;
+        }
+
+        for (Iterator iterator = _classpathDirs.iterator(); iterator.hasNext();) {
+            String directory = (String) iterator.next();
+            if (uri.startsWith( directory )) {
+                String resourceName = uri.substring( directory.length()+1 );
+                boolean isClass = uri.endsWith( ".class" );
+                byte[] contents = isClass ? loadClassContents( resourceName ) : loadArchiveContents( resourceName );
+                if (contents == null) return null;
+
+                WebResource resource = new WebResource( contents, isClass ? "application/class" : "application/zip", 200 );
+                if (contents.length <= MAX_CACHED_RESOURCE_SIZE) {
+                    synchronized (_classpathResources) {
+                        _classpathResources.put( uri, resource );
                     }
                 }
+                return resource;
             }
-            return null;
-        } else {
-            return null;
+        }
+        return null;
+    }
+
+
+    private byte[] loadClassContents( String resourceName ) throws IOException {
+        InputStream stream = getClass().getClassLoader().getResourceAsStream( resourceName );
+        return stream == null ? null : readFully( stream );
+    }
+
+
+    private byte[] loadArchiveContents( String resourceName ) throws IOException {
+        for (int i = 0; i < _classpathEntries.length; i++) {
+            if (_classpathEntries[i].endsWith( resourceName )) {
+                return readFully( new FileInputStream( new File( _classpathEntries[i] ) ) );
+            }
+        }
+        return null;
+    }
+
+
+    private static String[] getClasspathEntries() {
+        ArrayList entries = new ArrayList();
+        StringTokenizer st = new StringTokenizer( System.getProperty( "java.class.path" ), ":;," );
+        while (st.hasMoreTokens()) entries.add( st.nextToken() );
+        return (String[]) entries.toArray( new String[ entries.size() ] );
+    }
+
+
+    private static byte[] readFully( InputStream stream ) throws IOException {
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = stream.read( buffer, 0, buffer.length )) != -1) contents.write( buffer, 0, count );
+            return contents.toByteArray();
+        } finally {
+            stream.close();
         }
     }
 
@@ -490,6 +627,11 @@ class HttpResponseStream {
 
     final private static String CRLF = "\r\n";
 
+    final private static String HEADER_CHARACTER_SET = "us-ascii";
+
+    /** Responses are gathered in a buffer of this size, so that the headers and a small body go out in a single write. **/
+    final private static int BUFFER_SIZE = 8 * 1024;
+
     void restart() {
         _headersWritten = false;
         _headers.clear();
@@ -505,9 +647,9 @@ class HttpResponseStream {
 
 
     HttpResponseStream( OutputStream stream ) {
-        _stream = stream;
+        _stream = new BufferedOutputStream( stream, BUFFER_SIZE );
         try {
-            setCharacterSet( "us-ascii" );
+            setCharacterSet( HEADER_CHARACTER_SET );
         } catch (UnsupportedEncodingException e) {
             _pw = new PrintWriter( new OutputStreamWriter( _stream ) );
         }
@@ -542,10 +684,23 @@ class HttpResponseStream {
     }
 
 
-    void write( WebResource resource ) throws IOException {
-        flushHeaders();
-        if (resource != null) resource.writeTo( _stream );
-        _stream.flush();
+    /**
+     * Sends the headers and the specified resource, paced according to the specified profile if it is not null.
+     * @return false if the profile dropped the connection before the whole response was sent
+     */
+    boolean write( WebResource resource, DeliveryProfile profile ) throws IOException {
+        if (profile == null) {
+            flushHeaders();
+            if (resource != null) resource.writeTo( _stream );
+            _stream.flush();
+            return true;
+        } else {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            if (!_headersWritten) message.write( getHeaderBytes() );
+            _headersWritten = true;
+            if (resource != null) resource.writeTo( message );
+            return profile.deliver( message.toByteArray(), _stream );
+        }
     }
 
 
@@ -555,27 +710,26 @@ class HttpResponseStream {
     }
 
 
-    private void flushHeaders() {
+    /**
+     * Writes the status line and headers into the response buffer, unless they have already been written.
+     * They are not sent until the body has been added, or the stream is flushed or closed.
+     */
+    private void flushHeaders() throws IOException {
         if (!_headersWritten) {
-            sendResponse( _responseCode, _responseText );
-            for (Enumeration e = _headers.elements(); e.hasMoreElements();) {
-                sendLine( (String) e.nextElement() );
-            }
-            sendText( CRLF );
+            _stream.write( getHeaderBytes() );
             _headersWritten = true;
-            _pw.flush();
         }
     }
 
 
-    private void sendResponse( int responseCode, String responseText ) {
-        sendLine( _protocol + ' ' + responseCode + ' ' + responseText );
-    }
-
-
-    private void sendLine( String text ) {
-        sendText( text );
-        sendText( CRLF );
+    private byte[] getHeaderBytes() throws UnsupportedEncodingException {
+        StringBuffer sb = new StringBuffer();
+        sb.append( _protocol ).append( ' ' ).append( _responseCode ).append( ' ' ).append( _responseText ).append( CRLF );
+        for (Enumeration e = _headers.elements(); e.hasMoreElements();) {
+            sb.append( (String) e.nextElement() ).append( CRLF );
+        }
+        sb.append( CRLF );
+        return sb.toString().getBytes( HEADER_CHARACTER_SET );
     }
 
 
@@ -58,6 +58,7 @@ public class WebResource {
 
     public void addHeader( String header ) {
         _headers.addElement( header );
+        _effectiveHeaders = null;
         if (header.toLowerCase().startsWith( "content-type" )) _hasExplicitContentTypeHeader = true;
         if (header.toLowerCase().startsWith( "content-length" )) _hasExplicitContentLengthHeader = true;
         if (header.trim().toLowerCase().startsWith( "connection" ) &&
@@ -69,21 +70,39 @@ public class WebResource {
 
     public void setCharacterSet( String characterSet ) {
         _characterSet = characterSet;
+        _encodedContents = null;
+        _effectiveHeaders = null;
     }
 
 
     public void setSendCharacterSet( boolean enabled ) {
         _sendCharacterSet = enabled;
+        _effectiveHeaders = null;
     }
 
 
     public void suppressAutomaticLengthHeader() {
         _hasExplicitContentLengthHeader = true;
+        _effectiveHeaders = null;
     }
 
 
     public void suppressAutomaticContentTypeHeader() {
         _hasExplicitContentTypeHeader = true;
+        _effectiveHeaders = null;
+    }
+
+
+    /**
+     * Specifies how slowly this resource is to be delivered. If null, the server's default profile is used.
+     */
+    public void setDeliveryProfile( DeliveryProfile profile ) {
+        _deliveryProfile = profile;
+    }
+
+
+    DeliveryProfile getDeliveryProfile() {
+        return _deliveryProfile;
     }
     
 
@@ -114,12 +133,20 @@ public class WebResource {
     }
 
 
+    /**
+     * Returns the headers to send with this resource. They are computed once and reused for later requests
+     * until the resource is changed. The returned array must not be modified.
+     */
     String[] getHeaders() throws UnsupportedEncodingException {
-        final Vector effectiveHeaders = (Vector) _headers.clone();
-        if (!_hasExplicitContentTypeHeader) effectiveHeaders.add( getContentTypeHeader() );
-        if (_stream == null && !_hasExplicitContentLengthHeader && !isChunked()) effectiveHeaders.add( getContentLengthHeader() );
-        String[] headers = new String[ effectiveHeaders.size() ];
-        effectiveHeaders.copyInto( headers );
+        String[] headers = _effectiveHeaders;
+        if (headers == null) {
+            final Vector effectiveHeaders = (Vector) _headers.clone();
+            if (!_hasExplicitContentTypeHeader) effectiveHeaders.add( getContentTypeHeader() );
+            if (_stream == null && !_hasExplicitContentLengthHeader && !isChunked()) effectiveHeaders.add( getContentLengthHeader() );
+            headers = new String[ effectiveHeaders.size() ];
+            effectiveHeaders.copyInto( headers );
+            if (_stream == null) _effectiveHeaders = headers;
+        }
         return headers;
     }
 
@@ -158,11 +185,17 @@ public class WebResource {
     }
 
 
+    /**
+     * Returns the contents of this resource as bytes. String contents are encoded once and the result reused
+     * until the character set is changed.
+     */
     private byte[] getContentsAsBytes() throws UnsupportedEncodingException {
         if (_contents != null) {
             return _contents;
         } else if (_string != null) {
-            return _string.getBytes( getCharacterSet() );
+            byte[] encoded = _encodedContents;
+            if (encoded == null) _encodedContents = encoded = _string.getBytes( getCharacterSet() );
+            return encoded;
         } else {
             throw new IllegalStateException( "Cannot get bytes from stream" );
         }
@@ -216,6 +249,12 @@ public class WebResource {
     private String      _string;
     private InputStream _stream;
 
+    /** The string contents encoded in the current character set, or null if not yet computed. **/
+    private volatile byte[]   _encodedContents;
+
+    /** The headers to send, or null if not yet computed. **/
+    private volatile String[] _effectiveHeaders;
+
     private int     _responseCode;
     private boolean _sendCharacterSet;
     private String  _contentType = DEFAULT_CONTENT_TYPE;
@@ -224,6 +263,7 @@ public class WebResource {
     private boolean _hasExplicitContentLengthHeader;
     private Vector  _headers = new Vector();
     private boolean _isChunked;
+    private DeliveryProfile _deliveryProfile;
 }
 
 
@@ -0,0 +1,189 @@
+package com.meterware.servletunit;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * A buffer for the body of a request or response. The body is held in memory until it grows past a threshold; it is
+ * then moved to a temporary file, so that very large uploads and downloads need not fit on the heap. The body may
+ * be read back any number of times through {@link #newInputStream}.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+class BodyBuffer extends OutputStream {
+
+    /** The largest body which is held in memory by default. **/
+    final static int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private final static int INITIAL_SIZE = 256;
+
+    private final int _memoryThreshold;
+
+    private byte[] _buffer = new byte[ INITIAL_SIZE ];
+    private long   _size;
+
+    private File         _file;
+    private OutputStream _fileStream;
+
+
+    BodyBuffer() {
+        this( DEFAULT_MEMORY_THRESHOLD );
+    }
+
+
+    BodyBuffer( int memoryThreshold ) {
+        _memoryThreshold = memoryThreshold;
+    }
+
+
+    public synchronized void write( int aByte ) throws IOException {
+        if (_file == null && _size + 1 > _memoryThreshold) moveToFile();
+        if (_file != null) {
+            _fileStream.write( aByte );
+        } else {
+            ensureCapacity( (int) _size + 1 );
+            _buffer[ (int) _size ] = (byte) aByte;
+        }
+        _size++;
+    }
+
+
+    public synchronized void write( byte[] bytes, int offset, int length ) throws IOException {
+        if (_file == null && _size + length > _memoryThreshold) moveToFile();
+        if (_file != null) {
+            _fileStream.write( bytes, offset, length );
+        } else {
+            ensureCapacity( (int) _size + length );
+            System.arraycopy( bytes, offset, _buffer, (int) _size, length );
+        }
+        _size += length;
+    }
+
+
+    public synchronized void flush() throws IOException {
+        if (_fileStream != null) _fileStream.flush();
+    }
+
+
+    /**
+     * Releases the temporary file's output stream, if any. The body may still be read after the buffer is closed.
+     */
+    public synchronized void close() throws IOException {
+        if (_fileStream != null) _fileStream.close();
+    }
+
+
+    /**
+     * Discards the body, closing and deleting its temporary file if it has one. A buffer which is no longer needed
+     * should be disposed rather than left for its file to be deleted when the virtual machine exits.
+     */
+    synchronized void dispose() {
+        _buffer = new byte[ 0 ];
+        _size = 0;
+        if (_file == null) return;
+
+        try {
+            _fileStream.close();
+        } catch (IOException e) {
+            // the file is being discarded in any case
+        }
+        _file.delete();
+        _file = null;
+        _fileStream = null;
+    }
+
+
+    /**
+     * Returns the number of bytes written to this buffer.
+     */
+    synchronized long size() {
+        return _size;
+    }
+
+
+    /**
+     * Returns true if the body has been moved out of memory.
+     */
+    synchronized boolean isOnDisk() {
+        return _file != null;
+    }
+
+
+    /**
+     * Returns a stream over the bytes written so far. A body held in memory is shared rather than copied.
+     */
+    synchronized InputStream newInputStream() throws IOException {
+        if (_file == null) return new ByteArrayInputStream( _buffer, 0, (int) _size );
+
+        _fileStream.flush();
+        return new BufferedInputStream( new FileInputStream( _file ) );
+    }
+
+
+    /**
+     * Returns a copy of the bytes written so far.
+     */
+    synchronized byte[] toByteArray() throws IOException {
+        if (_size > Integer.MAX_VALUE) throw new IOException( "Body of " + _size + " bytes is too large for an array" );
+        byte[] result = new byte[ (int) _size ];
+        if (_file == null) {
+            System.arraycopy( _buffer, 0, result, 0, result.length );
+        } else {
+            InputStream inputStream = newInputStream();
+            try {
+                for (int offset = 0, count; offset < result.length; offset += count) {
+                    count = inputStream.read( result, offset, result.length - offset );
+                    if (count == -1) throw new IOException( "Body file is shorter than expected" );
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+        return result;
+    }
+
+
+    private void ensureCapacity( int capacity ) {
+        if (capacity <= _buffer.length) return;
+        byte[] newBuffer = new byte[ Math.min( Math.max( _buffer.length * 2, capacity ), _memoryThreshold ) ];
+        System.arraycopy( _buffer, 0, newBuffer, 0, (int) _size );
+        _buffer = newBuffer;
+    }
+
+
+    private void moveToFile() throws IOException {
+        _file = File.createTempFile( "servletunit", ".body" );
+        _file.deleteOnExit();
+        _fileStream = new BufferedOutputStream( new FileOutputStream( _file ) );
+        _fileStream.write( _buffer, 0, (int) _size );
+        _buffer = null;
+    }
+
+}
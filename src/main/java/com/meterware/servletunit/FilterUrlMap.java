@@ -20,107 +20,117 @@ package com.meterware.servletunit;
  *
  *******************************************************************************************************************/
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
+ * The filters mapped to url patterns. The patterns are compiled into lookups by exact path, by path prefix
+ * and by extension, so that matching a resource name does not require testing every pattern.
  *
  * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
  **/
 class FilterUrlMap {
 
-    private ArrayList _urlPatterns = new ArrayList();
-    private ArrayList _filters     = new ArrayList();
+    private ArrayList _filters = new ArrayList();
 
+    /** The positions of the filters mapped to each exact path. **/
+    private Map _exactPaths = new HashMap();
 
-    void put( String urlPattern, FilterMetaData metaData ) {
-        _urlPatterns.add( UrlPatternMatcher.newPatternMatcher( urlPattern ) );
-        _filters.add( metaData );
-    }
-
-
-    FilterMetaData[] getMatchingFilters( String resourceName ) {
-        ArrayList matches = new ArrayList();
-        for (int i = 0; i < _urlPatterns.size(); i++) {
-            UrlPatternMatcher urlPattern = (UrlPatternMatcher) _urlPatterns.get( i );
-            if (urlPattern.matchesResourceName( resourceName )) matches.add( _filters.get( i ) );
-        }
-        return (FilterMetaData[]) matches.toArray( new FilterMetaData[ matches.size() ] );
-    }
+    /** The positions of the filters mapped to each path prefix, recorded without its trailing "/*". **/
+    private Map _pathPrefixes = new HashMap();
 
-}
+    /** The positions of the filters mapped to each extension, recorded with its leading '.'. **/
+    private Map _extensions = new HashMap();
 
+    /** The filters matching the resource names most recently seen. **/
+    private Map _matches = WebApplication.newPathCache();
 
-abstract class UrlPatternMatcher {
+    /** The complete filter chains most recently computed, keyed by resource name and servlet name. **/
+    private Map _chains = WebApplication.newPathCache();
 
-    static UrlPatternMatcher[] _templates = new UrlPatternMatcher[] { new ExtensionUrlPatternMatcher(), new PathMappingUrlPatternMatcher() };
 
-    static UrlPatternMatcher newPatternMatcher( String pattern ) {
-        for (int i = 0; i < _templates.length; i++) {
-            UrlPatternMatcher matcher = _templates[i].create( pattern );
-            if (matcher != null) return matcher;
+    void put( String urlPattern, FilterMetaData metaData ) {
+        Integer position = new Integer( _filters.size() );
+        _filters.add( metaData );
+        if (urlPattern.startsWith( "*." )) {
+            addPosition( _extensions, urlPattern.substring( 1 ), position );
+        } else if (urlPattern.startsWith( "/" ) && urlPattern.endsWith( "/*" )) {
+            addPosition( _pathPrefixes, urlPattern.substring( 0, urlPattern.length() - 2 ), position );
+        } else {
+            addPosition( _exactPaths, urlPattern, position );
         }
-        return new ExactUrlPatternMatcher( pattern );
+        clearCache();
     }
 
-    /**
-     * Returns a suitable pattern matcher if this class is compatible with the pattern. Will return null otherwise.
-     */
-    abstract UrlPatternMatcher create( String pattern );
 
     /**
-     * Returns true if the specified resource matches this pattern.
+     * Returns the filters whose patterns match the specified resource name, in the order in which they were added.
+     * The result for a recently seen name is reused; the returned array is shared and must not be modified.
      */
-    abstract boolean matchesResourceName( String resourceName );
-}
-
-
-class ExactUrlPatternMatcher extends UrlPatternMatcher {
-    private String _pattern;
-
-    public ExactUrlPatternMatcher( String pattern ) { _pattern = pattern; }
-
-    UrlPatternMatcher create( String pattern ) { return new ExactUrlPatternMatcher( pattern ); }
-
-    boolean matchesResourceName( String resourceName ) { return _pattern.equals( resourceName ); }
-}
-
-
-class ExtensionUrlPatternMatcher extends UrlPatternMatcher {
-    private String _suffix;
-
-    ExtensionUrlPatternMatcher() {}
+    FilterMetaData[] getMatchingFilters( String resourceName ) {
+        FilterMetaData[] result = (FilterMetaData[]) _matches.get( resourceName );
+        if (result == null) {
+            List positions = new ArrayList();
+            addPositions( positions, _exactPaths, resourceName );
+            addPositions( positions, _pathPrefixes, resourceName );
+            for (int i = resourceName.indexOf( '/' ); i >= 0; i = resourceName.indexOf( '/', i + 1 )) {
+                addPositions( positions, _pathPrefixes, resourceName.substring( 0, i ) );
+            }
+            for (int i = resourceName.indexOf( '.' ); i >= 0; i = resourceName.indexOf( '.', i + 1 )) {
+                addPositions( positions, _extensions, resourceName.substring( i ) );
+            }
+            Collections.sort( positions );
+
+            result = new FilterMetaData[ positions.size() ];
+            for (int i = 0; i < result.length; i++) result[i] = (FilterMetaData) _filters.get( ((Integer) positions.get( i )).intValue() );
+            _matches.put( resourceName, result );
+        }
+        return result;
+    }
 
-    ExtensionUrlPatternMatcher( String suffix ) { _suffix = suffix; }
 
-    UrlPatternMatcher create( String pattern ) {
-        return !pattern.startsWith( "*." ) ? null : new ExtensionUrlPatternMatcher( pattern.substring( 1 ) );
+    /**
+     * Returns the complete filter chain previously recorded for the specified resource and servlet names, or null.
+     */
+    FilterMetaData[] getCachedChain( String resourceName, String servletName ) {
+        return (FilterMetaData[]) _chains.get( getChainKey( resourceName, servletName ) );
     }
 
-    boolean matchesResourceName( String resourceName ) { return resourceName.endsWith( _suffix ); }
-}
-
 
-class PathMappingUrlPatternMatcher extends UrlPatternMatcher {
-    private String _exactPath;
-    private String _prefix;
+    /**
+     * Records the complete filter chain for the specified resource and servlet names.
+     */
+    void cacheChain( String resourceName, String servletName, FilterMetaData[] chain ) {
+        _chains.put( getChainKey( resourceName, servletName ), chain );
+    }
 
-    PathMappingUrlPatternMatcher() {}
 
-    PathMappingUrlPatternMatcher( String exactPath ) {
-        _exactPath = exactPath;
-        _prefix    = exactPath + '/';
+    /**
+     * Discards all remembered matches, as must be done whenever a filter mapping is added.
+     */
+    void clearCache() {
+        _matches.clear();
+        _chains.clear();
     }
 
-    UrlPatternMatcher create( String pattern ) {
-        return !handlesPattern( pattern ) ? null : new PathMappingUrlPatternMatcher( pattern.substring( 0, pattern.length()-2 ) );
+
+    private static String getChainKey( String resourceName, String servletName ) {
+        return servletName == null ? resourceName : resourceName + '\0' + servletName;
     }
 
 
-    private boolean handlesPattern( String pattern ) {
-        return pattern.startsWith( "/" ) && pattern.endsWith( "/*" );
+    private static void addPosition( Map lookup, String key, Integer position ) {
+        List positions = (List) lookup.get( key );
+        if (positions == null) lookup.put( key, positions = new ArrayList() );
+        positions.add( position );
     }
 
 
-    boolean matchesResourceName( String resourceName ) {
-        return resourceName.startsWith( _prefix ) || resourceName.equals( _exactPath );
+    private static void addPositions( List positions, Map lookup, String key ) {
+        List matches = (List) lookup.get( key );
+        if (matches != null) positions.addAll( matches );
     }
+
 }
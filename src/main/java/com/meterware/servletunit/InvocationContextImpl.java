@@ -21,7 +21,9 @@ package com.meterware.servletunit;
 *******************************************************************************************************************/
 import com.meterware.httpunit.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Dictionary;
@@ -177,13 +179,23 @@ class InvocationContextImpl implements InvocationContext {
      * request, and cookie headers.
      **/
     InvocationContextImpl( ServletUnitClient client, ServletRunner runner, FrameSelector frame, WebRequest request, Dictionary clientHeaders, byte[] messageBody ) throws IOException, MalformedURLException {
+        this( client, runner, frame, request, clientHeaders, new ByteArrayInputStream( messageBody ), messageBody.length );
+    }
+
+
+    /**
+     * Constructs a servlet invocation context for a specified servlet container,
+     * request, and cookie headers, reading the request body from the specified stream.
+     **/
+    InvocationContextImpl( ServletUnitClient client, ServletRunner runner, FrameSelector frame, WebRequest request, Dictionary clientHeaders,
+                           InputStream messageBody, long contentLength ) throws IOException, MalformedURLException {
         _client      = client;
         _application = runner.getApplication();
         _frame       = frame;
 
         URL requestURL  = request.getURL();
         final ServletUnitHttpRequest suhr = new ServletUnitHttpRequest( _application.getServletRequest( requestURL ), request,
-                                                                        runner.getContext(), clientHeaders, messageBody );
+                                                                        runner.getContext(), clientHeaders, messageBody, contentLength );
         if (_application.usesBasicAuthentication()) suhr.readBasicAuthentication();
         else if (_application.usesFormAuthentication()) suhr.readFormAuthentication();
 
@@ -21,7 +21,17 @@ package com.meterware.servletunit;
  *******************************************************************************************************************/
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -33,6 +43,7 @@ import junit.framework.Test;
 import junit.framework.AssertionFailedError;
 import junit.framework.TestResult;
 import junit.framework.TestFailure;
+import junit.framework.TestSuite;
 
 
 /**
@@ -40,6 +51,11 @@ import junit.framework.TestFailure;
  * to such tests if a container-specific implementation of InvocationContextFactory is provided.
  * Combined with ServletTestCase, this would permit
  * in-container tests of servlets in a fashion similar to that supported by ServletUnit.
+ * <p>
+ * The test class is named by the <code>test</code> parameter, and the report format (html, text or xml) by
+ * <code>format</code>. Setting <code>threads</code> to more than one runs the tests of the suite concurrently on
+ * that many threads. Setting <code>stream</code> to true reports each test, with its time, as soon as it completes,
+ * and summarizes the run at the end of the report rather than the start.
  *
  * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
  **/
@@ -62,6 +78,8 @@ public class JUnitServlet extends HttpServlet {
             reportCannotRunTest( response.getWriter(), "No test class specified" );
         } else {
             ServletTestRunner runner = new ServletTestRunner( response.getWriter(), formatter );
+            runner.setThreadCount( getThreadCount( request.getParameter( "threads" ) ) );
+            runner.setStreaming( "true".equalsIgnoreCase( request.getParameter( "stream" ) ) );
             runner.runTestSuite( testName );
         }
         response.getWriter().close();
@@ -79,6 +97,15 @@ public class JUnitServlet extends HttpServlet {
     }
 
 
+    private int getThreadCount( String threadCount ) {
+        try {
+            return threadCount == null ? 1 : Math.max( 1, Integer.parseInt( threadCount ) );
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+
     private InvocationContextFactory _factory;
 
 
@@ -88,8 +115,23 @@ public class JUnitServlet extends HttpServlet {
 
 
     class ServletTestRunner extends BaseTestRunner {
+
+        /** The time, in msec, to wait for tests still running to stop once the suite has been interrupted. **/
+        private final static long SHUTDOWN_WAIT_TIME = 5000;
+
         private PrintWriter _writer;
         private ResultsFormatter _formatter;
+        private int _threadCount = 1;
+        private boolean _streaming;
+
+        /** The start times of the tests in progress. **/
+        private Hashtable _startTimes = new Hashtable();
+
+        /** The problems reported for the tests in progress. **/
+        private Hashtable _problems = new Hashtable();
+
+        /** Set once the results have been reported; tests which end after that are not reported. Guarded by the writer. **/
+        private boolean _closed;
 
 
         public ServletTestRunner( PrintWriter writer, ResultsFormatter formatter ) {
@@ -99,38 +141,151 @@ public class JUnitServlet extends HttpServlet {
         }
 
 
+        /**
+         * Specifies the number of threads on which to run the tests of a suite.
+         */
+        void setThreadCount( int threadCount ) {
+            _threadCount = threadCount;
+        }
+
+
+        /**
+         * Specifies whether each test is to be reported as soon as it completes.
+         */
+        void setStreaming( boolean streaming ) {
+            _streaming = streaming;
+        }
+
+
         void runTestSuite( String testClassName ) {
             Test suite = getTest( testClassName );
 
             if (suite != null) {
                 TestResult testResult = new TestResult();
                 testResult.addListener( this );
+                if (_streaming) {
+                    _formatter.displayStreamHeader( _writer, testClassName );
+                    _writer.flush();
+                }
                 long startTime= System.currentTimeMillis();
-                suite.run( testResult );
+                if (_threadCount <= 1) {
+                    suite.run( testResult );
+                } else {
+                    runConcurrently( suite, testResult );
+                }
                 long endTime= System.currentTimeMillis();
-                _formatter.displayResults( _writer, testClassName, elapsedTimeAsString( endTime-startTime ), testResult );
+                if (_streaming) {
+                    _formatter.displayStreamFooter( _writer, testClassName, elapsedTimeAsString( endTime-startTime ), testResult );
+                } else {
+                    _formatter.displayResults( _writer, testClassName, elapsedTimeAsString( endTime-startTime ), testResult );
+                }
+            }
+        }
+
+
+        /**
+         * Runs the tests of the suite on a pool of threads. Nested suites are broken down into their tests;
+         * any other test, such as a decorated one, is run as a unit.
+         */
+        private void runConcurrently( Test suite, final TestResult testResult ) {
+            List tests = new ArrayList();
+            collectTests( suite, tests );
+            ExecutorService testThreads = Executors.newFixedThreadPool( Math.max( 1, Math.min( _threadCount, tests.size() ) ), new ThreadFactory() {
+                private int _threadNumber;
+
+                public synchronized Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "JUnitServlet test runner " + (++_threadNumber) );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+            try {
+                List results = new ArrayList();
+                for (Iterator i = tests.iterator(); i.hasNext();) {
+                    final Test test = (Test) i.next();
+                    results.add( testThreads.submit( new Runnable() {
+                        public void run() {
+                            test.run( testResult );
+                        }
+                    } ) );
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    try {
+                        ((Future) results.get( i )).get();
+                    } catch (ExecutionException e) {
+                        testResult.addError( (Test) tests.get( i ), e.getCause() );
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                testThreads.shutdownNow();
+                awaitTermination( testThreads );
+                synchronized (_writer) {
+                    _closed = true;
+                }
+            }
+        }
+
+
+        /**
+         * Waits a bounded time for the tests still running on the specified threads to stop.
+         */
+        private void awaitTermination( ExecutorService testThreads ) {
+            try {
+                testThreads.awaitTermination( SHUTDOWN_WAIT_TIME, TimeUnit.MILLISECONDS );
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+
+        private void collectTests( Test test, List tests ) {
+            if (test instanceof TestSuite) {
+                for (Enumeration e = ((TestSuite) test).tests(); e.hasMoreElements();) {
+                    collectTests( (Test) e.nextElement(), tests );
+                }
+            } else {
+                tests.add( test );
             }
         }
 
 
         public void addError( Test test, Throwable throwable ) {
+            if (!_problems.containsKey( test )) _problems.put( test, new TestProblem( "error", throwable ) );
         }
 
 
         public void addFailure( Test test, AssertionFailedError error ) {
+            if (!_problems.containsKey( test )) _problems.put( test, new TestProblem( "failure", error ) );
         }
 
 
-        public void endTest( Test test ) {
+        public void startTest( Test test ) {
+            _startTimes.put( test, new Long( System.currentTimeMillis() ) );
         }
 
 
-        protected void runFailed( String s ) {
-            reportCannotRunTest( _writer, s );
+        public void endTest( Test test ) {
+            Long startTime = (Long) _startTimes.remove( test );
+            TestProblem problem = (TestProblem) _problems.remove( test );
+            if (!_streaming) return;
+
+            long elapsedTime = startTime == null ? 0 : System.currentTimeMillis() - startTime.longValue();
+            synchronized (_writer) {
+                if (_closed) return;
+                if (problem == null) {
+                    _formatter.displayTestResult( _writer, test.toString(), elapsedTimeAsString( elapsedTime ), null, null );
+                } else {
+                    _formatter.displayTestResult( _writer, test.toString(), elapsedTimeAsString( elapsedTime ), problem._kind, problem._throwable );
+                }
+                _writer.flush();
+            }
         }
 
 
-        public void startTest( Test test ) {
+        protected void runFailed( String s ) {
+            reportCannotRunTest( _writer, s );
         }
 
 
@@ -148,6 +303,20 @@ public class JUnitServlet extends HttpServlet {
     }
 
 
+    /**
+     * A failure or error reported for a test which has not yet ended.
+     */
+    private static class TestProblem {
+        private String    _kind;
+        private Throwable _throwable;
+
+        TestProblem( String kind, Throwable throwable ) {
+            _kind = kind;
+            _throwable = throwable;
+        }
+    }
+
+
     static abstract class ResultsFormatter {
 
         private static final char LF = 10;
@@ -173,6 +342,26 @@ public class JUnitServlet extends HttpServlet {
         protected abstract void displayFooter( PrintWriter writer );
 
 
+        /**
+         * Displays the start of a report in which each test is displayed as soon as it completes.
+         */
+        abstract void displayStreamHeader( PrintWriter writer, String testClassName );
+
+
+        /**
+         * Displays the outcome of a single test.
+         * @param kind      "failure" or "error" if the test did not pass, otherwise null
+         * @param throwable the reason the test did not pass, or null if it did
+         */
+        abstract void displayTestResult( PrintWriter writer, String testName, String elapsedTimeString, String kind, Throwable throwable );
+
+
+        /**
+         * Displays the end of a report in which each test has been displayed as it completed.
+         */
+        abstract void displayStreamFooter( PrintWriter writer, String testClassName, String elapsedTimeString, TestResult testResult );
+
+
         protected String sgmlEscape( String s ) {
             if (s == null) return "NULL";
             StringBuffer result = new StringBuffer( s.length() );
@@ -239,6 +428,31 @@ public class JUnitServlet extends HttpServlet {
         protected abstract void displayProblemDetail( PrintWriter writer, String message );
 
 
+        void displayStreamFooter( PrintWriter writer, String testClassName, String elapsedTimeString, TestResult testResult ) {
+            displaySummary( writer, testClassName, getFormatted( testResult.runCount(), "test" ),
+                                    elapsedTimeString, testResult.wasSuccessful() ? "OK" : "Problems Occurred" );
+        }
+
+
+        void displayTestResult( PrintWriter writer, String testName, String elapsedTimeString, String kind, Throwable throwable ) {
+            displayTestResult( writer, testName, elapsedTimeString, kind == null ? "OK" : kind,
+                                       throwable == null ? null : getProblemDetail( throwable ) );
+        }
+
+
+        /**
+         * Displays the outcome of a single test.
+         * @param detail the message or stack trace explaining a problem, or null if the test passed
+         */
+        protected abstract void displayTestResult( PrintWriter writer, String testName, String elapsedTimeString, String resultString, String detail );
+
+
+        /**
+         * Displays the summary which ends a streamed report.
+         */
+        protected abstract void displaySummary( PrintWriter writer, String testClassName, String testCountText, String elapsedTimeString, String resultString );
+
+
         private void displayProblems( PrintWriter writer, String kind, int count, Enumeration enumeration ) {
             if (count != 0) {
                 displayProblemTitle( writer, getFormatted( count, kind ) );
@@ -246,17 +460,22 @@ public class JUnitServlet extends HttpServlet {
                 for (int i = 1; e.hasMoreElements(); i++) {
                     TestFailure failure = (TestFailure) e.nextElement();
                     displayProblemDetailHeader( writer, i, failure.failedTest().toString() );
-                    if (failure.thrownException() instanceof AssertionFailedError) {
-                        displayProblemDetail( writer, failure.thrownException().getMessage() );
-                    } else {
-                        displayProblemDetail( writer, BaseTestRunner.getFilteredTrace( failure.thrownException() ) );
-                    }
+                    displayProblemDetail( writer, getProblemDetail( failure.thrownException() ) );
                     displayProblemDetailFooter( writer );
                 }
             }
         }
 
 
+        private String getProblemDetail( Throwable throwable ) {
+            if (throwable instanceof AssertionFailedError) {
+                return throwable.getMessage();
+            } else {
+                return BaseTestRunner.getFilteredTrace( throwable );
+            }
+        }
+
+
         private String getFormatted( int count, String name ) {
             return count + " " + name + (count == 1 ? "" : "s");
         }
@@ -301,6 +520,24 @@ public class JUnitServlet extends HttpServlet {
         protected void displayProblemDetail( PrintWriter writer, String message ) {
             writer.println( message );
         }
+
+
+        void displayStreamHeader( PrintWriter writer, String testClassName ) {
+            writer.println( "Running " + testClassName );
+        }
+
+
+        protected void displayTestResult( PrintWriter writer, String testName, String elapsedTimeString, String resultString, String detail ) {
+            writer.println( testName + " (" + elapsedTimeString + "): " + resultString );
+            if (detail != null) writer.println( detail );
+        }
+
+
+        protected void displaySummary( PrintWriter writer, String testClassName, String testCountText,
+                                       String elapsedTimeString, String resultString ) {
+            writer.println();
+            writer.println( testClassName + " (" + testCountText + "): " + resultString );
+        }
     }
 
 
@@ -313,12 +550,7 @@ public class JUnitServlet extends HttpServlet {
 
         protected void displayHeader( PrintWriter writer, String testClassName, String testCountText,
                                       String elapsedTimeString, String resultString ) {
-            writer.println( "<html><head><title>Test Suite: " + testClassName + "</title>" );
-            writer.println( "<style type='text/css'>" );
-            writer.println( "<!--" );
-            writer.println( "  td.detail { font-size:smaller; vertical-align: top }" );
-            writer.println( "  -->" );
-            writer.println( "</style></head><body>" );
+            displayPageHeader( writer, testClassName );
             writer.println( "<table id='results' border='1'><tr>" );
             writer.println( "<td>" + testCountText + "</td>" );
             writer.println( "<td>Time: " + elapsedTimeString + "</td>" );
@@ -352,19 +584,56 @@ public class JUnitServlet extends HttpServlet {
             writer.println( sgmlEscape( message ) );
         }
 
+
+        void displayStreamHeader( PrintWriter writer, String testClassName ) {
+            displayPageHeader( writer, testClassName );
+            writer.println( "<table id='tests' border='1'>" );
+        }
+
+
+        protected void displayTestResult( PrintWriter writer, String testName, String elapsedTimeString, String resultString, String detail ) {
+            writer.println( "<tr><td class='detail'>" + testName + "</td>" );
+            writer.println( "<td class='detail'>" + elapsedTimeString + "</td><td class='detail'>" + resultString );
+            if (detail != null) writer.println( "<br>" + sgmlEscape( detail ) );
+            writer.println( "</td></tr>" );
+        }
+
+
+        protected void displaySummary( PrintWriter writer, String testClassName, String testCountText,
+                                       String elapsedTimeString, String resultString ) {
+            writer.println( "</table>" );
+            writer.println( "<table id='results' border='1'><tr>" );
+            writer.println( "<td>" + testCountText + "</td>" );
+            writer.println( "<td>Time: " + elapsedTimeString + "</td>" );
+            writer.println( "<td>" + resultString + "</td></tr>" );
+            displayFooter( writer );
+        }
+
+
+        private void displayPageHeader( PrintWriter writer, String testClassName ) {
+            writer.println( "<html><head><title>Test Suite: " + testClassName + "</title>" );
+            writer.println( "<style type='text/css'>" );
+            writer.println( "<!--" );
+            writer.println( "  td.detail { font-size:smaller; vertical-align: top }" );
+            writer.println( "  -->" );
+            writer.println( "</style></head><body>" );
+        }
+
     }
 
 
 
     static class XMLResultsFormatter extends ResultsFormatter {
 
+        private static final String XML_DECLARATION = "<?xml version='1.0' encoding='UTF-8' ?>\n";
+
         String getContentType() {
             return "text/xml;charset=UTF-8";
         }
 
 
         protected void displayHeader( PrintWriter writer, String testClassName, TestResult testResult, String elapsedTimeString ) {
-            writer.println( "<?xml version='1.0' encoding='UTF-8' ?>\n" +
+            writer.println( XML_DECLARATION +
                             "<testsuite name=" + asAttribute( testClassName ) +
                                       " tests=" + asAttribute( testResult.runCount() ) +
                                       " failures=" + asAttribute( testResult.failureCount() ) +
@@ -398,25 +667,60 @@ public class JUnitServlet extends HttpServlet {
             for (Enumeration e = resultsEnumeration; e.hasMoreElements();) {
                 TestFailure failure = (TestFailure) e.nextElement();
                 writer.println( "  <testcase name=" + asAttribute( failure.failedTest().toString() ) + ">" );
-                writer.print( "    <" + failureNodeName + " type=" + asAttribute( failure.thrownException().getClass().getName() ) +
-                                                      " message=" + asAttribute( failure.exceptionMessage() ) );
-                if (!displayException( failure )) {
-                    writer.println( "/>" );
-                } else {
-                    writer.println( ">" );
-                    writer.print( sgmlEscape( BaseTestRunner.getFilteredTrace( failure.thrownException() ) ) );
-                    writer.println( "    </" + failureNodeName + ">" );
-                }
+                displayProblem( writer, failureNodeName, failure.thrownException() );
                 writer.println( "  </testcase>" );
             }
         }
 
 
-        private boolean displayException( TestFailure failure ) {
+        private void displayProblem( PrintWriter writer, String failureNodeName, Throwable throwable ) {
+            writer.print( "    <" + failureNodeName + " type=" + asAttribute( throwable.getClass().getName() ) +
+                                                  " message=" + asAttribute( throwable.getMessage() ) );
+            if (!displayException( throwable )) {
+                writer.println( "/>" );
+            } else {
+                writer.println( ">" );
+                writer.print( sgmlEscape( BaseTestRunner.getFilteredTrace( throwable ) ) );
+                writer.println( "    </" + failureNodeName + ">" );
+            }
+        }
+
+
+        private boolean displayException( Throwable throwable ) {
             return true;
         }
 
 
+        void displayStreamHeader( PrintWriter writer, String testClassName ) {
+            writer.println( XML_DECLARATION + "<testsuite name=" + asAttribute( testClassName ) + ">" );
+        }
+
+
+        void displayTestResult( PrintWriter writer, String testName, String elapsedTimeString, String kind, Throwable throwable ) {
+            writer.print( "  <testcase name=" + asAttribute( testName ) + " time=" + asAttribute( elapsedTimeString ) );
+            if (kind == null) {
+                writer.println( "/>" );
+            } else {
+                writer.println( ">" );
+                displayProblem( writer, kind, throwable );
+                writer.println( "  </testcase>" );
+            }
+        }
+
+
+        /**
+         * Since the totals are not known until the end of the run, a streamed report carries them
+         * in a summary element rather than as attributes of the test suite.
+         */
+        void displayStreamFooter( PrintWriter writer, String testClassName, String elapsedTimeString, TestResult testResult ) {
+            writer.println( "  <summary tests=" + asAttribute( testResult.runCount() ) +
+                                      " failures=" + asAttribute( testResult.failureCount() ) +
+                                      " errors=" + asAttribute( testResult.errorCount() ) +
+                                      " time=" + asAttribute( elapsedTimeString ) + "/>" );
+            displayFooter( writer );
+        }
+
+
         protected String getLineBreak() {
             return "";
         }
@@ -35,10 +35,13 @@ import javax.servlet.http.HttpServletRequest;
  **/
 class RequestContext {
 
-    private Hashtable _parameters = new Hashtable();
-    private Hashtable _visibleParameters;
+    private Hashtable _parameterValues = new Hashtable();
+    private Hashtable _parameters;
+    private Map _visibleParameters;
     private HttpServletRequest _parentRequest;
     private URL _url;
+    private String _queryString;
+    private String _queryEncoding;
     private byte[] _messageBody;
     private String _messageEncoding;
 
@@ -46,7 +49,10 @@ class RequestContext {
     RequestContext( URL url ) {
         _url = url;
         String file = _url.getFile();
-        if (file.indexOf( '?' ) >= 0) loadParameters( file.substring( file.indexOf( '?' )+1 ) /* urlEncoded */ );
+        if (file.indexOf( '?' ) >= 0) {
+            _queryString = file.substring( file.indexOf( '?' )+1 ) /* urlEncoded */;
+            _queryEncoding = getMessageEncoding();
+        }
     }
 
 
@@ -68,12 +74,15 @@ class RequestContext {
 
 
     Enumeration getParameterNames() {
-        return getParameters().keys();
+        return Collections.enumeration( getParameters().keySet() );
     }
 
 
+    /**
+     * Returns an unmodifiable view of the parameters. The view is built once, so repeated calls are cheap.
+     */
     Map getParameterMap() {
-        return (Map) getParameters().clone();
+        return getParameters();
     }
 
 
@@ -88,7 +97,7 @@ class RequestContext {
 
 
     /**
-     * This method employs a state machine to parse a parameter query string.
+     * This method employs a state machine to parse a parameter query string in a single pass.
      * The transition rules are as follows:
      *    State  \          text         '='           '&'
      *    initial:         have_name      -           initial
@@ -101,81 +110,125 @@ class RequestContext {
      *    have_value  -> initial: record parameter with value
      **/
     void loadParameters( String queryString ) {
+        loadParameters( queryString, getMessageEncoding() );
+    }
+
+
+    private void loadParameters( String queryString, String encoding ) {
         if (queryString.length() == 0) return;
-        StringTokenizer st = new StringTokenizer( queryString, "&=", /* return tokens */ true );
+        boolean asciiEncoding = isAsciiCompatible( encoding );
         int state = STATE_INITIAL;
         String name  = null;
         String value = null;
 
-        while (st.hasMoreTokens()) {
-            String token = st.nextToken();
-            if (token.equals( "&" )) {
+        int length = queryString.length();
+        int start = 0;
+        while (start < length) {
+            char delimiter = queryString.charAt( start );
+            if (delimiter == '&') {
                 state = STATE_INITIAL;
                 if (name != null && value != null) addParameter( name, value );
                 name  = value = null;
-            } else if (token.equals( "=" )) {
+                start++;
+            } else if (delimiter == '=') {
                 if (state == STATE_HAVE_NAME) {
                     state = STATE_HAVE_EQUALS;
                 } else if (state == STATE_HAVE_VALUE) {
                     state = STATE_INITIAL;
                 }
-            } else if (state == STATE_INITIAL) {
-                name = HttpUnitUtils.decode( token, getMessageEncoding() );
-                value = "";
-                state = STATE_HAVE_NAME;
+                start++;
             } else {
-                value = HttpUnitUtils.decode( token, getMessageEncoding() );
-                state = STATE_HAVE_VALUE;
+                int end = start;
+                boolean encoded = false;
+                for (; end < length; end++) {
+                    char c = queryString.charAt( end );
+                    if (c == '&' || c == '=') break;
+                    if (c == '%' || c == '+' || c > 0x7e) encoded = true;
+                }
+                String token = queryString.substring( start, end );
+                if (encoded || !asciiEncoding) token = HttpUnitUtils.decode( token, encoding );
+                if (state == STATE_INITIAL) {
+                    name = token;
+                    value = "";
+                    state = STATE_HAVE_NAME;
+                } else {
+                    value = token;
+                    state = STATE_HAVE_VALUE;
+                }
+                start = end;
             }
         }
         if (name != null && value != null) addParameter( name, value );
     }
 
 
-    private void addParameter( String name, String encodedValue ) {
-        String[] values = (String[]) _parameters.get( name );
-        _visibleParameters = null;
-        if (values == null) {
-            _parameters.put( name, new String[] { encodedValue } );
-        } else {
-            _parameters.put( name, extendedArray( values, encodedValue ) );
+    /**
+     * Returns true if plain ASCII text decodes to itself in the specified character set,
+     * in which case tokens without escapes need not be decoded at all.
+     */
+    private static boolean isAsciiCompatible( String encoding ) {
+        try {
+            return ASCII_SAMPLE.equals( new String( ASCII_SAMPLE.getBytes( "US-ASCII" ), encoding ) );
+        } catch (UnsupportedEncodingException e) {
+            return false;
         }
     }
 
+    private final static String ASCII_SAMPLE = "azAZ09";
+
 
-    private static String[] extendedArray( String[] baseArray, String newValue ) {
-        String[] result = new String[ baseArray.length+1 ];
-        System.arraycopy( baseArray, 0, result, 0, baseArray.length );
-        result[ baseArray.length ] = newValue;
-        return result;
+    private void addParameter( String name, String value ) {
+        List values = (List) _parameterValues.get( name );
+        if (values == null) {
+            values = new ArrayList( 1 );
+            _parameterValues.put( name, values );
+        }
+        values.add( value );
+        _parameters = null;
+        _visibleParameters = null;
     }
 
 
-    private Hashtable getParameters() {
+    /**
+     * Parses any pending query string and message body, then returns the parameters visible to this request.
+     */
+    private Map getParameters() {
+        if (_queryString != null) {
+            String queryString = _queryString;
+            _queryString = null;
+            loadParameters( queryString, _queryEncoding );
+        }
         if (_messageBody != null) {
-            loadParameters( getMessageBodyAsString() );
+            String messageBody = getMessageBodyAsString();
             _messageBody = null;
+            loadParameters( messageBody );
         }
         if (_visibleParameters == null) {
             if (_parentRequest == null) {
-                _visibleParameters = _parameters;
+                _visibleParameters = Collections.unmodifiableMap( getOwnParameters() );
             } else {
-                _visibleParameters = new Hashtable();
-                final Map parameterMap = _parentRequest.getParameterMap();
-                for (Iterator i = parameterMap.keySet().iterator(); i.hasNext();) {
-                    Object key = i.next();
-                    _visibleParameters.put( key, parameterMap.get( key ) );
-                }
-                for (Enumeration e = _parameters.keys(); e.hasMoreElements();) {
-                    Object key = e.nextElement();
-                    _visibleParameters.put( key, _parameters.get( key ) );
-                }
+                Hashtable visibleParameters = new Hashtable( _parentRequest.getParameterMap() );
+                visibleParameters.putAll( getOwnParameters() );
+                _visibleParameters = Collections.unmodifiableMap( visibleParameters );
             }
         }
         return _visibleParameters;
     }
 
 
+    private Hashtable getOwnParameters() {
+        if (_parameters == null) {
+            _parameters = new Hashtable();
+            for (Iterator i = _parameterValues.entrySet().iterator(); i.hasNext();) {
+                Map.Entry entry = (Map.Entry) i.next();
+                List values = (List) entry.getValue();
+                _parameters.put( entry.getKey(), values.toArray( new String[ values.size() ] ) );
+            }
+        }
+        return _parameters;
+    }
+
+
     private String getMessageBodyAsString() {
         try {
             return new String( _messageBody, "iso-8859-1" );
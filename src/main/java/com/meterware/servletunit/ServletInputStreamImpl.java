@@ -21,6 +21,7 @@ package com.meterware.servletunit;
  *******************************************************************************************************************/
 import java.io.IOException;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 
 import javax.servlet.ServletInputStream;
 
@@ -32,11 +33,19 @@ import javax.servlet.ServletInputStream;
  **/
 class ServletInputStreamImpl extends ServletInputStream {
 
-    private ByteArrayInputStream _baseStream;
+    private InputStream _baseStream;
 
 
     public ServletInputStreamImpl( byte[] messageBody ) {
-        _baseStream = new ByteArrayInputStream( messageBody );
+        this( new ByteArrayInputStream( messageBody ) );
+    }
+
+
+    /**
+     * Creates a servlet input stream which reads the message body from the specified stream.
+     **/
+    public ServletInputStreamImpl( InputStream messageBody ) {
+        _baseStream = messageBody;
     }
 
 
@@ -44,4 +53,24 @@ class ServletInputStreamImpl extends ServletInputStream {
         return _baseStream.read();
     }
 
+
+    public int read( byte[] bytes, int offset, int length ) throws IOException {
+        return _baseStream.read( bytes, offset, length );
+    }
+
+
+    public long skip( long count ) throws IOException {
+        return _baseStream.skip( count );
+    }
+
+
+    public int available() throws IOException {
+        return _baseStream.available();
+    }
+
+
+    public void close() throws IOException {
+        _baseStream.close();
+    }
+
 }
@@ -25,6 +25,8 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.meterware.httpunit.HttpUnitUtils;
 import com.meterware.httpunit.WebRequest;
@@ -42,6 +44,17 @@ import javax.xml.parsers.DocumentBuilder;
 
 /**
  * This class acts as a test environment for servlets.
+ * <p>
+ * Once its servlets have been registered, a single runner may be driven from many threads at once, which allows
+ * a servlet to be load-tested in-process. Each thread should send its requests through its own client,
+ * obtained from {@link #newClient}; the convenience methods {@link #getResponse(WebRequest)} and
+ * {@link #getSession} share a single client and are meant for use from one thread. Each servlet and filter
+ * is initialized once, on first use, and is thereafter shared by all requests without locking, just as in a
+ * real container, so it must itself be safe for concurrent use. Servlets must not be registered while
+ * requests are being processed.
+ * <p>
+ * A web.xml file is parsed only once for as long as its length and modification time are unchanged, so that many
+ * runners may be created cheaply from the same file. Load-on-startup servlets which share a load order are initialized concurrently.
  *
  * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
  **/
@@ -89,7 +102,7 @@ public class ServletRunner {
      * @since 1.6
      */
     public ServletRunner( File webXml ) throws IOException, SAXException {
-        _application = new WebApplication( HttpUnitUtils.newParser().parse( webXml ) );
+        _application = new WebApplication( getWebXmlDescriptor( webXml ), null, "" );
         completeInitialization( null );
     }
 
@@ -103,7 +116,7 @@ public class ServletRunner {
      * @since 1.6
      */
     public ServletRunner( File webXml, String contextPath ) throws IOException, SAXException {
-        _application = new WebApplication( HttpUnitUtils.newParser().parse( webXml ), webXml.getParentFile().getParentFile(), contextPath );
+        _application = new WebApplication( getWebXmlDescriptor( webXml ), webXml.getParentFile().getParentFile(), contextPath );
         completeInitialization( contextPath );
     }
     
@@ -200,6 +213,23 @@ public class ServletRunner {
     }
 
 
+    /**
+     * Returns the maximum number of sessions held at once. Zero means no limit.
+     */
+    public int getMaxSessions() {
+        return _context.getMaxSessions();
+    }
+
+
+    /**
+     * Specifies the maximum number of sessions held at once. When a new session would exceed the limit,
+     * the least recently used session is invalidated. Zero, the default, means no limit.
+     */
+    public void setMaxSessions( int maxSessions ) {
+        _context.setMaxSessions( maxSessions );
+    }
+
+
     /**
      * Returns the value of the named context parameter found in the application definition.
      * @param name - the name of the parameter to get
@@ -272,7 +302,17 @@ public class ServletRunner {
 
 //---------------------------- private members ------------------------------------
 
-    private static JSPServletDescriptor _jspServletDescriptor = JASPER_DESCRIPTOR;
+    /** The most web.xml descriptors held at once. **/
+    private final static int MAX_CACHED_DESCRIPTORS = 32;
+
+    /** The definitions read from web.xml files, keyed by canonical path, least recently used first. **/
+    private final static Map _webXmlDescriptors = new LinkedHashMap( 16, 0.75f, true ) {
+        protected boolean removeEldestEntry( Map.Entry eldest ) {
+            return size() > MAX_CACHED_DESCRIPTORS;
+        }
+    };
+
+    private final static JSPServletDescriptor _jspServletDescriptor = JASPER_DESCRIPTOR;
 
     private WebApplication     _application;
 
@@ -280,21 +320,60 @@ public class ServletRunner {
 
     private ServletUnitContext _context;
 
-    private InvocationContextFactory _factory = new InvocationContextFactory() {
+    private InvocationContextFactory _factory = new StreamingInvocationContextFactory() {
         public InvocationContext newInvocation( ServletUnitClient client, FrameSelector targetFrame, WebRequest request, Dictionary clientHeaders, byte[] messageBody ) throws IOException, MalformedURLException {
             return new InvocationContextImpl( client, ServletRunner.this, targetFrame, request, clientHeaders, messageBody );
         }
 
+        public InvocationContext newInvocation( ServletUnitClient client, FrameSelector targetFrame, WebRequest request, Dictionary clientHeaders,
+                                                InputStream messageBody, long contentLength ) throws IOException, MalformedURLException {
+            return new InvocationContextImpl( client, ServletRunner.this, targetFrame, request, clientHeaders, messageBody, contentLength );
+        }
+
         public HttpSession getSession( String sessionId, boolean create ) {
             return _context.getValidSession( sessionId, null, create );
         }
     };
 
 
-    private ServletUnitClient getClient() {
+    private synchronized ServletUnitClient getClient() {
         if (_client == null) _client = newClient();
         return _client;
     }
 
 
+    /**
+     * Returns the definitions read from the specified web.xml file. A descriptor is reused without reading the file
+     * as long as the file has the same length and modification time as when it was parsed.
+     */
+    static WebXmlDescriptor getWebXmlDescriptor( File webXml ) throws IOException, SAXException {
+        String key = webXml.getCanonicalPath();
+        long length = webXml.length();
+        long lastModified = webXml.lastModified();
+        synchronized (_webXmlDescriptors) {
+            CachedDescriptor cached = (CachedDescriptor) _webXmlDescriptors.get( key );
+            if (cached != null && cached._length == length && cached._lastModified == lastModified) return cached._descriptor;
+        }
+
+        WebXmlDescriptor descriptor = new WebXmlDescriptor( HttpUnitUtils.newParser().parse( webXml ) );
+        synchronized (_webXmlDescriptors) {
+            _webXmlDescriptors.put( key, new CachedDescriptor( length, lastModified, descriptor ) );
+        }
+        return descriptor;
+    }
+
+
+    private static class CachedDescriptor {
+        private final long             _length;
+        private final long             _lastModified;
+        private final WebXmlDescriptor _descriptor;
+
+        CachedDescriptor( long length, long lastModified, WebXmlDescriptor descriptor ) {
+            _length       = length;
+            _lastModified = lastModified;
+            _descriptor   = descriptor;
+        }
+    }
+
+
 }
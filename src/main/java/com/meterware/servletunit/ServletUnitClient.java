@@ -90,10 +90,38 @@ public class ServletUnitClient extends WebClient {
      * @throws MalformedURLException
      */
     InvocationContext newInvocation( WebRequest request, FrameSelector frame ) throws IOException, MalformedURLException {
-        ByteArrayOutputStream baos = getMessageBody( request );
+        return newInvocation( request, frame, newRequestBody( request ) );
+    }
+
+
+    /**
+     * Returns a buffer holding the message body of the specified request. The caller should dispose of the buffer
+     * once the invocation which reads it has completed.
+     */
+    private BodyBuffer newRequestBody( WebRequest request ) throws IOException {
+        BodyBuffer body = new BodyBuffer();
+        writeMessageBody( request, body );
+        body.close();
+        return body;
+    }
+
+
+    /**
+     * Creates an invocation which reads its message body from the specified buffer. A factory which needs the body
+     * as an array receives a copy, and the buffer is disposed at once; a streaming factory reads the buffer itself.
+     */
+    private InvocationContext newInvocation( WebRequest request, FrameSelector frame, BodyBuffer body ) throws IOException, MalformedURLException {
         if (_invocationContextFactory==null)
         	throw new RuntimeException("newInvocation called with null _invocationContextFactory");
-        return _invocationContextFactory.newInvocation( this, frame, request, getHeaderFields( request.getURL() ), baos.toByteArray() );
+        if (!(_invocationContextFactory instanceof StreamingInvocationContextFactory)) {
+            try {
+                return _invocationContextFactory.newInvocation( this, frame, request, getHeaderFields( request.getURL() ), body.toByteArray() );
+            } finally {
+                body.dispose();
+            }
+        }
+        return ((StreamingInvocationContextFactory) _invocationContextFactory).newInvocation( this, frame, request, getHeaderFields( request.getURL() ),
+                                                                                              body.newInputStream(), body.size() );
     }
 
 
@@ -135,12 +163,15 @@ public class ServletUnitClient extends WebClient {
      **/
     protected WebResponse newResponse( WebRequest request, FrameSelector targetFrame ) throws MalformedURLException,IOException {
 
+        BodyBuffer body = newRequestBody( request );
         try {
-            InvocationContext invocation = newInvocation( request, targetFrame );
+            InvocationContext invocation = newInvocation( request, targetFrame, body );
             invocation.service();
             return invocation.getServletResponse();
         } catch (ServletException e) {
             throw new HttpInternalErrorException( request.getURL(), e );
+        } finally {
+            body.dispose();
         }
 
     }
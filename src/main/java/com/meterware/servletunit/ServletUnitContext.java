@@ -21,10 +21,12 @@ package com.meterware.servletunit;
 *******************************************************************************************************************/
 import javax.servlet.ServletContext;
 import java.util.*;
-import java.util.Hashtable;
 
 class ServletUnitContext {
 
+    /** The minimum time, in msec, between sweeps for expired sessions. **/
+    final static long SWEEP_INTERVAL = 1000;
+
     private SessionListenerDispatcher _listenerDispatcher;
     private ServletContext _servletContext;
 
@@ -36,8 +38,15 @@ class ServletUnitContext {
     }
 
 
+    /**
+     * Returns the IDs of the sessions currently held by this context. Any which have expired are discarded first
+     * if a sweep is due.
+     */
 	Set getSessionIDs() {
-		return _sessions.keySet();
+		sweepIfDue();
+		synchronized (this) {
+			return new HashSet( _sessions.keySet() );
+		}
 	}
 
 
@@ -53,6 +62,10 @@ class ServletUnitContext {
             session = getSession( sessionId );
         }
 
+        if (session != null && session.isExpired( System.currentTimeMillis() )) {
+            discardSession( session );
+        }
+
         if (session != null && session.isInvalid()) {
             session = null;
         }
@@ -65,23 +78,84 @@ class ServletUnitContext {
 
 
     /**
-     * Returns the session with the specified ID, if any.
+     * Returns the session with the specified ID, if any. A session which has expired is invalidated and discarded,
+     * as are any other expired sessions if a sweep is due.
      **/
     ServletUnitHttpSession getSession( String id ) {
-        return (ServletUnitHttpSession) _sessions.get( id );
+        sweepIfDue();
+        ServletUnitHttpSession session;
+        synchronized (this) {
+            session = (ServletUnitHttpSession) _sessions.get( id );
+        }
+        if (session != null && (session.isInvalid() || session.isExpired( System.currentTimeMillis() ))) {
+            discardSession( session );
+            return null;
+        }
+        return session;
     }
 
 
     /**
-     * Creates a new session with a unique ID.
+     * Creates a new session with a unique ID. If the maximum number of sessions has been reached,
+     * the least recently used session is invalidated to make room for it.
      **/
     ServletUnitHttpSession newSession() {
+        sweepIfDue();
         ServletUnitHttpSession result = new ServletUnitHttpSession( _servletContext, _listenerDispatcher );
-        _sessions.put( result.getId(), result );
+        ServletUnitHttpSession evicted = null;
+        synchronized (this) {
+            _sessions.put( result.getId(), result );
+            if (_maxSessions > 0 && _sessions.size() > _maxSessions) {
+                Iterator oldest = _sessions.values().iterator();
+                evicted = (ServletUnitHttpSession) oldest.next();
+                oldest.remove();
+            }
+        }
+        if (evicted != null) evicted.invalidateIfValid();
         _listenerDispatcher.sendSessionCreated( result );
         return result;
     }
 
+
+    /**
+     * Invalidates and discards all sessions which have expired, as well as any which have already been invalidated.
+     * This is done automatically from time to time as sessions are created, looked up, or listed.
+     */
+    void expireSessions() {
+        long now = System.currentTimeMillis();
+        List expired = new ArrayList();
+        synchronized (this) {
+            _lastSweepTime = now;
+            for (Iterator i = _sessions.values().iterator(); i.hasNext();) {
+                ServletUnitHttpSession session = (ServletUnitHttpSession) i.next();
+                if (session.isInvalid() || session.isExpired( now )) {
+                    expired.add( session );
+                    i.remove();
+                }
+            }
+        }
+        for (Iterator i = expired.iterator(); i.hasNext();) {
+            ((ServletUnitHttpSession) i.next()).invalidateIfValid();
+        }
+    }
+
+
+    /**
+     * Returns the maximum number of sessions held at once. Zero means no limit.
+     */
+    synchronized int getMaxSessions() {
+        return _maxSessions;
+    }
+
+
+    /**
+     * Specifies the maximum number of sessions held at once. Zero means no limit.
+     */
+    synchronized void setMaxSessions( int maxSessions ) {
+        _maxSessions = maxSessions;
+    }
+
+
     /**
      * Returns the contextPath
      */
@@ -93,9 +167,29 @@ class ServletUnitContext {
 //------------------------------- private members ---------------------------
 
 
-    private Hashtable _sessions = new Hashtable();
+    /** The sessions, keyed by ID, in order from least to most recently used. **/
+    private Map _sessions = new LinkedHashMap( 16, 0.75f, true );
+
+    private int _maxSessions;
+
+    private long _lastSweepTime = System.currentTimeMillis();
 
     private String _contextPath = null;
 
 
+    private void sweepIfDue() {
+        synchronized (this) {
+            if (System.currentTimeMillis() - _lastSweepTime < SWEEP_INTERVAL) return;
+        }
+        expireSessions();
+    }
+
+
+    private void discardSession( ServletUnitHttpSession session ) {
+        synchronized (this) {
+            if (_sessions.get( session.getIdentifier() ) == session) _sessions.remove( session.getIdentifier() );
+        }
+        session.invalidateIfValid();
+    }
+
 }
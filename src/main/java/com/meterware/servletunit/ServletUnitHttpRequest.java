@@ -25,7 +25,10 @@ import com.meterware.httpunit.Base64;
 import com.meterware.httpunit.HttpUnitUtils;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
@@ -64,6 +67,26 @@ class ServletUnitHttpRequest implements HttpServletRequest {
      * Constructs a ServletUnitHttpRequest from a WebRequest object.
      **/
     ServletUnitHttpRequest( ServletMetaData servletRequest, WebRequest request, ServletUnitContext context, Dictionary clientHeaders, byte[] messageBody ) throws MalformedURLException {
+        this( servletRequest, request, context, clientHeaders, messageBody, new ByteArrayInputStream( messageBody ), messageBody.length );
+    }
+
+
+    /**
+     * Constructs a ServletUnitHttpRequest from a WebRequest object, reading its body from the specified stream.
+     * The body is only read into memory if it must be parsed for parameters.
+     **/
+    ServletUnitHttpRequest( ServletMetaData servletRequest, WebRequest request, ServletUnitContext context, Dictionary clientHeaders,
+                            InputStream messageBody, long contentLength ) throws IOException {
+        this( servletRequest, request, context, clientHeaders, null, messageBody, contentLength );
+        if (isParameterBody()) {
+            readMessageBody();
+            _requestContext.setMessageBody( _messageBody );
+        }
+    }
+
+
+    private ServletUnitHttpRequest( ServletMetaData servletRequest, WebRequest request, ServletUnitContext context, Dictionary clientHeaders,
+                                    byte[] messageBody, InputStream messageStream, long contentLength ) throws MalformedURLException {
         if (context == null) throw new IllegalArgumentException( "Context must not be null" );
 
         _servletRequest = servletRequest;
@@ -74,6 +97,7 @@ class ServletUnitHttpRequest implements HttpServletRequest {
         _headers.addEntries( request.getHeaders() );
         setCookiesFromHeader( _headers );
         _messageBody = messageBody;
+        _messageStream = messageStream;
         _protocol=request.getURL().getProtocol().toLowerCase();
         _secure = _protocol.endsWith("s" );
         _serverName = request.getURL().getHost();
@@ -90,19 +114,26 @@ class ServletUnitHttpRequest implements HttpServletRequest {
             _charset     = res[1];
             _requestContext.setMessageEncoding( _charset );
         }
-        if (_headers.get( "Content-Length") == null) _headers.put( "Content-Length", Integer.toString( messageBody.length ) );
+        if (_headers.get( "Content-Length") == null) _headers.put( "Content-Length", Long.toString( contentLength ) );
 
-        boolean setBody=
-        // pre [ 1509117 ] getContentType()
-        // _messageBody != null && (_contentType == null || _contentType.indexOf( "x-www-form-urlencoded" ) >= 0 );
-        // patch version:
-        	_messageBody != null && (contentTypeHeader == null ||	contentTypeHeader.indexOf( "x-www-form-urlencoded" ) >= 0 );
-        if (setBody) {
+        if (_messageBody != null && isParameterBody()) {
             _requestContext.setMessageBody( _messageBody );
         }
     }
 
 
+    /**
+     * Returns true if the message body holds parameters which must be parsed.
+     */
+    private boolean isParameterBody() {
+        String contentTypeHeader = (String) _headers.get( "Content-Type" );
+        // pre [ 1509117 ] getContentType()
+        // return _contentType == null || _contentType.indexOf( "x-www-form-urlencoded" ) >= 0;
+        // patch version:
+        return contentTypeHeader == null || contentTypeHeader.indexOf( "x-www-form-urlencoded" ) >= 0;
+    }
+
+
 //----------------------------------------- HttpServletRequest methods --------------------------
 
 
@@ -370,10 +401,23 @@ class ServletUnitHttpRequest implements HttpServletRequest {
      */
     private void initializeInputStream() {
    	  if (_inputStream == null) {
-         _inputStream = new ServletInputStreamImpl( _messageBody );
+         _inputStream = new ServletInputStreamImpl( _messageStream );
       }
     }
 
+
+    /**
+     * Reads a streamed message body into memory, so that its parameters may be parsed.
+     */
+    private void readMessageBody() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[ 8 * 1024 ];
+        for (int count; (count = _messageStream.read( buffer )) != -1;) body.write( buffer, 0, count );
+        _messageStream.close();
+        _messageBody = body.toByteArray();
+        _messageStream = new ByteArrayInputStream( _messageBody );
+    }
+
     /**
      * Returns the name of the character encoding style used in this
      * request. This method returns <code>null</code> if the request
@@ -826,6 +870,7 @@ class ServletUnitHttpRequest implements HttpServletRequest {
     private Vector                     _cookies    = new Vector();
     private String                     _sessionID;
     private byte[]                     _messageBody;
+    private InputStream                _messageStream;
 
     private String                     _userName;
     private String[]                   _roles;
@@ -21,8 +21,10 @@ package com.meterware.servletunit;
 *******************************************************************************************************************/
 import com.meterware.httpunit.HttpUnitUtils;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
@@ -39,6 +41,7 @@ class ServletUnitHttpResponse implements HttpServletResponse {
 
     // rfc1123-date is "Sun, 06 Nov 1994 08:49:37 GMT"
     private static final String RFC1123_DATE_SPEC = "EEE, dd MMM yyyy HH:mm:ss z";
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
     private boolean _committed;
     private Locale _locale = Locale.getDefault();
 
@@ -265,8 +268,8 @@ class ServletUnitHttpResponse implements HttpServletResponse {
     public ServletOutputStream getOutputStream() throws IOException {
         if (_writer != null) throw new IllegalStateException( "Tried to create output stream; writer already exists" );
         if (_servletStream == null) {
-            _outputStream = new ByteArrayOutputStream();
-            _servletStream = new ServletUnitOutputStream( _outputStream );
+            _outputStream = new ResponseBuffer();
+            _servletStream = new ServletUnitOutputStream( this, _outputStream );
         }
         return _servletStream;
     }
@@ -300,8 +303,8 @@ class ServletUnitHttpResponse implements HttpServletResponse {
     public PrintWriter getWriter() throws UnsupportedEncodingException {
         if (_servletStream != null) throw new IllegalStateException( "Tried to create writer; output stream already exists" );
         if (_writer == null) {
-            _outputStream = new ByteArrayOutputStream();
-            _writer = new PrintWriter( new OutputStreamWriter( _outputStream, getCharacterEncoding() ) );
+            _outputStream = new ResponseBuffer();
+            _writer = new ResponseWriter( new OutputStreamWriter( _outputStream, getCharacterEncoding() ) );
         }
         return _writer;
     }
@@ -355,10 +358,12 @@ class ServletUnitHttpResponse implements HttpServletResponse {
     /**
      * Sets the preferred buffer size for the body of the response. The servlet container
      * will use a buffer at least as large as the size requested. The actual buffer size
-     * used can be found using getBufferSize.
+     * used can be found using getBufferSize. Once more than this many bytes have been written,
+     * the response is committed.
      **/
     public void setBufferSize( int size ) {
-        if (getContents().length != 0) throw new IllegalStateException( "May not set buffer size after data is written" );
+        if (getContentsLength() != 0) throw new IllegalStateException( "May not set buffer size after data is written" );
+        _bufferSize = size;
     }
 
 
@@ -366,7 +371,7 @@ class ServletUnitHttpResponse implements HttpServletResponse {
      * Returns the actual buffer size used for the response. If no buffering is used, this method returns 0.
      **/
     public int getBufferSize() {
-        return 0;
+        return _bufferSize;
     }
 
 
@@ -439,6 +444,7 @@ class ServletUnitHttpResponse implements HttpServletResponse {
      */
     public void resetBuffer() {
         if (_committed) throw new IllegalStateException( "May not resetBuffer after response is committed" );
+        disposeContents();
         _outputStream = null;
         _servletStream = null;
         _writer = null;
@@ -450,16 +456,51 @@ class ServletUnitHttpResponse implements HttpServletResponse {
     /**
      * Returns the contents of this response.
      **/
-    byte[] getContents() {
+    byte[] getContents() throws IOException {
         if (_outputStream == null) {
             return new byte[0];
         } else {
-            if (_writer != null) _writer.flush();
+            flushWriter();
             return _outputStream.toByteArray();
         }
     }
 
 
+    /**
+     * Returns a stream over the contents of this response. The stream shares the response buffer rather than copying it;
+     * a body too large to hold in memory is read back from its temporary file.
+     **/
+    InputStream getContentStream() throws IOException {
+        if (_outputStream == null) {
+            return new ByteArrayInputStream( new byte[0] );
+        } else {
+            flushWriter();
+            return _outputStream.newInputStream();
+        }
+    }
+
+
+    /**
+     * Discards the contents of this response, deleting any temporary file which holds them.
+     **/
+    void disposeContents() {
+        if (_outputStream != null) _outputStream.dispose();
+    }
+
+
+    /**
+     * Returns the number of bytes written to this response.
+     **/
+    long getContentsLength() {
+        if (_outputStream == null) {
+            return 0;
+        } else {
+            flushWriter();
+            return _outputStream.size();
+        }
+    }
+
+
     /**
      * Returns the status of this response.
      **/
@@ -555,7 +596,9 @@ class ServletUnitHttpResponse implements HttpServletResponse {
 
     private ServletOutputStream _servletStream;
 
-    private ByteArrayOutputStream _outputStream;
+    private ResponseBuffer _outputStream;
+
+    private int _bufferSize = DEFAULT_BUFFER_SIZE;
 
     private int _status = SC_OK;
 
@@ -568,6 +611,66 @@ class ServletUnitHttpResponse implements HttpServletResponse {
     private Vector  _cookies = new Vector();
 
 
+    /**
+     * Moves any text written to the response into its buffer, without committing the response.
+     */
+    private void flushWriter() {
+        if (_writer instanceof ResponseWriter) ((ResponseWriter) _writer).flushContents();
+    }
+
+
+    /**
+     * The buffer which holds the body of the response. Writing more than the buffer size to it commits the response,
+     * just as a container would when it sends the filled buffer to the client. Large bodies spill to a temporary file.
+     */
+    private class ResponseBuffer extends BodyBuffer {
+
+        public synchronized void write( int aByte ) throws IOException {
+            super.write( aByte );
+            checkBufferSize();
+        }
+
+
+        public synchronized void write( byte[] bytes, int offset, int length ) throws IOException {
+            super.write( bytes, offset, length );
+            checkBufferSize();
+        }
+
+
+        private void checkBufferSize() {
+            if (size() > _bufferSize) _committed = true;
+        }
+    }
+
+
+    /**
+     * The writer returned to the servlet. Flushing or closing it commits the response.
+     */
+    private class ResponseWriter extends PrintWriter {
+
+        ResponseWriter( OutputStreamWriter writer ) {
+            super( writer );
+        }
+
+
+        public void flush() {
+            super.flush();
+            _committed = true;
+        }
+
+
+        public void close() {
+            super.close();
+            _committed = true;
+        }
+
+
+        void flushContents() {
+            super.flush();
+        }
+    }
+
+
     private void completeHeaders() {
         if (_headersComplete) return;
         addCookieHeader();
@@ -618,7 +721,8 @@ class ServletUnitHttpResponse implements HttpServletResponse {
 
 class ServletUnitOutputStream extends ServletOutputStream {
 
-    ServletUnitOutputStream( ByteArrayOutputStream stream ) {
+    ServletUnitOutputStream( ServletUnitHttpResponse response, OutputStream stream ) {
+        _response = response;
         _stream = stream;
     }
 
@@ -627,5 +731,21 @@ class ServletUnitOutputStream extends ServletOutputStream {
         _stream.write( aByte );
     }
 
-    private ByteArrayOutputStream _stream;
+
+    public void write( byte[] bytes, int offset, int length ) throws IOException {
+        _stream.write( bytes, offset, length );
+    }
+
+
+    /**
+     * Flushing the stream commits the response.
+     */
+    public void flush() throws IOException {
+        _response.flushBuffer();
+    }
+
+
+    private ServletUnitHttpResponse _response;
+
+    private OutputStream _stream;
 }
@@ -22,6 +22,7 @@ package com.meterware.servletunit;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.net.URL;
 
 import javax.servlet.http.HttpSession;
@@ -113,7 +114,7 @@ class ServletUnitHttpSession implements HttpSession {
     /**
      * Invalidates this session and unbinds any objects bound to it.
      **/
-    public void invalidate() {
+    public synchronized void invalidate() {
         _listenerDispatcher.sendSessionDestroyed( this );
         _invalid = true;
         _values.clear();
@@ -276,21 +277,46 @@ class ServletUnitHttpSession implements HttpSession {
     }
 
 
+    /**
+     * Returns true if this session has not been accessed for longer than its maximum inactive interval.
+     * A session whose interval is zero or negative never expires.
+     */
+    boolean isExpired( long now ) {
+        return !_invalid && _maxInactiveInterval > 0 && now - _lastAccessedTime > _maxInactiveInterval * 1000L;
+    }
+
+
+    /**
+     * Invalidates this session unless that has already been done, so that listeners are notified only once.
+     */
+    synchronized void invalidateIfValid() {
+        if (!_invalid) invalidate();
+    }
+
+
+    /**
+     * Returns the ID of this session, even if it has been invalidated.
+     */
+    String getIdentifier() {
+        return _id;
+    }
+
+
 //------------------------------------- private members ---------------------------------------
 
-    private static int _NextID = 1;
+    private static AtomicInteger _NextID = new AtomicInteger( 1 );
 
     private final long _creationTime = new Date().getTime();
 
-    private final String _id = Integer.toString( _NextID++ );
+    private final String _id = Integer.toString( _NextID.getAndIncrement() );
 
 
 
-    private int       _maxInactiveInterval;
+    private volatile int     _maxInactiveInterval;
 
-    private long      _lastAccessedTime = new Date().getTime();
+    private volatile long    _lastAccessedTime = new Date().getTime();
 
-    private boolean   _invalid;
+    private volatile boolean _invalid;
 
     private Hashtable _values = new Hashtable();
 
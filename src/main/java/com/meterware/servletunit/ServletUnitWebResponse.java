@@ -22,7 +22,7 @@ package com.meterware.servletunit;
 import com.meterware.httpunit.WebResponse;
 import com.meterware.httpunit.FrameSelector;
 
-import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.net.HttpURLConnection;
@@ -46,8 +46,10 @@ class ServletUnitWebResponse extends WebResponse {
         _response = (ServletUnitHttpResponse) response;
         /** make sure that any IO exception for HTML received page happens here, not later. **/
         if (getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST || !throwExceptionOnError) {
-            defineRawInputStream( new ByteArrayInputStream( _response.getContents() ) );
+            defineRawInputStream( new ContentStream( _response ) );
             if (getContentType().startsWith( "text" )) loadResponseText();
+        } else {
+            _response.disposeContents();
         }
     }
 
@@ -107,5 +109,29 @@ class ServletUnitWebResponse extends WebResponse {
 
     private ServletUnitHttpResponse _response;
 
+
+    /**
+     * A stream over the contents of a servlet response which discards them once it is closed, as it is when the
+     * response text is loaded. A body which is read as a stream is kept until the caller closes that stream.
+     */
+    private static class ContentStream extends FilterInputStream {
+
+        private final ServletUnitHttpResponse _response;
+
+        ContentStream( ServletUnitHttpResponse response ) throws IOException {
+            super( response.getContentStream() );
+            _response = response;
+        }
+
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                _response.disposeContents();
+            }
+        }
+    }
+
 }
 
@@ -28,6 +28,11 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.servlet.*;
 import javax.servlet.http.*;
@@ -67,6 +72,36 @@ class WebApplication implements SessionListenerDispatcher {
     /** A mapping of resource names to filter configurations. **/
     private FilterUrlMap _filterUrlMapping = new FilterUrlMap();
 
+    /** The maximum number of servlet paths for which a resolved mapping or filter chain is remembered. **/
+    final static int MAX_CACHED_PATHS = 1000;
+
+    /**
+     * Returns a map which remembers a result for each of the most recently used servlet paths, discarding
+     * the least recently used once it holds {@link #MAX_CACHED_PATHS} of them. It may be used from many threads.
+     */
+    static Map newPathCache() {
+        return Collections.synchronizedMap( new LinkedHashMap( 16, 0.75f, true ) {
+            protected boolean removeEldestEntry( Map.Entry eldest ) {
+                return size() > MAX_CACHED_PATHS;
+            }
+        } );
+    }
+
+
+    /** Recorded for a servlet path which matches no registered mapping. **/
+    private final static Object NO_MAPPING = new Object();
+
+    /** The threads which initialize load-on-startup servlets that share a load order. Idle threads expire. **/
+    private final static ExecutorService _servletLoaders = Executors.newCachedThreadPool( new ThreadFactory() {
+        private int _threadNumber;
+
+        public synchronized Thread newThread( Runnable runnable ) {
+            Thread thread = new Thread( runnable, "ServletUnit servlet loader " + (++_threadNumber) );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
     /** A mapping of servlet names to filter configurations. **/
     private Hashtable _filterMapping = new Hashtable();
 
@@ -129,27 +164,33 @@ class WebApplication implements SessionListenerDispatcher {
      * Constructs an application spec from an XML document.
      */
     WebApplication( Document document, File file, String contextPath ) throws MalformedURLException, SAXException {
+        this( new WebXmlDescriptor( document ), file, contextPath );
+    }
+
+
+    /**
+     * Constructs an application spec from the definitions read from a web.xml document. The descriptor is only read,
+     * and may be shared by several applications.
+     */
+    WebApplication( WebXmlDescriptor descriptor, File file, String contextPath ) throws MalformedURLException {
         if (contextPath != null && contextPath.length() > 0 && !contextPath.startsWith( "/" )) throw new IllegalArgumentException( "Context path " + contextPath + " must start with '/'" );
         _contextDir = file;
         _contextPath = contextPath == null ? "" : contextPath;
-        NodeList nl = document.getElementsByTagName( "display-name" );
-        if (nl.getLength() > 0) _displayName = XMLUtils.getTextValue( nl.item(0) ).trim();
-
-        registerServlets( document );
-        registerFilters( document );
-        extractSecurityConstraints( document );
-        extractContextParameters( document );
-        extractLoginConfiguration( document );
-        extractListeners( document );
+        _displayName = descriptor.getDisplayName();
+        registerServlets( descriptor );
+        registerFilters( descriptor );
+        _securityConstraints.addAll( descriptor.getSecurityConstraints() );
+        _contextParameters.putAll( descriptor.getContextParameters() );
+        extractLoginConfiguration( descriptor );
+        extractListeners( descriptor );
         notifyContextInitialized();
         _servletMapping.autoLoadServlets();
     }
 
 
-     private void extractListeners( Document document ) throws SAXException {
-         NodeList nl = document.getElementsByTagName( "listener" );
-         for (int i = 0; i < nl.getLength(); i++) {
-             String listenerName = XMLUtils.getChildNodeValue((Element) nl.item(i), "listener-class").trim();
+     private void extractListeners( WebXmlDescriptor descriptor ) {
+         for (Iterator i = descriptor.getListenerClassNames().iterator(); i.hasNext();) {
+             String listenerName = (String) i.next();
              try {
                  Object listener = Class.forName( listenerName ).newInstance();
 
@@ -219,14 +260,6 @@ class WebApplication implements SessionListenerDispatcher {
     }
 
 
-    private void extractSecurityConstraints( Document document ) throws SAXException {
-        NodeList nl = document.getElementsByTagName( "security-constraint" );
-        for (int i = 0; i < nl.getLength(); i++) {
-            _securityConstraints.add( new SecurityConstraintImpl( (Element) nl.item( i ) ) );
-        }
-    }
-
-
     String getContextPath() {
         return _contextPath;
     }
@@ -418,32 +451,19 @@ class WebApplication implements SessionListenerDispatcher {
 //--------------------------------------------------- private members --------------------------------------------------
 
 
-    private void registerFilters( Document document ) throws SAXException {
+    private void registerFilters( WebXmlDescriptor descriptor ) {
         Hashtable nameToClass = new Hashtable();
-        NodeList nl = document.getElementsByTagName( "filter" );
-        for (int i = 0; i < nl.getLength(); i++) registerFilterClass( nameToClass, (Element) nl.item( i ) );
-        	nl = document.getElementsByTagName( "filter-mapping" );
-        for (int i = 0; i < nl.getLength(); i++) 
-        	registerFilter( nameToClass, (Element) nl.item( i ) );
-        this._filters=nameToClass;
-    }
-
-
-    private void registerFilterClass( Dictionary mapping, Element filterElement ) throws SAXException {
-        String filterName = XMLUtils.getChildNodeValue( filterElement, "filter-name" );
-        mapping.put( filterName, new FilterConfiguration( filterName, filterElement ) );
-    }
-
-
-    private void registerFilter( Dictionary mapping, Element filterElement ) throws SAXException {
-        if (XMLUtils.hasChildNode( filterElement, "servlet-name" )) {
-            registerFilterForServlet( XMLUtils.getChildNodeValue( filterElement, "servlet-name" ),
-                             (FilterConfiguration) mapping.get( XMLUtils.getChildNodeValue( filterElement, "filter-name" ) ) );
+        for (Iterator i = descriptor.getFilters().iterator(); i.hasNext();) {
+            WebXmlDescriptor.FilterDefinition definition = (WebXmlDescriptor.FilterDefinition) i.next();
+            nameToClass.put( definition.getName(), new FilterConfiguration( definition ) );
         }
-        if (XMLUtils.hasChildNode( filterElement, "url-pattern" )) {
-            registerFilterForUrl( XMLUtils.getChildNodeValue( filterElement, "url-pattern" ),
-                             (FilterConfiguration) mapping.get( XMLUtils.getChildNodeValue( filterElement, "filter-name" ) ) );
+        for (Iterator i = descriptor.getFilterMappings().iterator(); i.hasNext();) {
+            WebXmlDescriptor.FilterMapping mapping = (WebXmlDescriptor.FilterMapping) i.next();
+            FilterConfiguration filterConfiguration = (FilterConfiguration) nameToClass.get( mapping.getName() );
+            if (mapping.getServletName() != null) registerFilterForServlet( mapping.getServletName(), filterConfiguration );
+            if (mapping.getUrlPattern() != null) registerFilterForUrl( mapping.getUrlPattern(), filterConfiguration );
         }
+        this._filters=nameToClass;
     }
 
 
@@ -459,59 +479,33 @@ class WebApplication implements SessionListenerDispatcher {
             _filterMapping.put( servletName, list );
         }
         list.add( filterConfiguration );
+        _filterUrlMapping.clearCache();
     }
 
 
-    private void extractLoginConfiguration( Document document ) throws MalformedURLException, SAXException {
-        NodeList nl = document.getElementsByTagName( "login-config" );
-        if (nl.getLength() == 1) {
-            final Element loginConfigElement = (Element) nl.item( 0 );
-            String authenticationMethod = XMLUtils.getChildNodeValue( loginConfigElement, "auth-method", "BASIC" );
-            _authenticationRealm = XMLUtils.getChildNodeValue( loginConfigElement, "realm-name", "" );
-            if (authenticationMethod.equalsIgnoreCase( "BASIC" )) {
-                _useBasicAuthentication = true;
-                if (_authenticationRealm.length() == 0) throw new SAXException( "No realm specified for BASIC Authorization" );
-            } else if (authenticationMethod.equalsIgnoreCase( "FORM" )) {
-                _useFormAuthentication = true;
-                if (_authenticationRealm.length() == 0) throw new SAXException( "No realm specified for FORM Authorization" );
-                _loginURL = new URL( "http", "localhost", _contextPath + XMLUtils.getChildNodeValue( loginConfigElement, "form-login-page" ) );
-                _errorURL = new URL( "http", "localhost", _contextPath + XMLUtils.getChildNodeValue( loginConfigElement, "form-error-page" ) );
-            }
+    private void extractLoginConfiguration( WebXmlDescriptor descriptor ) throws MalformedURLException {
+        if (descriptor.getAuthenticationRealm() != null) _authenticationRealm = descriptor.getAuthenticationRealm();
+        if (descriptor.isBasicAuthentication()) {
+            _useBasicAuthentication = true;
+        } else if (descriptor.isFormAuthentication()) {
+            _useFormAuthentication = true;
+            _loginURL = new URL( "http", "localhost", _contextPath + descriptor.getLoginPage() );
+            _errorURL = new URL( "http", "localhost", _contextPath + descriptor.getErrorPage() );
         }
     }
 
 
-    private void registerServlets( Document document ) throws SAXException {
+    private void registerServlets( WebXmlDescriptor descriptor ) {
         Hashtable nameToClass = new Hashtable();
-        NodeList nl = document.getElementsByTagName( "servlet" );
-        for (int i = 0; i < nl.getLength(); i++) registerServletClass( nameToClass, (Element) nl.item( i ) );
-        nl = document.getElementsByTagName( "servlet-mapping" );
-        for (int i = 0; i < nl.getLength(); i++) 
-        	registerServlet( nameToClass, (Element) nl.item( i ) );
-        this._servlets=nameToClass;
-    }
-
-
-    private void registerServletClass( Dictionary mapping, Element servletElement ) throws SAXException {
-        mapping.put( XMLUtils.getChildNodeValue( servletElement, "servlet-name" ),
-                     new ServletConfiguration( servletElement ) );
-    }
-
-
-    private void registerServlet( Dictionary mapping, Element servletElement ) throws SAXException {
-        registerServlet( XMLUtils.getChildNodeValue( servletElement, "url-pattern" ),
-                         (ServletConfiguration) mapping.get( XMLUtils.getChildNodeValue( servletElement, "servlet-name" ) ) );
-    }
-
-
-    private void extractContextParameters( Document document ) throws SAXException {
-        NodeList nl = document.getElementsByTagName( "context-param" );
-        for (int i = 0; i < nl.getLength(); i++) {
-            Element param = (Element) nl.item( i );
-            String name = XMLUtils.getChildNodeValue( param, "param-name" );
-            String value = XMLUtils.getChildNodeValue( param, "param-value" );
-            _contextParameters.put( name, value );
+        for (Iterator i = descriptor.getServlets().iterator(); i.hasNext();) {
+            WebXmlDescriptor.ServletDefinition definition = (WebXmlDescriptor.ServletDefinition) i.next();
+            nameToClass.put( definition.getName(), new ServletConfiguration( definition ) );
+        }
+        for (Iterator i = descriptor.getServletMappings().iterator(); i.hasNext();) {
+            WebXmlDescriptor.Mapping mapping = (WebXmlDescriptor.Mapping) i.next();
+            registerServlet( mapping.getUrlPattern(), (ServletConfiguration) nameToClass.get( mapping.getName() ) );
         }
+        this._servlets=nameToClass;
     }
 
 
@@ -561,7 +555,8 @@ class WebApplication implements SessionListenerDispatcher {
 
     class ServletConfiguration extends WebResourceConfiguration {
 
-        private Servlet _servlet;
+        /** The servlet instance, created on first use. Once set, it is read without locking. **/
+        private volatile Servlet _servlet;
         private String _servletName;
         private String _jspFile;
         private int _loadOrder = DONT_AUTOLOAD;
@@ -576,32 +571,32 @@ class WebApplication implements SessionListenerDispatcher {
         }
 
 
-        ServletConfiguration( Element servletElement ) throws SAXException {
-            super( servletElement, "servlet-class" , XMLUtils.getChildNodeValue( servletElement, "servlet-class", "org.apache.jasper.servlet.JspServlet" ));
-            _servletName = XMLUtils.getChildNodeValue( servletElement, "servlet-name" );
-            _jspFile = XMLUtils.getChildNodeValue( servletElement, "jsp-file", "");
-            if("".equals(_jspFile)) _jspFile = null;
-            final NodeList loadOrder = servletElement.getElementsByTagName( "load-on-startup" );
-            for (int i = 0; i < loadOrder.getLength(); i++) {
-                String order = XMLUtils.getTextValue( loadOrder.item(i) );
-                try {
-                    _loadOrder = Integer.parseInt( order );
-                } catch (NumberFormatException e) {
-                    _loadOrder = ANY_LOAD_ORDER;
-                }
-            }
+        ServletConfiguration( WebXmlDescriptor.ServletDefinition definition ) {
+            super( definition.getClassName(), new Hashtable( definition.getInitParams() ) );
+            _servletName = definition.getName();
+            _jspFile = definition.getJspFile();
+            _loadOrder = definition.getLoadOrder();
         }
 
 
-        synchronized Servlet getServlet() throws ClassNotFoundException, InstantiationException, IllegalAccessException, ServletException {
-            if (_servlet == null) {
-                Class servletClass = Class.forName( getClassName() );
-                _servlet = (Servlet) servletClass.newInstance();
-                String servletName = _servletName != null ? _servletName : _servlet.getClass().getName();
-                _servlet.init( new ServletUnitServletConfig( servletName, WebApplication.this, getInitParams() ) );
+        /**
+         * Returns the servlet, creating and initializing it on first use. Only the first call takes a lock;
+         * the servlet is not made visible to other threads until its init method has completed.
+         */
+        Servlet getServlet() throws ClassNotFoundException, InstantiationException, IllegalAccessException, ServletException {
+            Servlet servlet = _servlet;
+            if (servlet != null) return servlet;
+
+            synchronized (this) {
+                if (_servlet == null) {
+                    Class servletClass = Class.forName( getClassName() );
+                    servlet = (Servlet) servletClass.newInstance();
+                    String servletName = _servletName != null ? _servletName : servlet.getClass().getName();
+                    servlet.init( new ServletUnitServletConfig( servletName, WebApplication.this, getInitParams() ) );
+                    _servlet = servlet;
+                }
+                return _servlet;
             }
-
-            return _servlet;
         }
 
 
@@ -636,25 +631,31 @@ class WebApplication implements SessionListenerDispatcher {
 
     class FilterConfiguration extends WebResourceConfiguration implements FilterMetaData {
 
-        private Filter _filter;
+        /** The filter instance, created on first use. Once set, it is read without locking. **/
+        private volatile Filter _filter;
         private String _name;
 
 
-        FilterConfiguration( String name, Element filterElement ) throws SAXException {
-            super( filterElement, "filter-class" );
-            _name = name;
+        FilterConfiguration( WebXmlDescriptor.FilterDefinition definition ) {
+            super( definition.getClassName(), new Hashtable( definition.getInitParams() ) );
+            _name = definition.getName();
         }
 
 
-        public synchronized Filter getFilter() throws ServletException {
+        public Filter getFilter() throws ServletException {
+            Filter filter = _filter;
+            if (filter != null) return filter;
+
             try {
-                if (_filter == null) {
-                    Class filterClass = Class.forName( getClassName() );
-                    _filter = (Filter) filterClass.newInstance();
-                    _filter.init( new FilterConfigImpl( _name, getServletContext(), getInitParams() ) );
+                synchronized (this) {
+                    if (_filter == null) {
+                        Class filterClass = Class.forName( getClassName() );
+                        filter = (Filter) filterClass.newInstance();
+                        filter.init( new FilterConfigImpl( _name, getServletContext(), getInitParams() ) );
+                        _filter = filter;
+                    }
+                    return _filter;
                 }
-
-                return _filter;
             } catch (ClassNotFoundException e) {
                 throw new ServletException( "Did not find filter class: " + getClassName() );
             } catch (IllegalAccessException e) {
@@ -706,11 +707,15 @@ class WebApplication implements SessionListenerDispatcher {
     }
 
 
+    /**
+     * A constraint read from web.xml. It is not changed once constructed, and so may be shared by several applications.
+     */
     static class SecurityConstraintImpl implements SecurityConstraint {
 
         SecurityConstraintImpl( Element root ) throws SAXException {
             final NodeList roleNames = root.getElementsByTagName( "role-name" );
-            for (int i = 0; i < roleNames.getLength(); i++) _roleList.add( XMLUtils.getTextValue( roleNames.item( i ) ) );
+            _roles = new String[ roleNames.getLength() ];
+            for (int i = 0; i < roleNames.getLength(); i++) _roles[i] = XMLUtils.getTextValue( roleNames.item( i ) );
 
             final NodeList resources = root.getElementsByTagName( "web-resource-collection" );
             for (int i = 0; i < resources.getLength(); i++) _resources.add( new WebResourceCollection( (Element) resources.item( i ) ) );
@@ -723,16 +728,12 @@ class WebApplication implements SessionListenerDispatcher {
 
 
         public String[] getPermittedRoles() {
-            if (_roles == null) {
-                _roles = (String[]) _roleList.toArray( new String[ _roleList.size() ] );
-            }
             return _roles;
         }
 
 
-        private String[]  _roles;
-        private ArrayList _roleList = new ArrayList();
-        private ArrayList _resources = new ArrayList();
+        private final String[]  _roles;
+        private final ArrayList _resources = new ArrayList();
 
 
         public WebResourceCollection getMatchingCollection( String urlPath ) {
@@ -827,14 +828,24 @@ class WebApplication implements SessionListenerDispatcher {
         }
 
 
+        /**
+         * Returns the filters to apply to this request: those mapped to its path, followed by those mapped to
+         * its servlet by name. The chain for each path and servlet is computed once and then shared,
+         * so the returned array must not be modified.
+         */
         public FilterMetaData[] getFilters() {
             if (getConfiguration() == null) return NO_FILTERS;
 
-            List filters = new ArrayList();
-            addFiltersForPath( filters, _fullServletPath );
-            addFiltersForServletWithName( filters, getConfiguration().getServletName() );
-
-            return (FilterMetaData[]) filters.toArray( new FilterMetaData[ filters.size() ]);
+            String servletName = getConfiguration().getServletName();
+            FilterMetaData[] filters = _filtersPerUrl.getCachedChain( _fullServletPath, servletName );
+            if (filters == null) {
+                List list = new ArrayList();
+                addFiltersForPath( list, _fullServletPath );
+                addFiltersForServletWithName( list, servletName );
+                filters = list.isEmpty() ? NO_FILTERS : (FilterMetaData[]) list.toArray( new FilterMetaData[ list.size() ]);
+                _filtersPerUrl.cacheChain( _fullServletPath, servletName, filters );
+            }
+            return filters;
         }
 
 
@@ -940,7 +951,11 @@ class WebApplication implements SessionListenerDispatcher {
         private final Map _urlTree = new HashMap();
         private WebResourceMapping _defaultMapping;
 
+        /** The mappings of the servlet paths most recently resolved. Cleared whenever a mapping is added. **/
+        private final Map _resolvedPaths = newPathCache();
+
         void put( String mapping, WebResourceConfiguration configuration ) {
+            _resolvedPaths.clear();
             if (mapping.equals( "/" )) {
                 _defaultMapping = new WebResourceMapping( configuration );
             } else if (mapping.startsWith( "*." )) {
@@ -1024,15 +1039,70 @@ class WebApplication implements SessionListenerDispatcher {
                     return (sc1.getLoadOrder() <= sc2.getLoadOrder()) ? -1 : +1;
                 }
             });
-            for (Iterator iterator = autoLoadable.iterator(); iterator.hasNext();) {
-                ServletConfiguration servletConfiguration = (ServletConfiguration) iterator.next();
+            int start = 0;
+            while (start < autoLoadable.size()) {
+                int end = start+1;
+                int loadOrder = ((ServletConfiguration) autoLoadable.get( start )).getLoadOrder();
+                while (end < autoLoadable.size() && ((ServletConfiguration) autoLoadable.get( end )).getLoadOrder() == loadOrder) end++;
+                autoLoadServlets( autoLoadable.subList( start, end ) );
+                start = end;
+            }
+        }
+
+
+        /**
+         * Initializes servlets which share a load order. Since their relative order is unspecified,
+         * all but the first are initialized on pooled threads while the first is initialized on this one.
+         */
+        private void autoLoadServlets( List servlets ) {
+            Future[] results = new Future[ servlets.size() ];
+            final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            for (int i = 1; i < servlets.size(); i++) {
+                final ServletConfiguration servletConfiguration = (ServletConfiguration) servlets.get( i );
+                results[i] = _servletLoaders.submit( new Runnable() {
+                    public void run() {
+                        Thread thread = Thread.currentThread();
+                        ClassLoader originalClassLoader = thread.getContextClassLoader();
+                        thread.setContextClassLoader( contextClassLoader );
+                        try {
+                            autoLoadServlet( servletConfiguration );
+                        } finally {
+                            thread.setContextClassLoader( originalClassLoader );
+                        }
+                    }
+                } );
+            }
+
+            Throwable failure = null;
+            try {
+                autoLoadServlet( (ServletConfiguration) servlets.get( 0 ) );
+            } catch (RuntimeException e) {
+                failure = e;
+            } catch (Error e) {
+                failure = e;
+            }
+            for (int i = 1; i < results.length; i++) {
                 try {
-                    servletConfiguration.getServlet();
-                } catch (Exception e) {
-                		HttpUnitUtils.handleException(e);
-                    throw new RuntimeException( "Unable to autoload servlet: " + servletConfiguration.getClassName() + ": " + e );
+                    results[i].get();
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null) failure = new RuntimeException( "Interrupted while loading servlets" );
                 }
             }
+            if (failure instanceof Error) throw (Error) failure;
+            if (failure != null) throw (RuntimeException) failure;
+        }
+
+
+        private void autoLoadServlet( ServletConfiguration servletConfiguration ) {
+            try {
+                servletConfiguration.getServlet();
+            } catch (Exception e) {
+            		HttpUnitUtils.handleException(e);
+                throw new RuntimeException( "Unable to autoload servlet: " + servletConfiguration.getClassName() + ": " + e );
+            }
         }
 
 
@@ -1049,7 +1119,22 @@ class WebApplication implements SessionListenerDispatcher {
         }
 
 
+        /**
+         * Returns the mapping for the specified servlet path. A path is matched against the registered mappings
+         * only if it has not been seen recently; the result is remembered for later requests.
+         */
         private WebResourceMapping getMapping( String url ) {
+            Object mapping = _resolvedPaths.get( url );
+            if (mapping == null) {
+                mapping = getRegisteredMapping( url );
+                if (mapping == null) mapping = NO_MAPPING;
+                _resolvedPaths.put( url, mapping );
+            }
+            return mapping != NO_MAPPING ? (WebResourceMapping) mapping : getInvokerMapping( url );
+        }
+
+
+        private WebResourceMapping getRegisteredMapping( String url ) {
             if (_exactMatches.containsKey( url )) return (WebResourceMapping) _exactMatches.get( url );
 
             Map context = getContextForLongestPathPrefix( url );
@@ -1059,8 +1144,15 @@ class WebApplication implements SessionListenerDispatcher {
 
             if (_urlTree.containsKey( "/" )) return (WebResourceMapping) _urlTree.get( "/" );
 
-            if (_defaultMapping != null) return _defaultMapping;
+            return _defaultMapping;
+        }
+
 
+        /**
+         * Returns a mapping which runs the servlet named by class in a path beginning with "/servlet/".
+         * This is not remembered, since it creates a new servlet each time.
+         */
+        private WebResourceMapping getInvokerMapping( String url ) {
             final String prefix = "/servlet/";
             if (!url.startsWith( prefix )) return null;
 
@@ -20,11 +20,6 @@ package com.meterware.servletunit;
  *
  *******************************************************************************************************************/
 
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import java.util.ArrayList;
 import java.util.Hashtable;
 
 /**
@@ -48,26 +43,6 @@ abstract class WebResourceConfiguration {
     }
 
 
-    WebResourceConfiguration( Element resourceElement, String resourceNodeName ) throws SAXException {
-    	this( resourceElement, resourceNodeName, XMLUtils.getChildNodeValue( resourceElement, resourceNodeName ) );
-    } 	
-    
-    /**
-     * construct a WebResourceConfiguration from the given parameters
-     * @param resourceElement
-     * @param resourceNodeName
-     * @param className
-     * @throws SAXException
-     */
-    public WebResourceConfiguration(Element resourceElement, String resourceNodeName,				String className) throws SAXException {
-    	this(className);
-        final NodeList initParams = resourceElement.getElementsByTagName( "init-param" );
-        for (int i = initParams.getLength() - 1; i >= 0; i--) {
-            _initParams.put( XMLUtils.getChildNodeValue( (Element) initParams.item( i ), "param-name" ),
-                             XMLUtils.getChildNodeValue( (Element) initParams.item( i ), "param-value" ) );
-        }
-    }
-
 		abstract void destroyResource();
 
 
@@ -0,0 +1,384 @@
+package com.meterware.servletunit;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2004, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The definitions read from a web.xml document. A descriptor is immutable once built, and so may be shared
+ * without locking by every web application created from the same file; each application creates its own
+ * servlet and filter configurations from it.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ **/
+final class WebXmlDescriptor {
+
+    private final static String DEFAULT_SERVLET_CLASS = "org.apache.jasper.servlet.JspServlet";
+
+    private final String _displayName;
+
+    private final List _servlets;
+
+    private final List _servletMappings;
+
+    private final List _filters;
+
+    private final List _filterMappings;
+
+    private final List _securityConstraints;
+
+    private final Map _contextParameters;
+
+    private final List _listenerClassNames;
+
+    private final String _authenticationMethod;
+
+    private final String _authenticationRealm;
+
+    private final String _loginPage;
+
+    private final String _errorPage;
+
+
+    /**
+     * Reads the definitions from the specified document. The document is not retained.
+     */
+    WebXmlDescriptor( Document document ) throws SAXException {
+        NodeList nl = document.getElementsByTagName( "display-name" );
+        _displayName = nl.getLength() == 0 ? null : XMLUtils.getTextValue( nl.item(0) ).trim();
+
+        List servlets = new ArrayList();
+        nl = document.getElementsByTagName( "servlet" );
+        for (int i = 0; i < nl.getLength(); i++) servlets.add( new ServletDefinition( (Element) nl.item( i ) ) );
+        _servlets = Collections.unmodifiableList( servlets );
+
+        List servletMappings = new ArrayList();
+        nl = document.getElementsByTagName( "servlet-mapping" );
+        for (int i = 0; i < nl.getLength(); i++) {
+            Element mapping = (Element) nl.item( i );
+            servletMappings.add( new Mapping( XMLUtils.getChildNodeValue( mapping, "servlet-name" ), XMLUtils.getChildNodeValue( mapping, "url-pattern" ) ) );
+        }
+        _servletMappings = Collections.unmodifiableList( servletMappings );
+
+        List filters = new ArrayList();
+        nl = document.getElementsByTagName( "filter" );
+        for (int i = 0; i < nl.getLength(); i++) filters.add( new FilterDefinition( (Element) nl.item( i ) ) );
+        _filters = Collections.unmodifiableList( filters );
+
+        List filterMappings = new ArrayList();
+        nl = document.getElementsByTagName( "filter-mapping" );
+        for (int i = 0; i < nl.getLength(); i++) {
+            Element mapping = (Element) nl.item( i );
+            filterMappings.add( new FilterMapping( XMLUtils.getChildNodeValue( mapping, "filter-name" ),
+                                                   getOptionalChildNodeValue( mapping, "servlet-name" ),
+                                                   getOptionalChildNodeValue( mapping, "url-pattern" ) ) );
+        }
+        _filterMappings = Collections.unmodifiableList( filterMappings );
+
+        List securityConstraints = new ArrayList();
+        nl = document.getElementsByTagName( "security-constraint" );
+        for (int i = 0; i < nl.getLength(); i++) securityConstraints.add( new WebApplication.SecurityConstraintImpl( (Element) nl.item( i ) ) );
+        _securityConstraints = Collections.unmodifiableList( securityConstraints );
+
+        Hashtable contextParameters = new Hashtable();
+        nl = document.getElementsByTagName( "context-param" );
+        for (int i = 0; i < nl.getLength(); i++) {
+            Element param = (Element) nl.item( i );
+            contextParameters.put( XMLUtils.getChildNodeValue( param, "param-name" ), XMLUtils.getChildNodeValue( param, "param-value" ) );
+        }
+        _contextParameters = Collections.unmodifiableMap( contextParameters );
+
+        List listenerClassNames = new ArrayList();
+        nl = document.getElementsByTagName( "listener" );
+        for (int i = 0; i < nl.getLength(); i++) listenerClassNames.add( XMLUtils.getChildNodeValue( (Element) nl.item( i ), "listener-class" ).trim() );
+        _listenerClassNames = Collections.unmodifiableList( listenerClassNames );
+
+        nl = document.getElementsByTagName( "login-config" );
+        if (nl.getLength() != 1) {
+            _authenticationMethod = _authenticationRealm = _loginPage = _errorPage = null;
+        } else {
+            final Element loginConfigElement = (Element) nl.item( 0 );
+            _authenticationMethod = XMLUtils.getChildNodeValue( loginConfigElement, "auth-method", "BASIC" );
+            _authenticationRealm = XMLUtils.getChildNodeValue( loginConfigElement, "realm-name", "" );
+            if (isBasicAuthentication()) {
+                if (_authenticationRealm.length() == 0) throw new SAXException( "No realm specified for BASIC Authorization" );
+                _loginPage = _errorPage = null;
+            } else if (isFormAuthentication()) {
+                if (_authenticationRealm.length() == 0) throw new SAXException( "No realm specified for FORM Authorization" );
+                _loginPage = XMLUtils.getChildNodeValue( loginConfigElement, "form-login-page" );
+                _errorPage = XMLUtils.getChildNodeValue( loginConfigElement, "form-error-page" );
+            } else {
+                _loginPage = _errorPage = null;
+            }
+        }
+    }
+
+
+    String getDisplayName() {
+        return _displayName;
+    }
+
+
+    /**
+     * Returns the servlet definitions, in document order.
+     */
+    List getServlets() {
+        return _servlets;
+    }
+
+
+    /**
+     * Returns the servlet mappings, in document order.
+     */
+    List getServletMappings() {
+        return _servletMappings;
+    }
+
+
+    /**
+     * Returns the filter definitions, in document order.
+     */
+    List getFilters() {
+        return _filters;
+    }
+
+
+    /**
+     * Returns the filter mappings, in document order.
+     */
+    List getFilterMappings() {
+        return _filterMappings;
+    }
+
+
+    /**
+     * Returns the security constraints. These hold no per-application state, and so are shared.
+     */
+    List getSecurityConstraints() {
+        return _securityConstraints;
+    }
+
+
+    Map getContextParameters() {
+        return _contextParameters;
+    }
+
+
+    List getListenerClassNames() {
+        return _listenerClassNames;
+    }
+
+
+    boolean isBasicAuthentication() {
+        return _authenticationMethod != null && _authenticationMethod.equalsIgnoreCase( "BASIC" );
+    }
+
+
+    boolean isFormAuthentication() {
+        return _authenticationMethod != null && _authenticationMethod.equalsIgnoreCase( "FORM" );
+    }
+
+
+    String getAuthenticationRealm() {
+        return _authenticationRealm;
+    }
+
+
+    String getLoginPage() {
+        return _loginPage;
+    }
+
+
+    String getErrorPage() {
+        return _errorPage;
+    }
+
+
+    private static String getOptionalChildNodeValue( Element root, String childNodeName ) throws SAXException {
+        return XMLUtils.hasChildNode( root, childNodeName ) ? XMLUtils.getChildNodeValue( root, childNodeName ) : null;
+    }
+
+
+    private static Map readInitParameters( Element resourceElement ) throws SAXException {
+        Hashtable initParams = new Hashtable();
+        final NodeList nl = resourceElement.getElementsByTagName( "init-param" );
+        for (int i = nl.getLength() - 1; i >= 0; i--) {
+            initParams.put( XMLUtils.getChildNodeValue( (Element) nl.item( i ), "param-name" ),
+                            XMLUtils.getChildNodeValue( (Element) nl.item( i ), "param-value" ) );
+        }
+        return Collections.unmodifiableMap( initParams );
+    }
+
+
+//============================================= ServletDefinition class ================================================
+
+
+    static class ServletDefinition {
+
+        private final String _name;
+        private final String _className;
+        private final String _jspFile;
+        private final int    _loadOrder;
+        private final Map    _initParams;
+
+
+        ServletDefinition( Element servletElement ) throws SAXException {
+            _name = XMLUtils.getChildNodeValue( servletElement, "servlet-name" );
+            _className = XMLUtils.getChildNodeValue( servletElement, "servlet-class", DEFAULT_SERVLET_CLASS );
+            String jspFile = XMLUtils.getChildNodeValue( servletElement, "jsp-file", "" );
+            _jspFile = jspFile.length() == 0 ? null : jspFile;
+            _initParams = readInitParameters( servletElement );
+
+            int loadOrder = WebApplication.DONT_AUTOLOAD;
+            final NodeList nl = servletElement.getElementsByTagName( "load-on-startup" );
+            for (int i = 0; i < nl.getLength(); i++) {
+                try {
+                    loadOrder = Integer.parseInt( XMLUtils.getTextValue( nl.item(i) ) );
+                } catch (NumberFormatException e) {
+                    loadOrder = WebApplication.ANY_LOAD_ORDER;
+                }
+            }
+            _loadOrder = loadOrder;
+        }
+
+
+        String getName() {
+            return _name;
+        }
+
+
+        String getClassName() {
+            return _className;
+        }
+
+
+        String getJspFile() {
+            return _jspFile;
+        }
+
+
+        int getLoadOrder() {
+            return _loadOrder;
+        }
+
+
+        Map getInitParams() {
+            return _initParams;
+        }
+    }
+
+
+//============================================= FilterDefinition class =================================================
+
+
+    static class FilterDefinition {
+
+        private final String _name;
+        private final String _className;
+        private final Map    _initParams;
+
+
+        FilterDefinition( Element filterElement ) throws SAXException {
+            _name = XMLUtils.getChildNodeValue( filterElement, "filter-name" );
+            _className = XMLUtils.getChildNodeValue( filterElement, "filter-class" );
+            _initParams = readInitParameters( filterElement );
+        }
+
+
+        String getName() {
+            return _name;
+        }
+
+
+        String getClassName() {
+            return _className;
+        }
+
+
+        Map getInitParams() {
+            return _initParams;
+        }
+    }
+
+
+//================================================= Mapping classes ====================================================
+
+
+    /**
+     * A mapping of a url pattern to a named servlet or filter.
+     */
+    static class Mapping {
+
+        private final String _name;
+        private final String _urlPattern;
+
+
+        Mapping( String name, String urlPattern ) {
+            _name = name;
+            _urlPattern = urlPattern;
+        }
+
+
+        String getName() {
+            return _name;
+        }
+
+
+        /**
+         * Returns the url pattern, or null if the mapping has none.
+         */
+        String getUrlPattern() {
+            return _urlPattern;
+        }
+    }
+
+
+    /**
+     * A mapping of a named filter to a url pattern, a servlet name, or both.
+     */
+    static class FilterMapping extends Mapping {
+
+        private final String _servletName;
+
+
+        FilterMapping( String filterName, String servletName, String urlPattern ) {
+            super( filterName, urlPattern );
+            _servletName = servletName;
+        }
+
+
+        /**
+         * Returns the name of the servlet to which the filter applies, or null if it applies by url pattern only.
+         */
+        String getServletName() {
+            return _servletName;
+        }
+    }
+}
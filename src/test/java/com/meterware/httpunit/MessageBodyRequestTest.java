@@ -32,6 +32,7 @@ import java.io.UnsupportedEncodingException;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * A unit test to verify miscellaneous requests with message bodies.
@@ -143,6 +144,23 @@ public class MessageBodyRequestTest extends HttpUnitTest {
 		assertArrayEquals("Body response", binaryData, download);
 	}
 
+    /**
+     * verify that the bytes, text and stream of a response are all taken from the same body
+     */
+    @Test
+    public void testResponseBodyViews() throws Exception {
+        defineResource("ReportData", new BodyEcho());
+        String sourceData = "this is the body of the request";
+
+        WebConversation wc = new WebConversation();
+        WebRequest wr = new PutMethodWebRequest(getHostPath() + "/ReportData", new ByteArrayInputStream(sourceData.getBytes()), "text/plain");
+        WebResponse response = wc.getResponse(wr);
+        byte[] download = response.getBytes();
+        assertSame("Repeated requests for bytes", download, response.getBytes());
+        assertEquals("Body text", "\nPUT\n" + sourceData, response.getText());
+        assertArrayEquals("Streamed body", download, getDownload(response));
+    }
+
 	/**
 	 * test for BR [ 1964665 ] HeaderOnlyRequest cannot be constructed
 	 */
@@ -1042,6 +1042,88 @@ public class WebClientTest extends HttpUnitTest {
         assertEquals("Content", expectedResponse, wr.getText().trim());
     }
 
+    /**
+     * verify that a compressed response without a content length is read completely
+     */
+    @Test
+    public void testGZIPHandlingWithoutLength() throws Exception {
+        String expectedResponse = "Here is my answer. It needs to be reasonably long to make compression smaller " +
+                "than the raw message. Without a length header, the entire stream must still be read.";
+        defineResource("Compressed.html", new CompressedPseudoServlet(expectedResponse, true));
+
+        WebConversation wc = new WebConversation();
+        WebResponse wr = wc.getResponse(getHostPath() + "/Compressed.html");
+        assertEquals("Content", expectedResponse, wr.getText().trim());
+        assertTrue("Read time should have been recorded", wr.getReadTime() >= 0);
+    }
+
+
+    /**
+     * verify that a response sent with chunked transfer encoding is read until its final chunk
+     */
+    @Test
+    public void testChunkedResponse() throws Exception {
+        defineResource("Chunked.html", new PseudoServlet() {
+            public WebResource getGetResponse() {
+                WebResource result = new WebResource("6\r\nHello,\r\n7\r\n world!\r\n0\r\n\r\n", "text/plain");
+                result.addHeader("Transfer-Encoding: chunked");
+                return result;
+            }
+        });
+
+        WebConversation wc = new WebConversation();
+        WebResponse wr = wc.getResponse(getHostPath() + "/Chunked.html");
+        assertEquals("Content", "Hello, world!", wr.getText());
+    }
+
+
+    /**
+     * verify that a streamed response is left unread until the caller reads it
+     */
+    @Test
+    public void testStreamingResponse() throws Exception {
+        defineResource("export.csv", "a,b,c\n1,2,3\n", "text/csv");
+        defineResource("page.html", "<html><body>a page</body></html>");
+
+        WebConversation wc = new WebConversation();
+        wc.getClientProperties().setStreamingResponses(true);
+        WebResponse wr = wc.getResponse(getHostPath() + "/export.csv");
+        assertEquals("Read time before reading", -1, wr.getReadTime());
+        assertEquals("Streamed content", "a,b,c\n1,2,3\n", new String(readAll(wr.getInputStream())));
+
+        wr = wc.getResponse(getHostPath() + "/page.html");
+        assertTrue("HTML response was not read", wr.getReadTime() >= 0);
+    }
+
+
+    /**
+     * verify that streaming may be selected for a single request
+     */
+    @Test
+    public void testStreamingSingleRequest() throws Exception {
+        defineResource("export.csv", "a,b,c\n1,2,3\n", "text/csv");
+
+        WebConversation wc = new WebConversation();
+        WebRequest request = new GetMethodWebRequest(getHostPath() + "/export.csv");
+        request.setStreamingResponse(true);
+        WebResponse wr = wc.getResponse(request);
+        assertEquals("Read time before reading", -1, wr.getReadTime());
+        assertEquals("Streamed content", "a,b,c\n1,2,3\n", new String(readAll(wr.getInputStream())));
+
+        assertTrue("Unstreamed response was not read", wc.getResponse(getHostPath() + "/export.csv").getReadTime() >= 0);
+    }
+
+
+    private byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) bytes.write(buffer, 0, count);
+        inputStream.close();
+        return bytes.toByteArray();
+    }
+
+
     /**
      * try to validate support request
      * [ 885326 ] In CONTENT-ENCODING: gzip, EOFException happens.
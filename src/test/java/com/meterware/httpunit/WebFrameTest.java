@@ -20,13 +20,23 @@ package com.meterware.httpunit;
  *
  *******************************************************************************************************************/
 
+import com.meterware.pseudoserver.PseudoServlet;
+import com.meterware.pseudoserver.WebResource;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -78,6 +88,70 @@ public class WebFrameTest extends HttpUnitTest {
     }
 
 
+    /**
+     * Verify that frames are loaded concurrently, and installed in document order. Each frame is held by the server
+     * until the requests for all of its siblings have arrived, so frames loaded one at a time would not be found together.
+     */
+    @Test
+    public void testConcurrentFrameLoading() throws Exception {
+        CountDownLatch allRequested = new CountDownLatch(3);
+        defineResource("Red.html", new HeldFrameServlet(allRequested));
+        defineResource("Blue.html", new HeldFrameServlet(allRequested));
+        defineResource("Green.html", new HeldFrameServlet(allRequested));
+        defineResource("ThreeFrames.html",
+                "<HTML><HEAD><TITLE>Initial</TITLE></HEAD>" +
+                        "<FRAMESET cols=\"20%,40%,40%\">" +
+                        "    <FRAME src=\"Red.html\" name=\"red\">" +
+                        "    <FRAME src=Blue.html name=blue>" +
+                        "    <FRAME src=Green.html name=green>" +
+                        "</FRAMESET></HTML>");
+        _wc.getClientProperties().setMaxFrameLoadingThreads(3);
+        _wc.getResponse(getHostPath() + "/ThreeFrames.html");
+
+        assertMatchingSet("Frames defined for the conversation", new String[]{"_top", "red", "blue", "green"}, _wc.getFrameNames());
+        String[] frames = {"red", "blue", "green"};
+        String[] pages = {"Red.html", "Blue.html", "Green.html"};
+        for (int i = 0; i < frames.length; i++) {
+            WebResponse frame = _wc.getFrameContents(frames[i]);
+            assertEquals(frames[i] + " frame", getHostPath() + "/" + pages[i], frame.getURL().toExternalForm());
+            assertEquals(frames[i] + " frame contents", "together", frame.getText().replaceAll("<[^>]*>", "").trim());
+        }
+    }
+
+
+    /**
+     * Verify that client listeners are called on the requesting thread when frames are loaded concurrently.
+     */
+    @Test
+    public void testConcurrentFrameLoadingListeners() throws Exception {
+        defineWebPage("Third", "This is the third frame");
+        defineResource("ThreeFrames.html",
+                "<HTML><HEAD><TITLE>Initial</TITLE></HEAD>" +
+                        "<FRAMESET cols=\"20%,40%,40%\">" +
+                        "    <FRAME src=\"Linker.html\" name=\"red\">" +
+                        "    <FRAME src=Form.html name=blue>" +
+                        "    <FRAME src=Third.html name=green>" +
+                        "</FRAMESET></HTML>");
+        final List listenerThreads = Collections.synchronizedList(new ArrayList());
+        _wc.addClientListener(new WebClientListener() {
+            public void requestSent(WebClient src, WebRequest req) {
+                listenerThreads.add(Thread.currentThread());
+            }
+
+            public void responseReceived(WebClient src, WebResponse resp) {
+                listenerThreads.add(Thread.currentThread());
+            }
+        });
+        _wc.getClientProperties().setMaxFrameLoadingThreads(3);
+        _wc.getResponse(getHostPath() + "/ThreeFrames.html");
+
+        assertEquals("number of notifications", 8, listenerThreads.size());
+        for (int i = 0; i < listenerThreads.size(); i++) {
+            assertSame("thread for notification " + i, Thread.currentThread(), listenerThreads.get(i));
+        }
+    }
+
+
     @Test
     public void testParentTarget() throws Exception {
         defineWebPage("Target", "This is another page with <a href=Form.html target='_parent'>one link</a>");
@@ -690,4 +764,28 @@ public class WebFrameTest extends HttpUnitTest {
 
 
     private WebConversation _wc;
+
+
+    /**
+     * Responds only once all of the frames sharing its latch have been requested, or after a timeout.
+     */
+    private static class HeldFrameServlet extends PseudoServlet {
+
+        private final CountDownLatch _allRequested;
+
+        HeldFrameServlet(CountDownLatch allRequested) {
+            _allRequested = allRequested;
+        }
+
+        public WebResource getGetResponse() throws IOException {
+            _allRequested.countDown();
+            try {
+                boolean together = _allRequested.await(5, TimeUnit.SECONDS);
+                return new WebResource("<html><body>" + (together ? "together" : "alone") + "</body></html>");
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for sibling frames");
+            }
+        }
+    }
+
 }
@@ -30,6 +30,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.w3c.dom.html.HTMLDocument;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
@@ -70,6 +71,24 @@ public class WebPageTest extends HttpUnitTest {
         }
     }
 
+    /**
+     * verify that a proxy set for one conversation neither changes the system properties nor affects other conversations
+     */
+    @Test
+    public void testProxyServerIsPerConversation() throws Exception {
+        defineResource("http://someserver.com/sample", "Get this", "text/plain");
+        defineResource("sample", "Not proxied", "text/plain");
+        WebConversation proxied = new WebConversation();
+        proxied.setProxyServer("localhost", getHostPort());
+        WebConversation direct = new WebConversation();
+
+        assertNull("System proxy host should not be set", System.getProperty("proxyHost"));
+        assertEquals("Proxy host", "localhost", proxied.getProxyHost());
+        assertEquals("Proxied text", "Get this", proxied.getResponse("http://someserver.com/sample").getText().trim());
+        assertEquals("Direct text", "Not proxied", direct.getResponse(getHostPath() + "/sample").getText().trim());
+    }
+
+
     /**
      * check the valid contentTypes
      * modified for bug report
@@ -139,6 +158,59 @@ public class WebPageTest extends HttpUnitTest {
     }
 
 
+    /**
+     * Verify that options given to a client are not affected by changes to the static defaults.
+     */
+    @Test
+    public void testClientOptionsOverrideDefaults() throws Exception {
+        defineResource("TextPage.txt", "Just text", "text/plain");
+        WebConversation checking = new WebConversation();
+        checking.setOptions(WebClientOptions.fromDefaults().withCheckHtmlContentType(true));
+        WebConversation unchecked = new WebConversation();
+        unchecked.setOptions(WebClientOptions.fromDefaults());
+
+        unchecked.getResponse(getHostPath() + "/TextPage.txt").getReceivedPage().getTitle();
+        try {
+            checking.getResponse(getHostPath() + "/TextPage.txt").getReceivedPage().getTitle();
+            fail("Should have rejected attempt to get a title from a text page");
+        } catch (NotHTMLException e) {
+        }
+
+        HttpUnitOptions.setCheckHtmlContentType(true);
+        unchecked.getResponse(getHostPath() + "/TextPage.txt").getReceivedPage().getTitle();
+    }
+
+
+    /**
+     * Verify that a client following the static defaults reuses its snapshot of them until they change.
+     */
+    @Test
+    public void testDefaultOptionsSnapshotReused() throws Exception {
+        WebConversation wc = new WebConversation();
+        WebClientOptions options = wc.getOptions();
+        assertSame("Unchanged defaults", options, wc.getOptions());
+
+        HttpUnitOptions.setScriptingEnabled(false);
+        assertNotSame("Snapshot after change", options, wc.getOptions());
+        assertFalse("Scripting enabled in new snapshot", wc.getOptions().isScriptingEnabled());
+    }
+
+
+    /**
+     * Verify that text matching follows the options of the client which received the page.
+     */
+    @Test
+    public void testClientMatchesIgnoreCase() throws Exception {
+        defineWebPage("LinkPage", "<a href=\"/other.html\">Next Page</a>");
+        WebConversation exact = new WebConversation();
+        exact.setOptions(WebClientOptions.fromDefaults().withMatchesIgnoreCase(false));
+        WebConversation ignoring = new WebConversation();
+
+        assertNull("Found link with exact matching", exact.getResponse(getHostPath() + "/LinkPage.html").getLinkWith("next page"));
+        assertNotNull("Did not find link ignoring case", ignoring.getResponse(getHostPath() + "/LinkPage.html").getLinkWith("next page"));
+    }
+
+
     @Test
     public void testHtmlDocument() throws Exception {
         defineWebPage("SimplePage",
@@ -495,6 +567,99 @@ public class WebPageTest extends HttpUnitTest {
     }
 
 
+    /**
+     * Verifies that element lookups reflect changes made to the DOM after the page was first examined.
+     */
+    @Test
+    public void testElementLookupsFollowDomChanges() throws Exception {
+        defineResource("SimplePage.html",
+                "<html><head><title>A Sample Page</title></head>\n" +
+                        "<body><form id='form1' class='first' name='aForm'><input name=color></form>" +
+                        "<table id='table1'><tr><td>cell</td></tr></table>\n" +
+                        "<table id='table2'><tr><td><a id='link1' name='aLink' class='inner' href='next.html'>next</a></td></tr></table>\n" +
+                        "</body></html>\n");
+        WebConversation wc = new WebConversation();
+        WebResponse simplePage = wc.getResponse(getHostPath() + "/SimplePage.html");
+        assertImplements("element with id 'form1'", simplePage.getElementWithID("form1"), WebForm.class);
+        assertEquals("Number of tables", 2, simplePage.getTables().length);
+
+        Document document = simplePage.getDOM();
+        Element body = (Element) document.getElementsByTagName("body").item(0);
+        Element form = document.getElementById("form1");
+        Element table = document.getElementById("table1");
+
+        Element newForm = document.createElement("form");
+        newForm.setAttribute("id", "form2");
+        newForm.setAttribute("name", "aForm");
+        newForm.setAttribute("class", "second");
+        body.appendChild(newForm);
+        assertImplements("element with id 'form2'", simplePage.getElementWithID("form2"), WebForm.class);
+        assertEquals("Number of elements named 'aForm'", 2, simplePage.getElementsWithName("aForm").length);
+        assertEquals("Number of elements with class 'second'", 1, simplePage.getElementsWithClassName("second").length);
+
+        body.removeChild(form);
+        body.removeChild(table);
+        assertNull("Removed form still found by id", simplePage.getElementWithID("form1"));
+        assertEquals("Number of elements named 'aForm' after removal", 1, simplePage.getElementsWithName("aForm").length);
+        assertEquals("Number of elements with class 'first' after removal", 0, simplePage.getElementsWithClassName("first").length);
+        assertEquals("Number of tables after removal", 1, simplePage.getTables().length);
+
+        newForm.setAttribute("id", "form3");
+        newForm.setAttribute("class", "first");
+        assertNull("Element found by its old id", simplePage.getElementWithID("form2"));
+        assertImplements("element with id 'form3'", simplePage.getElementWithID("form3"), WebForm.class);
+        assertEquals("Number of elements with class 'first' after change", 1, simplePage.getElementsWithClassName("first").length);
+        assertEquals("Number of elements with class 'second' after change", 0, simplePage.getElementsWithClassName("second").length);
+
+        TableCell cell = simplePage.getTableWithID("table2").getTableCell(0, 0);
+        Element link = document.getElementById("link1");
+        link.setAttribute("id", "link2");
+        link.setAttribute("name", "anotherLink");
+        link.setAttribute("class", "outer");
+        assertNull("Cell element found by its old id", cell.getElementWithID("link1"));
+        assertImplements("cell element with id 'link2'", cell.getElementWithID("link2"), WebLink.class);
+        assertEquals("Number of cell elements named 'aLink'", 0, cell.getElementsWithName("aLink").length);
+        assertEquals("Number of cell elements named 'anotherLink'", 1, cell.getElementsWithName("anotherLink").length);
+        assertEquals("Number of cell elements with class 'inner'", 0, cell.getElementsWithClassName("inner").length);
+        assertEquals("Number of cell elements with class 'outer'", 1, cell.getElementsWithClassName("outer").length);
+        assertImplements("page element with id 'link2'", simplePage.getElementWithID("link2"), WebLink.class);
+    }
+
+
+    /**
+     * Verifies that elements in a subtree inserted before existing elements are found in document order.
+     */
+    @Test
+    public void testInsertedElementsKeepDocumentOrder() throws Exception {
+        defineResource("SimplePage.html",
+                "<html><head><title>A Sample Page</title></head>\n" +
+                        "<body><table id='table1' name='grid'><tr><td>cell</td></tr></table></body></html>\n");
+        WebConversation wc = new WebConversation();
+        WebResponse simplePage = wc.getResponse(getHostPath() + "/SimplePage.html");
+        assertEquals("Number of tables", 1, simplePage.getTables().length);
+
+        Document document = simplePage.getDOM();
+        Element table = document.getElementById("table1");
+        Element newTable = document.createElement("table");
+        newTable.setAttribute("id", "table0");
+        newTable.setAttribute("name", "grid");
+        Element row = document.createElement("tr");
+        Element cell = document.createElement("td");
+        cell.appendChild(document.createTextNode("new cell"));
+        row.appendChild(cell);
+        newTable.appendChild(row);
+        table.getParentNode().insertBefore(newTable, table);
+
+        WebTable[] tables = simplePage.getTables();
+        assertEquals("Number of tables after insertion", 2, tables.length);
+        assertEquals("First table", "table0", tables[0].getID());
+        assertEquals("Second table", "table1", tables[1].getID());
+        HTMLElement[] named = simplePage.getElementsWithName("grid");
+        assertEquals("Number of elements named 'grid'", 2, named.length);
+        assertEquals("First element named 'grid'", "table0", named[0].getID());
+    }
+
+
     /**
      * Test the {@link WebResponse.ByteTagParser} to ensure that embedded JavaScript is skipped.
      */
@@ -521,6 +686,28 @@ public class WebPageTest extends HttpUnitTest {
         assertNull("More tags than expected: " + nextTag + "...?", nextTag);
     }
 
+    /**
+     * Test that the {@link WebResponse.ByteTagParser} can skip tags other than those requested.
+     */
+    @Test
+    public void testByteTagParserWithNames() throws Exception {
+        final String document = "<html><HEAD><title>main</title>\n"
+                + "<script>if (a<b) document.write('<meta http-equiv=refresh content=1>');</script>\n"
+                + "<Meta http-equiv=\"Refresh\" content=\"2\"><metadata><base href=\"Base\">\n"
+                + "</head>\n<body><basefont size=3></body>\n</html>\n";
+        WebResponse.ByteTagParser parser = new WebResponse.ByteTagParser(document.getBytes());
+        String[] names = {"meta", "base"};
+
+        WebResponse.ByteTag tag = parser.getNextTag(names);
+        assertEquals("First tag", "Meta", tag.getName());
+        assertEquals("Meta content", "2", tag.getAttribute("content"));
+        tag = parser.getNextTag(names);
+        assertEquals("Second tag", "base", tag.getName());
+        assertEquals("Base href", "Base", tag.getAttribute("href"));
+        assertNull("More tags than expected", parser.getNextTag(names));
+    }
+
+
     /**
      * Test whether a base tag embedded within JavaScript in the header of a page confuses the parser.
      */
@@ -593,6 +780,30 @@ public class WebPageTest extends HttpUnitTest {
         assertTrue(resp.getText().indexOf("Success") >= 0);
     }
     
+    /**
+     * Verify that elements may be selected by XPath, and that an XPath predicate notices changes to the page.
+     */
+    @Test
+    public void testElementsMatchingXPath() throws Exception {
+        defineResource("SimplePage.html", "<html><body><table id='results'><tr><td>one</td><td>two</td></tr></table>"
+                + "<a href='first.html'>first</a><a href='second.html' class='chosen'>second</a></body></html>");
+        WebConversation wc = new WebConversation();
+        WebResponse resp = wc.getResponse(getHostPath() + "/SimplePage.html");
+
+        HTMLElement[] cells = resp.getElementsMatchingXPath("//TABLE[@id='results']//TD");
+        assertEquals("Number of cells", 2, cells.length);
+        assertEquals("Second cell", "two", cells[1].getText());
+
+        XPathPredicate predicate = new XPathPredicate("//A[@class='chosen']");
+        WebLink[] links = resp.getMatchingLinks(predicate, null);
+        assertEquals("Number of chosen links", 1, links.length);
+        assertEquals("Chosen link", "second", links[0].getText());
+
+        ((Element) resp.getLinks()[0].getNode()).setAttribute("class", "chosen");
+        assertEquals("Number of chosen links after change", 2, resp.getMatchingLinks(predicate, null).length);
+    }
+
+
     /**
      * test case for BR 2883515
      * @throws SAXException 
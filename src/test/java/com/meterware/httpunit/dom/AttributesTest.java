@@ -157,6 +157,46 @@ public class AttributesTest {
     }
 
 
+    /**
+     * Verifies that the attribute map reflects later changes to its element, and keeps the order of first assignment.
+     */
+    @Test
+    public void testAttributeMapIsLive() throws Exception {
+        NamedNodeMap attributes = _element.getAttributes();
+        assertEquals("Number of initial attributes", 0, attributes.getLength());
+
+        _element.setAttribute("width", "wide");
+        _element.setAttribute("height", "3");
+        _element.setAttribute("width", "narrow");
+        assertEquals("Number of attributes after assignment", 2, attributes.getLength());
+        assertEquals("first attribute", new NVPair("width", "narrow"), new NVPair((Attr) attributes.item(0)));
+        assertEquals("second attribute", new NVPair("height", "3"), new NVPair((Attr) attributes.item(1)));
+        assertNull("Item beyond the end", attributes.item(2));
+
+        _element.removeAttribute("width");
+        assertEquals("Number of attributes after removal", 1, attributes.getLength());
+        assertNull("removed attribute", attributes.getNamedItem("width"));
+    }
+
+
+    /**
+     * Verifies that HTML attribute names are stored in lower case and matched without regard to case.
+     */
+    @Test
+    public void testHtmlAttributeNameCase() throws Exception {
+        HTMLDocumentImpl document = new HTMLDocumentImpl();
+        Element element = document.createElement("body");
+        element.setAttribute("bgColor", "red");
+        assertEquals("attribute name", "bgcolor", element.getAttributes().item(0).getNodeName());
+        assertEquals("attribute value", "red", element.getAttribute("BGCOLOR"));
+        assertTrue("Did not recognize bgcolor attribute", element.hasAttribute("bgcolor"));
+
+        element.setAttribute("BgColor", "blue");
+        assertEquals("Number of attributes", 1, element.getAttributes().getLength());
+        assertEquals("replaced attribute value", "blue", element.getAttribute("bgcolor"));
+    }
+
+
     static class NVPair {
         private String _name;
         private String _value;
@@ -136,6 +136,20 @@ public class DomWindowTest extends AbstractHTMLElementTest {
         assertEquals("Replacement text", "A bit of text", _proxy.getReplacementText());
     }
 
+    /**
+     * Verifies that closing a document which was neither opened nor written leaves the page alone.
+     */
+    @Test
+    public void testCloseWithoutWrite() throws Exception {
+        DomWindow window = createMainWindow();
+        window.getDocument().close();
+        assertNull("Text replacement occurred", _proxy.getReplacementText());
+
+        window.getDocument().write("A bit of text");
+        window.getDocument().close();
+        assertEquals("Replacement text", "A bit of text", _proxy.getReplacementText());
+    }
+
     /**
      * Verifies that the window can report its URL, which it obtains via its prozy.
      */
@@ -32,6 +32,7 @@ import java.net.URL;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
 /**
@@ -170,6 +171,43 @@ public class HTMLDocumentTest extends AbstractHTMLElementTest {
     }
 
 
+    /**
+     * Verifies that lookups by id and name reflect changes made to the document after the first lookup.
+     */
+    @Test
+    public void testLookupsFollowDocumentChanges() throws Exception {
+        HTMLElement body = (HTMLElement) createElement("body");
+        _htmlDocument.setBody(body);
+
+        HTMLAnchorElement anchor1 = (HTMLAnchorElement) createElement("a");
+        anchor1.setName("see");
+        body.appendChild(anchor1);
+        assertNull("Element found before id was set", _htmlDocument.getElementById("sea"));
+        assertElementsByName(_htmlDocument, "see", new HTMLElement[]{anchor1});
+
+        anchor1.setId("sea");
+        assertSame("Element after id set", anchor1, _htmlDocument.getElementById("sea"));
+
+        HTMLImageElement image1 = (HTMLImageElement) createElement("img");
+        image1.setId("sea");
+        image1.setName("see");
+        body.insertBefore(image1, anchor1);
+        assertSame("First element with shared id", image1, _htmlDocument.getElementById("sea"));
+        assertElementsByName(_htmlDocument, "see", new HTMLElement[]{image1, anchor1});
+
+        body.removeChild(image1);
+        assertSame("Element after removal", anchor1, _htmlDocument.getElementById("sea"));
+        assertElementsByName(_htmlDocument, "see", new HTMLElement[]{anchor1});
+
+        anchor1.setName("sew");
+        assertElementsByName(_htmlDocument, "see", new HTMLElement[0]);
+        assertElementsByName(_htmlDocument, "sew", new HTMLElement[]{anchor1});
+
+        anchor1.removeAttribute("id");
+        assertNull("Element found after id was removed", _htmlDocument.getElementById("sea"));
+    }
+
+
     private void assertElementsByName(HTMLDocument document, String name, HTMLElement[] expectedElements) {
         NodeList actualElements = document.getElementsByName(name);
         HttpUserAgentTest.assertMatchingSet("Elements with name '" + name + "'", expectedElements, toArray(actualElements));
@@ -177,6 +177,49 @@ public class NodeTest {
     }
 
 
+    /**
+     * Verifies that tag lists are shared between requests, and that node lists reflect later changes to the document.
+     */
+    @Test
+    public void testLiveNodeLists() throws Exception {
+        NodeList children = _foo1.getChildNodes();
+        NodeList foos = _document.getElementsByTagName("foo");
+        assertSame("Repeated tag request", foos, _document.getElementsByTagName("foo"));
+
+        Element foo3 = _document.createElement("foo");
+        _bar2.appendChild(foo3);
+        verifyNodeList("foo after append", foos, new Element[]{_foo1, _foo2, foo3});
+
+        _foo1.removeChild(_text);
+        verifyNodeList("foo1 children after removal", children, new Node[]{_bar1, _foo2});
+        _foo1.removeChild(_foo2);
+        verifyNodeList("foo after removal", foos, new Element[]{_foo1, foo3});
+    }
+
+
+    /**
+     * Verifies that a child node list may be read in any order, and follows changes made while it is being read.
+     */
+    @Test
+    public void testChildNodeListItems() throws Exception {
+        NodeList children = _foo1.getChildNodes();
+        assertSame("Item 2", _foo2, children.item(2));
+        assertSame("Item 0", _bar1, children.item(0));
+        assertSame("Item 1", _text, children.item(1));
+        assertNull("Item past the end", children.item(3));
+        assertEquals("Length", 3, children.getLength());
+
+        Element foo3 = _document.createElement("foo");
+        _foo1.insertBefore(foo3, _text);
+        assertSame("Item 1 after insertion", foo3, children.item(1));
+        assertSame("Item 2 after insertion", _text, children.item(2));
+        assertEquals("Length after insertion", 4, children.getLength());
+
+        _foo1.removeChild(foo3);
+        assertEquals("Length after removal", 3, children.getLength());
+    }
+
+
     /**
      * Verifies that only children of a particular document may be added to its children.
      */
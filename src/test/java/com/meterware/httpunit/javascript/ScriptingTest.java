@@ -49,6 +49,26 @@ public class ScriptingTest extends AbstractJavaScriptTest {
     }
 
 
+    /**
+     * Verify that a script seen on one page is compiled once and reused by other conversations.
+     */
+    @Test
+    public void testCompiledScriptsShared() throws Exception {
+        defineResource("OnLoad.html", "<html><head><script>alert( 'loaded' );</script></head><body></body></html>");
+        CompiledScriptCache.clear();
+        long misses = CompiledScriptCache.getMissCount();
+        long hits = CompiledScriptCache.getHitCount();
+
+        for (int i = 0; i < 3; i++) {
+            WebConversation wc = new WebConversation();
+            wc.getResponse(getHostPath() + "/OnLoad.html");
+            assertEquals("Alert message", "loaded", wc.popNextAlert());
+        }
+        assertEquals("Scripts compiled", 1, CompiledScriptCache.getMissCount() - misses);
+        assertEquals("Scripts reused", 2, CompiledScriptCache.getHitCount() - hits);
+    }
+
+
     @Test
     public void testJavaScriptURLWithNoValue() throws Exception {
         defineResource("OnCommand.html", "<html><head></head>" +
@@ -366,6 +386,40 @@ public class ScriptingTest extends AbstractJavaScriptTest {
     }
 
 
+    /**
+     * Verifies that clients with their own options throw or record script errors according to those options,
+     * and that each keeps its own error messages.
+     */
+    @Test
+    public void testScriptErrorsKeptPerClient() throws Exception {
+        defineResource("OnCommand.html", "<html><head></head>" +
+                "<body onLoad='noSuchFunction()'>" +
+                "</body>");
+        HttpUnitOptions.clearScriptErrorMessages();
+        WebConversation recording = new WebConversation();
+        recording.setOptions(WebClientOptions.fromDefaults().withExceptionsThrownOnScriptError(false));
+        WebConversation other = new WebConversation();
+        other.setOptions(WebClientOptions.fromDefaults().withExceptionsThrownOnScriptError(false));
+        WebConversation throwing = new WebConversation();
+        throwing.setOptions(WebClientOptions.fromDefaults().withExceptionsThrownOnScriptError(true));
+
+        recording.getResponse(getHostPath() + "/OnCommand.html");
+        assertEquals("Script failures logged for the client", 1, recording.getScriptErrorLog().getErrorMessages().length);
+        assertEquals("Script failures logged for another client", 0, other.getScriptErrorLog().getErrorMessages().length);
+        assertEquals("Script failures logged in the defaults", 0, HttpUnitOptions.getScriptErrorMessages().length);
+
+        boolean oldDebug = HttpUnitUtils.setEXCEPTION_DEBUG(false);
+        try {
+            throwing.getResponse(getHostPath() + "/OnCommand.html");
+            fail("Should have thrown an exception for the undefined function");
+        } catch (ScriptException e) {
+        } finally {
+            HttpUnitUtils.setEXCEPTION_DEBUG(oldDebug);
+        }
+        assertEquals("Script failures logged for the throwing client", 0, throwing.getScriptErrorLog().getErrorMessages().length);
+    }
+
+
     @Test
     public void testConfirmationDialog() throws Exception {
         defineWebPage("OnCommand", "<a href='NextPage' id='go' onClick='return confirm( \"go on?\" );'>");
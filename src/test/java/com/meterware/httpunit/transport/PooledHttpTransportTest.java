@@ -0,0 +1,264 @@
+package com.meterware.httpunit.transport;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+import com.meterware.httpunit.*;
+import com.meterware.pseudoserver.DeliveryProfile;
+import com.meterware.pseudoserver.PseudoServlet;
+import com.meterware.pseudoserver.WebResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the pooled HTTP transport.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ */
+public class PooledHttpTransportTest extends HttpUnitTest {
+
+    private PooledHttpTransport _transport;
+
+
+    @Before
+    public void setUpTransport() throws Exception {
+        _transport = new PooledHttpTransport();
+    }
+
+
+    @After
+    public void tearDownTransport() throws Exception {
+        _transport.close();
+    }
+
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        defineResource("first.html", "the first page");
+        defineResource("second.html", "the second page");
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        assertEquals("first page", "the first page", wc.getResponse(getHostPath() + "/first.html").getText().trim());
+        assertEquals("second page", "the second page", wc.getResponse(getHostPath() + "/second.html").getText().trim());
+        assertEquals("first page again", "the first page", wc.getResponse(getHostPath() + "/first.html").getText().trim());
+
+        assertEquals("requests sent", 3, _transport.getRequestCount());
+        assertEquals("connections opened", 1, _transport.getConnectionsOpened());
+        assertEquals("connections reused", 2, _transport.getConnectionsReused());
+        assertEquals("idle connections", 1, _transport.getIdleConnectionCount());
+    }
+
+
+    @Test
+    public void testSharedAmongConversations() throws Exception {
+        defineResource("page.html", "a page");
+
+        for (int i = 0; i < 3; i++) {
+            WebConversation wc = new WebConversation();
+            wc.setTransport(_transport);
+            assertEquals("page contents", "a page", wc.getResponse(getHostPath() + "/page.html").getText().trim());
+        }
+        assertEquals("connections opened", 1, _transport.getConnectionsOpened());
+    }
+
+
+    @Test
+    public void testPostThroughPool() throws Exception {
+        defineResource("echo", new PseudoServlet() {
+            public WebResource getPostResponse() {
+                return new WebResource("<html><body>Hello, " + getParameter("name")[0] + "</body></html>");
+            }
+        });
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        for (int i = 0; i < 2; i++) {
+            WebRequest request = new PostMethodWebRequest(getHostPath() + "/echo");
+            request.setParameter("name", "Joe" + i);
+            assertEquals("response", "Hello, Joe" + i, wc.getResponse(request).getText().trim());
+        }
+        assertEquals("connections opened", 1, _transport.getConnectionsOpened());
+    }
+
+
+    @Test
+    public void testProxiedConnectionReuse() throws Exception {
+        defineResource("http://someserver.com/sample", "Get this", "text/plain");
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        wc.setProxyServer("localhost", getHostPort());
+        assertEquals("first response", "Get this", wc.getResponse("http://someserver.com/sample").getText().trim());
+        assertEquals("second response", "Get this", wc.getResponse("http://someserver.com/sample").getText().trim());
+        assertEquals("connections opened", 1, _transport.getConnectionsOpened());
+    }
+
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        defineResource("error.html", "not today", 501);
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        wc.setExceptionsThrownOnErrorStatus(false);
+        WebResponse response = wc.getResponse(getHostPath() + "/error.html");
+        assertEquals("Response code", 501, response.getResponseCode());
+        assertEquals("Message contents", "not today", response.getText().trim());
+    }
+
+
+    /**
+     * Verifies that the connection used for an error response which is reported as an exception,
+     * and whose body is therefore never examined, is returned to the pool.
+     */
+    @Test
+    public void testErrorResponseConnectionReused() throws Exception {
+        defineResource("page.html", "a page");
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        try {
+            wc.getResponse(getHostPath() + "/missing.html");
+            fail("Should have thrown an exception for the missing page");
+        } catch (HttpNotFoundException e) {
+        }
+        assertEquals("idle connections after error", 1, _transport.getIdleConnectionCount());
+
+        assertEquals("page contents", "a page", wc.getResponse(getHostPath() + "/page.html").getText().trim());
+        assertEquals("connections opened", 1, _transport.getConnectionsOpened());
+        assertEquals("connections reused", 1, _transport.getConnectionsReused());
+    }
+
+
+    /**
+     * Verifies that the body of a response which is not text is left unread until requested, and that its
+     * connection is returned to the pool once the body has been read.
+     */
+    @Test
+    public void testNonTextResponseConnectionReused() throws Exception {
+        defineResource("image.gif", new byte[]{1, 2, 3, 4}, "image/gif");
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        WebResponse response = wc.getResponse(getHostPath() + "/image.gif");
+        assertEquals("idle connections before reading", 0, _transport.getIdleConnectionCount());
+        assertEquals("body length", 4, response.getBytes().length);
+        assertEquals("idle connections after reading", 1, _transport.getIdleConnectionCount());
+
+        wc.getResponse(getHostPath() + "/image.gif").getBytes();
+        assertEquals("connections opened", 1, _transport.getConnectionsOpened());
+    }
+
+
+    /**
+     * Verifies that closing the unread body of a small response returns its connection to the pool.
+     */
+    @Test
+    public void testClosedResponseConnectionReused() throws Exception {
+        defineResource("image.gif", new byte[]{1, 2, 3, 4}, "image/gif");
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        wc.getResponse(getHostPath() + "/image.gif").getInputStream().close();
+        assertEquals("idle connections", 1, _transport.getIdleConnectionCount());
+
+        wc.getResponse(getHostPath() + "/image.gif").getInputStream().close();
+        assertEquals("connections opened", 1, _transport.getConnectionsOpened());
+    }
+
+
+    @Test
+    public void testNoIdleConnectionsKept() throws Exception {
+        defineResource("page.html", "a page");
+        _transport.setMaxIdleConnectionsPerHost(0);
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        wc.getResponse(getHostPath() + "/page.html");
+        wc.getResponse(getHostPath() + "/page.html");
+
+        assertEquals("connections opened", 2, _transport.getConnectionsOpened());
+        assertEquals("connections evicted", 2, _transport.getConnectionsEvicted());
+        assertEquals("idle connections", 0, _transport.getIdleConnectionCount());
+    }
+
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        defineResource("page.html", "a page");
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        wc.getResponse(getHostPath() + "/page.html");
+        assertEquals("idle connections", 1, _transport.getIdleConnectionCount());
+
+        _transport.setMaxIdleTime(-1);
+        _transport.evictIdleConnections();
+        assertEquals("idle connections after eviction", 0, _transport.getIdleConnectionCount());
+        assertEquals("connections evicted", 1, _transport.getConnectionsEvicted());
+    }
+
+
+    /**
+     * Verifies that a connection still in use when the transport is closed is not returned to the pool
+     * once its response has been read.
+     */
+    @Test
+    public void testConnectionClosedAfterTransportClosed() throws Exception {
+        defineResource("image.gif", new byte[]{1, 2, 3, 4}, "image/gif");
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        WebResponse response = wc.getResponse(getHostPath() + "/image.gif");
+        _transport.close();
+        assertEquals("body length", 4, response.getBytes().length);
+        assertEquals("idle connections", 0, _transport.getIdleConnectionCount());
+    }
+
+
+    /**
+     * Verifies that a body cut short by the server closing the connection is reported as an error,
+     * rather than treated as complete.
+     */
+    @Test
+    public void testPrematureEndOfBody() throws Exception {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 200; i++) sb.append("0123456789");
+        defineResource("truncated.txt", sb.toString(), "text/plain");
+        DeliveryProfile profile = new DeliveryProfile();
+        profile.setDropAfter(1000);
+        getServer().setDeliveryProfile("truncated.txt", profile);
+
+        WebConversation wc = new WebConversation();
+        wc.setTransport(_transport);
+        try {
+            wc.getResponse(getHostPath() + "/truncated.txt").getText();
+            fail("Should have reported the truncated body");
+        } catch (IOException e) {
+        }
+        assertEquals("idle connections", 0, _transport.getIdleConnectionCount());
+    }
+
+}
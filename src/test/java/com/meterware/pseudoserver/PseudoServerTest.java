@@ -27,17 +27,24 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.BufferedOutputStream;
 import java.net.HttpURLConnection;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import static java.lang.String.valueOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 public class PseudoServerTest {
@@ -353,6 +360,139 @@ public class PseudoServerTest {
     }
 
 
+    /**
+     * Verifies that a persistent connection stays usable while idle for longer than the socket timeout.
+     */
+    @Test
+    public void testIdlePersistentConnection() throws Exception {
+        PseudoServer server = new PseudoServer(50);
+        try {
+            server.setResource("/page", "a page");
+            SocketConnection conn = new SocketConnection("localhost", server.getConnectedPort());
+            assertEquals("first response", "a page", new String(conn.getResponse("GET", "/page").getBody()));
+            Thread.sleep(200);
+            assertEquals("response after idle", "a page", new String(conn.getResponse("GET", "/page").getBody()));
+            conn.close();
+        } finally {
+            server.shutDown();
+        }
+    }
+
+
+    @Test
+    public void testFirstByteDelay() throws Exception {
+        support.defineResource("/slow", "a slow page");
+        DeliveryProfile profile = new DeliveryProfile();
+        profile.setFirstByteDelay(200);
+        support.getServer().setDeliveryProfile("/slow", profile);
+
+        SocketConnection conn = new SocketConnection("localhost", getHostPort());
+        long start = System.currentTimeMillis();
+        assertEquals("retrieved body", "a slow page", new String(conn.getResponse("GET", "/slow").getBody()));
+        assertTrue("Response arrived too soon", System.currentTimeMillis() - start >= 200);
+    }
+
+
+    @Test
+    public void testServletDeliveryProfile() throws Exception {
+        support.defineResource("/slowServlet", new PseudoServlet() {
+            public WebResource getGetResponse() {
+                return new WebResource("a slow servlet", "text/plain");
+            }
+        });
+        DeliveryProfile profile = new DeliveryProfile();
+        profile.setFirstByteDelay(200);
+        support.getServer().setDeliveryProfile("/slowServlet", profile);
+
+        SocketConnection conn = new SocketConnection("localhost", getHostPort());
+        long start = System.currentTimeMillis();
+        assertEquals("retrieved body", "a slow servlet", new String(conn.getResponse("GET", "/slowServlet").getBody()));
+        assertTrue("Response arrived too soon", System.currentTimeMillis() - start >= 200);
+    }
+
+
+    /**
+     * Verifies that each response's jitter depends only on the seed and the response's place in the sequence.
+     */
+    @Test
+    public void testRepeatableJitter() throws Exception {
+        DeliveryProfile first = new DeliveryProfile();
+        first.setFirstByteJitter(1000);
+        DeliveryProfile second = new DeliveryProfile();
+        second.setFirstByteJitter(1000);
+        second.setJitterSeed(DeliveryProfile.DEFAULT_JITTER_SEED);
+
+        boolean varied = false;
+        for (int i = 0; i < 20; i++) {
+            int jitter = first.getFirstByteJitter(i);
+            assertTrue("Jitter out of range: " + jitter, jitter >= 0 && jitter <= 1000);
+            assertEquals("Jitter for response " + i, jitter, second.getFirstByteJitter(i));
+            varied |= jitter != first.getFirstByteJitter(0);
+        }
+        assertTrue("Jitter should vary between responses", varied);
+
+        second.setJitterSeed(42);
+        assertFalse("Jitter should depend on the seed", first.getFirstByteJitter(0) == second.getFirstByteJitter(0)
+                                                      && first.getFirstByteJitter(1) == second.getFirstByteJitter(1));
+    }
+
+
+    /**
+     * Verifies that paced chunks are written by the thread which delivers the response, so that one slow
+     * connection cannot hold up the output of another.
+     */
+    @Test
+    public void testPacingOnConnectionThread() throws Exception {
+        DeliveryProfile profile = new DeliveryProfile();
+        profile.setChunkSize(4);
+        profile.setChunkDelay(50);
+
+        final Set writers = Collections.synchronizedSet(new HashSet());
+        ByteArrayOutputStream received = new ByteArrayOutputStream() {
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                writers.add(Thread.currentThread());
+                super.write(bytes, offset, length);
+            }
+        };
+        long start = System.currentTimeMillis();
+        assertTrue("Should have sent the whole message", profile.deliver("0123456789".getBytes(), received));
+        assertEquals("delivered message", "0123456789", received.toString());
+        assertTrue("Chunks arrived too soon", System.currentTimeMillis() - start >= 100);
+        assertEquals("Threads which wrote chunks", Collections.singleton(Thread.currentThread()), writers);
+    }
+
+
+    @Test
+    public void testUndefinedResourceDeliveryProfile() throws Exception {
+        try {
+            support.getServer().setDeliveryProfile("/undefined", new DeliveryProfile());
+            fail("Should have rejected a profile for an undefined resource");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+
+    @Test
+    public void testConnectionDrop() throws Exception {
+        support.defineResource("/dropped", "this page is cut short");
+        DeliveryProfile profile = new DeliveryProfile();
+        profile.setDropAfter(12);
+        profile.setChunkSize(5);
+        support.getServer().setDeliveryProfile(profile);
+
+        Socket socket = new Socket("localhost", getHostPort());
+        OutputStream os = socket.getOutputStream();
+        InputStream is = new BufferedInputStream(socket.getInputStream());
+        os.write("GET /dropped HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while (-1 != (b = is.read())) sb.append((char) b);
+        assertEquals("Partial response", "HTTP/1.1 200", sb.toString());
+        socket.close();
+    }
+
+
     private class TestMethodServlet extends PseudoServlet {
 
         private static final String GET_DATA = "This is from the TestMethodServlet - GET";
@@ -398,6 +538,22 @@ public class PseudoServerTest {
     }
 
 
+    @Test
+    public void testClasspathResourceReused() throws Exception {
+        support.mapToClasspath("/some/classes");
+        String path = "/some/classes/" + SocketConnection.class.getName().replace('.', '/') + ".class";
+
+        SocketConnection conn = new SocketConnection("localhost", getHostPort());
+        SocketConnection.SocketResponse first = conn.getResponse("GET", path);
+        SocketConnection.SocketResponse second = conn.getResponse("GET", path);
+        assertEquals("Content length", valueOf(first.getBody().length), second.getHeader("Content-Length"));
+        assertTrue("Class contents changed", Arrays.equals(first.getBody(), second.getBody()));
+
+        assertEquals("Missing class status", HttpURLConnection.HTTP_NOT_FOUND,
+                conn.getResponse("GET", "/some/classes/NoSuchClass.class").getResponseCode());
+    }
+
+
     @Test
     public void testPseudoServletRequestAccess() throws Exception {
         support.defineResource("/properties", new PseudoServlet() {
@@ -0,0 +1,81 @@
+package com.meterware.servletunit;
+/********************************************************************************************************************
+ * $Id$
+ *
+ * Copyright (c) 2013, Russell Gold
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions
+ * of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ *******************************************************************************************************************/
+
+import org.junit.Test;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the buffer which holds request and response bodies.
+ *
+ * @author <a href="mailto:russgold@httpunit.org">Russell Gold</a>
+ */
+public class BodyBufferTest {
+
+    @Test
+    public void testSmallBodyKeptInMemory() throws Exception {
+        BodyBuffer buffer = new BodyBuffer(16);
+        buffer.write("0123456789".getBytes());
+        assertFalse("Should still be in memory", buffer.isOnDisk());
+        assertEquals("size", 10, buffer.size());
+        assertEquals("contents", "0123456789", new String(buffer.toByteArray()));
+    }
+
+
+    @Test
+    public void testLargeBodyMovedToDisk() throws Exception {
+        BodyBuffer buffer = new BodyBuffer(16);
+        buffer.write("0123456789".getBytes());
+        buffer.write('a');
+        buffer.write("bcdefghijklmnop".getBytes());
+        assertTrue("Should have moved to disk", buffer.isOnDisk());
+        assertEquals("size", 26, buffer.size());
+        buffer.close();
+
+        assertEquals("contents", "0123456789abcdefghijklmnop", new String(buffer.toByteArray()));
+        assertEquals("contents read again", "0123456789abcdefghijklmnop", readAll(buffer.newInputStream()));
+    }
+
+
+    @Test
+    public void testDisposeDeletesFile() throws Exception {
+        BodyBuffer buffer = new BodyBuffer(16);
+        buffer.write("0123456789abcdefghijklmnop".getBytes());
+        assertTrue("Should have moved to disk", buffer.isOnDisk());
+
+        buffer.dispose();
+        assertFalse("Should no longer be on disk", buffer.isOnDisk());
+        assertEquals("size after dispose", 0, buffer.size());
+        assertEquals("contents after dispose", "", readAll(buffer.newInputStream()));
+    }
+
+
+    private String readAll(InputStream stream) throws Exception {
+        StringBuffer sb = new StringBuffer();
+        for (int aByte; (aByte = stream.read()) != -1;) sb.append((char) aByte);
+        stream.close();
+        return sb.toString();
+    }
+
+}
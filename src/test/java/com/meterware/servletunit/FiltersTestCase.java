@@ -259,6 +259,36 @@ public class FiltersTestCase {
     }
 
 
+    @Test
+    public void testFilterMappingRemembered() throws Exception {
+        FilterUrlMap map = new FilterUrlMap();
+        map.put("/foo/*", FILTER1);
+
+        FilterMetaData[] first = map.getMatchingFilters("/foo/index.html");
+        assertSame("Repeated lookup", first, map.getMatchingFilters("/foo/index.html"));
+
+        map.put("*.html", FILTER2);
+        checkMapping(map, "/foo/index.html", new FilterMetaData[]{FILTER1, FILTER2});
+    }
+
+
+    @Test
+    public void testRecentlyUsedMappingKept() throws Exception {
+        FilterUrlMap map = new FilterUrlMap();
+        map.put("/foo/*", FILTER1);
+
+        FilterMetaData[] recent = map.getMatchingFilters("/foo/index.html");
+        FilterMetaData[] stale = map.getMatchingFilters("/foo/stale.html");
+        for (int i = 0; i < WebApplication.MAX_CACHED_PATHS; i++) {
+            map.getMatchingFilters("/foo/page" + i + ".html");
+            map.getMatchingFilters("/foo/index.html");
+        }
+        assertSame("Recently used lookup", recent, map.getMatchingFilters("/foo/index.html"));
+        assertNotSame("Least recently used lookup", stale, map.getMatchingFilters("/foo/stale.html"));
+        checkMapping(map, "/foo/stale.html", new FilterMetaData[]{FILTER1});
+    }
+
+
     private void checkMapping(FilterUrlMap map, String urlString, FilterMetaData[] expectedFilters) {
         assertEquals("Filters selected for '" + urlString + "'",
                 Arrays.asList(expectedFilters),
@@ -845,6 +845,67 @@ public class HttpServletRequestTest extends ServletUnitTest {
     }
 
 
+    /**
+     * verify that a request body supplied as a stream is read by the servlet without being parsed.
+     */
+    @Test
+    public void testStreamedMessageBody() throws Exception {
+        byte[] body = "some uploaded content".getBytes("ISO-8859-1");
+        WebRequest wr = new PostMethodWebRequest("http://localhost/simple", new ByteArrayInputStream(body), "text/plain");
+        HttpServletRequest request = new ServletUnitHttpRequest(NULL_SERVLET_REQUEST, wr, _context, new Hashtable(), new ByteArrayInputStream(body), body.length);
+        assertEquals("Content length", body.length, request.getContentLength());
+
+        byte[] buffer = new byte[body.length];
+        assertEquals("bytes read", body.length, request.getInputStream().read(buffer));
+        assertEquals("Request content", "some uploaded content", new String(buffer, "ISO-8859-1"));
+    }
+
+
+    /**
+     * verify that a form body supplied as a stream is still parsed for parameters.
+     */
+    @Test
+    public void testStreamedParameterBody() throws Exception {
+        byte[] body = "param1=red&param2=blue".getBytes("ISO-8859-1");
+        WebRequest wr = new PostMethodWebRequest("http://localhost/simple");
+        ServletUnitHttpRequest request = new ServletUnitHttpRequest(NULL_SERVLET_REQUEST, wr, _context, new Hashtable(), new ByteArrayInputStream(body), body.length);
+        assertEquals("param1 value", "red", request.getParameter("param1"));
+        assertEquals("param2 value", "blue", request.getParameter("param2"));
+    }
+
+
+    /**
+     * verify that the client hands the request body to a streaming factory as a stream.
+     */
+    @Test
+    public void testClientStreamsMessageBody() throws Exception {
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final long[] length = new long[1];
+        InvocationContextFactory factory = new StreamingInvocationContextFactory() {
+            public InvocationContext newInvocation(ServletUnitClient client, FrameSelector targetFrame, WebRequest request, Dictionary clientHeaders,
+                                                   InputStream messageBody, long contentLength) throws IOException {
+                length[0] = contentLength;
+                for (int aByte; (aByte = messageBody.read()) != -1;) received.write(aByte);
+                return null;
+            }
+
+            public InvocationContext newInvocation(ServletUnitClient client, FrameSelector targetFrame, WebRequest request, Dictionary clientHeaders, byte[] messageBody) {
+                throw new IllegalStateException("Should have used the streaming form");
+            }
+
+            public HttpSession getSession(String sessionId, boolean create) {
+                return null;
+            }
+        };
+
+        byte[] body = "some uploaded content".getBytes("ISO-8859-1");
+        WebRequest wr = new PostMethodWebRequest("http://localhost/simple", new ByteArrayInputStream(body), "text/plain");
+        ServletUnitClient.newClient(factory).newInvocation(wr);
+        assertEquals("content length", body.length, length[0]);
+        assertEquals("Request content", "some uploaded content", received.toString("ISO-8859-1"));
+    }
+
+
     @Test
     public void testSuppliedCharEncoding() throws Exception {   // xxx turn this back on
         String hebrewValue = "\u05d0\u05d1\u05d2\u05d3";
@@ -27,6 +27,7 @@ import org.junit.Test;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -196,6 +197,92 @@ public class HttpServletResponseTest extends ServletUnitTest {
         assertTrue("Should be committed now", servletResponse.isCommitted());
     }
 
+
+    /**
+     * verify that a response is committed once its buffer has been filled
+     */
+    @Test
+    public void testCommitWhenBufferFilled() throws Exception {
+        ServletUnitHttpResponse servletResponse = new ServletUnitHttpResponse();
+        servletResponse.setBufferSize(16);
+        assertEquals("buffer size", 16, servletResponse.getBufferSize());
+        ServletOutputStream out = servletResponse.getOutputStream();
+        out.write(new byte[16]);
+        assertFalse("Should not be committed with a full buffer", servletResponse.isCommitted());
+        out.write(0);
+        assertTrue("Should be committed after buffer overflow", servletResponse.isCommitted());
+        try {
+            servletResponse.resetBuffer();
+            fail("Should not have permitted resetBuffer after buffer overflow");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+
+    /**
+     * verify that a response may not be reset once more than the default buffer size has been written,
+     * but may be if the buffer was enlarged first, even when the body has moved to a temporary file
+     */
+    @Test
+    public void testResetAfterLargeWrite() throws Exception {
+        ServletUnitHttpResponse servletResponse = new ServletUnitHttpResponse();
+        servletResponse.getOutputStream().write(new byte[9 * 1024]);
+        assertTrue("Should be committed after writing more than 8K", servletResponse.isCommitted());
+        try {
+            servletResponse.reset();
+            fail("Should not have permitted reset after writing more than 8K");
+        } catch (IllegalStateException e) {
+        }
+
+        servletResponse = new ServletUnitHttpResponse();
+        servletResponse.setBufferSize(4 * 1024 * 1024);
+        ServletOutputStream out = servletResponse.getOutputStream();
+        for (int i = 0; i < 2 * 1024; i++) out.write(new byte[1024]);
+        assertFalse("Should not be committed within the buffer size", servletResponse.isCommitted());
+        servletResponse.reset();
+        assertEquals("contents length after reset", 0, servletResponse.getContentsLength());
+        servletResponse.getOutputStream().print("something");
+        assertEquals("contents after reset", "something", new String(servletResponse.getContents()));
+    }
+
+
+    /**
+     * verify that flushing the writer commits the response, and that reading the body does not
+     */
+    @Test
+    public void testCommitOnWriterFlush() throws Exception {
+        ServletUnitHttpResponse servletResponse = new ServletUnitHttpResponse();
+        PrintWriter pw = servletResponse.getWriter();
+        pw.print("something");
+        assertEquals("contents length", 9, servletResponse.getContentsLength());
+        assertFalse("Should not be committed yet", servletResponse.isCommitted());
+        pw.flush();
+        assertTrue("Should be committed now", servletResponse.isCommitted());
+    }
+
+
+    /**
+     * verify that a large body reaches the client intact
+     */
+    @Test
+    public void testLargeBody() throws Exception {
+        ServletUnitHttpResponse servletResponse = new ServletUnitHttpResponse();
+        servletResponse.setContentType("application/octet-stream");
+        byte[] block = new byte[1024];
+        for (int i = 0; i < block.length; i++) block[i] = (byte) i;
+        ServletOutputStream out = servletResponse.getOutputStream();
+        for (int i = 0; i < 1024; i++) out.write(block);
+
+        WebResponse response = new ServletUnitWebResponse(null, FrameSelector.TOP_FRAME, null, servletResponse);
+        InputStream in = response.getInputStream();
+        byte[] received = new byte[block.length];
+        int total = 0;
+        for (int count; (count = in.read(received)) != -1; total += count) {
+            assertEquals("byte at " + total, (byte) total, received[0]);
+        }
+        assertEquals("body length", 1024 * 1024, total);
+    }
+
     @Test
     public void testSingleHeaders() throws Exception {
         ServletUnitHttpResponse servletResponse = new ServletUnitHttpResponse();
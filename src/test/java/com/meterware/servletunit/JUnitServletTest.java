@@ -111,6 +111,33 @@ public class JUnitServletTest {
     }
 
 
+    @Test
+    public void testConcurrentStreamedResults() throws Exception {
+        ServletUnitClient client = newClient();
+
+        WebResponse wr = client.getResponse("http://localhost/JUnit?threads=3&stream=true&test=" + FailingTests.class.getName());
+        final WebTable testsTable = wr.getTableWithID("tests");
+        assertNotNull("Did not find tests table", testsTable);
+        assertEquals("Num tests", 3, testsTable.getRowCount());
+        final WebTable resultsTable = wr.getTableWithID("results");
+        assertNotNull("Did not find results table", resultsTable);
+        final String[][] results = resultsTable.asText();
+        assertEquals("First header", "3 tests", results[0][0]);
+        assertEquals("Status", "Problems Occurred", results[0][2]);
+    }
+
+
+    @Test
+    public void testStreamedTextFormat() throws Exception {
+        ServletUnitClient client = newClient();
+
+        WebResponse wr = client.getResponse("http://localhost/JUnit?format=text&stream=true&test=" + FailingTests.class.getName());
+        String expectedEnd = FailingTests.class.getName() + " (3 tests): Problems Occurred";
+        assertTrue("Results (" + wr.getText() + ") should end with: " + expectedEnd, wr.getText().trim().endsWith(expectedEnd));
+        assertTrue("Results (" + wr.getText() + ") should report a failure", wr.getText().indexOf("): failure") >= 0);
+    }
+
+
     @Test
     public void testSomeFailuresTextFormat() throws Exception {
         ServletUnitClient client = newClient();
@@ -38,6 +38,8 @@ import java.util.Locale;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -101,6 +103,25 @@ public class RequestContextTest extends HttpUnitTest {
     }
 
 
+    /**
+     * Verify that the parameter map is a shared, unmodifiable view combining query string and message body.
+     */
+    @Test
+    public void testParameterMapView() throws Exception {
+        RequestContext rc = new RequestContext(new URL("http://localhost/basic?param=red&flag"));
+        rc.setMessageBody("param=blue&param1=old".getBytes());
+        Map map = rc.getParameterMap();
+        assertMatchingSet("param values", new String[]{"red", "blue"}, (Object[]) map.get("param"));
+        assertMatchingSet("flag values", new String[]{""}, (Object[]) map.get("flag"));
+        assertSame("repeated parameter map", map, rc.getParameterMap());
+        try {
+            map.put("param2", new String[]{"new"});
+            fail("Should not have been able to modify the parameter map");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+
     class DummyHttpServletRequest implements HttpServletRequest {
 
         private RequestContext _requestContext;
@@ -25,6 +25,11 @@ import org.junit.Test;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -36,6 +41,7 @@ public class SessionTest extends ServletUnitTest {
 
     private ServletUnitContext _context;
     private ServletContext _servletContext = new ServletUnitServletContext(null);
+    private List _destroyedSessions = Collections.synchronizedList(new ArrayList());
 
 
     @Before
@@ -45,6 +51,7 @@ public class SessionTest extends ServletUnitTest {
             }
 
             public void sendSessionDestroyed(HttpSession session) {
+                _destroyedSessions.add(session);
             }
 
             public void sendAttributeAdded(HttpSession session, String name, Object value) {
@@ -118,6 +125,70 @@ public class SessionTest extends ServletUnitTest {
     }
 
 
+    @Test
+    public void testSessionExpiry() throws Exception {
+        ServletUnitHttpSession session = _context.newSession();
+        String id = session.getId();
+        session.setMaxInactiveInterval(1);
+        assertFalse("Session expired too soon", session.isExpired(System.currentTimeMillis()));
+
+        Thread.sleep(1100);
+        assertNull("Expired session still returned", _context.getSession(id));
+        assertTrue("Expired session not invalidated", session.isInvalid());
+        assertEquals("Destroyed sessions", 1, _destroyedSessions.size());
+        assertEquals("Sessions in context", 0, _context.getSessionIDs().size());
+    }
+
+
+    @Test
+    public void testExpiredSessionsSweptWithoutNewSession() throws Exception {
+        ServletUnitHttpSession first = _context.newSession();
+        ServletUnitHttpSession second = _context.newSession();
+        first.setMaxInactiveInterval(1);
+        second.setMaxInactiveInterval(1);
+
+        Thread.sleep(Math.max(1100, ServletUnitContext.SWEEP_INTERVAL + 100));
+        assertNull("Unknown session returned", _context.getSession("12345"));
+        assertEquals("Destroyed sessions", 2, _destroyedSessions.size());
+        assertTrue("Expired session not invalidated", first.isInvalid() && second.isInvalid());
+        assertEquals("Sessions in context", 0, _context.getSessionIDs().size());
+    }
+
+
+    @Test
+    public void testMaxSessions() throws Exception {
+        _context.setMaxSessions(2);
+        ServletUnitHttpSession first = _context.newSession();
+        ServletUnitHttpSession second = _context.newSession();
+        String secondId = second.getId();
+        _context.getSession(first.getId());
+
+        _context.newSession();
+        assertNull("Least recently used session not evicted", _context.getSession(secondId));
+        assertNotNull("Recently used session evicted", _context.getSession(first.getId()));
+        assertSame("Destroyed session", second, _destroyedSessions.get(0));
+        assertEquals("Sessions in context", 2, _context.getSessionIDs().size());
+    }
+
+
+    @Test
+    public void testUniqueIdsAcrossThreads() throws Exception {
+        final Set ids = Collections.synchronizedSet(new HashSet());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 500; j++) ids.add(_context.newSession().getId());
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) threads[i].join();
+        assertEquals("Distinct session IDs", 2000, ids.size());
+        assertEquals("Sessions in context", 2000, _context.getSessionIDs().size());
+    }
+
+
 }
 
 
@@ -41,6 +41,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -84,6 +88,49 @@ public class StatelessTest {
     }
 
 
+    /**
+     * Drives a single runner from several clients at once, verifying that the servlet is initialized once
+     * and that each request sees only its own parameters.
+     */
+    @Test
+    public void testConcurrentClients() throws Exception {
+        final int numClients = 8;
+        final int numRequests = 50;
+        final ServletRunner sr = new ServletRunner();
+        sr.registerServlet("echo", ConcurrentEchoServlet.class.getName());
+        ConcurrentEchoServlet.reset();
+
+        final List failures = Collections.synchronizedList(new ArrayList());
+        Thread[] threads = new Thread[numClients];
+        for (int i = 0; i < numClients; i++) {
+            final int clientNum = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    ServletUnitClient client = sr.newClient();
+                    try {
+                        for (int j = 0; j < numRequests; j++) {
+                            String value = clientNum + "-" + j;
+                            WebRequest request = new GetMethodWebRequest("http://localhost/echo");
+                            request.setParameter("value", value);
+                            String reply = client.getResponse(request).getText().trim();
+                            if (!reply.equals(value)) failures.add("expected " + value + " but got " + reply);
+                        }
+                    } catch (Exception e) {
+                        failures.add(e.toString());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < numClients; i++) threads[i].join();
+
+        assertEquals("Failures", Collections.EMPTY_LIST, failures);
+        assertEquals("Servlet initializations", 1, ConcurrentEchoServlet.getNumInits());
+        assertEquals("Requests served", numClients * numRequests, ConcurrentEchoServlet.getNumRequests());
+        sr.shutDown();
+    }
+
+
     @Test
     public void testServletAccessByClassName() throws Exception {
         ServletRunner sr = new ServletRunner();
@@ -289,6 +336,44 @@ public class StatelessTest {
     }
 
 
+    static class ConcurrentEchoServlet extends HttpServlet {
+
+        private static AtomicInteger _numInits = new AtomicInteger();
+        private static AtomicInteger _numRequests = new AtomicInteger();
+
+
+        static void reset() {
+            _numInits.set(0);
+            _numRequests.set(0);
+        }
+
+
+        static int getNumInits() {
+            return _numInits.get();
+        }
+
+
+        static int getNumRequests() {
+            return _numRequests.get();
+        }
+
+
+        public void init() throws ServletException {
+            super.init();
+            _numInits.incrementAndGet();
+        }
+
+
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            _numRequests.incrementAndGet();
+            resp.setContentType("text/plain");
+            PrintWriter pw = resp.getWriter();
+            pw.print(req.getParameter("value"));
+            pw.close();
+        }
+    }
+
+
     static class ParameterServlet extends HttpServlet {
 
         static String RESPONSE_TEXT = "the desired content\r\n";
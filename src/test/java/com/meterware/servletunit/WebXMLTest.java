@@ -45,9 +45,16 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -463,6 +470,72 @@ public class WebXMLTest {
     }
 
 
+    /**
+     * Verifies that servlets sharing a load order are initialized concurrently, and that each load order finishes
+     * before the next one starts. Each servlet's init() waits until every servlet of its load order has entered init(),
+     * which can only happen if they are initialized at the same time.
+     */
+    @Test
+    public void testSharedLoadOrder() throws Exception {
+        WebXMLString wxs = new WebXMLString();
+        for (int i = 0; i < 2; i++) {
+            wxs.addServlet("first" + i, "/first" + i, RendezvousServlet.class);
+            wxs.setLoadOnStartup("first" + i, 1);
+        }
+        for (int i = 0; i < 4; i++) {
+            wxs.addServlet("second" + i, "/second" + i, RendezvousServlet.class);
+            wxs.setLoadOnStartup("second" + i, 2);
+        }
+
+        RendezvousServlet.reset(2, 4);
+        new ServletRunner(toInputStream(wxs.asText()));
+        assertEquals("problems during initialization", "[]", RendezvousServlet.PROBLEMS.toString());
+        assertEquals("servlets initialized", 6, RendezvousServlet.FINISHED.size());
+    }
+
+
+    /**
+     * Verifies that an unchanged web.xml file is parsed only once, and that one which is rewritten is parsed again.
+     */
+    @Test
+    public void testChangedWebXml() throws Exception {
+        WebXMLString wxs = new WebXMLString();
+        wxs.addServlet("/SimpleServlet", SimpleGetServlet.class);
+        File webXml = createWebXml(wxs);
+        WebXmlDescriptor original = ServletRunner.getWebXmlDescriptor(webXml);
+        assertSame("unchanged descriptor", original, ServletRunner.getWebXmlDescriptor(webXml));
+        assertEquals("original resource", SimpleGetServlet.RESPONSE_TEXT, new ServletRunner(webXml).getResponse("http://localhost/SimpleServlet").getText());
+        assertEquals("reused resource", SimpleGetServlet.RESPONSE_TEXT, new ServletRunner(webXml).getResponse("http://localhost/SimpleServlet").getText());
+
+        long lastModified = webXml.lastModified();
+        wxs = new WebXMLString();
+        wxs.addServlet("/OtherServlet", SimpleGetServlet.class);
+        createWebXml(wxs);
+        webXml.setLastModified(lastModified + 2000);
+        assertNotSame("changed descriptor", original, ServletRunner.getWebXmlDescriptor(webXml));
+        assertEquals("changed resource", SimpleGetServlet.RESPONSE_TEXT, new ServletRunner(webXml).getResponse("http://localhost/OtherServlet").getText());
+    }
+
+
+    /**
+     * Verifies that applications created from the same web.xml file share its definitions but not its servlets.
+     */
+    @Test
+    public void testSharedWebXmlDescriptor() throws Exception {
+        WebXMLString wxs = new WebXMLString();
+        wxs.addServlet("/SimpleServlet", SimpleGetServlet.class);
+        wxs.addContextParam("color", "red");
+        File webXml = createWebXml(wxs);
+
+        ServletRunner first = new ServletRunner(webXml);
+        ServletRunner second = new ServletRunner(webXml);
+        assertEquals("context parameter", "red", second.getContextParameter("color"));
+        Object firstServlet = first.newClient().newInvocation("http://localhost/SimpleServlet").getServlet();
+        Object secondServlet = second.newClient().newInvocation("http://localhost/SimpleServlet").getServlet();
+        assertNotSame("servlet instance shared", firstServlet, secondServlet);
+    }
+
+
 //===============================================================================================================
 
 
@@ -530,6 +603,59 @@ public class WebXMLTest {
     static class Servlet1 extends SimpleGetServlet {
     }
 
+    /**
+     * A servlet whose init() waits, up to a timeout, until all servlets in its group have entered init().
+     * The group is the servlet name without its final digit. Servlets in the 'second' group also check
+     * that all of the 'first' group had finished before they started.
+     */
+    static class RendezvousServlet extends HttpServlet {
+        private static final long TIMEOUT_SECONDS = 10;
+
+        static final List PROBLEMS = Collections.synchronizedList(new ArrayList());
+        static final List FINISHED = Collections.synchronizedList(new ArrayList());
+        private static final Map ARRIVALS = new HashMap();
+        private static int _firstGroupSize;
+
+        static synchronized void reset(int firstGroupSize, int secondGroupSize) {
+            PROBLEMS.clear();
+            FINISHED.clear();
+            ARRIVALS.put("first", new CountDownLatch(firstGroupSize));
+            ARRIVALS.put("second", new CountDownLatch(secondGroupSize));
+            _firstGroupSize = firstGroupSize;
+        }
+
+        private static synchronized CountDownLatch getArrivals(String group) {
+            return (CountDownLatch) ARRIVALS.get(group);
+        }
+
+        public void init() throws ServletException {
+            String name = getServletName();
+            String group = name.substring(0, name.length() - 1);
+            if (group.equals("second") && countFinished("first") != _firstGroupSize) {
+                PROBLEMS.add(name + " started before the first group finished");
+            }
+
+            CountDownLatch arrivals = getArrivals(group);
+            arrivals.countDown();
+            try {
+                if (!arrivals.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) PROBLEMS.add(name + " timed out waiting for its group");
+            } catch (InterruptedException e) {
+                PROBLEMS.add(name + " was interrupted");
+            }
+            FINISHED.add(name);
+        }
+
+        private static int countFinished(String group) {
+            synchronized (FINISHED) {
+                int count = 0;
+                for (Iterator i = FINISHED.iterator(); i.hasNext();) {
+                    if (((String) i.next()).startsWith(group)) count++;
+                }
+                return count;
+            }
+        }
+    }
+
     static class Servlet2 extends SimpleGetServlet {
     }
 